@@ -0,0 +1,142 @@
+package cn.test.benchmark;
+
+import cn.test.job.MeteredAsyncJobExecutor;
+import cn.test.parallel.ConcurrentBranchParseHandler;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 异步执行器（MeteredAsyncJobExecutor）的吞吐量，poolSize是核心线程数和最大线程数，virtualThreads在JDK 21以下使用普通线程
+ * receiveTask：receiveTask流程的副本，receivetask1设为异步，每次调用启动COUNT个流程实例，等到全部在receivetask1上等待
+ * parallelGateWay：parallelGateWay流程使用并发模式（分支和汇聚都由异步任务执行），每次调用启动COUNT个流程实例并完成全部任务，等到全部结束
+ * 辅助计数是最后一次调用结束时的平均获取延迟、平均执行时间（毫秒）和队列满时由调用线程执行的任务数
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AsyncExecutorBenchmark {
+
+    private static final int COUNT = 20;
+    private static final String PARALLEL = "parallelGateWayAsync";
+    private static final String RECEIVE = "receiveTaskAsync";
+    private static final String ACTIVITY = "receivetask1";
+
+    @Param({"4", "16"})
+    public int poolSize;
+
+    @Param({"false", "true"})
+    public boolean virtualThreads;
+
+    private MeteredAsyncJobExecutor executor;
+    /**已经在receivetask1上等待的流程实例数*/
+    private long waiting = 0;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Metrics {
+        public double lagMillis;
+        public double executionMillis;
+        public long callerRuns;
+
+        void update(MeteredAsyncJobExecutor executor){
+            lagMillis = executor.getAverageLagMillis();
+            executionMillis = executor.getAverageExecutionMillis();
+            callerRuns = executor.getCallerRunsCount();
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void deploy(EngineState engine) throws IOException {
+        executor = engine.context.getBean(MeteredAsyncJobExecutor.class);
+        executor.shutdown();
+        executor.setVirtualThreads(virtualThreads);
+        executor.setMaxPoolSize(poolSize);
+        executor.setCorePoolSize(poolSize);
+        executor.start();
+
+        engine.context.getBean(ConcurrentBranchParseHandler.class).getProcessDefinitionKeys().add(PARALLEL);
+        String parallel = read("cn/test/h_parallelGateWay/parallelGateWay.bpmn")
+                .replace("\"" + EngineState.PARALLEL_GATEWAY + "\"", "\"" + PARALLEL + "\"");
+        String receive = read("cn/test/j_receiveTask/receiveTask.bpmn")
+                .replace("\"" + EngineState.RECEIVE_TASK + "\"", "\"" + RECEIVE + "\"")
+                .replace("<receiveTask id=\"" + ACTIVITY + "\"", "<receiveTask activiti:async=\"true\" id=\"" + ACTIVITY + "\"");
+        engine.repositoryService.createDeployment().name("async")
+                .addString(PARALLEL + ".bpmn", parallel)
+                .addString(RECEIVE + ".bpmn", receive)
+                .deploy();
+    }
+
+    @Setup(Level.Iteration)
+    public void resetMetrics(){
+        executor.resetMetrics();
+    }
+
+    private String read(String resource) throws IOException {
+        try(InputStream in = getClass().getClassLoader().getResourceAsStream(resource)){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for(int n = in.read(buffer); n != -1; n = in.read(buffer)){
+                out.write(buffer, 0, n);
+            }
+            return out.toString("UTF-8");
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public long receiveTask(EngineState engine, Metrics metrics){
+        for(int i = 0; i < COUNT; i++){
+            engine.runtimeService.startProcessInstanceByKey(RECEIVE);
+        }
+        waiting += COUNT;
+        while(engine.runtimeService.createExecutionQuery().processDefinitionKey(RECEIVE).activityId(ACTIVITY).count() < waiting){
+            LockSupport.parkNanos(100000);
+        }
+        metrics.update(executor);
+        return waiting;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public int parallelGateWay(EngineState engine, Metrics metrics){
+        List<String> processInstanceIds = new ArrayList<>(COUNT);
+        for(int i = 0; i < COUNT; i++){
+            processInstanceIds.add(engine.runtimeService.startProcessInstanceByKey(PARALLEL).getId());
+        }
+        //付款、发货和收款、收货两步，分支上的任务由异步任务创建
+        for(int step = 0; step < 2; step++){
+            for(String processInstanceId:processInstanceIds){
+                for(Task task:await(engine, processInstanceId)){
+                    engine.taskService.complete(task.getId());
+                }
+            }
+        }
+        //汇聚也是异步的
+        while(engine.runtimeService.createProcessInstanceQuery().processDefinitionKey(PARALLEL).count() > 0){
+            LockSupport.parkNanos(100000);
+        }
+        metrics.update(executor);
+        return processInstanceIds.size();
+    }
+
+    /**等到流程实例有两个任务*/
+    private static List<Task> await(EngineState engine, String processInstanceId){
+        List<Task> tasks = engine.taskService.createTaskQuery().processInstanceId(processInstanceId).list();
+        while(tasks.size() < 2){
+            LockSupport.parkNanos(100000);
+            tasks = engine.taskService.createTaskQuery().processInstanceId(processInstanceId).list();
+        }
+        return tasks;
+    }
+}
@@ -0,0 +1,90 @@
+package cn.test.benchmark;
+
+import cn.test.audit.AuditLog;
+import org.apache.log4j.FileAppender;
+import org.apache.log4j.Logger;
+import org.apache.log4j.PatternLayout;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 4个线程同时记录操作日志：原来的写法（log4j同步写文件，INFO级别，拼接整个变量列表），与AuditLog（放入缓冲区后返回，后台线程写文件）
+ * 记录的内容是查询结果：20个流程实例的变量（每个10个变量）
+ * auditLog的结果中同时报告每次迭代放入缓冲区和被丢弃（缓冲区满）的事件数
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class AuditBenchmark {
+
+    private File directory;
+    private Logger logger;
+    private AuditLog auditLog;
+    private List<Map<String, Object>> variables;
+
+    /**每个线程放入缓冲区和被丢弃的事件数，由JMH汇总报告*/
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Events {
+        public long recorded;
+        public long dropped;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            recorded = 0;
+            dropped = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void init() throws IOException {
+        directory = Files.createTempDirectory("audit-benchmark").toFile();
+        logger = Logger.getLogger("audit-benchmark");
+        logger.setAdditivity(false);
+        logger.setLevel(org.apache.log4j.Level.INFO);
+        logger.addAppender(new FileAppender(new PatternLayout("%d %p [%t] %c - %m%n"), new File(directory, "log4j.log").getPath()));
+        auditLog = new AuditLog();
+        auditLog.setDirectory(directory);
+        auditLog.start();
+        variables = new ArrayList<>();
+        for(int i = 0; i < 20; i++){
+            Map<String, Object> vars = new HashMap<>();
+            for(int j = 0; j < 10; j++){
+                vars.put("var" + j, "流程实例" + i + "的变量" + j);
+            }
+            variables.add(vars);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void close(){
+        auditLog.shutdown();
+        logger.removeAllAppenders();
+    }
+
+    @Benchmark
+    public void log4j(){
+        logger.info("查询流程实例变量。processDefinitionKey：parallelGateway ；变量：" + variables);
+    }
+
+    @Benchmark
+    public void auditLog(Events events){
+        if(auditLog.record("findProcessVariables", "parallelGateway", variables.size(), variables)){
+            events.recorded++;
+        }else{
+            events.dropped++;
+        }
+    }
+}
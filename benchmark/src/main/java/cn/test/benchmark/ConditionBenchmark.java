@@ -0,0 +1,76 @@
+package cn.test.benchmark;
+
+import cn.test.condition.ConditionCompiler;
+import org.activiti.engine.impl.Condition;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.el.UelExpressionCondition;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 顺序流条件求值：JUEL解释执行（UelExpressionCondition）与编译后的条件（ConditionCompiler）
+ * 在一个命令中对同一个执行对象求值OPERATIONS次，排除命令和数据库的开销
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConditionBenchmark {
+
+    private static final int OPERATIONS = 1000;
+
+    @Param({"${money>=500 && money<=1000}", "${money>1000}", "${message=='重要'}"})
+    public String expression;
+
+    private ProcessEngineConfigurationImpl configuration;
+    private String executionId;
+    private Condition interpreted;
+    private Condition compiled;
+
+    @Setup(Level.Trial)
+    public void prepare(EngineState engine){
+        configuration = engine.context.getBean(ProcessEngineConfigurationImpl.class);
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("money", 800);
+        vars.put("message", "重要");
+        executionId = engine.runtimeService.startProcessInstanceByKey(EngineState.EXCLUSIVE_GATEWAY, vars).getId();
+        interpreted = new UelExpressionCondition(configuration.getExpressionManager().createExpression(expression));
+        compiled = ConditionCompiler.compile(expression, interpreted);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int interpreted(){
+        return evaluate(interpreted);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(OPERATIONS)
+    public int compiled(){
+        return evaluate(compiled);
+    }
+
+    private int evaluate(final Condition condition){
+        return configuration.getCommandExecutor().execute(new Command<Integer>() {
+            @Override
+            public Integer execute(CommandContext commandContext) {
+                ExecutionEntity execution = commandContext.getExecutionEntityManager().findExecutionById(executionId);
+                int matched = 0;
+                for(int i = 0; i < OPERATIONS; i++){
+                    if(condition.evaluate(execution)){
+                        matched++;
+                    }
+                }
+                return matched;
+            }
+        });
+    }
+}
@@ -0,0 +1,70 @@
+package cn.test.benchmark;
+
+import cn.test.correlation.Correlation;
+import org.activiti.engine.runtime.Execution;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 接收任务的signal：先按流程实例id和活动id查询执行对象再signal（原来的方式），与按业务key关联（WaitingExecutionIndex）
+ * 每次调用前准备count个在receivetask1上等待的流程实例，传入“汇总当日销售额”变量后继续执行
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CorrelationBenchmark {
+
+    private static final int COUNT = 100;
+    private static final String ACTIVITY = "receivetask1";
+
+    private final Map<String, Object> vars = Collections.<String, Object>singletonMap("汇总当日销售额", 21000);
+    private long sequence = 0;
+    private List<String> businessKeys = new ArrayList<>();
+    private List<String> processInstanceIds = new ArrayList<>();
+
+    @Setup(Level.Invocation)
+    public void startWaiting(EngineState engine){
+        businessKeys.clear();
+        processInstanceIds.clear();
+        for(int i = 0; i < COUNT; i++){
+            String businessKey = "sales-" + sequence++;
+            businessKeys.add(businessKey);
+            processInstanceIds.add(engine.activitiUtil.startProcessInstanceByKey(EngineState.RECEIVE_TASK, businessKey, null).getId());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void queryAndSignal(EngineState engine){
+        for(String processInstanceId:processInstanceIds){
+            Execution execution = engine.activitiUtil.getExecutionByActivityId(processInstanceId, ACTIVITY);
+            engine.runtimeService.signal(execution.getId(), vars);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public void correlate(EngineState engine){
+        for(String businessKey:businessKeys){
+            engine.activitiUtil.correlate(businessKey, ACTIVITY, vars);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(COUNT)
+    public Object correlateBatch(EngineState engine){
+        List<Correlation> correlations = new ArrayList<>(COUNT);
+        for(String businessKey:businessKeys){
+            correlations.add(new Correlation(businessKey, ACTIVITY, vars));
+        }
+        return engine.activitiUtil.correlate(correlations);
+    }
+}
@@ -0,0 +1,85 @@
+package cn.test.benchmark;
+
+import cn.test.datasource.PoolMetrics;
+import com.zaxxer.hikari.HikariDataSource;
+import org.apache.ibatis.datasource.pooled.PooledDataSource;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 获取连接、执行一次预编译查询、归还连接：引擎原来使用的MyBatis PooledDataSource（jdbcUrl配置）与HikariDataSource（dataSource配置）
+ * 8个线程共用最多4个连接，查询后模拟少量处理再归还连接，连接不够时需要等待
+ * 结束时打印Hikari连接池的指标（PoolMetrics）
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+@State(Scope.Benchmark)
+public class DataSourceBenchmark {
+
+    private static final int MAX_CONNECTIONS = 4;
+    private static final String URL = "jdbc:h2:mem:pool;DB_CLOSE_DELAY=-1;MVCC=TRUE";
+
+    @Param({"mybatis", "hikari"})
+    public String pool;
+
+    private DataSource dataSource;
+
+    @Setup(Level.Trial)
+    public void createPool() throws SQLException {
+        if("hikari".equals(pool)){
+            HikariDataSource hikari = new HikariDataSource();
+            hikari.setPoolName("benchmark");
+            hikari.setDriverClassName("org.h2.Driver");
+            hikari.setJdbcUrl(URL);
+            hikari.setUsername("sa");
+            hikari.setPassword("");
+            hikari.setMaximumPoolSize(MAX_CONNECTIONS);
+            hikari.setMetricsTrackerFactory(new PoolMetrics());
+            dataSource = hikari;
+        }else{
+            PooledDataSource mybatis = new PooledDataSource("org.h2.Driver", URL, "sa", "");
+            mybatis.setPoolMaximumActiveConnections(MAX_CONNECTIONS);
+            mybatis.setPoolMaximumIdleConnections(MAX_CONNECTIONS);
+            dataSource = mybatis;
+        }
+        try(Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()){
+            statement.execute("CREATE TABLE IF NOT EXISTS PROPERTY (NAME_ VARCHAR(64) PRIMARY KEY, VALUE_ VARCHAR(300))");
+            statement.execute("MERGE INTO PROPERTY VALUES ('schema.version', '5.18.0.0')");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void closePool(){
+        if(dataSource instanceof HikariDataSource){
+            ((HikariDataSource) dataSource).close();
+        }else{
+            ((PooledDataSource) dataSource).forceCloseAll();
+        }
+    }
+
+    @Benchmark
+    public String query() throws SQLException {
+        try(Connection connection = dataSource.getConnection();
+            PreparedStatement ps = connection.prepareStatement("SELECT VALUE_ FROM PROPERTY WHERE NAME_ = ?")){
+            ps.setString(1, "schema.version");
+            try(ResultSet rs = ps.executeQuery()){
+                rs.next();
+                //模拟命令中的其他处理，连接占用时间更接近引擎的命令
+                Blackhole.consumeCPU(2000);
+                return rs.getString(1);
+            }
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package cn.test.benchmark;
+
+import cn.test.ActivitiUtil;
+import org.activiti.engine.IdentityService;
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.RuntimeService;
+import org.activiti.engine.TaskService;
+import org.activiti.engine.impl.persistence.entity.GroupEntity;
+import org.activiti.engine.impl.persistence.entity.UserEntity;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.context.support.ClassPathXmlApplicationContext;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 在内存H2上启动的流程引擎，每个基准测试（每个fork）启动一次
+ * 部署helloworld、exclusiveGateWay、parallelGateWay、receiveTask和组任务（m_groupUser）的流程定义
+ */
+@State(Scope.Benchmark)
+public class EngineState {
+
+    public static final String HELLOWORLD = "helloworld22222";
+    public static final String EXCLUSIVE_GATEWAY = "exclusiveGateWay";
+    public static final String PARALLEL_GATEWAY = "parallelGateWay";
+    public static final String RECEIVE_TASK = "receiveTask";
+    public static final String GROUP_TASK = "task";
+
+    public static final String GROUP = "部门经理";
+    public static final String GROUP_USER = "张三";
+
+    public ClassPathXmlApplicationContext context;
+    public ActivitiUtil activitiUtil;
+    public RepositoryService repositoryService;
+    public RuntimeService runtimeService;
+    public TaskService taskService;
+    public IdentityService identityService;
+
+    @Setup(Level.Trial)
+    public void startEngine(){
+        context = new ClassPathXmlApplicationContext("benchmark-context.xml");
+        activitiUtil = context.getBean(ActivitiUtil.class);
+        repositoryService = context.getBean(RepositoryService.class);
+        runtimeService = context.getBean(RuntimeService.class);
+        taskService = context.getBean(TaskService.class);
+        identityService = context.getBean(IdentityService.class);
+
+        repositoryService.createDeployment().name("benchmark")
+                .addClasspathResource("diagrams/helloworld.bpmn")
+                .addClasspathResource("cn/test/g_exclusiveGateWay/exclusiveGateWay.bpmn")
+                .addClasspathResource("cn/test/h_parallelGateWay/parallelGateWay.bpmn")
+                .addClasspathResource("cn/test/j_receiveTask/receiveTask.bpmn")
+                .addClasspathResource("cn/test/m_groupUser/task.bpmn")
+                .deploy();
+
+        identityService.saveGroup(new GroupEntity(GROUP));
+        identityService.saveUser(new UserEntity(GROUP_USER));
+        identityService.createMembership(GROUP_USER, GROUP);
+    }
+
+    @TearDown(Level.Trial)
+    public void stopEngine(){
+        context.close();
+    }
+
+    /**
+     * helloworld流程的参数
+     * @param userId 第一个任务的办理人
+     */
+    public static Map<String, Object> helloworldVars(String userId){
+        Map<String, Object> vars = new HashMap<>();
+        vars.put("userId", userId);
+        return vars;
+    }
+}
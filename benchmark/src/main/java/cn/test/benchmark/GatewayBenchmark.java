@@ -0,0 +1,82 @@
+package cn.test.benchmark;
+
+import org.activiti.bpmn.model.*;
+import org.activiti.bpmn.model.Process;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 出口很多的排他网关：开始 -> 排他网关（flows个money的区间条件）-> 结束
+ * indexed使用条件索引；compiled的条件多了一个常量（不能建立索引），逐个求值编译后的条件；
+ * interpreted的条件引用了execution（不能编译），与引擎原来的方式相同
+ * money取最后一个区间，逐个求值时要计算所有条件
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GatewayBenchmark {
+
+    private static final String INDEXED = "gatewayIndexed";
+    private static final String COMPILED = "gatewayCompiled";
+    private static final String INTERPRETED = "gatewayInterpreted";
+
+    @Param({"50", "500"})
+    public int flows;
+
+    private Map<String, Object> vars = new HashMap<>();
+
+    @Setup(Level.Trial)
+    public void deploy(EngineState engine){
+        engine.repositoryService.createDeployment().name("gateway")
+                .addBpmnModel(INDEXED + ".bpmn", model(INDEXED, ""))
+                .addBpmnModel(COMPILED + ".bpmn", model(COMPILED, " && true"))
+                .addBpmnModel(INTERPRETED + ".bpmn", model(INTERPRETED, " && execution != null"))
+                .deploy();
+        vars.put("money", (flows - 1) * 100 + 50);
+    }
+
+    private BpmnModel model(String key, String suffix){
+        Process process = new Process();
+        process.setId(key);
+        StartEvent start = new StartEvent();
+        start.setId("start");
+        ExclusiveGateway gateway = new ExclusiveGateway();
+        gateway.setId("gateway");
+        EndEvent end = new EndEvent();
+        end.setId("end");
+        process.addFlowElement(start);
+        process.addFlowElement(gateway);
+        process.addFlowElement(end);
+        process.addFlowElement(new SequenceFlow("start", "gateway"));
+        for(int i = 0; i < flows; i++){
+            SequenceFlow flow = new SequenceFlow("gateway", "end");
+            flow.setId("flow" + i);
+            flow.setConditionExpression("${money>=" + i * 100 + " && money<" + (i + 1) * 100 + suffix + "}");
+            process.addFlowElement(flow);
+        }
+        BpmnModel model = new BpmnModel();
+        model.addProcess(process);
+        return model;
+    }
+
+    @Benchmark
+    public String indexed(EngineState engine){
+        return engine.runtimeService.startProcessInstanceByKey(INDEXED, vars).getId();
+    }
+
+    @Benchmark
+    public String compiled(EngineState engine){
+        return engine.runtimeService.startProcessInstanceByKey(COMPILED, vars).getId();
+    }
+
+    @Benchmark
+    public String interpreted(EngineState engine){
+        return engine.runtimeService.startProcessInstanceByKey(INTERPRETED, vars).getId();
+    }
+}
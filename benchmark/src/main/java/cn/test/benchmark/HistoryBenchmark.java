@@ -0,0 +1,66 @@
+package cn.test.benchmark;
+
+import cn.test.history.AsyncHistoryWriter;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.history.HistoricVariableInstance;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 历史查询，预先准备instanceCount个走完的helloworld流程实例
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class HistoryBenchmark {
+
+    private static final String ASSIGNEE = "history";
+
+    @Param({"100"})
+    public int instanceCount;
+
+    private String processInstanceId;
+
+    @Setup(Level.Trial)
+    public void prepareHistory(EngineState engine){
+        for(int i = 0; i < instanceCount; i++){
+            ProcessInstance pi = engine.activitiUtil.startProcessInstanceByKey(EngineState.HELLOWORLD, EngineState.helloworldVars(ASSIGNEE));
+            List<Task> tasks = engine.taskService.createTaskQuery().processInstanceId(pi.getId()).list();
+            while(!tasks.isEmpty()){
+                engine.activitiUtil.completePersonalTask(tasks.get(0).getId());
+                tasks = engine.taskService.createTaskQuery().processInstanceId(pi.getId()).list();
+            }
+            processInstanceId = pi.getId();
+        }
+        //等待异步写入的历史数据落库后再查询
+        engine.context.getBean(AsyncHistoryWriter.class).flush();
+    }
+
+    @Benchmark
+    public HistoricProcessInstance findHistoryProcessInstance(EngineState engine){
+        return engine.activitiUtil.findHistoryProcessInstance(processInstanceId);
+    }
+
+    @Benchmark
+    public List<HistoricTaskInstance> findProcessHistoryTask(EngineState engine){
+        return engine.activitiUtil.findProcessHistoryTask(processInstanceId);
+    }
+
+    @Benchmark
+    public List<HistoricVariableInstance> findProcessHistoryVariables(EngineState engine){
+        return engine.activitiUtil.findProcessHistoryVariables(processInstanceId);
+    }
+
+    @Benchmark
+    public List<HistoricTaskInstance> findPersonalHistoryTask(EngineState engine){
+        return engine.activitiUtil.findPersonalHistoryTask(ASSIGNEE);
+    }
+}
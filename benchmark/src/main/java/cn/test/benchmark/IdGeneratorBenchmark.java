@@ -0,0 +1,73 @@
+package cn.test.benchmark;
+
+import cn.test.id.NodeStripedIdGenerator;
+import org.activiti.engine.ActivitiOptimisticLockingException;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.db.DbIdGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 4个节点（线程）同时生成id：每个节点一个DbIdGenerator（按块更新ACT_GE_PROPERTY的next.dbid），与NodeStripedIdGenerator（不访问数据库）
+ * blockSize是DbIdGenerator每次取的id数（引擎默认2500，节点多、启动流程多时取块更频繁，这里用较小的值模拟）
+ * optimisticLockFailures是取块时的乐观锁冲突次数（冲突后重试）
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class IdGeneratorBenchmark {
+
+    @Param({"10", "100"})
+    public int blockSize;
+
+    private ProcessEngineConfigurationImpl configuration;
+
+    @Setup(Level.Trial)
+    public void init(EngineState engine){
+        configuration = engine.context.getBean(ProcessEngineConfigurationImpl.class);
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Node {
+        public long optimisticLockFailures;
+
+        DbIdGenerator dbIdGenerator;
+        final NodeStripedIdGenerator nodeStripedIdGenerator = new NodeStripedIdGenerator();
+
+        @Setup(Level.Trial)
+        public void init(IdGeneratorBenchmark benchmark){
+            dbIdGenerator = new DbIdGenerator();
+            dbIdGenerator.setIdBlockSize(benchmark.blockSize);
+            dbIdGenerator.setCommandExecutor(benchmark.configuration.getCommandExecutor());
+            dbIdGenerator.setCommandConfig(benchmark.configuration.getDefaultCommandConfig().transactionRequiresNew());
+            nodeStripedIdGenerator.setNodeId((int) (Thread.currentThread().getId() & NodeStripedIdGenerator.MAX_NODE_ID));
+        }
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            optimisticLockFailures = 0;
+        }
+    }
+
+    @Benchmark
+    public String dbIdGenerator(Node node){
+        for(;;){
+            try{
+                return node.dbIdGenerator.getNextId();
+            }catch(ActivitiOptimisticLockingException e){
+                node.optimisticLockFailures++;
+            }
+        }
+    }
+
+    @Benchmark
+    public String nodeStriped(Node node){
+        return node.nodeStripedIdGenerator.getNextId();
+    }
+}
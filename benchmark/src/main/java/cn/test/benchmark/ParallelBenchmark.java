@@ -0,0 +1,121 @@
+package cn.test.benchmark;
+
+import cn.test.parallel.ConcurrentBranchParseHandler;
+import org.activiti.engine.ActivitiOptimisticLockingException;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * parallelGateWay的汇聚：付款、发货完成后，收款、收货两个任务由两个线程同时完成
+ * sequential是引擎原来的方式（同步执行，汇聚时更新父执行对象，并发到达时乐观锁冲突后重试）；
+ * concurrent是同一个流程使用ConcurrentBranchParseHandler的并发模式（分支异步执行，汇聚按流程实例分段锁判断）
+ * optimisticLockFailures是完成任务时的乐观锁冲突次数
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelBenchmark {
+
+    private static final String CONCURRENT = "parallelGateWayConcurrent";
+
+    private ExecutorService completers;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Failures {
+        public long optimisticLockFailures;
+
+        @Setup(Level.Iteration)
+        public void reset(){
+            optimisticLockFailures = 0;
+        }
+    }
+
+    @Setup(Level.Trial)
+    public void deploy(EngineState engine) throws IOException {
+        engine.context.getBean(ConcurrentBranchParseHandler.class).getProcessDefinitionKeys().add(CONCURRENT);
+        String bpmn;
+        try(InputStream in = getClass().getClassLoader().getResourceAsStream("cn/test/h_parallelGateWay/parallelGateWay.bpmn")){
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            for(int n = in.read(buffer); n != -1; n = in.read(buffer)){
+                out.write(buffer, 0, n);
+            }
+            bpmn = out.toString("UTF-8").replace("\"" + EngineState.PARALLEL_GATEWAY + "\"", "\"" + CONCURRENT + "\"");
+        }
+        engine.repositoryService.createDeployment().name("concurrent").addString(CONCURRENT + ".bpmn", bpmn).deploy();
+        completers = Executors.newFixedThreadPool(2);
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown(){
+        completers.shutdownNow();
+    }
+
+    @Benchmark
+    public String sequential(EngineState engine, Failures failures) throws Exception {
+        return run(engine, EngineState.PARALLEL_GATEWAY, failures);
+    }
+
+    @Benchmark
+    public String concurrent(EngineState engine, Failures failures) throws Exception {
+        return run(engine, CONCURRENT, failures);
+    }
+
+    private String run(EngineState engine, String key, Failures failures) throws Exception {
+        String processInstanceId = engine.runtimeService.startProcessInstanceByKey(key).getId();
+        for(int step = 0; step < 2; step++){
+            List<Task> tasks = await(engine, processInstanceId, 2);
+            List<Future<Integer>> futures = new ArrayList<>();
+            for(Task task:tasks){
+                futures.add(completers.submit(complete(engine, task.getId())));
+            }
+            for(Future<Integer> future:futures){
+                failures.optimisticLockFailures += future.get();
+            }
+        }
+        //汇聚在并发模式下是异步的
+        while(engine.runtimeService.createProcessInstanceQuery().processInstanceId(processInstanceId).count() > 0){
+            LockSupport.parkNanos(100000);
+        }
+        return processInstanceId;
+    }
+
+    /**等到流程实例有count个任务（并发模式下分支的任务由异步任务创建）*/
+    private static List<Task> await(EngineState engine, String processInstanceId, int count){
+        List<Task> tasks = engine.taskService.createTaskQuery().processInstanceId(processInstanceId).list();
+        while(tasks.size() < count){
+            LockSupport.parkNanos(100000);
+            tasks = engine.taskService.createTaskQuery().processInstanceId(processInstanceId).list();
+        }
+        return tasks;
+    }
+
+    /**完成任务，乐观锁冲突时重试，返回冲突次数*/
+    private static Callable<Integer> complete(final EngineState engine, final String taskId){
+        return new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                for(int failures = 0; ; failures++){
+                    try{
+                        engine.taskService.complete(taskId);
+                        return failures;
+                    }catch(ActivitiOptimisticLockingException e){
+                        //重试
+                    }
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,46 @@
+package cn.test.benchmark;
+
+import org.activiti.engine.repository.Deployment;
+import org.activiti.engine.repository.ProcessDefinition;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 部署和查询流程定义
+ * createDeploymentByZip每次部署相同的内容（第一次之后跳过），deployChanged每次部署不同的内容
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepositoryBenchmark {
+
+    private int version = 0;
+
+    @Benchmark
+    public Deployment createDeploymentByZip(EngineState engine){
+        return engine.activitiUtil.createDeploymentByZip("helloworld", "diagrams/helloworld.zip");
+    }
+
+    @Benchmark
+    public Deployment deployChanged(EngineState engine){
+        return engine.repositoryService.createDeployment().name("changed")
+                .addClasspathResource("diagrams/helloworld.bpmn")
+                .addString("version.txt", String.valueOf(version++))
+                .deploy();
+    }
+
+    @Benchmark
+    public ProcessDefinition findLastVersionProcessDefinitionByKey(EngineState engine){
+        return engine.activitiUtil.findLastVersionProcessDefinition(EngineState.HELLOWORLD);
+    }
+
+    @Benchmark
+    public List<ProcessDefinition> findLastVersionProcessDefinition(EngineState engine){
+        return engine.activitiUtil.findLastVersionProcessDefinition();
+    }
+}
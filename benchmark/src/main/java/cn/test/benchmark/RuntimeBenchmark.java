@@ -0,0 +1,78 @@
+package cn.test.benchmark;
+
+import org.activiti.engine.runtime.Execution;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动流程实例、完成任务、网关流转和receiveTask的signal
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RuntimeBenchmark {
+
+    /**每次调用前启动一个helloworld实例，测量完成它的第一个任务*/
+    @State(Scope.Thread)
+    public static class PendingTask {
+        String taskId;
+
+        @Setup(Level.Invocation)
+        public void start(EngineState engine){
+            ProcessInstance pi = engine.activitiUtil.startProcessInstanceByKey(EngineState.HELLOWORLD,
+                    EngineState.helloworldVars("complete"));
+            taskId = engine.taskService.createTaskQuery().processInstanceId(pi.getId()).singleResult().getId();
+        }
+    }
+
+    @Benchmark
+    public ProcessInstance startProcessInstanceByKey(EngineState engine){
+        return engine.activitiUtil.startProcessInstanceByKey(EngineState.HELLOWORLD, EngineState.helloworldVars("start"));
+    }
+
+    @Benchmark
+    public void completePersonalTask(EngineState engine, PendingTask pending){
+        engine.activitiUtil.completePersonalTask(pending.taskId);
+    }
+
+    /**启动exclusiveGateWay并完成第一个任务，经过排他网关的条件判断*/
+    @Benchmark
+    public String exclusiveGateWay(EngineState engine){
+        ProcessInstance pi = engine.activitiUtil.startProcessInstanceByKey(EngineState.EXCLUSIVE_GATEWAY, null);
+        Task task = engine.taskService.createTaskQuery().processInstanceId(pi.getId()).singleResult();
+        engine.activitiUtil.completePersonalTask(task.getId(), Collections.<String, Object>singletonMap("money", 800));
+        return pi.getId();
+    }
+
+    /**启动parallelGateWay，完成分支上的所有任务直到汇聚结束*/
+    @Benchmark
+    public String parallelGateWay(EngineState engine){
+        ProcessInstance pi = engine.activitiUtil.startProcessInstanceByKey(EngineState.PARALLEL_GATEWAY, null);
+        List<Task> tasks = engine.taskService.createTaskQuery().processInstanceId(pi.getId()).list();
+        while(!tasks.isEmpty()){
+            for(Task task:tasks){
+                engine.activitiUtil.completePersonalTask(task.getId());
+            }
+            tasks = engine.taskService.createTaskQuery().processInstanceId(pi.getId()).list();
+        }
+        return pi.getId();
+    }
+
+    /**启动receiveTask，查询等待中的执行对象并signal两次直到结束*/
+    @Benchmark
+    public String receiveTask(EngineState engine){
+        ProcessInstance pi = engine.activitiUtil.startProcessInstanceByKey(EngineState.RECEIVE_TASK, null);
+        Execution execution = engine.activitiUtil.getExecutionByActivityId(pi.getId(), "receivetask1");
+        engine.activitiUtil.signal(execution.getId());
+        execution = engine.activitiUtil.getExecutionByActivityId(pi.getId(), "receivetask2");
+        engine.activitiUtil.signal(execution.getId());
+        return pi.getId();
+    }
+}
@@ -0,0 +1,42 @@
+package cn.test.benchmark;
+
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 个人任务和组任务的查询，查询对象名下预先准备taskCount个任务
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TaskQueryBenchmark {
+
+    private static final String ASSIGNEE = "query";
+
+    @Param({"100", "1000"})
+    public int taskCount;
+
+    @Setup(Level.Trial)
+    public void prepareTasks(EngineState engine){
+        for(int i = 0; i < taskCount; i++){
+            engine.activitiUtil.startProcessInstanceByKey(EngineState.HELLOWORLD, EngineState.helloworldVars(ASSIGNEE));
+            engine.activitiUtil.startProcessInstanceByKey(EngineState.GROUP_TASK, null);
+        }
+    }
+
+    @Benchmark
+    public List<Task> findMyPersonalTask(EngineState engine){
+        return engine.activitiUtil.findMyPersonalTask(ASSIGNEE);
+    }
+
+    @Benchmark
+    public List<Task> findMyGroupTask(EngineState engine){
+        return engine.activitiUtil.findMyGroupTask(EngineState.GROUP_USER);
+    }
+}
@@ -0,0 +1,77 @@
+package cn.test.benchmark;
+
+import org.activiti.engine.task.Task;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 表单读取变量：预先准备taskCount个任务，每个流程实例有variableCount个变量
+ * 逐个读取（每个变量一个命令）与批量读取（所有任务、所有变量一个命令）
+ * 每个流程实例另有一个serializable变量，比较列表页只取少数变量时立即读取与延迟读取的差别
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VariableBenchmark {
+
+    private static final String ASSIGNEE = "variable";
+
+    @Param({"20"})
+    public int taskCount;
+
+    @Param({"25"})
+    public int variableCount;
+
+    private List<String> taskIds = new ArrayList<>();
+    private List<String> names = new ArrayList<>();
+    private List<String> listNames = Arrays.asList("field0", "blob");
+
+    @Setup(Level.Trial)
+    public void prepareTasks(EngineState engine){
+        Map<String, Object> vars = EngineState.helloworldVars(ASSIGNEE);
+        for(int i = 0; i < variableCount; i++){
+            names.add("field" + i);
+            vars.put("field" + i, "value" + i);
+        }
+        vars.put("blob", new ArrayList<>(Collections.nCopies(2000, "blob")));
+        for(int i = 0; i < taskCount; i++){
+            engine.activitiUtil.startProcessInstanceByKey(EngineState.HELLOWORLD, vars);
+        }
+        for(Task task:engine.taskService.createTaskQuery().taskAssignee(ASSIGNEE).list()){
+            taskIds.add(task.getId());
+        }
+    }
+
+    @Benchmark
+    public int getTaskVariablesOneByOne(EngineState engine){
+        int found = 0;
+        for(String taskId:taskIds){
+            for(String name:names){
+                if(engine.activitiUtil.getTaskVariables(taskId, name) != null){
+                    found++;
+                }
+            }
+        }
+        return found;
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> getTaskVariablesBatch(EngineState engine){
+        return engine.activitiUtil.getTaskVariables(taskIds, names);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> getTaskListVariablesEager(EngineState engine){
+        return engine.activitiUtil.getTaskVariables(taskIds, listNames, false);
+    }
+
+    @Benchmark
+    public Map<String, Map<String, Object>> getTaskListVariablesLazy(EngineState engine){
+        return engine.activitiUtil.getTaskVariables(taskIds, listNames, true);
+    }
+}
@@ -0,0 +1,70 @@
+package cn.test.benchmark;
+
+import cn.test.d_processVariables.Person;
+import cn.test.variable.CompactCodec;
+import org.activiti.engine.impl.variable.SerializableType;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Person流程变量的编码：默认的serializable类型（Java序列化）与compact类型（CompactCodec）
+ * 编码的结果中同时报告编码后的字节数（encodedBytes）
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class VariableCodecBenchmark {
+
+    private final SerializableType serializableType = new SerializableType();
+    private final CompactCodec codec = new CompactCodec();
+
+    private Person person;
+    private byte[] serialized;
+    private byte[] compact;
+
+    /**最近一次编码后的字节数，由JMH报告*/
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Size {
+        public long encodedBytes;
+    }
+
+    @Setup(Level.Trial)
+    public void prepare(){
+        person = new Person();
+        person.setId(20);
+        person.setName("翠花");
+        person.setEducation("本科");
+        codec.register(Person.class);
+        serialized = serializableType.serialize(person, null);
+        compact = codec.encode(person);
+    }
+
+    @Benchmark
+    public byte[] serializableEncode(Size size){
+        byte[] bytes = serializableType.serialize(person, null);
+        size.encodedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Object serializableDecode(){
+        return serializableType.deserialize(serialized, null);
+    }
+
+    @Benchmark
+    public byte[] compactEncode(Size size){
+        byte[] bytes = codec.encode(person);
+        size.encodedBytes = bytes.length;
+        return bytes;
+    }
+
+    @Benchmark
+    public Person compactDecode(){
+        return codec.decode(Person.class, compact);
+    }
+}
@@ -1,13 +1,37 @@
 package cn.test;
 
+import cn.test.archive.ArchivedProcessInstance;
+import cn.test.archive.HistoryArchive;
+import cn.test.audit.AuditLog;
+import cn.test.batch.BatchResult;
+import cn.test.batch.CompleteTasksCmd;
+import cn.test.batch.StartProcessInstancesCmd;
+import cn.test.cache.ProcessDefinitionCache;
+import cn.test.correlation.CorrelateCmd;
+import cn.test.correlation.Correlation;
+import cn.test.correlation.WaitingExecutionIndex;
+import cn.test.deployment.StreamingZipDeployer;
+import cn.test.deployment.ZipDeploymentResult;
+import cn.test.diagram.DiagramCache;
+import cn.test.identity.BulkIdentityImportCmd;
+import cn.test.identity.GroupMembershipCache;
+import cn.test.identity.IdentityImportResult;
+import cn.test.identity.Membership;
+import cn.test.inbox.TaskInboxProjection;
+import cn.test.query.TaskPageIterator;
+import cn.test.variable.GetVariablesCmd;
 import org.activiti.engine.*;
 import org.activiti.engine.history.*;
 import org.activiti.engine.impl.persistence.entity.GroupEntity;
+import org.activiti.engine.impl.persistence.entity.IdentityLinkEntity;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
 import org.activiti.engine.impl.persistence.entity.UserEntity;
 import org.activiti.engine.repository.Deployment;
 import org.activiti.engine.repository.ProcessDefinition;
 import org.activiti.engine.runtime.Execution;
 import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.NativeTaskQuery;
 import org.activiti.engine.task.Task;
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -23,7 +47,6 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.zip.ZipInputStream;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(locations ={"/application.xml"})
@@ -44,6 +67,27 @@ public class ActivitiUtil{
     private FormService formService;//一个可选服务，任务表单管理
     @Autowired
     private IdentityService identityService;//组织机构管理
+    @Autowired
+    private ManagementService managementService;//管理服务类，用于执行自定义命令
+    @Autowired
+    private ProcessDefinitionCache processDefinitionCache;//最新版本流程定义的缓存
+    @Autowired
+    private TaskInboxProjection taskInboxProjection;//按用户、按组统计的未完成任务数
+    @Autowired
+    private GroupMembershipCache groupMembershipCache;//用户所在组的缓存
+    @Autowired
+    private HistoryArchive historyArchive;//已归档的历史数据
+    @Autowired
+    private DiagramCache diagramCache;//流程图的本地缓存
+    @Autowired
+    private StreamingZipDeployer streamingZipDeployer;//流式zip部署
+    @Autowired
+    private WaitingExecutionIndex waitingExecutionIndex;//等待中的接收任务的索引
+    @Autowired
+    private AuditLog auditLog;//操作的审计日志（异步写入本地文件）
+
+    /**批量操作时每个事务处理的数据条数*/
+    private int batchSize = 500;
 
     /**
      * 部署流程定义（从zip）
@@ -52,13 +96,16 @@ public class ActivitiUtil{
      * @return 部署对象
      */
     public Deployment createDeploymentByZip(String name, String zipResource){
-        InputStream in = this.getClass().getClassLoader().getResourceAsStream(zipResource);
-        ZipInputStream zipInputStream = new ZipInputStream(in);
-        Deployment deployment =  repositoryService.createDeployment()//创建一个部署对象
-                .name(name)//添加部署的名称
-                .addZipInputStream(zipInputStream)//指定zip格式的文件完成部署
-                .deploy();//返回部署对象
-        logger.info("部署流程。部署名称：{} ；资源：{} ；新部署的id：{}",name,zipResource,deployment.getId());
+        ZipDeploymentResult result;
+        try(InputStream in = this.getClass().getClassLoader().getResourceAsStream(zipResource)){
+            //逐个读取zip条目（有大小上限），BPMN并行解析
+            result = streamingZipDeployer.deploy(name, in);
+        }catch(IOException e){
+            throw new ActivitiException("读取zip失败：" + zipResource, e);
+        }
+        Deployment deployment = result.getDeployment();
+        processDefinitionCache.onDeployment(deployment.getId());//新部署的流程定义替换缓存中的旧版本
+        auditLog.record("createDeploymentByZip", deployment.getId(), -1, zipResource);
         return deployment;
     }
 
@@ -68,17 +115,10 @@ public class ActivitiUtil{
      * @return 所有最新版本的流程定义
      */
     public List<ProcessDefinition> findLastVersionProcessDefinition(){
-        List<ProcessDefinition> list = repositoryService.createProcessDefinitionQuery()
-                .orderByProcessDefinitionVersion().asc()//使用流程定义的版本升序排列
-                .list();
-        //当map集合key值相同的情况下，后一次的值将替换前一次的值
-        Map<String, ProcessDefinition> map = new LinkedHashMap<>();
+        List<ProcessDefinition> list = processDefinitionCache.getAll();//从缓存读取，缓存不完整时只查询一次最新版本
         if(list!=null && list.size()>0){
-            for(ProcessDefinition pd:list){
-                map.put(pd.getKey(), pd);
-            }
-            logger.info("查询所有最新版本的流程定义。所有的最新版本：{}",map.values());
-            return new ArrayList<>(map.values());
+            auditLog.record("findLastVersionProcessDefinition", null, list.size(), null);
+            return list;
         }
         return null;
     }
@@ -89,13 +129,10 @@ public class ActivitiUtil{
      * @return 最新版本的流程定义
      */
     public ProcessDefinition findLastVersionProcessDefinition(String processDefinitionKey){
-        List<ProcessDefinition> list = repositoryService.createProcessDefinitionQuery()//
-                .processDefinitionKey(processDefinitionKey)
-                .orderByProcessDefinitionVersion().desc()//使用流程定义的版本升序排列
-                .list();
-        if(list != null && list.size()>0){
-            logger.info("获取流程定义的最新版本：key：{} ; 最新版本{}",processDefinitionKey,list.get(0));
-            return list.get(0);
+        ProcessDefinition processDefinition = processDefinitionCache.get(processDefinitionKey);
+        if(processDefinition != null){
+            auditLog.record("findLastVersionProcessDefinition", processDefinitionKey, -1, processDefinition.getId());
+            return processDefinition;
         }
         logger.error("获取流程定义的最新版本失败.key:{}",processDefinitionKey);
         return null;
@@ -107,7 +144,7 @@ public class ActivitiUtil{
      * @param cascade 是否级联（true:不管流程是否启动，都能可以删除;false:只能删除没有启动的流程，如果流程启动，就会抛出异常)
      */
     public void deleteProcessDefinitionByKey(String processDefinitionKey,boolean cascade){
-        logger.info("删除流程定义。程定义的key：{} ；是否级联删除：{}",processDefinitionKey,cascade?"级联":"不级联");
+        auditLog.record("deleteProcessDefinitionByKey", processDefinitionKey, -1, cascade);
         //先使用流程定义的key查询流程定义，查询出所有的版本
         List<ProcessDefinition> list = repositoryService.createProcessDefinitionQuery()//
                 .processDefinitionKey(processDefinitionKey)//使用流程定义的key查询
@@ -120,6 +157,7 @@ public class ActivitiUtil{
                 deleteProcessDefinition(deploymentId,cascade);
             }
         }
+        processDefinitionCache.invalidate(processDefinitionKey);
     }
 
     /**
@@ -128,32 +166,31 @@ public class ActivitiUtil{
      * @param cascade 是否级联删除（true:不管流程是否启动，都能可以删除;false:只能删除没有启动的流程，如果流程启动，就会抛出异常)
      */
     public void deleteProcessDefinition(String deploymentId,boolean cascade){
-        logger.info("删除流程定义。部署id：{} ；是否级联删除：{}",deploymentId,cascade?"级联":"不级联");
+        auditLog.record("deleteProcessDefinition", deploymentId, -1, cascade);
         repositoryService.deleteDeployment(deploymentId, cascade);
+        processDefinitionCache.invalidateDeployment(deploymentId);
+        diagramCache.invalidate(deploymentId);
     }
     /**
      * 查看流程图，将生成图片放到文件夹下
+     * 图片从DiagramCache的本地缓存复制，每个部署只从数据库读取一次
      * @param deploymentId 部署id
      * @param filePath 文件夹路径
      */
     public void viewPic(String deploymentId,String filePath){
-        //获取图片资源名称
-        List<String> list = repositoryService.getDeploymentResourceNames(deploymentId);
-        //定义图片资源的名称
-        String resourceName = "";
-        if(list!=null && list.size()>0){
-            for(String name:list){
-                if(name.endsWith(".png")){
-                    resourceName = name;
-                }
-            }
+        File cached = diagramCache.getFile(deploymentId);
+        if(cached == null){
+            auditLog.record("viewPic", deploymentId, 0, null);
+            return;
+        }
+        String resourceName = diagramCache.getResourceName(deploymentId);//资源名保存在缓存的索引中，不查询数据库
+        if(resourceName == null){
+            resourceName = cached.getName();//刚被删除的部署
         }
-        //获取图片的输入流
-        InputStream in = repositoryService.getResourceAsStream(deploymentId, resourceName);
-        logger.info("生成流程图。部署id：{} ；存放位置：{} ;文件名：{}",deploymentId,filePath,resourceName);
+        auditLog.record("viewPic", deploymentId, 1, resourceName);
         File file = new File(filePath,resourceName);
         try{
-            FileUtils.copyInputStreamToFile(in, file);
+            FileUtils.copyFile(cached, file);
         }catch(IOException e){
             logger.error("下载图片失败");
         }
@@ -166,12 +203,87 @@ public class ActivitiUtil{
      * @return 流程实例
      */
     public ProcessInstance startProcessInstanceByKey(String processDefinitionKey,Map<String,Object> vars){
-        //使用流程定义的key启动流程实例，key对应.bpmn文件中id的属性值，使用key值启动，默认是按照最新版本的流程定义启动
-        ProcessInstance processInstance = runtimeService.startProcessInstanceByKey(processDefinitionKey, vars);
-        logger.info("启动流程实例。key：{} ；vars：{} ;实例id：{}",processDefinitionKey,vars,processInstance.getProcessDefinitionId());
+        //使用缓存中的最新版本流程定义id启动，省去每次按key查询最新版本
+        ProcessDefinition processDefinition = processDefinitionCache.get(processDefinitionKey);
+        ProcessInstance processInstance = processDefinition != null
+                ? runtimeService.startProcessInstanceById(processDefinition.getId(), vars)
+                : runtimeService.startProcessInstanceByKey(processDefinitionKey, vars);//缓存未命中时按key启动，由引擎抛出异常
+        auditLog.record("startProcessInstanceByKey", processInstance.getId(), -1, processDefinitionKey);
         return processInstance;
     }
 
+    /**
+     * 启动流程实例并指定业务key
+     * @param processDefinitionKey 流程定义的key
+     * @param businessKey 业务key，用于关联接收任务（见correlate）
+     * @param vars 流程实例参数
+     * @return 流程实例
+     */
+    public ProcessInstance startProcessInstanceByKey(String processDefinitionKey,String businessKey,Map<String,Object> vars){
+        ProcessDefinition processDefinition = processDefinitionCache.get(processDefinitionKey);
+        ProcessInstance processInstance = processDefinition != null
+                ? runtimeService.startProcessInstanceById(processDefinition.getId(), businessKey, vars)
+                : runtimeService.startProcessInstanceByKey(processDefinitionKey, businessKey, vars);
+        auditLog.record("startProcessInstanceByKey", processInstance.getId(), -1, businessKey);
+        return processInstance;
+    }
+
+    /**
+     * 批量启动流程实例（只解析一次流程定义，每batchSize条提交一个事务）
+     * 某个事务失败时，该批数据逐条重试，以便定位失败的数据
+     * @param processDefinitionKey 流程定义的key
+     * @param varsList 每个流程实例的参数
+     * @return 结果。key：参数在列表中的下标；value：流程实例id
+     */
+    public BatchResult<Integer> startProcessInstancesByKey(String processDefinitionKey,List<Map<String,Object>> varsList){
+        BatchResult<Integer> result = new BatchResult<>();
+        long start = System.currentTimeMillis();
+        ProcessDefinition processDefinition = processDefinitionCache.get(processDefinitionKey);
+        if(processDefinition == null){
+            logger.error("批量启动流程实例失败，流程定义不存在.key:{}",processDefinitionKey);
+            throw new ActivitiObjectNotFoundException("no processes deployed with key '"+processDefinitionKey+"'", ProcessDefinition.class);
+        }
+        for(int from = 0; from < varsList.size(); from += batchSize){
+            List<Map<String,Object>> chunk = varsList.subList(from, Math.min(from + batchSize, varsList.size()));
+            try{
+                List<String> ids = managementService.executeCommand(new StartProcessInstancesCmd(processDefinition.getId(), chunk));
+                result.transactionCommitted();
+                for(int i = 0; i < ids.size(); i++){
+                    result.success(from + i, ids.get(i));
+                }
+            }catch(RuntimeException e){
+                logger.warn("批量启动流程实例失败，逐条重试。key：{} ；下标：{}-{} ；原因：{}",processDefinitionKey,from,from+chunk.size()-1,e.getMessage());
+                for(int i = 0; i < chunk.size(); i++){
+                    try{
+                        ProcessInstance pi = runtimeService.startProcessInstanceById(processDefinition.getId(), chunk.get(i));
+                        result.transactionCommitted();
+                        result.success(from + i, pi.getId());
+                    }catch(RuntimeException ex){
+                        result.failure(from + i, ex);
+                    }
+                }
+            }
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        auditLog.record("startProcessInstancesByKey", processDefinition.getId(), varsList.size(), result.toString());
+        return result;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 设置批量操作时每个事务处理的数据条数
+     * @param batchSize 每个事务的数据条数
+     */
+    public void setBatchSize(int batchSize) {
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
     /**
      * 查询历史流程实例
      * @param processInstanceId 流程实例id
@@ -181,9 +293,25 @@ public class ActivitiUtil{
         HistoricProcessInstance historicProcessInstance = historyService.createHistoricProcessInstanceQuery()//创建历史流程实例查询
                 .processInstanceId(processInstanceId)//使用流程实例ID查询
                 .singleResult();
-        logger.info("查询历史流程实例。processInstanceId：{} ;流程实例：{}",processInstanceId,historicProcessInstance);
+        if(historicProcessInstance == null){
+            ArchivedProcessInstance archived = historyArchive.find(processInstanceId);//数据库中没有时查询归档
+            historicProcessInstance = archived == null ? null : archived.getProcessInstance();
+        }
+        auditLog.record("findHistoryProcessInstance", processInstanceId, historicProcessInstance == null ? 0 : 1, null);
         return historicProcessInstance;
     }
+    /**
+     * 归档历史数据：结束超过指定天数的流程实例移到归档文件，之后仍可通过本类的历史查询方法查到
+     * @param days 结束后保留在数据库中的天数
+     * @return 归档的流程实例数
+     */
+    public int archiveHistory(int days){
+        Calendar calendar = Calendar.getInstance();
+        calendar.add(Calendar.DAY_OF_MONTH, -days);
+        int count = historyArchive.archive(calendar.getTime());
+        auditLog.record("archiveHistory", null, count, days);
+        return count;
+    }
     /**
      * 查询当前人未完成的个人任务
      * @param assignee 查询对象
@@ -193,20 +321,62 @@ public class ActivitiUtil{
         List<Task> taskList =  taskService.createTaskQuery()//创建任务查询对象
                 .taskAssignee(assignee)//指定个人任务查询，指定办理人
                 .list();
-        logger.info("查询当前人未完成的个人任务.查询对象：{} 。个人任务：{}",assignee,taskList);
+        auditLog.record("findMyPersonalTask", assignee, taskList.size(), null);
         return taskList;
     }
 
+    /**
+     * 当前人未完成的个人任务数（从内存中的计数读取，不查询数据库）
+     * @param assignee 查询对象
+     * @return 个人任务数
+     */
+    public long countMyPersonalTask(String assignee){
+        return taskInboxProjection.countAssigned(assignee);
+    }
+
+    /**
+     * 分页遍历当前人未完成的个人任务（按创建时间、任务id排序，内存中只保留一页）
+     * @param assignee 查询对象
+     * @return 个人任务迭代器
+     */
+    public Iterator<Task> iterateMyPersonalTask(String assignee){
+        return iterateMyPersonalTask(assignee, TaskPageIterator.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * 分页遍历当前人未完成的个人任务（按创建时间、任务id排序，内存中只保留一页）
+     * @param assignee 查询对象
+     * @param pageSize 每页的任务数
+     * @return 个人任务迭代器
+     */
+    public Iterator<Task> iterateMyPersonalTask(String assignee,int pageSize){
+        Map<String,Object> parameters = new HashMap<>();
+        parameters.put("assignee", assignee);
+        return new TaskPageIterator(taskService,
+                managementService.getTableName(Task.class) + " RES",
+                "RES.ASSIGNEE_ = #{assignee}",
+                parameters, pageSize, "个人任务，办理人：" + assignee);
+    }
+
     /**
      * 查询个人的历史任务
      * @param assignee 查询对象
      * @return 所有的历史任务
      */
     public List<HistoricTaskInstance> findPersonalHistoryTask(String assignee){
-        List<HistoricTaskInstance> list = historyService.createHistoricTaskInstanceQuery()//创建历史任务实例查询
+        List<HistoricTaskInstance> list = new ArrayList<>(historyService.createHistoricTaskInstanceQuery()//创建历史任务实例查询
                 .taskAssignee(assignee)
-                .list();
-        logger.info("查询个人的历史任务.办理人：{} 。历史任务：{}",assignee,list);
+                .list());
+        Set<String> ids = new HashSet<>();
+        for(HistoricTaskInstance task:list){
+            ids.add(task.getId());
+        }
+        for(HistoricTaskInstance task:historyArchive.findTaskInstancesByAssignee(assignee)){//再查询归档，数据库中已有的不重复返回
+            if(ids.add(task.getId())){
+                list.add(task);
+            }
+        }
+        auditLog.record("findPersonalHistoryTask", assignee, list.size(), null);
         return list;
     }
 
@@ -218,7 +388,13 @@ public class ActivitiUtil{
     public List<HistoricTaskInstance> findProcessHistoryTask(String processInstanceId){
         List<HistoricTaskInstance> list = createHistoricTaskInstanceQueryByProcessInstanceId(processInstanceId)
                 .list();
-        logger.info("查询流程的历史任务.流程实例id：{} ；历史任务实例：{}",processInstanceId,list);
+        if(list.isEmpty()){
+            ArchivedProcessInstance archived = historyArchive.find(processInstanceId);//数据库中没有时查询归档
+            if(archived != null){
+                list = archived.getTaskInstances();
+            }
+        }
+        auditLog.record("findProcessHistoryTask", processInstanceId, list.size(), null);
         return list;
     }
 
@@ -231,7 +407,7 @@ public class ActivitiUtil{
         List<HistoricTaskInstance> list = createHistoricTaskInstanceQueryByProcessInstanceId(processInstanceId)
                 .unfinished()
                 .list();
-        logger.info("查询流程的未完成任务.流程实例id：{} ；未完成任务实例：{}",processInstanceId,list);
+        auditLog.record("findProcessUnfinishedTask", processInstanceId, list.size(), null);
         return list;
     }
 
@@ -258,10 +434,112 @@ public class ActivitiUtil{
      * @param vars 变量
      */
     public void completePersonalTask(String taskId,Map<String,Object> vars){
-        logger.info("完成个人任务。任务id：{} 。变量:{}",taskId,vars);
+        auditLog.record("completePersonalTask", taskId, -1, vars);
         taskService.complete(taskId,vars);
     }
 
+    /**
+     * 批量完成任务（每batchSize个任务提交一个事务）
+     * @param tasks key：任务id；value：完成任务时设置的变量，可以为null
+     * @return 结果。key：任务id；value：流程实例id
+     */
+    public BatchResult<String> completeTasks(Map<String,Map<String,Object>> tasks){
+        return completeTasks(tasks, batchSize);
+    }
+
+    /**
+     * 批量完成任务
+     * 任务按流程实例分组，同一流程实例的任务在同一个命令上下文中完成，多个分组合并到一个事务直到达到tasksPerTransaction
+     * 某个事务失败时，该事务中的任务逐条重试，以便定位失败的任务
+     * @param tasks key：任务id；value：完成任务时设置的变量，可以为null
+     * @param tasksPerTransaction 每个事务最多完成的任务数（单个流程实例的任务不会被拆开）
+     * @return 结果。key：任务id；value：流程实例id
+     */
+    public BatchResult<String> completeTasks(Map<String,Map<String,Object>> tasks,int tasksPerTransaction){
+        if(tasksPerTransaction <= 0){
+            throw new IllegalArgumentException("tasksPerTransaction must be positive");
+        }
+        BatchResult<String> result = new BatchResult<>();
+        long start = System.currentTimeMillis();
+        //一次查询出所有任务，按流程实例分组
+        Map<String,List<String>> groups = new LinkedHashMap<>();
+        Map<String,String> processInstanceIds = new HashMap<>();
+        for(Task task:findTasksByIds(new ArrayList<>(tasks.keySet()))){
+            List<String> group = groups.get(task.getProcessInstanceId());
+            if(group == null){
+                group = new ArrayList<>();
+                groups.put(task.getProcessInstanceId(), group);
+            }
+            group.add(task.getId());
+            processInstanceIds.put(task.getId(), task.getProcessInstanceId());
+        }
+        for(String taskId:tasks.keySet()){
+            if(!processInstanceIds.containsKey(taskId)){
+                result.failure(taskId, new ActivitiObjectNotFoundException("Cannot find task with id " + taskId, Task.class));
+            }
+        }
+        List<String> transaction = new ArrayList<>();
+        for(List<String> group:groups.values()){
+            if(!transaction.isEmpty() && transaction.size() + group.size() > tasksPerTransaction){
+                completeTasksInTransaction(transaction, tasks, processInstanceIds, result);
+                transaction = new ArrayList<>();
+            }
+            transaction.addAll(group);
+        }
+        if(!transaction.isEmpty()){
+            completeTasksInTransaction(transaction, tasks, processInstanceIds, result);
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        auditLog.record("completeTasks", null, tasks.size(), result.toString());
+        return result;
+    }
+
+    /**
+     * 在一个事务中完成一组任务，失败时逐条重试（私有）
+     */
+    private void completeTasksInTransaction(List<String> taskIds,Map<String,Map<String,Object>> tasks,
+                                            Map<String,String> processInstanceIds,BatchResult<String> result){
+        try{
+            managementService.executeCommand(new CompleteTasksCmd(taskIds, tasks));
+            result.transactionCommitted();
+            for(String taskId:taskIds){
+                result.success(taskId, processInstanceIds.get(taskId));
+            }
+        }catch(RuntimeException e){
+            logger.warn("批量完成任务失败，逐条重试。任务数：{} ；原因：{}",taskIds.size(),e.getMessage());
+            for(String taskId:taskIds){
+                try{
+                    taskService.complete(taskId, tasks.get(taskId));
+                    result.transactionCommitted();
+                    result.success(taskId, processInstanceIds.get(taskId));
+                }catch(RuntimeException ex){
+                    result.failure(taskId, ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * 按任务id批量查询任务，每次查询最多1000个id（私有）
+     * @param taskIds 任务id
+     * @return 存在的任务
+     */
+    private List<Task> findTasksByIds(List<String> taskIds){
+        List<Task> list = new ArrayList<>(taskIds.size());
+        String tableName = managementService.getTableName(Task.class);
+        for(int from = 0; from < taskIds.size(); from += 1000){
+            List<String> ids = taskIds.subList(from, Math.min(from + 1000, taskIds.size()));
+            StringBuilder sql = new StringBuilder("SELECT * FROM ").append(tableName).append(" WHERE ID_ IN (");
+            NativeTaskQuery query = taskService.createNativeTaskQuery();
+            for(int i = 0; i < ids.size(); i++){
+                sql.append(i == 0 ? "" : ",").append("#{id").append(i).append("}");
+                query.parameter("id" + i, ids.get(i));
+            }
+            list.addAll(query.sql(sql.append(")").toString()).list());
+        }
+        return list;
+    }
+
     /**
      * 设置流程变量
      * @param taskId 任务
@@ -270,7 +548,7 @@ public class ActivitiUtil{
      */
     @Test
     public void setTaskVariables(String taskId,String varName,Object varValue){
-        logger.info("设置任务流程变量。任务id：{} ；变量名：{} ；变量值：{}",taskId,varName,varValue);
+        auditLog.record("setTaskVariables", taskId, -1, varName);
         taskService.setVariable(taskId, varName, varValue);
     }
     /**
@@ -281,10 +559,48 @@ public class ActivitiUtil{
      */
     public Object getTaskVariables(String taskId,String varName){
         Object variable = taskService.getVariable(taskId, varName);
-        logger.info("获取任务流程变量。任务id：{} ；变量名：{} ；变量值：{}",taskId,varName,variable);
+        auditLog.record("getTaskVariables", taskId, -1, varName);
         return variable;
     }
 
+    /**
+     * 批量获取多个任务的流程变量（一次查询，包括任务本地变量和所在执行对象的变量）
+     * @param taskIds 任务
+     * @param varNames 变量名，为null时获取全部变量
+     * @return 任务id -> 变量名 -> 变量值（不存在的任务不在结果中）
+     */
+    public Map<String, Map<String, Object>> getTaskVariables(Collection<String> taskIds, Collection<String> varNames){
+        return getTaskVariables(taskIds, varNames, false);
+    }
+
+    /**
+     * 批量获取多个任务的流程变量（一次查询，包括任务本地变量和所在执行对象的变量）
+     * @param taskIds 任务
+     * @param varNames 变量名，为null时获取全部变量
+     * @param lazy 为true时，serializable等保存在ACT_GE_BYTEARRAY中的变量返回LazyVariable，第一次getValue时才读取
+     * @return 任务id -> 变量名 -> 变量值（不存在的任务不在结果中）
+     */
+    public Map<String, Map<String, Object>> getTaskVariables(Collection<String> taskIds, Collection<String> varNames, boolean lazy){
+        Map<String, Map<String, Object>> variables = managementService.executeCommand(new GetVariablesCmd(taskIds, true, varNames, lazy));
+        auditLog.record("getTaskVariables", null, variables.size(), varNames);
+        return variables;
+    }
+
+    /**
+     * 只获取任务的指定流程变量（列表页等只需要少数变量的场景）
+     * serializable等保存在ACT_GE_BYTEARRAY中的变量返回LazyVariable，第一次getValue时才读取
+     * @param taskId 任务
+     * @param varNames 变量名
+     * @return 变量名 -> 变量值（不存在的变量不在结果中）
+     */
+    public Map<String, Object> getTaskVariables(String taskId, Collection<String> varNames){
+        Map<String, Object> variables = getTaskVariables(Collections.singletonList(taskId), varNames, true).get(taskId);
+        if(variables == null){
+            throw new ActivitiObjectNotFoundException("task " + taskId + " doesn't exist", Task.class);
+        }
+        return variables;
+    }
+
     /**
      * 查询流程的历史变量表
      * @param processInstanceId 流程实例
@@ -294,7 +610,13 @@ public class ActivitiUtil{
         List<HistoricVariableInstance> list = historyService.createHistoricVariableInstanceQuery()//创建一个历史的流程变量查询对象
                 .processInstanceId(processInstanceId)
                 .list();
-        logger.info("查询流程的历史变量表。流程实例id：{} ；变量表：{}",processInstanceId,list);
+        if(list.isEmpty()){
+            ArchivedProcessInstance archived = historyArchive.find(processInstanceId);//数据库中没有时查询归档
+            if(archived != null){
+                list = archived.getVariableInstances();
+            }
+        }
+        auditLog.record("findProcessHistoryVariables", processInstanceId, list.size(), null);
         return list;
     }
     /**
@@ -304,7 +626,7 @@ public class ActivitiUtil{
      * @param varValue 变量值
      */
     public void setExecutionVariables(String executionId,String varName,Object varValue){
-        logger.info("设置执行对象的流程变量。执行对象id：{} ；变量名：{} ；变量值：{}",executionId,varName,varValue);
+        auditLog.record("setExecutionVariables", executionId, -1, varName);
         runtimeService.setVariable(executionId, varName, varValue);
     }
     /**
@@ -315,18 +637,89 @@ public class ActivitiUtil{
      */
     public Object getExecutionVariables(String executionId,String varName){
         Object variable = runtimeService.getVariable(executionId, varName);
-        logger.info("获取流程变量。执行对象id：{}； 变量名：{} ；变量值：{}",executionId,varName,variable);
+        auditLog.record("getExecutionVariables", executionId, -1, varName);
         return variable;
     }
+
+    /**
+     * 批量获取多个执行对象的流程变量（一次查询，包括上级执行对象的变量）
+     * @param executionIds 执行对象id
+     * @param varNames 变量名，为null时获取全部变量
+     * @return 执行对象id -> 变量名 -> 变量值（不存在的执行对象不在结果中）
+     */
+    public Map<String, Map<String, Object>> getExecutionVariables(Collection<String> executionIds, Collection<String> varNames){
+        Map<String, Map<String, Object>> variables = managementService.executeCommand(new GetVariablesCmd(executionIds, false, varNames));
+        auditLog.record("getExecutionVariables", null, variables.size(), varNames);
+        return variables;
+    }
     /**
      * 向后执行一步，如果流程处于等待状态，使得流程继续执行
      * @param executionId 执行对象id
      */
     public void signal(String executionId){
-        logger.info("流程继续执行。执行对象id:{}",executionId);
+        auditLog.record("signal", executionId, -1, null);
         runtimeService.signal(executionId);
     }
 
+    /**
+     * 按业务key和活动id继续执行等待中的接收任务，不需要先查询执行对象
+     * @param businessKey 流程实例的业务key
+     * @param activityId 接收任务的活动id，对应.bpmn文件中的活动节点id的属性值
+     * @param vars 继续执行前设置的流程变量，可以为null
+     * @return 继续执行的执行对象id
+     */
+    public List<String> correlate(String businessKey,String activityId,Map<String,Object> vars){
+        List<List<String>> signaled = managementService.executeCommand(new CorrelateCmd(waitingExecutionIndex,
+                Collections.singletonList(new Correlation(businessKey, activityId, vars))));
+        auditLog.record("correlate", businessKey, signaled.get(0).size(), activityId);
+        return signaled.get(0);
+    }
+
+    /**
+     * 批量关联接收任务，每batchSize条提交一个事务
+     * 某个事务失败时，该事务中的关联逐条重试，以便定位失败的关联
+     * 同一个执行对象的多次关联（如receivetask1、receivetask2）要分在不同的批次中
+     * @param correlations 关联
+     * @return 结果。key：关联在列表中的下标；value：继续执行的执行对象id（多个时以逗号分隔）
+     */
+    public BatchResult<Integer> correlate(List<Correlation> correlations){
+        BatchResult<Integer> result = new BatchResult<>();
+        long start = System.currentTimeMillis();
+        for(int from = 0; from < correlations.size(); from += batchSize){
+            List<Correlation> chunk = correlations.subList(from, Math.min(from + batchSize, correlations.size()));
+            try{
+                List<List<String>> signaled = managementService.executeCommand(new CorrelateCmd(waitingExecutionIndex, chunk));
+                result.transactionCommitted();
+                for(int i = 0; i < signaled.size(); i++){
+                    result.success(from + i, join(signaled.get(i)));
+                }
+            }catch(RuntimeException e){
+                logger.warn("批量关联接收任务失败，逐条重试。关联数：{} ；原因：{}",chunk.size(),e.getMessage());
+                for(int i = 0; i < chunk.size(); i++){
+                    try{
+                        List<List<String>> signaled = managementService.executeCommand(new CorrelateCmd(waitingExecutionIndex,
+                                Collections.singletonList(chunk.get(i))));
+                        result.transactionCommitted();
+                        result.success(from + i, join(signaled.get(0)));
+                    }catch(RuntimeException ex){
+                        result.failure(from + i, ex);
+                    }
+                }
+            }
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        auditLog.record("correlate", null, correlations.size(), result.toString());
+        return result;
+    }
+
+    private static String join(List<String> ids){
+        StringBuilder sb = new StringBuilder();
+        for(String id:ids){
+            sb.append(sb.length() == 0 ? "" : ",").append(id);
+        }
+        return sb.toString();
+    }
+
     /**
      * 查询流程实例的执行对象
      * @param processInstanceId 流程实例id
@@ -338,7 +731,7 @@ public class ActivitiUtil{
                 .processInstanceId(processInstanceId)//使用流程实例ID查询
                 .activityId(activityId)//当前活动的id，对应.bpmn文件中的活动节点id的属性值
                 .singleResult();
-        logger.info("查询流程实例的执行对象。流程实例id：{} ；活动对象id：{} ；执行对象：{}",processInstanceId,activityId,execution);
+        auditLog.record("getExecutionByActivityId", processInstanceId, execution == null ? 0 : 1, activityId);
         return execution;
     }
 
@@ -348,7 +741,7 @@ public class ActivitiUtil{
      * @param assignee 指定的办理人
      */
     public void setAssigneeTask(String taskId,String assignee){
-        logger.info("分配个人任务。任务id：{} ；指定办理人：{}",taskId,assignee);
+        auditLog.record("setAssigneeTask", taskId, -1, assignee);
         taskService.setAssignee(taskId, assignee);
     }
 
@@ -361,10 +754,71 @@ public class ActivitiUtil{
         List<Task> list = taskService.createTaskQuery()//创建任务查询对象
                 .taskCandidateUser(candidateUser)//组任务的办理人查询
                 .list();
-        logger.info("查询当前人的组任务.办理人:{} ;组任务列表：{}",candidateUser,list);
+        auditLog.record("findMyGroupTask", candidateUser, list.size(), null);
         return list;//返回列表
     }
 
+    /**
+     * 当前人的组任务数（从内存中的计数读取，不查询任务表和候选人表）
+     * 直接作为候选人或所在的组作为候选组的未分配任务，同一任务只计一次
+     * @param candidateUser 办理人
+     * @return 组任务数
+     */
+    public long countMyGroupTask(String candidateUser){
+        return taskInboxProjection.countCandidateTasks(candidateUser);
+    }
+
+    /**
+     * 分页遍历当前人的组任务(作为候选人，包括所在组的候选任务)，内存中只保留一页
+     * @param candidateUser 办理人
+     * @return 组任务迭代器
+     */
+    public Iterator<Task> iterateMyGroupTask(String candidateUser){
+        return iterateMyGroupTask(candidateUser, TaskPageIterator.DEFAULT_PAGE_SIZE);
+    }
+
+    /**
+     * 分页遍历当前人的组任务(作为候选人，包括所在组的候选任务)，内存中只保留一页
+     * @param candidateUser 办理人
+     * @param pageSize 每页的任务数
+     * @return 组任务迭代器
+     */
+    public Iterator<Task> iterateMyGroupTask(String candidateUser,int pageSize){
+        Map<String,Object> parameters = new HashMap<>();
+        parameters.put("candidateUser", candidateUser);
+        //与taskCandidateUser相同的条件：未分配办理人，且本人或本人所在的组是候选人
+        //所在的组从缓存中获取，不再关联ACT_ID_MEMBERSHIP
+        StringBuilder where = new StringBuilder("RES.ASSIGNEE_ IS NULL AND I.TYPE_ = 'candidate' AND (I.USER_ID_ = #{candidateUser}");
+        List<String> groupIds = findGroupIdsByUser(candidateUser);
+        if(!groupIds.isEmpty()){
+            where.append(" OR I.GROUP_ID_ IN (");
+            for(int i = 0; i < groupIds.size(); i++){
+                where.append(i == 0 ? "" : ",").append("#{group").append(i).append("}");
+                parameters.put("group" + i, groupIds.get(i));
+            }
+            where.append(")");
+        }
+        where.append(")");
+        return new TaskPageIterator(taskService,
+                managementService.getTableName(Task.class) + " RES INNER JOIN "
+                        + managementService.getTableName(IdentityLinkEntity.class) + " I ON I.TASK_ID_ = RES.ID_",
+                where.toString(), parameters, pageSize, "组任务，办理人：" + candidateUser);
+    }
+
+    /**
+     * 查询用户所在组的id（通过引擎的组管理器，命中GroupMembershipCache时不查询数据库）
+     * @param userId 用户id
+     * @return 组id
+     */
+    public List<String> findGroupIdsByUser(final String userId){
+        return managementService.executeCommand(new Command<List<String>>() {
+            @Override
+            public List<String> execute(CommandContext commandContext) {
+                return GroupMembershipCache.toGroupIds(commandContext.getGroupIdentityManager().findGroupsByUser(userId));
+            }
+        });
+    }
+
     /**
      * 查询任务办理人表(包括候选人和受托人)
      * @param taskId 任务ID
@@ -372,7 +826,7 @@ public class ActivitiUtil{
      */
     public List<HistoricIdentityLink> getIdentityLinksForTask(String taskId){
         List<HistoricIdentityLink> historicIdentityLinksForTask = historyService.getHistoricIdentityLinksForTask(taskId);
-        logger.info("查询任务办理人表(包括候选人和受托人)。任务id：{} ；任务办理人：{}",taskId,historicIdentityLinksForTask);
+        auditLog.record("getIdentityLinksForTask", taskId, historicIdentityLinksForTask.size(), null);
         return historicIdentityLinksForTask;
     }
     /**
@@ -382,7 +836,7 @@ public class ActivitiUtil{
      */
     public List<HistoricIdentityLink> findHistoryPersonTask(String processInstanceId){
         List<HistoricIdentityLink> historicIdentityLinksForProcessInstance = historyService.getHistoricIdentityLinksForProcessInstance(processInstanceId);
-        logger.info("查询任务办理人表(包括候选人和受托人)。流程实例id：{} ；任务办理人：{}",processInstanceId,historicIdentityLinksForProcessInstance);
+        auditLog.record("findHistoryPersonTask", processInstanceId, historicIdentityLinksForProcessInstance.size(), null);
         return historicIdentityLinksForProcessInstance;
     }
 
@@ -392,7 +846,7 @@ public class ActivitiUtil{
      * @param userId 分配的个人任务（可以是组任务中的成员，也可以是非组任务的成员）
      */
     public void claim(String taskId,String userId){
-        logger.info("拾取任务.任务id：{} ；办理人：{}",taskId,userId);
+        auditLog.record("claim", taskId, -1, userId);
         taskService.claim(taskId, userId);
     }
     /**
@@ -400,19 +854,19 @@ public class ActivitiUtil{
      * @param taskId 任务ID
      */
     public void setAssignee(String taskId){
-        logger.info("将个人任务回退到组任务.任务id：{}",taskId);
+        auditLog.record("setAssignee", taskId, -1, null);
         taskService.setAssignee(taskId, null);
     }
 
     /**向组任务中添加成员*/
     public void addGroupUser(String taskId,String userId){
-        logger.info("向组任务中添加成员。任务id：{} ；办理人：{}",taskId,userId);
+        auditLog.record("addGroupUser", taskId, -1, userId);
         taskService.addCandidateUser(taskId, userId);
     }
 
     /**从组任务中删除成员*/
     public void deleteGroupUser(String taskId,String userId){
-        logger.info("向组任务中删除成员。任务id：{} ；办理人：{}",taskId,userId);
+        auditLog.record("deleteGroupUser", taskId, -1, userId);
         taskService.deleteCandidateUser(taskId, userId);
     }
 
@@ -423,7 +877,7 @@ public class ActivitiUtil{
      * @param memberShips 关联关系
      */
     public void createMembership(List<GroupEntity> groups, List<UserEntity> users, Map<String,String> memberShips){
-        logger.info("添加用户角色组.角色：{} ；用户：{} ；关系：{}",groups,users,memberShips);
+        auditLog.record("createMembership", null, memberShips.size(), null);
         for(GroupEntity group:groups){
             identityService.saveGroup(group);
         }
@@ -438,4 +892,20 @@ public class ActivitiUtil{
             identityService.createMembership(e.getKey(),e.getValue());
         }
     }
+
+    /**
+     * 批量导入用户、组和成员关系（一个事务，JDBC批处理）
+     * 与现有数据比对后只写入新增和变化的行，并删除导入的用户不再拥有的成员关系
+     * @param users 用户
+     * @param groups 组
+     * @param memberships 成员关系（一个用户可以属于多个组）
+     * @return 导入结果（包括写入行数和吞吐量）
+     */
+    public IdentityImportResult importIdentities(List<UserEntity> users, List<GroupEntity> groups, List<Membership> memberships){
+        IdentityImportResult result = managementService.executeCommand(new BulkIdentityImportCmd(users, groups, memberships, batchSize));
+        groupMembershipCache.invalidateAll();//语句没有经过组管理器，需要手动失效缓存
+        taskInboxProjection.reload();//成员关系变化没有事件，重新加载组任务计数
+        auditLog.record("importIdentities", null, users.size(), result.toString());
+        return result;
+    }
 }
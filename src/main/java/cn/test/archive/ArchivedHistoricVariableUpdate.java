@@ -0,0 +1,26 @@
+package cn.test.archive;
+
+import org.activiti.engine.impl.persistence.entity.HistoricDetailVariableInstanceUpdateEntity;
+
+/**
+ * 从归档文件读出的历史变量更新，字节数组类型的值保存在对象中，不再关联ACT_GE_BYTEARRAY
+ */
+class ArchivedHistoricVariableUpdate extends HistoricDetailVariableInstanceUpdateEntity {
+
+    private static final long serialVersionUID = 1L;
+
+    private byte[] archivedBytes;
+
+    void setName(String name) {
+        this.name = name;
+    }
+
+    void setArchivedBytes(byte[] archivedBytes) {
+        this.archivedBytes = archivedBytes;
+    }
+
+    @Override
+    public byte[] getBytes() {
+        return archivedBytes;
+    }
+}
@@ -0,0 +1,61 @@
+package cn.test.archive;
+
+import org.activiti.engine.history.HistoricActivityInstance;
+import org.activiti.engine.history.HistoricDetail;
+import org.activiti.engine.history.HistoricIdentityLink;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.history.HistoricVariableInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 归档文件中的一个流程实例：历史流程实例及其历史活动、历史任务、历史变量、历史明细、历史身份关联
+ */
+public class ArchivedProcessInstance {
+
+    private HistoricProcessInstance processInstance;
+    private final List<HistoricActivityInstance> activityInstances = new ArrayList<>();
+    private final List<HistoricTaskInstance> taskInstances = new ArrayList<>();
+    private final List<HistoricVariableInstance> variableInstances = new ArrayList<>();
+    private final List<HistoricDetail> details = new ArrayList<>();
+    private final List<HistoricIdentityLink> identityLinks = new ArrayList<>();
+
+    public HistoricProcessInstance getProcessInstance() {
+        return processInstance;
+    }
+
+    void setProcessInstance(HistoricProcessInstance processInstance) {
+        this.processInstance = processInstance;
+    }
+
+    public List<HistoricActivityInstance> getActivityInstances() {
+        return activityInstances;
+    }
+
+    public List<HistoricTaskInstance> getTaskInstances() {
+        return taskInstances;
+    }
+
+    public List<HistoricVariableInstance> getVariableInstances() {
+        return variableInstances;
+    }
+
+    /**变量更新和表单属性，旧的归档记录中没有时为空*/
+    public List<HistoricDetail> getDetails() {
+        return details;
+    }
+
+    /**流程实例和其中任务的历史身份关联，旧的归档记录中没有时为空*/
+    public List<HistoricIdentityLink> getIdentityLinks() {
+        return identityLinks;
+    }
+
+    @Override
+    public String toString() {
+        return "ArchivedProcessInstance[" + processInstance.getId() + "] activities=" + activityInstances.size()
+                + ", tasks=" + taskInstances.size() + ", variables=" + variableInstances.size()
+                + ", details=" + details.size() + ", identityLinks=" + identityLinks.size();
+    }
+}
@@ -0,0 +1,657 @@
+package cn.test.archive;
+
+import cn.test.history.AsyncHistoryWriter;
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.HistoryService;
+import org.activiti.engine.ManagementService;
+import org.activiti.engine.history.HistoricDetail;
+import org.activiti.engine.history.HistoricIdentityLink;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.history.HistoricVariableInstance;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.HistoricDetailVariableInstanceUpdateEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricIdentityLinkEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricVariableInstanceEntity;
+import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 历史数据归档：把结束时间早于指定时间的流程实例从ACT_HI_PROCINST、ACT_HI_ACTINST、ACT_HI_TASKINST、ACT_HI_VARINST、
+ * ACT_HI_DETAIL、ACT_HI_IDENTITYLINK移到本地的只追加段文件中，每个流程实例一条压缩记录；评论和附件不归档，保留在数据库中
+ *
+ * 目录中每个段由三个文件组成：history-N.seg保存记录，history-N.idx保存索引（流程实例id、偏移、长度），
+ * history-N.asg保存每个流程实例的历史任务办理人，用于按办理人查找；打开时索引、办理人文件缺失或不完整的从段文件中的记录重建
+ * 三个文件都刷盘后才删除数据库中的历史，删除直接执行并检查行数，不经过异步历史写入；
+ * 异步写入历史时，查询前等待队列写完，队列没有写完或流程实例还有等待重试的数据时不归档
+ *
+ * 归档保存在执行归档的节点的本地目录中，只有这个节点能从归档中查到已删除的历史；集群中各节点的归档互不可见，
+ * 需要在所有节点上查询的，归档目录应放在共享存储上并且只由一个节点执行归档
+ */
+@Component
+public class HistoryArchive implements DisposableBean {
+    private Logger logger = LoggerFactory.getLogger(HistoryArchive.class);
+
+    /**默认单个段文件的大小上限，超过后新建下一个段*/
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 64L * 1024 * 1024;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final String INDEX_SUFFIX = ".idx";
+    private static final String ASSIGNEE_SUFFIX = ".asg";
+    private static final String NAMESPACE = "cn.test.archive.HistoryArchive.";
+    /**删除已归档的历史的语句，按流程实例id依次执行，最后一条删除历史流程实例*/
+    private static final String[] DELETE_STATEMENTS = {
+            NAMESPACE + "deleteArchivedHistoricDetailByteArrays",
+            NAMESPACE + "deleteArchivedHistoricDetails",
+            NAMESPACE + "deleteArchivedHistoricIdentityLinks",
+            NAMESPACE + "deleteArchivedHistoricVariableByteArrays",
+            NAMESPACE + "deleteArchivedHistoricVariableInstances",
+            NAMESPACE + "deleteArchivedHistoricTaskInstances",
+            NAMESPACE + "deleteArchivedHistoricActivityInstances",
+            NAMESPACE + "deleteArchivedHistoricProcessInstance"
+    };
+
+    @Autowired
+    private HistoryService historyService;
+    @Autowired
+    private ManagementService managementService;
+    @Autowired
+    private ProcessEngineConfigurationImpl processEngineConfiguration;
+    @Autowired
+    private AsyncHistoryWriter asyncHistoryWriter;
+
+    /**归档目录*/
+    private File directory = new File(System.getProperty("user.home"), "activiti-history-archive");
+    private long maxSegmentBytes = DEFAULT_MAX_SEGMENT_BYTES;
+    /**每个事务归档的流程实例数*/
+    private int batchSize = 100;
+
+    private HistoryRecordCodec codec;
+    /**流程实例id -> 记录位置，同一流程实例多次归档时以最后一次为准*/
+    private final Map<String, Location> index = new ConcurrentHashMap<>();
+    /**办理人 -> 有该办理人的历史任务的流程实例id*/
+    private final ConcurrentHashMap<String, Set<String>> assigneeIndex = new ConcurrentHashMap<>();
+    /**已打开的段（段号 -> 读取通道）*/
+    private final Map<Integer, FileChannel> readers = new ConcurrentHashMap<>();
+    private int currentSegment;
+    private FileChannel segmentWriter;
+    private FileOutputStream indexFile;
+    private DataOutputStream indexWriter;
+    private FileOutputStream assigneeFile;
+    private DataOutputStream assigneeWriter;
+    private boolean opened = false;
+
+    /**
+     * 归档结束时间早于finishedBefore的流程实例
+     * @param finishedBefore 结束时间的截止点
+     * @return 归档的流程实例数
+     */
+    public int archive(Date finishedBefore){
+        open();
+        int total = 0;
+        long start = System.currentTimeMillis();
+        while(true){
+            //归档的是数据库中的历史，先写完队列；没有写完时流程实例的历史可能不全，删除后还会被写入
+            if(!asyncHistoryWriter.flush()){
+                logger.warn("历史数据没有写完，停止归档。截止时间：{} ；已归档流程实例数：{}",finishedBefore,total);
+                break;
+            }
+            List<HistoricProcessInstance> list = historyService.createHistoricProcessInstanceQuery()
+                    .finished()
+                    .finishedBefore(finishedBefore)
+                    .orderByProcessInstanceEndTime().asc()
+                    .listPage(0, batchSize);
+            if(list.isEmpty()){
+                break;
+            }
+            List<ArchivedProcessInstance> batch = new ArrayList<>(list.size());
+            for(HistoricProcessInstance pi:list){
+                if(asyncHistoryWriter.isSpilled(pi.getId())){
+                    logger.warn("流程实例有等待重试的历史数据，暂不归档。流程实例：{}",pi.getId());
+                    continue;
+                }
+                batch.add(load(pi));
+            }
+            int deleted = 0;
+            if(!batch.isEmpty()){
+                append(batch);
+                deleted = delete(batch);
+                total += deleted;
+            }
+            //这一页没有删除任何流程实例时，再次查询得到的还是同一页
+            if(deleted == 0){
+                logger.warn("归档没有进展，停止归档。截止时间：{} ；查询到的流程实例数：{} ；已归档流程实例数：{}",finishedBefore,list.size(),total);
+                break;
+            }
+            if(list.size() < batchSize){
+                break;
+            }
+        }
+        logger.info("归档历史数据。截止时间：{} ；流程实例数：{} ；耗时（毫秒）：{}",finishedBefore,total,System.currentTimeMillis() - start);
+        return total;
+    }
+
+    /**
+     * 在一个命令中删除一批流程实例已归档的历史，语句直接在命令的SqlSession中执行，随命令的事务提交
+     * @return 删除的历史流程实例数，已被其他方式删除的不计入
+     */
+    private int delete(final List<ArchivedProcessInstance> batch){
+        return managementService.executeCommand(new Command<Integer>() {
+            @Override
+            public Integer execute(CommandContext commandContext) {
+                SqlSession sqlSession = commandContext.getDbSqlSession().getSqlSession();
+                int deleted = 0;
+                for(ArchivedProcessInstance archived:batch){
+                    String processInstanceId = archived.getProcessInstance().getId();
+                    int rows = 0;
+                    for(String statement:DELETE_STATEMENTS){
+                        rows = sqlSession.delete(statement, processInstanceId);
+                    }
+                    if(rows == 1){
+                        deleted++;
+                    }else{
+                        logger.warn("删除已归档的历史流程实例时没有找到记录。流程实例：{}",processInstanceId);
+                    }
+                }
+                return deleted;
+            }
+        });
+    }
+
+    /**
+     * 从归档中查找流程实例的历史
+     * @param processInstanceId 流程实例id
+     * @return 未归档时返回null
+     */
+    public ArchivedProcessInstance find(String processInstanceId){
+        open();
+        Location location = index.get(processInstanceId);
+        if(location == null){
+            return null;
+        }
+        return find(processInstanceId, location);
+    }
+
+    private ArchivedProcessInstance find(String processInstanceId, Location location){
+        try{
+            ByteBuffer buffer = ByteBuffer.allocate(location.length);
+            FileChannel channel = reader(location.segment);
+            long position = location.offset;
+            while(buffer.hasRemaining()){
+                int n = channel.read(buffer, position);
+                if(n < 0){
+                    throw new EOFException("Truncated archive segment " + location.segment);
+                }
+                position += n;
+            }
+            return codec.decode(buffer.array());
+        }catch(IOException e){
+            throw new ActivitiException("Could not read archived process instance " + processInstanceId, e);
+        }
+    }
+
+    /**
+     * 从归档中查找办理人的历史任务
+     * @param assignee 办理人
+     * @return 没有时返回空列表
+     */
+    public List<HistoricTaskInstance> findTaskInstancesByAssignee(String assignee){
+        open();
+        Set<String> processInstanceIds = assigneeIndex.get(assignee);
+        if(processInstanceIds == null){
+            return Collections.emptyList();
+        }
+        List<HistoricTaskInstance> list = new ArrayList<>();
+        for(String processInstanceId:processInstanceIds){
+            ArchivedProcessInstance archived = find(processInstanceId);
+            if(archived == null){
+                continue;
+            }
+            for(HistoricTaskInstance task:archived.getTaskInstances()){
+                if(assignee.equals(task.getAssignee())){
+                    list.add(task);
+                }
+            }
+        }
+        return list;
+    }
+
+    /**已归档的流程实例数*/
+    public int size(){
+        open();
+        return index.size();
+    }
+
+    @Override
+    public void destroy() {
+        close();
+    }
+
+    /**关闭段文件，之后再次使用时重新打开*/
+    public synchronized void close(){
+        if(!opened){
+            return;
+        }
+        try{
+            segmentWriter.close();
+            indexWriter.close();
+            assigneeWriter.close();
+            for(FileChannel channel:readers.values()){
+                channel.close();
+            }
+        }catch(IOException e){
+            logger.warn("关闭历史归档失败。目录：{}",directory,e);
+        }
+        segmentWriter = null;
+        indexFile = null;
+        indexWriter = null;
+        assigneeFile = null;
+        assigneeWriter = null;
+        readers.clear();
+        index.clear();
+        assigneeIndex.clear();
+        opened = false;
+    }
+
+    /**
+     * 在一个命令中加载流程实例的全部历史，历史变量的字节数组值在命令内读取
+     */
+    private ArchivedProcessInstance load(final HistoricProcessInstance pi){
+        return managementService.executeCommand(new Command<ArchivedProcessInstance>() {
+            @Override
+            public ArchivedProcessInstance execute(CommandContext commandContext) {
+                ArchivedProcessInstance archived = new ArchivedProcessInstance();
+                archived.setProcessInstance(pi);
+                archived.getActivityInstances().addAll(historyService.createHistoricActivityInstanceQuery()
+                        .processInstanceId(pi.getId()).list());
+                archived.getTaskInstances().addAll(historyService.createHistoricTaskInstanceQuery()
+                        .processInstanceId(pi.getId()).list());
+                List<HistoricVariableInstance> variables = historyService.createHistoricVariableInstanceQuery()
+                        .processInstanceId(pi.getId()).list();
+                for(HistoricVariableInstance variable:variables){
+                    ((HistoricVariableInstanceEntity) variable).getBytes();
+                }
+                archived.getVariableInstances().addAll(variables);
+                List<HistoricDetail> details = historyService.createHistoricDetailQuery()
+                        .processInstanceId(pi.getId()).list();
+                for(HistoricDetail detail:details){
+                    if(detail instanceof HistoricDetailVariableInstanceUpdateEntity){
+                        ((HistoricDetailVariableInstanceUpdateEntity) detail).getBytes();
+                    }
+                }
+                archived.getDetails().addAll(details);
+                //任务的身份关联没有流程实例id，按任务查询，与流程实例的按id去重
+                Map<String, HistoricIdentityLink> links = new LinkedHashMap<>();
+                List<HistoricIdentityLink> list = new ArrayList<>(historyService.getHistoricIdentityLinksForProcessInstance(pi.getId()));
+                for(HistoricTaskInstance task:archived.getTaskInstances()){
+                    list.addAll(historyService.getHistoricIdentityLinksForTask(task.getId()));
+                }
+                for(HistoricIdentityLink link:list){
+                    links.put(((HistoricIdentityLinkEntity) link).getId(), link);
+                }
+                archived.getIdentityLinks().addAll(links.values());
+                return archived;
+            }
+        });
+    }
+
+    /**
+     * 追加一批记录，段文件、索引和办理人文件刷盘后才更新内存索引；调用方在返回后才删除数据库中的历史
+     */
+    private synchronized void append(List<ArchivedProcessInstance> batch){
+        try{
+            Map<String, Location> appended = new LinkedHashMap<>();
+            Map<String, Set<String>> assignees = new HashMap<>();
+            for(ArchivedProcessInstance archived:batch){
+                byte[] record = codec.encode(archived);
+                if(segmentWriter.size() > 0 && segmentWriter.size() + record.length > maxSegmentBytes){
+                    rollSegment();
+                }
+                long offset = segmentWriter.size();
+                ByteBuffer buffer = ByteBuffer.wrap(record);
+                while(buffer.hasRemaining()){
+                    segmentWriter.write(buffer);
+                }
+                String processInstanceId = archived.getProcessInstance().getId();
+                indexWriter.writeUTF(processInstanceId);
+                indexWriter.writeLong(offset);
+                indexWriter.writeInt(record.length);
+                appended.put(processInstanceId, new Location(currentSegment, offset, record.length));
+                Set<String> taskAssignees = assignees(archived);
+                writeAssignees(assigneeWriter, processInstanceId, taskAssignees);
+                assignees.put(processInstanceId, taskAssignees);
+            }
+            sync();
+            index.putAll(appended);
+            for(Map.Entry<String, Set<String>> entry:assignees.entrySet()){
+                indexAssignees(entry.getKey(), entry.getValue());
+            }
+        }catch(IOException e){
+            throw new ActivitiException("Could not append to history archive " + directory, e);
+        }
+    }
+
+    /**
+     * 首次使用时创建目录、加载所有索引并打开最后一个段用于追加
+     */
+    private synchronized void open(){
+        if(opened){
+            return;
+        }
+        codec = new HistoryRecordCodec(processEngineConfiguration.getVariableTypes());
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new ActivitiException("Could not create history archive directory " + directory);
+        }
+        try{
+            int last = 0;
+            File[] files = directory.listFiles();
+            for(File file:files == null ? new File[0] : files){
+                String name = file.getName();
+                if(name.startsWith("history-") && name.endsWith(SEGMENT_SUFFIX)){
+                    last = Math.max(last, Integer.parseInt(name.substring(8, name.length() - SEGMENT_SUFFIX.length())));
+                }
+            }
+            for(int segment = 1; segment <= last; segment++){
+                loadIndex(segment, segment == last);
+            }
+            for(int segment = 1; segment <= last; segment++){
+                loadAssignees(segment);
+            }
+            openSegment(Math.max(last, 1));
+        }catch(IOException e){
+            throw new ActivitiException("Could not open history archive " + directory, e);
+        }
+        opened = true;
+        logger.info("打开历史归档。目录：{} ；段数：{} ；流程实例数：{}",directory,currentSegment,index.size());
+    }
+
+    /**
+     * 读取段的索引，忽略超出段文件长度的条目（写入段文件后、刷盘前中断）；
+     * 索引缺失或没有覆盖到段文件末尾时（记录刷盘后、索引刷盘前中断）扫描其余的记录并重写索引
+     * @param last 是否最后一个段，最后一个段末尾不完整的记录截掉，之后从截断处继续追加
+     */
+    private void loadIndex(int segment, boolean last) throws IOException {
+        File indexFile = file(segment, INDEX_SUFFIX);
+        File segmentFile = file(segment, SEGMENT_SUFFIX);
+        if(!segmentFile.exists()){
+            return;
+        }
+        long segmentLength = segmentFile.length();
+        Map<String, Location> entries = new LinkedHashMap<>();
+        long end = 0;
+        if(indexFile.exists()){
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))){
+                while(true){
+                    String processInstanceId;
+                    long offset;
+                    int length;
+                    try{
+                        processInstanceId = in.readUTF();
+                        offset = in.readLong();
+                        length = in.readInt();
+                    }catch(EOFException e){
+                        break;
+                    }
+                    if(offset + length <= segmentLength){
+                        entries.put(processInstanceId, new Location(segment, offset, length));
+                        end = Math.max(end, offset + length);
+                    }
+                }
+            }
+        }
+        if(end < segmentLength){
+            long scanned = scanSegment(segment, end, segmentLength, entries);
+            if(scanned < segmentLength){
+                if(last){
+                    try(FileChannel channel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.WRITE)){
+                        channel.truncate(scanned);
+                        channel.force(true);
+                    }
+                }
+                logger.warn("历史归档的段末尾有不完整的记录。段：{} ；有效长度：{} ；文件长度：{} ；已截断：{}",segment,scanned,segmentLength,last);
+            }
+            writeIndex(segment, entries);
+        }
+        index.putAll(entries);
+    }
+
+    /**
+     * 从from开始逐条解码段中的记录，加入entries
+     * @return 最后一条完整记录的结束位置
+     */
+    private long scanSegment(int segment, long from, long segmentLength, Map<String, Location> entries) throws IOException {
+        byte[] bytes = new byte[(int) (segmentLength - from)];
+        try(FileChannel channel = FileChannel.open(file(segment, SEGMENT_SUFFIX).toPath(), StandardOpenOption.READ)){
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = from;
+            while(buffer.hasRemaining()){
+                int n = channel.read(buffer, position);
+                if(n < 0){
+                    throw new EOFException("Truncated archive segment " + segment);
+                }
+                position += n;
+            }
+        }
+        int position = 0;
+        while(position < bytes.length){
+            int length = HistoryRecordCodec.recordLength(bytes, position, bytes.length - position);
+            if(length <= 0){
+                break;
+            }
+            String processInstanceId;
+            try{
+                processInstanceId = codec.decode(Arrays.copyOfRange(bytes, position, position + length)).getProcessInstance().getId();
+            }catch(ActivitiException e){
+                logger.warn("历史归档的段中有无法解码的记录。段：{} ；偏移：{}",segment,from + position,e);
+                break;
+            }
+            entries.put(processInstanceId, new Location(segment, from + position, length));
+            position += length;
+        }
+        return from + position;
+    }
+
+    /**写出段的完整索引，先写临时文件，刷盘后替换*/
+    private void writeIndex(int segment, Map<String, Location> entries) throws IOException {
+        File temp = file(segment, INDEX_SUFFIX + ".tmp");
+        try(FileOutputStream file = new FileOutputStream(temp)){
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            for(Map.Entry<String, Location> entry:entries.entrySet()){
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().offset);
+                out.writeInt(entry.getValue().length);
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), file(segment, INDEX_SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logger.info("重建历史归档的索引。段：{} ；流程实例数：{}",segment,entries.size());
+    }
+
+    /**
+     * 读取段的办理人索引，只保留索引中存在的流程实例；
+     * 段没有办理人文件或文件中缺少索引中的流程实例时，从记录中补齐并重写办理人文件
+     */
+    private void loadAssignees(int segment) throws IOException {
+        File assigneeFile = file(segment, ASSIGNEE_SUFFIX);
+        Map<String, Set<String>> entries = new LinkedHashMap<>();
+        if(assigneeFile.exists()){
+            try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(assigneeFile)))){
+                while(true){
+                    String processInstanceId;
+                    Set<String> assignees = new HashSet<>();
+                    try{
+                        processInstanceId = in.readUTF();
+                        for(int i = in.readShort(); i > 0; i--){
+                            assignees.add(in.readUTF());
+                        }
+                    }catch(EOFException e){
+                        break;
+                    }
+                    Location location = index.get(processInstanceId);
+                    if(location != null && location.segment == segment){
+                        entries.put(processInstanceId, assignees);
+                    }
+                }
+            }
+        }
+        int rebuilt = 0;
+        for(Map.Entry<String, Location> entry:index.entrySet()){
+            if(entry.getValue().segment == segment && !entries.containsKey(entry.getKey())){
+                entries.put(entry.getKey(), assignees(find(entry.getKey(), entry.getValue())));
+                rebuilt++;
+            }
+        }
+        if(rebuilt > 0){
+            writeAssignees(segment, entries);
+            logger.info("重建历史归档的办理人索引。段：{} ；补齐的流程实例数：{}",segment,rebuilt);
+        }
+        for(Map.Entry<String, Set<String>> entry:entries.entrySet()){
+            indexAssignees(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**写出段的完整办理人文件，先写临时文件，刷盘后替换*/
+    private void writeAssignees(int segment, Map<String, Set<String>> entries) throws IOException {
+        File temp = file(segment, ASSIGNEE_SUFFIX + ".tmp");
+        try(FileOutputStream file = new FileOutputStream(temp)){
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file));
+            for(Map.Entry<String, Set<String>> entry:entries.entrySet()){
+                writeAssignees(out, entry.getKey(), entry.getValue());
+            }
+            out.flush();
+            file.getFD().sync();
+        }
+        Files.move(temp.toPath(), file(segment, ASSIGNEE_SUFFIX).toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static Set<String> assignees(ArchivedProcessInstance archived){
+        Set<String> assignees = new HashSet<>();
+        for(HistoricTaskInstance task:archived.getTaskInstances()){
+            if(task.getAssignee() != null){
+                assignees.add(task.getAssignee());
+            }
+        }
+        return assignees;
+    }
+
+    private static void writeAssignees(DataOutputStream out, String processInstanceId, Set<String> assignees) throws IOException {
+        out.writeUTF(processInstanceId);
+        out.writeShort(assignees.size());
+        for(String assignee:assignees){
+            out.writeUTF(assignee);
+        }
+    }
+
+    private void indexAssignees(String processInstanceId, Set<String> assignees){
+        for(String assignee:assignees){
+            Set<String> processInstanceIds = assigneeIndex.get(assignee);
+            if(processInstanceIds == null){
+                processInstanceIds = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+                Set<String> existing = assigneeIndex.putIfAbsent(assignee, processInstanceIds);
+                if(existing != null){
+                    processInstanceIds = existing;
+                }
+            }
+            processInstanceIds.add(processInstanceId);
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        sync();
+        openSegment(currentSegment + 1);
+    }
+
+    /**当前段的三个文件写出并刷盘*/
+    private void sync() throws IOException {
+        segmentWriter.force(false);
+        indexWriter.flush();
+        indexFile.getFD().sync();
+        assigneeWriter.flush();
+        assigneeFile.getFD().sync();
+    }
+
+    private void openSegment(int segment) throws IOException {
+        if(segmentWriter != null){
+            segmentWriter.close();
+            indexWriter.close();
+            assigneeWriter.close();
+        }
+        currentSegment = segment;
+        segmentWriter = FileChannel.open(file(segment, SEGMENT_SUFFIX).toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        indexFile = new FileOutputStream(file(segment, INDEX_SUFFIX), true);
+        indexWriter = new DataOutputStream(new BufferedOutputStream(indexFile));
+        assigneeFile = new FileOutputStream(file(segment, ASSIGNEE_SUFFIX), true);
+        assigneeWriter = new DataOutputStream(new BufferedOutputStream(assigneeFile));
+    }
+
+    private FileChannel reader(int segment) throws IOException {
+        FileChannel channel = readers.get(segment);
+        if(channel == null){
+            synchronized (readers){
+                channel = readers.get(segment);
+                if(channel == null){
+                    channel = FileChannel.open(file(segment, SEGMENT_SUFFIX).toPath(), StandardOpenOption.READ);
+                    readers.put(segment, channel);
+                }
+            }
+        }
+        return channel;
+    }
+
+    private File file(int segment, String suffix){
+        return new File(directory, String.format("history-%06d%s", segment, suffix));
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public long getMaxSegmentBytes() {
+        return maxSegmentBytes;
+    }
+
+    public void setMaxSegmentBytes(long maxSegmentBytes) {
+        this.maxSegmentBytes = maxSegmentBytes;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**记录在段文件中的位置*/
+    private static class Location {
+        final int segment;
+        final long offset;
+        final int length;
+
+        Location(int segment, long offset, int length) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
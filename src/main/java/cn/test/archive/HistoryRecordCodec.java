@@ -0,0 +1,452 @@
+package cn.test.archive;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.history.HistoricActivityInstance;
+import org.activiti.engine.history.HistoricDetail;
+import org.activiti.engine.history.HistoricIdentityLink;
+import org.activiti.engine.history.HistoricProcessInstance;
+import org.activiti.engine.history.HistoricTaskInstance;
+import org.activiti.engine.history.HistoricVariableInstance;
+import org.activiti.engine.impl.persistence.entity.HistoricActivityInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricDetailEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricDetailVariableInstanceUpdateEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricFormPropertyEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricIdentityLinkEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricProcessInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricTaskInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricVariableInstanceEntity;
+import org.activiti.engine.impl.variable.VariableTypes;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.Deflater;
+import java.util.zip.DataFormatException;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 归档记录的编码：一个流程实例的全部历史按字段顺序写出后整体deflate压缩
+ * 记录以版本号开头，增加字段时提高版本号并保留旧版本的读取分支
+ * 版本2增加了历史明细（ACT_HI_DETAIL）和历史身份关联（ACT_HI_IDENTITYLINK）
+ */
+class HistoryRecordCodec {
+
+    private static final int VERSION = 2;
+    private static final String VARIABLE_UPDATE = "VariableUpdate";
+    private static final String FORM_PROPERTY = "FormProperty";
+
+    private final VariableTypes variableTypes;
+
+    HistoryRecordCodec(VariableTypes variableTypes) {
+        this.variableTypes = variableTypes;
+    }
+
+    /**
+     * 编码并压缩
+     * @param archived 流程实例的历史，历史变量的字节数组值需要已经加载
+     */
+    byte[] encode(ArchivedProcessInstance archived){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(bytes, new Deflater(Deflater.BEST_COMPRESSION)))){
+            out.writeByte(VERSION);
+            writeProcessInstance(out, archived.getProcessInstance(), endActivityId(archived));
+            out.writeInt(archived.getActivityInstances().size());
+            for(HistoricActivityInstance activity:archived.getActivityInstances()){
+                writeActivityInstance(out, activity);
+            }
+            out.writeInt(archived.getTaskInstances().size());
+            for(HistoricTaskInstance task:archived.getTaskInstances()){
+                writeTaskInstance(out, task);
+            }
+            out.writeInt(archived.getVariableInstances().size());
+            for(HistoricVariableInstance variable:archived.getVariableInstances()){
+                writeVariableInstance(out, (HistoricVariableInstanceEntity) variable);
+            }
+            out.writeInt(archived.getDetails().size());
+            for(HistoricDetail detail:archived.getDetails()){
+                writeDetail(out, detail);
+            }
+            out.writeInt(archived.getIdentityLinks().size());
+            for(HistoricIdentityLink link:archived.getIdentityLinks()){
+                writeIdentityLink(out, link);
+            }
+        }catch(IOException e){
+            throw new ActivitiException("Could not encode archived process instance " + archived.getProcessInstance().getId(), e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 解压并解码
+     * @param record encode返回的字节
+     */
+    ArchivedProcessInstance decode(byte[] record){
+        ArchivedProcessInstance archived = new ArchivedProcessInstance();
+        try(DataInputStream in = new DataInputStream(new InflaterInputStream(new ByteArrayInputStream(record)))){
+            int version = in.readByte();
+            if(version < 1 || version > VERSION){
+                throw new ActivitiException("Unsupported archive record version " + version);
+            }
+            archived.setProcessInstance(readProcessInstance(in));
+            for(int i = in.readInt(); i > 0; i--){
+                archived.getActivityInstances().add(readActivityInstance(in));
+            }
+            for(int i = in.readInt(); i > 0; i--){
+                archived.getTaskInstances().add(readTaskInstance(in));
+            }
+            for(int i = in.readInt(); i > 0; i--){
+                archived.getVariableInstances().add(readVariableInstance(in));
+            }
+            if(version >= 2){
+                for(int i = in.readInt(); i > 0; i--){
+                    archived.getDetails().add(readDetail(in));
+                }
+                for(int i = in.readInt(); i > 0; i--){
+                    archived.getIdentityLinks().add(readIdentityLink(in));
+                }
+            }
+        }catch(IOException e){
+            throw new ActivitiException("Could not decode archived process instance", e);
+        }
+        return archived;
+    }
+
+    /**
+     * 段文件中从offset开始的一条记录的长度，记录之间没有分隔，按压缩流的结束位置确定
+     * @return 记录不完整或不是压缩流时返回-1
+     */
+    static int recordLength(byte[] segment, int offset, int length){
+        Inflater inflater = new Inflater();
+        try{
+            inflater.setInput(segment, offset, length);
+            byte[] buffer = new byte[8192];
+            while(!inflater.finished()){
+                if(inflater.inflate(buffer) == 0 && (inflater.needsInput() || inflater.needsDictionary())){
+                    return -1;
+                }
+            }
+            return length - inflater.getRemaining();
+        }catch(DataFormatException e){
+            return -1;
+        }finally{
+            inflater.end();
+        }
+    }
+
+    /**
+     * 结束节点：最后结束的结束事件（endEvent、terminateEndEvent等）的活动实例，没有时为null
+     */
+    private static String endActivityId(ArchivedProcessInstance archived){
+        HistoricActivityInstance end = null;
+        for(HistoricActivityInstance activity:archived.getActivityInstances()){
+            if(activity.getActivityType() != null && activity.getActivityType().endsWith("EndEvent")
+                    && activity.getEndTime() != null
+                    && (end == null || !activity.getEndTime().before(end.getEndTime()))){
+                end = activity;
+            }
+        }
+        return end == null ? null : end.getActivityId();
+    }
+
+    private void writeProcessInstance(DataOutputStream out, HistoricProcessInstance pi, String endActivityId) throws IOException {
+        writeString(out, pi.getId());
+        writeString(out, pi.getBusinessKey());
+        writeString(out, pi.getProcessDefinitionId());
+        writeDate(out, pi.getStartTime());
+        writeDate(out, pi.getEndTime());
+        writeLong(out, pi.getDurationInMillis());
+        writeString(out, pi.getStartUserId());
+        writeString(out, pi.getStartActivityId());
+        writeString(out, endActivityId);
+        writeString(out, pi.getSuperProcessInstanceId());
+        writeString(out, pi.getDeleteReason());
+        writeString(out, pi.getTenantId());
+        writeString(out, pi.getName());
+    }
+
+    private HistoricProcessInstance readProcessInstance(DataInputStream in) throws IOException {
+        HistoricProcessInstanceEntity pi = new HistoricProcessInstanceEntity();
+        pi.setId(readString(in));
+        pi.setProcessInstanceId(pi.getId());
+        pi.setBusinessKey(readString(in));
+        pi.setProcessDefinitionId(readString(in));
+        pi.setStartTime(readDate(in));
+        pi.setEndTime(readDate(in));
+        pi.setDurationInMillis(readLong(in));
+        pi.setStartUserId(readString(in));
+        pi.setStartActivityId(readString(in));
+        pi.setEndActivityId(readString(in));
+        pi.setSuperProcessInstanceId(readString(in));
+        pi.setDeleteReason(readString(in));
+        pi.setTenantId(readString(in));
+        pi.setName(readString(in));
+        return pi;
+    }
+
+    private void writeActivityInstance(DataOutputStream out, HistoricActivityInstance activity) throws IOException {
+        writeString(out, activity.getId());
+        writeString(out, activity.getProcessDefinitionId());
+        writeString(out, activity.getProcessInstanceId());
+        writeString(out, activity.getExecutionId());
+        writeString(out, activity.getActivityId());
+        writeString(out, activity.getActivityName());
+        writeString(out, activity.getActivityType());
+        writeString(out, activity.getTaskId());
+        writeString(out, activity.getCalledProcessInstanceId());
+        writeString(out, activity.getAssignee());
+        writeDate(out, activity.getStartTime());
+        writeDate(out, activity.getEndTime());
+        writeLong(out, activity.getDurationInMillis());
+        writeString(out, activity.getTenantId());
+    }
+
+    private HistoricActivityInstance readActivityInstance(DataInputStream in) throws IOException {
+        HistoricActivityInstanceEntity activity = new HistoricActivityInstanceEntity();
+        activity.setId(readString(in));
+        activity.setProcessDefinitionId(readString(in));
+        activity.setProcessInstanceId(readString(in));
+        activity.setExecutionId(readString(in));
+        activity.setActivityId(readString(in));
+        activity.setActivityName(readString(in));
+        activity.setActivityType(readString(in));
+        activity.setTaskId(readString(in));
+        activity.setCalledProcessInstanceId(readString(in));
+        activity.setAssignee(readString(in));
+        activity.setStartTime(readDate(in));
+        activity.setEndTime(readDate(in));
+        activity.setDurationInMillis(readLong(in));
+        activity.setTenantId(readString(in));
+        return activity;
+    }
+
+    private void writeTaskInstance(DataOutputStream out, HistoricTaskInstance task) throws IOException {
+        writeString(out, task.getId());
+        writeString(out, task.getProcessDefinitionId());
+        writeString(out, task.getTaskDefinitionKey());
+        writeString(out, task.getProcessInstanceId());
+        writeString(out, task.getExecutionId());
+        writeString(out, task.getParentTaskId());
+        writeString(out, task.getName());
+        writeString(out, task.getDescription());
+        writeString(out, task.getOwner());
+        writeString(out, task.getAssignee());
+        writeDate(out, task.getStartTime());
+        writeDate(out, task.getClaimTime());
+        writeDate(out, task.getEndTime());
+        writeLong(out, task.getDurationInMillis());
+        writeString(out, task.getDeleteReason());
+        out.writeInt(task.getPriority());
+        writeDate(out, task.getDueDate());
+        writeString(out, task.getFormKey());
+        writeString(out, task.getCategory());
+        writeString(out, task.getTenantId());
+    }
+
+    private HistoricTaskInstance readTaskInstance(DataInputStream in) throws IOException {
+        HistoricTaskInstanceEntity task = new HistoricTaskInstanceEntity();
+        task.setId(readString(in));
+        task.setProcessDefinitionId(readString(in));
+        task.setTaskDefinitionKey(readString(in));
+        task.setProcessInstanceId(readString(in));
+        task.setExecutionId(readString(in));
+        task.setParentTaskId(readString(in));
+        task.setName(readString(in));
+        task.setDescription(readString(in));
+        task.setOwner(readString(in));
+        task.setAssignee(readString(in));
+        task.setStartTime(readDate(in));
+        task.setClaimTime(readDate(in));
+        task.setEndTime(readDate(in));
+        task.setDurationInMillis(readLong(in));
+        task.setDeleteReason(readString(in));
+        task.setPriority(in.readInt());
+        task.setDueDate(readDate(in));
+        task.setFormKey(readString(in));
+        task.setCategory(readString(in));
+        task.setTenantId(readString(in));
+        return task;
+    }
+
+    private void writeVariableInstance(DataOutputStream out, HistoricVariableInstanceEntity variable) throws IOException {
+        writeString(out, variable.getId());
+        writeString(out, variable.getProcessInstanceId());
+        writeString(out, variable.getExecutionId());
+        writeString(out, variable.getTaskId());
+        writeString(out, variable.getVariableName());
+        writeString(out, variable.getVariableTypeName());
+        out.writeInt(variable.getRevision());
+        writeString(out, variable.getTextValue());
+        writeString(out, variable.getTextValue2());
+        writeLong(out, variable.getLongValue());
+        if(variable.getDoubleValue() == null){
+            out.writeBoolean(false);
+        }else{
+            out.writeBoolean(true);
+            out.writeDouble(variable.getDoubleValue());
+        }
+        //没有字节数组值时ByteArrayRef的getBytes返回null
+        writeBytes(out, variable.getBytes());
+        writeDate(out, variable.getCreateTime());
+        writeDate(out, variable.getLastUpdatedTime());
+    }
+
+    private HistoricVariableInstance readVariableInstance(DataInputStream in) throws IOException {
+        ArchivedHistoricVariableInstance variable = new ArchivedHistoricVariableInstance();
+        variable.setId(readString(in));
+        variable.setProcessInstanceId(readString(in));
+        variable.setExecutionId(readString(in));
+        variable.setTaskId(readString(in));
+        variable.setName(readString(in));
+        variable.setVariableType(variableTypes.getVariableType(readString(in)));
+        variable.setRevision(in.readInt());
+        variable.setTextValue(readString(in));
+        variable.setTextValue2(readString(in));
+        variable.setLongValue(readLong(in));
+        variable.setDoubleValue(in.readBoolean() ? in.readDouble() : null);
+        variable.setArchivedBytes(readBytes(in));
+        variable.setCreateTime(readDate(in));
+        variable.setLastUpdatedTime(readDate(in));
+        return variable;
+    }
+
+    private void writeDetail(DataOutputStream out, HistoricDetail detail) throws IOException {
+        if(detail instanceof HistoricFormPropertyEntity){
+            HistoricFormPropertyEntity property = (HistoricFormPropertyEntity) detail;
+            writeString(out, FORM_PROPERTY);
+            writeDetailFields(out, property);
+            writeString(out, property.getPropertyId());
+            writeString(out, property.getPropertyValue());
+            return;
+        }
+        HistoricDetailVariableInstanceUpdateEntity update = (HistoricDetailVariableInstanceUpdateEntity) detail;
+        writeString(out, VARIABLE_UPDATE);
+        writeDetailFields(out, update);
+        writeString(out, update.getVariableName());
+        writeString(out, update.getVariableTypeName());
+        out.writeInt(update.getRevision());
+        writeString(out, update.getTextValue());
+        writeString(out, update.getTextValue2());
+        writeLong(out, update.getLongValue());
+        if(update.getDoubleValue() == null){
+            out.writeBoolean(false);
+        }else{
+            out.writeBoolean(true);
+            out.writeDouble(update.getDoubleValue());
+        }
+        writeBytes(out, update.getBytes());
+    }
+
+    private HistoricDetail readDetail(DataInputStream in) throws IOException {
+        String type = readString(in);
+        if(FORM_PROPERTY.equals(type)){
+            HistoricFormPropertyEntity property = new HistoricFormPropertyEntity();
+            readDetailFields(in, property, type);
+            property.setPropertyId(readString(in));
+            property.setPropertyValue(readString(in));
+            return property;
+        }
+        ArchivedHistoricVariableUpdate update = new ArchivedHistoricVariableUpdate();
+        readDetailFields(in, update, type);
+        update.setName(readString(in));
+        update.setVariableType(variableTypes.getVariableType(readString(in)));
+        update.setRevision(in.readInt());
+        update.setTextValue(readString(in));
+        update.setTextValue2(readString(in));
+        update.setLongValue(readLong(in));
+        update.setDoubleValue(in.readBoolean() ? in.readDouble() : null);
+        update.setArchivedBytes(readBytes(in));
+        return update;
+    }
+
+    private static void writeDetailFields(DataOutputStream out, HistoricDetailEntity detail) throws IOException {
+        writeString(out, detail.getId());
+        writeString(out, detail.getProcessInstanceId());
+        writeString(out, detail.getExecutionId());
+        writeString(out, detail.getActivityInstanceId());
+        writeString(out, detail.getTaskId());
+        writeDate(out, detail.getTime());
+    }
+
+    private static void readDetailFields(DataInputStream in, HistoricDetailEntity detail, String type) throws IOException {
+        detail.setDetailType(type);
+        detail.setId(readString(in));
+        detail.setProcessInstanceId(readString(in));
+        detail.setExecutionId(readString(in));
+        detail.setActivityInstanceId(readString(in));
+        detail.setTaskId(readString(in));
+        detail.setTime(readDate(in));
+    }
+
+    private static void writeIdentityLink(DataOutputStream out, HistoricIdentityLink link) throws IOException {
+        writeString(out, ((HistoricIdentityLinkEntity) link).getId());
+        writeString(out, link.getType());
+        writeString(out, link.getUserId());
+        writeString(out, link.getGroupId());
+        writeString(out, link.getTaskId());
+        writeString(out, link.getProcessInstanceId());
+    }
+
+    private static HistoricIdentityLink readIdentityLink(DataInputStream in) throws IOException {
+        HistoricIdentityLinkEntity link = new HistoricIdentityLinkEntity();
+        link.setId(readString(in));
+        link.setType(readString(in));
+        link.setUserId(readString(in));
+        link.setGroupId(readString(in));
+        link.setTaskId(readString(in));
+        link.setProcessInstanceId(readString(in));
+        return link;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        writeBytes(out, value == null ? null : value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**null写为-1*/
+    private static void writeBytes(DataOutputStream out, byte[] value) throws IOException {
+        if(value == null){
+            out.writeInt(-1);
+            return;
+        }
+        out.writeInt(value.length);
+        out.write(value);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private static void writeLong(DataOutputStream out, Long value) throws IOException {
+        if(value == null){
+            out.writeBoolean(false);
+        }else{
+            out.writeBoolean(true);
+            out.writeLong(value);
+        }
+    }
+
+    private static Long readLong(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readLong() : null;
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        writeLong(out, value == null ? null : value.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        Long time = readLong(in);
+        return time == null ? null : new Date(time);
+    }
+}
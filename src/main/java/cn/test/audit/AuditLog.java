@@ -0,0 +1,305 @@
+package cn.test.audit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * ActivitiUtil的审计日志：每个操作记录一条固定格式的事件（时间、线程、操作、对象id、数量、摘要），
+ * 放入环形缓冲区后立即返回，由后台线程写入按大小滚动的本地文件（默认~/activiti-audit/audit.log）
+ *
+ * 调用线程不做I/O、不加锁：缓冲区满时丢弃事件并计数；按sampleRate（可按操作配置）抽样，未抽中的事件不生成摘要
+ * 摘要不调用集合、实体的toString：集合只记录元素数，Map只记录变量名，简单类型记录值，其他对象记录类名，长度不超过maxDetailLength
+ *
+ * 在activiti.cfg.xml中配置，init-method为start，destroy-method为shutdown
+ */
+public class AuditLog {
+    private Logger logger = LoggerFactory.getLogger(AuditLog.class);
+
+    /**默认缓冲区容量（条）*/
+    public static final int DEFAULT_CAPACITY = 8192;
+    /**没有事件时后台线程的等待时间*/
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private int capacity = DEFAULT_CAPACITY;
+    private File directory = new File(System.getProperty("user.home"), "activiti-audit");
+    private long maxFileBytes = 50L * 1024 * 1024;
+    private int maxFiles = 10;
+    private int maxDetailLength = 256;
+    /**默认抽样比例（0~1）*/
+    private double sampleRate = 1.0;
+    /**按操作配置的抽样比例，覆盖sampleRate*/
+    private Map<String, Double> sampleRates = new HashMap<>();
+    /**引擎关闭时等待缓冲区写完的最长时间（秒）*/
+    private int shutdownTimeoutSeconds = 10;
+
+    private AuditRingBuffer buffer;
+    private Thread worker;
+    private volatile boolean running = false;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong sampledOutCount = new AtomicLong();
+    private volatile long writtenCount = 0;
+    private volatile long failedCount = 0;
+
+    /**
+     * 记录一个操作，不阻塞
+     * @param operation 操作（ActivitiUtil的方法名）
+     * @param target 操作的对象id（任务id、流程实例id等），可以为null
+     * @param count 结果数量，没有时为-1
+     * @param detail 摘要的来源，可以为null
+     * @return 是否放入了缓冲区（没有启动、未抽中、缓冲区满时为false）
+     */
+    public boolean record(String operation, String target, long count, Object detail){
+        AuditRingBuffer buffer = this.buffer;
+        if(!running || buffer == null){
+            return false;
+        }
+        if(!sampled(operation)){
+            sampledOutCount.incrementAndGet();
+            return false;
+        }
+        if(!buffer.offer(System.currentTimeMillis(), Thread.currentThread().getName(), operation,
+                cap(target), count, detail == null ? null : summarize(detail))){
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    private boolean sampled(String operation){
+        Double rate = sampleRates.isEmpty() ? null : sampleRates.get(operation);
+        double r = rate == null ? sampleRate : rate;
+        return r >= 1.0 || (r > 0 && ThreadLocalRandom.current().nextDouble() < r);
+    }
+
+    /**有上限的摘要*/
+    private String summarize(Object detail){
+        if(detail instanceof CharSequence || detail instanceof Number || detail instanceof Boolean
+                || detail instanceof Character || detail instanceof Enum){
+            return cap(detail.toString());
+        }
+        if(detail instanceof Date){
+            return Long.toString(((Date) detail).getTime());
+        }
+        if(detail instanceof Collection){
+            return "size=" + ((Collection<?>) detail).size();
+        }
+        if(detail instanceof Map){
+            StringBuilder sb = new StringBuilder("keys=");
+            Iterator<?> keys = ((Map<?, ?>) detail).keySet().iterator();
+            while(keys.hasNext() && sb.length() < maxDetailLength){
+                sb.append(keys.next()).append(keys.hasNext() ? "," : "");
+            }
+            return cap(sb.toString());
+        }
+        return detail.getClass().getSimpleName();
+    }
+
+    /**截断到maxDetailLength，去掉换行和制表符*/
+    private String cap(String value){
+        if(value == null){
+            return null;
+        }
+        String s = value.length() > maxDetailLength ? value.substring(0, maxDetailLength) + "..." : value;
+        return s.indexOf('\n') < 0 && s.indexOf('\t') < 0 && s.indexOf('\r') < 0 ? s
+                : s.replace('\n', ' ').replace('\t', ' ').replace('\r', ' ');
+    }
+
+    /**启动后台写入线程*/
+    public synchronized void start(){
+        if(running){
+            return;
+        }
+        buffer = new AuditRingBuffer(capacity);
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "audit-log-writer");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("启动审计日志。目录：{} ；缓冲区容量：{} ；抽样比例：{} ；按操作：{}",directory,buffer.capacity(),sampleRate,sampleRates);
+    }
+
+    /**停止接收新的事件，写完缓冲区中剩余的事件后停止后台线程*/
+    public void shutdown(){
+        Thread thread;
+        synchronized (this){
+            if(!running){
+                return;
+            }
+            running = false;
+            thread = worker;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("停止审计日志。已写入：{} ；写入失败：{} ；丢弃：{} ；未抽中：{}",writtenCount,failedCount,droppedCount.get(),sampledOutCount.get());
+    }
+
+    private void work(){
+        RollingAuditFile file = new RollingAuditFile(directory, maxFileBytes, maxFiles);
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder line = new StringBuilder(256);
+        boolean dirty = false;
+        try{
+            while(true){
+                AuditRingBuffer.Slot slot = buffer.peek();
+                if(slot == null){
+                    if(dirty){
+                        dirty = !flush(file);
+                    }
+                    if(!running && buffer.size() == 0){
+                        break;
+                    }
+                    LockSupport.parkNanos(IDLE_NANOS);
+                    continue;
+                }
+                line.setLength(0);
+                line.append(format.format(new Date(slot.time))).append('\t').append(slot.thread)
+                        .append('\t').append(slot.operation).append('\t').append(slot.target == null ? "-" : slot.target)
+                        .append('\t').append(slot.count).append('\t').append(slot.detail == null ? "-" : slot.detail).append('\n');
+                buffer.release(slot);
+                try{
+                    file.write(line.toString());
+                    writtenCount++;
+                    dirty = true;
+                }catch(IOException e){
+                    if(failedCount++ == 0){
+                        logger.error("写入审计日志失败，之后的失败只计数。目录：{}",directory,e);
+                    }
+                }
+            }
+        }finally {
+            try{
+                file.close();
+            }catch(IOException e){
+                logger.error("关闭审计日志失败",e);
+            }
+        }
+    }
+
+    private boolean flush(RollingAuditFile file){
+        try{
+            file.flush();
+            return true;
+        }catch(IOException e){
+            if(failedCount++ == 0){
+                logger.error("写入审计日志失败，之后的失败只计数。目录：{}",directory,e);
+            }
+            return false;
+        }
+    }
+
+    /**已写入文件的事件数*/
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
+    /**写入失败的事件数*/
+    public long getFailedCount() {
+        return failedCount;
+    }
+
+    /**缓冲区满被丢弃的事件数*/
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**未抽中的事件数*/
+    public long getSampledOutCount() {
+        return sampledOutCount.get();
+    }
+
+    /**缓冲区中等待写入的事件数*/
+    public int getQueueSize(){
+        return buffer == null ? 0 : buffer.size();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    public void setMaxFileBytes(long maxFileBytes) {
+        this.maxFileBytes = maxFileBytes;
+    }
+
+    public int getMaxFiles() {
+        return maxFiles;
+    }
+
+    /**
+     * @param maxFiles 保留的旧文件数，至少1个
+     */
+    public void setMaxFiles(int maxFiles) {
+        if(maxFiles < 1){
+            throw new IllegalArgumentException("maxFiles must be positive");
+        }
+        this.maxFiles = maxFiles;
+    }
+
+    public int getMaxDetailLength() {
+        return maxDetailLength;
+    }
+
+    public void setMaxDetailLength(int maxDetailLength) {
+        this.maxDetailLength = maxDetailLength;
+    }
+
+    public double getSampleRate() {
+        return sampleRate;
+    }
+
+    public void setSampleRate(double sampleRate) {
+        this.sampleRate = sampleRate;
+    }
+
+    public Map<String, Double> getSampleRates() {
+        return sampleRates;
+    }
+
+    public void setSampleRates(Map<String, Double> sampleRates) {
+        this.sampleRates = sampleRates;
+    }
+
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+}
@@ -0,0 +1,91 @@
+package cn.test.audit;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 审计事件的环形缓冲区：多个线程写入，一个后台线程读取，不加锁
+ * 槽位预先分配，事件字段直接写入槽位；写入线程用CAS领取序号，缓冲区满时放弃（不等待）
+ * 槽位的published等于序号时表示已写完，读取线程读完后推进consumed，写入线程才能再使用该槽位
+ */
+class AuditRingBuffer {
+
+    /**一个槽位，字段在published之前写入，在读到published之后读取*/
+    static final class Slot {
+        long time;
+        String thread;
+        String operation;
+        String target;
+        long count;
+        String detail;
+        volatile long published = -1;
+    }
+
+    private final Slot[] slots;
+    private final int mask;
+    /**下一个领取的序号*/
+    private final AtomicLong claimed = new AtomicLong();
+    /**下一个读取的序号，只由读取线程修改*/
+    private volatile long consumed = 0;
+
+    /**
+     * @param capacity 容量，向上取2的幂
+     */
+    AuditRingBuffer(int capacity){
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        slots = new Slot[size];
+        for(int i = 0; i < size; i++){
+            slots[i] = new Slot();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * 写入一个事件
+     * @return 缓冲区满时返回false
+     */
+    boolean offer(long time, String thread, String operation, String target, long count, String detail){
+        long sequence;
+        do{
+            sequence = claimed.get();
+            if(sequence - consumed >= slots.length){
+                return false;
+            }
+        }while(!claimed.compareAndSet(sequence, sequence + 1));
+        Slot slot = slots[(int) sequence & mask];
+        slot.time = time;
+        slot.thread = thread;
+        slot.operation = operation;
+        slot.target = target;
+        slot.count = count;
+        slot.detail = detail;
+        slot.published = sequence;
+        return true;
+    }
+
+    /**
+     * 下一个已写完的事件（只由读取线程调用），读完后调用release
+     * @return 没有时返回null
+     */
+    Slot peek(){
+        Slot slot = slots[(int) consumed & mask];
+        return slot.published == consumed ? slot : null;
+    }
+
+    /**释放peek返回的槽位*/
+    void release(Slot slot){
+        slot.thread = null;
+        slot.operation = null;
+        slot.target = null;
+        slot.detail = null;
+        consumed = consumed + 1;
+    }
+
+    /**缓冲区中的事件数（近似值）*/
+    int size(){
+        return (int) Math.max(0, claimed.get() - consumed);
+    }
+
+    int capacity(){
+        return slots.length;
+    }
+}
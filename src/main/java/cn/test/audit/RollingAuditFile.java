@@ -0,0 +1,96 @@
+package cn.test.audit;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * 按大小滚动的审计日志文件：目录/audit.log，超过maxFileBytes时依次改名为audit.log.1、audit.log.2……，最多保留maxFiles个旧文件
+ * 只由后台写入线程使用
+ */
+class RollingAuditFile {
+
+    static final String FILE_NAME = "audit.log";
+
+    private final File directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    private Writer writer;
+    private long size;
+
+    RollingAuditFile(File directory, long maxFileBytes, int maxFiles) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = maxFiles;
+    }
+
+    void write(String line) throws IOException {
+        if(writer == null){
+            open();
+        }else if(size >= maxFileBytes){
+            roll();
+        }
+        writer.write(line);
+    }
+
+    void flush() throws IOException {
+        if(writer != null){
+            writer.flush();
+        }
+    }
+
+    void close() throws IOException {
+        if(writer != null){
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private void open() throws IOException {
+        Files.createDirectories(directory.toPath());
+        File file = new File(directory, FILE_NAME);
+        size = file.length();
+        writer = new BufferedWriter(new OutputStreamWriter(new CountingOutputStream(new FileOutputStream(file, true)), StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    /**统计写入文件的字节数（缓冲区中的内容写出后才计入）*/
+    private class CountingOutputStream extends FilterOutputStream {
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            size++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            size += len;
+        }
+    }
+
+    private void roll() throws IOException {
+        close();
+        Files.deleteIfExists(new File(directory, FILE_NAME + "." + maxFiles).toPath());
+        for(int i = maxFiles - 1; i >= 1; i--){
+            File from = new File(directory, FILE_NAME + "." + i);
+            if(from.exists()){
+                Files.move(from.toPath(), new File(directory, FILE_NAME + "." + (i + 1)).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        Files.move(new File(directory, FILE_NAME).toPath(), new File(directory, FILE_NAME + ".1").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+}
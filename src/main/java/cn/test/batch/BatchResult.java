@@ -0,0 +1,62 @@
+package cn.test.batch;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 批量操作的结果（逐条记录成功的结果id和失败的原因）
+ * @param <K> 单条数据的标识（例如：在入参列表中的下标、任务id）
+ */
+public class BatchResult<K> {
+
+    /**成功的数据：标识 -> 结果id*/
+    private final Map<K, String> succeeded = new LinkedHashMap<>();
+    /**失败的数据：标识 -> 失败原因*/
+    private final Map<K, String> failed = new LinkedHashMap<>();
+    /**提交的事务数*/
+    private int transactions;
+    /**总耗时（毫秒）*/
+    private long elapsedMillis;
+
+    public void success(K key, String resultId){
+        succeeded.put(key, resultId);
+    }
+
+    public void failure(K key, Throwable e){
+        failed.put(key, e.getClass().getSimpleName() + ": " + e.getMessage());
+    }
+
+    public void transactionCommitted(){
+        transactions++;
+    }
+
+    public Map<K, String> getSucceeded() {
+        return succeeded;
+    }
+
+    public Map<K, String> getFailed() {
+        return failed;
+    }
+
+    public int getTransactions() {
+        return transactions;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    public void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    public boolean hasFailures(){
+        return !failed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "BatchResult{成功=" + succeeded.size() + ", 失败=" + failed.size()
+                + ", 事务数=" + transactions + ", 耗时=" + elapsedMillis + "ms}";
+    }
+}
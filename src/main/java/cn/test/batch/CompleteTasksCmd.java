@@ -0,0 +1,36 @@
+package cn.test.batch;
+
+import org.activiti.engine.impl.cmd.CompleteTaskCmd;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在同一个命令上下文（同一个事务）中完成多个任务
+ * 同一流程实例的任务放在一起完成，执行对象树只加载一次
+ */
+public class CompleteTasksCmd implements Command<Void> {
+
+    private final List<String> taskIds;
+    private final Map<String, Map<String, Object>> varsByTaskId;
+
+    /**
+     * @param taskIds 要完成的任务id（已按流程实例分组排列）
+     * @param varsByTaskId 每个任务完成时设置的变量，可以为null
+     */
+    public CompleteTasksCmd(List<String> taskIds, Map<String, Map<String, Object>> varsByTaskId) {
+        this.taskIds = taskIds;
+        this.varsByTaskId = varsByTaskId;
+    }
+
+    @Override
+    public Void execute(CommandContext commandContext) {
+        for(String taskId:taskIds){
+            //直接执行命令，不再经过拦截器链，任意一条失败整个事务回滚
+            new CompleteTaskCmd(taskId, varsByTaskId.get(taskId)).execute(commandContext);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,41 @@
+package cn.test.batch;
+
+import org.activiti.engine.impl.cmd.StartProcessInstanceCmd;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.runtime.ProcessInstance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 在同一个命令上下文（同一个事务）中启动多个流程实例
+ * 所有的插入在命令结束时统一flush，开启bulkInsertEnabled后按表合并为批量插入
+ */
+public class StartProcessInstancesCmd implements Command<List<String>> {
+
+    private final String processDefinitionId;
+    private final List<Map<String, Object>> varsList;
+
+    /**
+     * @param processDefinitionId 流程定义id（已解析好的最新版本）
+     * @param varsList 每个流程实例的参数
+     */
+    public StartProcessInstancesCmd(String processDefinitionId, List<Map<String, Object>> varsList) {
+        this.processDefinitionId = processDefinitionId;
+        this.varsList = varsList;
+    }
+
+    @Override
+    public List<String> execute(CommandContext commandContext) {
+        List<String> ids = new ArrayList<>(varsList.size());
+        for(Map<String, Object> vars:varsList){
+            //直接执行命令，不再经过拦截器链，任意一条失败整个事务回滚
+            ProcessInstance pi = new StartProcessInstanceCmd<ProcessInstance>(null, processDefinitionId, null, vars)
+                    .execute(commandContext);
+            ids.add(pi.getId());
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,165 @@
+package cn.test.cache;
+
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.repository.ProcessDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+
+/**
+ * 最新版本流程定义的缓存（key -> 最新版本的流程定义）
+ * 有容量上限，按访问顺序淘汰；部署或删除流程定义时由调用方失效
+ */
+@Component
+public class ProcessDefinitionCache {
+    private Logger logger = LoggerFactory.getLogger(ProcessDefinitionCache.class);
+
+    /**默认最多缓存的流程定义key数量*/
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    @Autowired
+    private RepositoryService repositoryService;
+
+    private final int maxSize;
+    /**access-order的LinkedHashMap，超出容量时淘汰最久未使用的key*/
+    private final Map<String, ProcessDefinition> cache;
+    /**缓存中是否包含所有key的最新版本（全量加载后为true，淘汰或失效后为false）*/
+    private boolean complete = false;
+
+    public ProcessDefinitionCache(){
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public ProcessDefinitionCache(int maxSize){
+        this.maxSize = maxSize;
+        this.cache = new LinkedHashMap<String, ProcessDefinition>(16, 0.75f, true){
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ProcessDefinition> eldest) {
+                if(size() > ProcessDefinitionCache.this.maxSize){
+                    complete = false;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * 获取指定key的最新版本流程定义，未命中时查询一次数据库
+     * @param processDefinitionKey 流程定义的key
+     * @return 最新版本的流程定义，不存在时返回null
+     */
+    public ProcessDefinition get(String processDefinitionKey){
+        synchronized (cache){
+            ProcessDefinition pd = cache.get(processDefinitionKey);
+            if(pd != null){
+                return pd;
+            }
+        }
+        ProcessDefinition pd = repositoryService.createProcessDefinitionQuery()
+                .processDefinitionKey(processDefinitionKey)
+                .latestVersion()//只查询最新版本
+                .singleResult();
+        if(pd != null){
+            put(pd);
+        }
+        return pd;
+    }
+
+    /**
+     * 获取所有key的最新版本流程定义，缓存不完整时全量加载一次
+     * @return 所有最新版本的流程定义（按key排序）
+     */
+    public List<ProcessDefinition> getAll(){
+        synchronized (cache){
+            if(complete){
+                return sortByKey(cache.values());
+            }
+        }
+        List<ProcessDefinition> list = repositoryService.createProcessDefinitionQuery()
+                .latestVersion()
+                .list();
+        synchronized (cache){
+            cache.clear();
+            for(ProcessDefinition pd:list){
+                cache.put(pd.getKey(), pd);
+            }
+            //全量数据超过容量时，淘汰会把complete重新置为false
+            complete = list.size() <= maxSize;
+        }
+        return sortByKey(list);
+    }
+
+    /**
+     * 新部署后刷新该部署中包含的流程定义
+     * @param deploymentId 部署id
+     */
+    public void onDeployment(String deploymentId){
+        List<ProcessDefinition> list = repositoryService.createProcessDefinitionQuery()
+                .deploymentId(deploymentId)
+                .list();
+        for(ProcessDefinition pd:list){
+            put(pd);
+        }
+        logger.info("刷新流程定义缓存。部署id：{} ；流程定义数量：{}",deploymentId,list.size());
+    }
+
+    /**
+     * 失效指定key的缓存
+     * @param processDefinitionKey 流程定义的key
+     */
+    public void invalidate(String processDefinitionKey){
+        synchronized (cache){
+            cache.remove(processDefinitionKey);
+            complete = false;
+        }
+    }
+
+    /**
+     * 失效指定部署下的所有缓存
+     * @param deploymentId 部署id
+     */
+    public void invalidateDeployment(String deploymentId){
+        synchronized (cache){
+            Iterator<ProcessDefinition> it = cache.values().iterator();
+            while(it.hasNext()){
+                if(deploymentId.equals(it.next().getDeploymentId())){
+                    it.remove();
+                    complete = false;
+                }
+            }
+        }
+    }
+
+    /**清空缓存*/
+    public void clear(){
+        synchronized (cache){
+            cache.clear();
+            complete = false;
+        }
+    }
+
+    private void put(ProcessDefinition pd){
+        synchronized (cache){
+            ProcessDefinition old = cache.get(pd.getKey());
+            //只保留版本更高的定义，避免旧部署覆盖新部署
+            if(old == null || old.getVersion() <= pd.getVersion()){
+                cache.put(pd.getKey(), pd);
+            }
+        }
+    }
+
+    private List<ProcessDefinition> sortByKey(Collection<ProcessDefinition> values){
+        List<ProcessDefinition> list = new ArrayList<>(values);
+        Collections.sort(list, new Comparator<ProcessDefinition>() {
+            @Override
+            public int compare(ProcessDefinition o1, ProcessDefinition o2) {
+                return o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        return list;
+    }
+}
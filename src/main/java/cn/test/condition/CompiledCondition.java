@@ -0,0 +1,58 @@
+package cn.test.condition;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.impl.Condition;
+import org.activiti.engine.impl.javax.el.ELException;
+
+/**
+ * 编译后的顺序流条件，代替UelExpressionCondition
+ * 返回值的检查和异常信息与UelExpressionCondition、JuelExpression相同；变量不存在时交给原来的条件
+ * 不经过DelegateInterceptor（默认的拦截器只是直接调用）
+ */
+public class CompiledCondition implements Condition {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String expressionText;
+    private final ConditionNode node;
+    private final Condition fallback;
+
+    CompiledCondition(String expressionText, ConditionNode node, Condition fallback) {
+        this.expressionText = expressionText;
+        this.node = node;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public boolean evaluate(DelegateExecution execution) {
+        Object result;
+        try{
+            result = node.eval(execution);
+        }catch(ConditionNode.Unresolved e){
+            return fallback.evaluate(execution);
+        }catch(ELException e){
+            throw new ActivitiException("Error while evaluating expression: " + expressionText, e);
+        }
+        if(result == null){
+            throw new ActivitiException("condition expression returns null");
+        }
+        if(!(result instanceof Boolean)){
+            throw new ActivitiException("condition expression returns non-Boolean: " + result + " (" + result.getClass().getName() + ")");
+        }
+        return (Boolean) result;
+    }
+
+    ConditionNode getNode() {
+        return node;
+    }
+
+    public String getExpressionText() {
+        return expressionText;
+    }
+
+    @Override
+    public String toString() {
+        return "CompiledCondition[" + expressionText + "]";
+    }
+}
@@ -0,0 +1,34 @@
+package cn.test.condition;
+
+import org.activiti.bpmn.model.BaseElement;
+import org.activiti.bpmn.model.SequenceFlow;
+import org.activiti.engine.impl.Condition;
+import org.activiti.engine.impl.bpmn.parser.BpmnParse;
+import org.activiti.engine.impl.bpmn.parser.handler.AbstractBpmnParseHandler;
+import org.activiti.engine.impl.el.UelExpressionCondition;
+import org.activiti.engine.impl.pvm.process.TransitionImpl;
+
+/**
+ * 顺序流解析后，把条件编译为CompiledCondition（每个流程定义版本解析时编译一次，随流程定义缓存）
+ * 在activiti.cfg.xml中注册为postBpmnParseHandlers，在引擎默认的SequenceFlowParseHandler之后执行
+ */
+public class CompiledConditionParseHandler extends AbstractBpmnParseHandler<SequenceFlow> {
+
+    @Override
+    protected Class<? extends BaseElement> getHandledType() {
+        return SequenceFlow.class;
+    }
+
+    @Override
+    protected void executeParse(BpmnParse bpmnParse, SequenceFlow sequenceFlow) {
+        TransitionImpl transition = bpmnParse.getSequenceFlows().get(sequenceFlow.getId());
+        if(transition == null){
+            return;
+        }
+        Object condition = transition.getProperty(BpmnParse.PROPERTYNAME_CONDITION);
+        if(condition instanceof UelExpressionCondition){
+            transition.setProperty(BpmnParse.PROPERTYNAME_CONDITION,
+                    ConditionCompiler.compile(sequenceFlow.getConditionExpression(), (Condition) condition));
+        }
+    }
+}
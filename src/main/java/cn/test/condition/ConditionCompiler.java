@@ -0,0 +1,140 @@
+package cn.test.condition;
+
+import org.activiti.engine.impl.Condition;
+import org.activiti.engine.impl.el.VariableScopeElResolver;
+import org.activiti.engine.impl.juel.*;
+
+/**
+ * 条件表达式编译器：用JUEL的语法分析得到语法树，把其中的常用部分编译为ConditionNode
+ * 支持：流程变量、数字/字符串/布尔/null常量、比较（== != < <= > >=）、逻辑（&& || !）、算术（+ - * / %）、empty、括号；
+ * 变量与常量的比较生成专门的节点，不经过通用的类型转换
+ * 其他写法（方法调用、属性访问、函数、execution等内置变量、文本与表达式混合）不编译，仍由JUEL解释执行
+ */
+public class ConditionCompiler {
+
+    private static final Builder BUILDER = new Builder();
+
+    private ConditionCompiler(){
+    }
+
+    /**
+     * 编译条件表达式
+     * @param expressionText 表达式，如${money>1000}
+     * @param fallback 原来的条件，不能编译或运行时变量不存在时使用
+     * @return 编译后的条件，不能编译时返回fallback
+     */
+    public static Condition compile(String expressionText, Condition fallback){
+        ConditionNode node = compile(expressionText);
+        return node == null ? fallback : new CompiledCondition(expressionText, node, fallback);
+    }
+
+    /**
+     * @return 不能编译时返回null
+     */
+    static ConditionNode compile(String expressionText){
+        if(expressionText == null){
+            return null;
+        }
+        Tree tree;
+        try{
+            tree = BUILDER.build(expressionText.trim());
+        }catch(RuntimeException e){
+            //语法错误由JUEL在部署或执行时报告
+            return null;
+        }
+        if(!(tree.getRoot() instanceof AstEval)){
+            return null;
+        }
+        return node(((AstEval) tree.getRoot()).getChild(0));
+    }
+
+    private static ConditionNode node(AstNode ast){
+        if(ast instanceof AstNested){
+            return node(((AstNested) ast).getChild(0));
+        }
+        if(ast instanceof AstNumber || ast instanceof AstString || ast instanceof AstBoolean || ast instanceof AstNull){
+            //常量求值不需要上下文
+            return new ConditionNode.Literal(ast.eval(null, null));
+        }
+        if(ast instanceof AstIdentifier){
+            String name = ((AstIdentifier) ast).getName();
+            if(VariableScopeElResolver.EXECUTION_KEY.equals(name) || VariableScopeElResolver.TASK_KEY.equals(name)
+                    || VariableScopeElResolver.LOGGED_IN_USER_KEY.equals(name)){
+                return null;
+            }
+            return new ConditionNode.Variable(name);
+        }
+        if(ast instanceof AstUnary){
+            AstUnary unary = (AstUnary) ast;
+            ConditionNode child = node(unary.getChild(0));
+            if(child == null){
+                return null;
+            }
+            if(unary.getOperator() == AstUnary.NOT){
+                return new ConditionNode.Not(child);
+            }
+            if(unary.getOperator() == AstUnary.NEG){
+                return new ConditionNode.Negate(child);
+            }
+            return new ConditionNode.Empty(child);
+        }
+        if(ast instanceof AstBinary){
+            return binary((AstBinary) ast);
+        }
+        return null;
+    }
+
+    private static ConditionNode binary(AstBinary ast){
+        ConditionNode left = node(ast.getChild(0));
+        ConditionNode right = node(ast.getChild(1));
+        if(left == null || right == null){
+            return null;
+        }
+        AstBinary.Operator op = ast.getOperator();
+        if(op == AstBinary.AND){
+            return new ConditionNode.And(left, right);
+        }
+        if(op == AstBinary.OR){
+            return new ConditionNode.Or(left, right);
+        }
+        ConditionNode.Operator operator = operator(op);
+        if(operator == null){
+            return null;
+        }
+        ConditionNode special = compare(operator, left, right);
+        return special != null ? special : new ConditionNode.Binary(operator, left, right);
+    }
+
+    /**变量与常量的比较*/
+    private static ConditionNode compare(ConditionNode.Operator operator, ConditionNode left, ConditionNode right){
+        boolean variableFirst = left instanceof ConditionNode.Variable && right instanceof ConditionNode.Literal;
+        boolean constantFirst = left instanceof ConditionNode.Literal && right instanceof ConditionNode.Variable;
+        if(!variableFirst && !constantFirst){
+            return null;
+        }
+        ConditionNode.Variable variable = (ConditionNode.Variable) (variableFirst ? left : right);
+        Object constant = ((ConditionNode.Literal) (variableFirst ? right : left)).value;
+        if(constant instanceof Long && operator.ordinal() <= ConditionNode.Operator.GE.ordinal()){
+            return new ConditionNode.CompareLong(operator, variable, (Long) constant, constantFirst);
+        }
+        if(constant instanceof String && (operator == ConditionNode.Operator.EQ || operator == ConditionNode.Operator.NE)){
+            return new ConditionNode.EqualsString(variable, (String) constant, operator == ConditionNode.Operator.NE);
+        }
+        return null;
+    }
+
+    private static ConditionNode.Operator operator(AstBinary.Operator op){
+        if(op == AstBinary.EQ) return ConditionNode.Operator.EQ;
+        if(op == AstBinary.NE) return ConditionNode.Operator.NE;
+        if(op == AstBinary.LT) return ConditionNode.Operator.LT;
+        if(op == AstBinary.LE) return ConditionNode.Operator.LE;
+        if(op == AstBinary.GT) return ConditionNode.Operator.GT;
+        if(op == AstBinary.GE) return ConditionNode.Operator.GE;
+        if(op == AstBinary.ADD) return ConditionNode.Operator.ADD;
+        if(op == AstBinary.SUB) return ConditionNode.Operator.SUB;
+        if(op == AstBinary.MUL) return ConditionNode.Operator.MUL;
+        if(op == AstBinary.DIV) return ConditionNode.Operator.DIV;
+        if(op == AstBinary.MOD) return ConditionNode.Operator.MOD;
+        return null;
+    }
+}
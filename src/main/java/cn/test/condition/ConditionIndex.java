@@ -0,0 +1,221 @@
+package cn.test.condition;
+
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * 排他网关出口条件的索引：所有条件都是同一个变量与常量的范围或相等比较时，
+ * 按变量的值直接找到第一个满足条件的顺序流（与按顺序逐个求值的结果相同）
+ *
+ * 整数范围：把所有区间的端点排序，切分为互不重叠的小区间，每个小区间预先算出第一个满足的顺序流，查找时二分，O(log n)
+ * 字符串相等：值 -> 第一个满足的顺序流，O(1)
+ */
+class ConditionIndex implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**没有满足条件的顺序流*/
+    static final int NONE = -1;
+
+    final String variableName;
+    /**小区间的起点（升序），为null时是字符串索引*/
+    private final long[] starts;
+    /**每个小区间第一个满足条件的顺序流序号*/
+    private final int[] flows;
+    private final Map<String, Integer> strings;
+
+    private ConditionIndex(String variableName, long[] starts, int[] flows, Map<String, Integer> strings) {
+        this.variableName = variableName;
+        this.starts = starts;
+        this.flows = flows;
+        this.strings = strings;
+    }
+
+    /**
+     * @param value 变量的值
+     * @return 第一个满足条件的顺序流序号；没有满足的返回NONE；值的类型不能用索引判断时返回null（由原来的条件逐个求值）
+     */
+    Integer lookup(Object value){
+        if(starts != null){
+            if(!(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte)){
+                return null;
+            }
+            int i = Arrays.binarySearch(starts, ((Number) value).longValue());
+            if(i < 0){
+                i = -i - 2;
+            }
+            return i < 0 ? NONE : flows[i];
+        }
+        if(!(value instanceof String)){
+            return null;
+        }
+        Integer flow = strings.get(value);
+        return flow == null ? NONE : flow;
+    }
+
+    /**
+     * 建立索引
+     * @param conditions 按顺序的出口条件
+     * @return 不是同一个变量的范围或相等比较时返回null
+     */
+    static ConditionIndex build(List<CompiledCondition> conditions){
+        List<Ranges> ranges = new ArrayList<>();
+        for(CompiledCondition condition:conditions){
+            Ranges r = ranges(condition.getNode());
+            if(r == null || (!ranges.isEmpty() && !ranges.get(0).compatible(r))){
+                return null;
+            }
+            ranges.add(r);
+        }
+        if(ranges.isEmpty()){
+            return null;
+        }
+        String name = ranges.get(0).variableName;
+        if(ranges.get(0).values != null){
+            Map<String, Integer> strings = new HashMap<>();
+            for(int flow = 0; flow < ranges.size(); flow++){
+                for(String value:ranges.get(flow).values){
+                    if(!strings.containsKey(value)){
+                        strings.put(value, flow);
+                    }
+                }
+            }
+            return new ConditionIndex(name, null, null, strings);
+        }
+        TreeSet<Long> points = new TreeSet<>();
+        for(Ranges r:ranges){
+            for(long[] interval:r.intervals){
+                points.add(interval[0]);
+                if(interval[1] != Long.MAX_VALUE){
+                    points.add(interval[1] + 1);
+                }
+            }
+        }
+        long[] starts = new long[points.size()];
+        int[] flows = new int[points.size()];
+        int i = 0;
+        for(long start:points){
+            starts[i] = start;
+            flows[i] = first(ranges, start);
+            i++;
+        }
+        return new ConditionIndex(name, starts, flows, null);
+    }
+
+    /**小区间内的值满足的条件相同，用起点判断*/
+    private static int first(List<Ranges> ranges, long value){
+        for(int flow = 0; flow < ranges.size(); flow++){
+            for(long[] interval:ranges.get(flow).intervals){
+                if(interval[0] <= value && value <= interval[1]){
+                    return flow;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    /**一个条件满足的取值：整数闭区间的并集，或字符串的集合*/
+    private static final class Ranges {
+        final String variableName;
+        final List<long[]> intervals;
+        final Set<String> values;
+
+        Ranges(String variableName, List<long[]> intervals, Set<String> values) {
+            this.variableName = variableName;
+            this.intervals = intervals;
+            this.values = values;
+        }
+
+        boolean compatible(Ranges other){
+            return variableName.equals(other.variableName) && (values == null) == (other.values == null);
+        }
+    }
+
+    /**
+     * 把条件转换为取值范围，支持：变量与整数常量比较、变量与字符串常量相等、以及它们的&&、||
+     * @return 不支持时返回null
+     */
+    private static Ranges ranges(ConditionNode node){
+        if(node instanceof ConditionNode.CompareLong){
+            ConditionNode.CompareLong compare = (ConditionNode.CompareLong) node;
+            return new Ranges(compare.variable.name, intervals(compare), null);
+        }
+        if(node instanceof ConditionNode.EqualsString){
+            ConditionNode.EqualsString equals = (ConditionNode.EqualsString) node;
+            if(equals.negate){
+                return null;
+            }
+            return new Ranges(equals.variable.name, null, new HashSet<>(Collections.singleton(equals.constant)));
+        }
+        boolean and = node instanceof ConditionNode.And;
+        if(!and && !(node instanceof ConditionNode.Or)){
+            return null;
+        }
+        Ranges left = ranges(and ? ((ConditionNode.And) node).left : ((ConditionNode.Or) node).left);
+        Ranges right = ranges(and ? ((ConditionNode.And) node).right : ((ConditionNode.Or) node).right);
+        if(left == null || right == null || !left.compatible(right)){
+            return null;
+        }
+        if(left.values != null){
+            Set<String> values = new HashSet<>(left.values);
+            if(and){
+                values.retainAll(right.values);
+            }else{
+                values.addAll(right.values);
+            }
+            return new Ranges(left.variableName, null, values);
+        }
+        List<long[]> intervals = new ArrayList<>();
+        if(and){
+            for(long[] a:left.intervals){
+                for(long[] b:right.intervals){
+                    long lo = Math.max(a[0], b[0]), hi = Math.min(a[1], b[1]);
+                    if(lo <= hi){
+                        intervals.add(new long[]{lo, hi});
+                    }
+                }
+            }
+        }else{
+            intervals.addAll(left.intervals);
+            intervals.addAll(right.intervals);
+        }
+        return new Ranges(left.variableName, intervals, null);
+    }
+
+    private static List<long[]> intervals(ConditionNode.CompareLong compare){
+        long c = compare.constant;
+        ConditionNode.Operator operator = compare.operator;
+        if(compare.constantFirst){
+            //500<=money 即 money>=500
+            switch (operator){
+                case LT: operator = ConditionNode.Operator.GT; break;
+                case LE: operator = ConditionNode.Operator.GE; break;
+                case GT: operator = ConditionNode.Operator.LT; break;
+                case GE: operator = ConditionNode.Operator.LE; break;
+                default:
+            }
+        }
+        List<long[]> intervals = new ArrayList<>();
+        switch (operator){
+            case EQ:
+                intervals.add(new long[]{c, c});
+                break;
+            case NE:
+                if(c != Long.MIN_VALUE) intervals.add(new long[]{Long.MIN_VALUE, c - 1});
+                if(c != Long.MAX_VALUE) intervals.add(new long[]{c + 1, Long.MAX_VALUE});
+                break;
+            case LT:
+                if(c != Long.MIN_VALUE) intervals.add(new long[]{Long.MIN_VALUE, c - 1});
+                break;
+            case LE:
+                intervals.add(new long[]{Long.MIN_VALUE, c});
+                break;
+            case GT:
+                if(c != Long.MAX_VALUE) intervals.add(new long[]{c + 1, Long.MAX_VALUE});
+                break;
+            default:
+                intervals.add(new long[]{c, Long.MAX_VALUE});
+        }
+        return intervals;
+    }
+}
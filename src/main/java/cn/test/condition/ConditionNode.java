@@ -0,0 +1,240 @@
+package cn.test.condition;
+
+import org.activiti.engine.delegate.VariableScope;
+import org.activiti.engine.impl.juel.BooleanOperations;
+import org.activiti.engine.impl.juel.NumberOperations;
+import org.activiti.engine.impl.juel.TypeConverter;
+
+import java.io.Serializable;
+
+/**
+ * 编译后的条件表达式节点，由ConditionCompiler从JUEL语法树生成
+ * 运算和类型转换直接调用JUEL的BooleanOperations、NumberOperations，结果与解释执行相同
+ */
+abstract class ConditionNode implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    static final TypeConverter CONVERTER = TypeConverter.DEFAULT;
+
+    /**
+     * @param scope 流程变量所在的执行对象
+     * @throws Unresolved 变量不存在（由原来的表达式处理）
+     */
+    abstract Object eval(VariableScope scope);
+
+    boolean evalBoolean(VariableScope scope){
+        return CONVERTER.convert(eval(scope), Boolean.class);
+    }
+
+    /**变量不存在，交给原来的JUEL表达式求值（可能是Spring bean，或者抛出Unknown property）*/
+    static final class Unresolved extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        static final Unresolved INSTANCE = new Unresolved();
+
+        private Unresolved() {
+            super("unresolved variable", null, false, false);
+        }
+    }
+
+    static final class Literal extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final Object value;
+
+        Literal(Object value) {
+            this.value = value;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return value;
+        }
+    }
+
+    static final class Variable extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final String name;
+
+        Variable(String name) {
+            this.name = name;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            Object value = scope.getVariable(name);
+            if(value == null && !scope.hasVariable(name)){
+                throw Unresolved.INSTANCE;
+            }
+            return value;
+        }
+    }
+
+    static final class And extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final ConditionNode left, right;
+
+        And(ConditionNode left, ConditionNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return left.evalBoolean(scope) && right.evalBoolean(scope);
+        }
+    }
+
+    static final class Or extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final ConditionNode left, right;
+
+        Or(ConditionNode left, ConditionNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return left.evalBoolean(scope) || right.evalBoolean(scope);
+        }
+    }
+
+    static final class Not extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final ConditionNode child;
+
+        Not(ConditionNode child) {
+            this.child = child;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return !child.evalBoolean(scope);
+        }
+    }
+
+    enum Operator {
+        EQ, NE, LT, LE, GT, GE, ADD, SUB, MUL, DIV, MOD
+    }
+
+    static final class Binary extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final Operator operator;
+        final ConditionNode left, right;
+
+        Binary(Operator operator, ConditionNode left, ConditionNode right) {
+            this.operator = operator;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return apply(operator, left.eval(scope), right.eval(scope));
+        }
+    }
+
+    /**
+     * 变量与整数常量比较（如money>=500）：变量是整数时直接比较long，其他情况按JUEL的规则
+     */
+    static final class CompareLong extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final Operator operator;
+        final Variable variable;
+        final Long constant;
+        /**常量是否在左边（如500<=money）*/
+        final boolean constantFirst;
+
+        CompareLong(Operator operator, Variable variable, Long constant, boolean constantFirst) {
+            this.operator = operator;
+            this.variable = variable;
+            this.constant = constant;
+            this.constantFirst = constantFirst;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            Object value = variable.eval(scope);
+            if(value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte){
+                long a = ((Number) value).longValue(), b = constant;
+                if(constantFirst){
+                    long t = a; a = b; b = t;
+                }
+                switch (operator){
+                    case EQ: return a == b;
+                    case NE: return a != b;
+                    case LT: return a < b;
+                    case LE: return a <= b;
+                    case GT: return a > b;
+                    default: return a >= b;
+                }
+            }
+            return constantFirst ? apply(operator, constant, value) : apply(operator, value, constant);
+        }
+    }
+
+    /**变量与字符串常量相等比较（如message=='重要'）：变量是字符串时直接equals*/
+    static final class EqualsString extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final Variable variable;
+        final String constant;
+        final boolean negate;
+
+        EqualsString(Variable variable, String constant, boolean negate) {
+            this.variable = variable;
+            this.constant = constant;
+            this.negate = negate;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            Object value = variable.eval(scope);
+            boolean equal = value instanceof String ? constant.equals(value) : BooleanOperations.eq(CONVERTER, value, constant);
+            return equal != negate;
+        }
+    }
+
+    static final class Negate extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final ConditionNode child;
+
+        Negate(ConditionNode child) {
+            this.child = child;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return NumberOperations.neg(CONVERTER, child.eval(scope));
+        }
+    }
+
+    static final class Empty extends ConditionNode {
+        private static final long serialVersionUID = 1L;
+        final ConditionNode child;
+
+        Empty(ConditionNode child) {
+            this.child = child;
+        }
+
+        @Override
+        Object eval(VariableScope scope) {
+            return BooleanOperations.empty(CONVERTER, child.eval(scope));
+        }
+    }
+
+    static Object apply(Operator operator, Object a, Object b){
+        switch (operator){
+            case EQ: return BooleanOperations.eq(CONVERTER, a, b);
+            case NE: return BooleanOperations.ne(CONVERTER, a, b);
+            case LT: return BooleanOperations.lt(CONVERTER, a, b);
+            case LE: return BooleanOperations.le(CONVERTER, a, b);
+            case GT: return BooleanOperations.gt(CONVERTER, a, b);
+            case GE: return BooleanOperations.ge(CONVERTER, a, b);
+            case ADD: return NumberOperations.add(CONVERTER, a, b);
+            case SUB: return NumberOperations.sub(CONVERTER, a, b);
+            case MUL: return NumberOperations.mul(CONVERTER, a, b);
+            case DIV: return NumberOperations.div(CONVERTER, a, b);
+            default: return NumberOperations.mod(CONVERTER, a, b);
+        }
+    }
+}
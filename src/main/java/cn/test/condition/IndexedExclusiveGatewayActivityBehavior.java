@@ -0,0 +1,34 @@
+package cn.test.condition;
+
+import org.activiti.engine.impl.bpmn.behavior.ExclusiveGatewayActivityBehavior;
+import org.activiti.engine.impl.pvm.PvmTransition;
+import org.activiti.engine.impl.pvm.delegate.ActivityExecution;
+
+/**
+ * 用ConditionIndex选择出口的排他网关
+ * 变量的值能用索引判断并且有满足的顺序流时直接离开；否则（变量不存在、类型不同、没有满足的顺序流）按引擎原来的方式逐个求值，
+ * 默认顺序流和找不到出口时的异常都与原来相同
+ */
+public class IndexedExclusiveGatewayActivityBehavior extends ExclusiveGatewayActivityBehavior {
+
+    private static final long serialVersionUID = 1L;
+
+    private final ConditionIndex index;
+    /**与索引中的序号对应的顺序流*/
+    private final PvmTransition[] transitions;
+
+    IndexedExclusiveGatewayActivityBehavior(ConditionIndex index, PvmTransition[] transitions) {
+        this.index = index;
+        this.transitions = transitions;
+    }
+
+    @Override
+    protected void leave(ActivityExecution execution) {
+        Integer flow = index.lookup(execution.getVariable(index.variableName));
+        if(flow == null || flow == ConditionIndex.NONE){
+            super.leave(execution);
+            return;
+        }
+        execution.take(transitions[flow]);
+    }
+}
@@ -0,0 +1,96 @@
+package cn.test.condition;
+
+import org.activiti.bpmn.model.BaseElement;
+import org.activiti.bpmn.model.Process;
+import org.activiti.engine.impl.bpmn.behavior.ExclusiveGatewayActivityBehavior;
+import org.activiti.engine.impl.bpmn.parser.BpmnParse;
+import org.activiti.engine.impl.bpmn.parser.handler.AbstractBpmnParseHandler;
+import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.pvm.PvmTransition;
+import org.activiti.engine.impl.pvm.process.ActivityImpl;
+import org.activiti.engine.impl.pvm.process.ScopeImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 流程解析完成后（顺序流在所有活动之后解析），为出口条件可以建立索引的排他网关换上IndexedExclusiveGatewayActivityBehavior
+ * 在activiti.cfg.xml中注册为postBpmnParseHandlers，放在CompiledConditionParseHandler之后
+ *
+ * 建立索引的条件：出口不少于minFlows个；除没有条件的默认顺序流外，每个出口都是编译后的条件，并且是同一个变量的范围或相等比较；没有跳过表达式
+ */
+public class IndexedGatewayParseHandler extends AbstractBpmnParseHandler<Process> {
+    private Logger logger = LoggerFactory.getLogger(IndexedGatewayParseHandler.class);
+
+    /**出口数少于此值时逐个求值更快*/
+    private int minFlows = 2;
+
+    @Override
+    protected Class<? extends BaseElement> getHandledType() {
+        return Process.class;
+    }
+
+    @Override
+    protected void executeParse(BpmnParse bpmnParse, Process process) {
+        ProcessDefinitionEntity processDefinition = bpmnParse.getProcessDefinition(process.getId());
+        if(processDefinition != null){
+            index(processDefinition);
+        }
+    }
+
+    /**包括子流程中的网关*/
+    private void index(ScopeImpl scope){
+        for(ActivityImpl activity:scope.getActivities()){
+            if(activity.getActivityBehavior() != null && activity.getActivityBehavior().getClass() == ExclusiveGatewayActivityBehavior.class){
+                index(activity);
+            }
+            index((ScopeImpl) activity);
+        }
+    }
+
+    private void index(ActivityImpl gateway){
+        String defaultFlow = (String) gateway.getProperty("default");
+        List<CompiledCondition> conditions = new ArrayList<>();
+        List<PvmTransition> transitions = new ArrayList<>();
+        for(PvmTransition transition:gateway.getOutgoingTransitions()){
+            if(transition.getSkipExpression() != null){
+                return;
+            }
+            Object condition = transition.getProperty(BpmnParse.PROPERTYNAME_CONDITION);
+            if(condition == null && transition.getId().equals(defaultFlow)){
+                continue;
+            }
+            if(!(condition instanceof CompiledCondition)){
+                return;
+            }
+            conditions.add((CompiledCondition) condition);
+            transitions.add(transition);
+        }
+        if(conditions.size() < minFlows){
+            return;
+        }
+        ConditionIndex index = ConditionIndex.build(conditions);
+        if(index == null){
+            return;
+        }
+        gateway.setActivityBehavior(new IndexedExclusiveGatewayActivityBehavior(index, transitions.toArray(new PvmTransition[transitions.size()])));
+        logger.info("排他网关使用条件索引。流程定义：{} ；网关：{} ；变量：{} ；出口数：{}",
+                gateway.getProcessDefinition().getKey(),gateway.getId(),index.variableName,conditions.size());
+    }
+
+    /**DefinitionWarmup用来区分解析结果*/
+    @Override
+    public String toString() {
+        return "IndexedGatewayParseHandler[minFlows=" + minFlows + "]";
+    }
+
+    public int getMinFlows() {
+        return minFlows;
+    }
+
+    public void setMinFlows(int minFlows) {
+        this.minFlows = minFlows;
+    }
+}
@@ -0,0 +1,86 @@
+package cn.test.correlation;
+
+import org.activiti.engine.ActivitiObjectNotFoundException;
+import org.activiti.engine.impl.ExecutionQueryImpl;
+import org.activiti.engine.impl.bpmn.behavior.ReceiveTaskActivityBehavior;
+import org.activiti.engine.impl.cmd.SignalCmd;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.runtime.Execution;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 按业务key和活动id找到等待中的接收任务并继续执行（signal），多个关联在同一个命令上下文（同一个事务）中执行
+ * 每个关联都用一次执行对象查询（按业务key和活动id）；WaitingExecutionIndex只是提示：索引中的执行对象排在前面，
+ * 过期的条目删除。本节点的索引不包含其他节点上进入等待的执行对象，所以不能因为索引中有就跳过查询，继续执行的是两者的并集
+ * 任意一个关联找不到等待中的接收任务时抛出ActivitiObjectNotFoundException，整个事务回滚
+ */
+public class CorrelateCmd implements Command<List<List<String>>> {
+
+    private final WaitingExecutionIndex index;
+    private final List<Correlation> correlations;
+
+    /**
+     * @param index 等待中的执行对象的索引
+     * @param correlations 关联
+     */
+    public CorrelateCmd(WaitingExecutionIndex index, List<Correlation> correlations) {
+        this.index = index;
+        this.correlations = correlations;
+    }
+
+    /**
+     * @return 每个关联继续执行的执行对象id（与correlations的顺序相同）
+     */
+    @Override
+    public List<List<String>> execute(CommandContext commandContext) {
+        List<List<String>> signaled = new ArrayList<>(correlations.size());
+        for(Correlation correlation:correlations){
+            signaled.add(correlate(commandContext, correlation));
+        }
+        return signaled;
+    }
+
+    private List<String> correlate(CommandContext commandContext, Correlation correlation){
+        Set<String> executionIds = new LinkedHashSet<>();
+        for(String executionId:index.find(correlation.getBusinessKey(), correlation.getActivityId())){
+            ExecutionEntity execution = commandContext.getExecutionEntityManager().findExecutionById(executionId);
+            if(isWaiting(execution, correlation)){
+                executionIds.add(executionId);
+            }else{
+                index.remove(executionId, null);
+            }
+        }
+        List<Execution> executions = new ExecutionQueryImpl(commandContext)
+                .processInstanceBusinessKey(correlation.getBusinessKey())
+                .activityId(correlation.getActivityId())
+                .list();
+        for(Execution e:executions){
+            if(isWaiting((ExecutionEntity) e, correlation)){
+                executionIds.add(e.getId());
+            }
+        }
+        if(executionIds.isEmpty()){
+            throw new ActivitiObjectNotFoundException("没有等待中的接收任务。" + correlation, Execution.class);
+        }
+        for(String executionId:executionIds){
+            //直接执行命令，不再经过拦截器链
+            new SignalCmd(executionId, null, null, correlation.getVariables()).execute(commandContext);
+        }
+        return new ArrayList<>(executionIds);
+    }
+
+    /**执行对象仍在该接收任务上等待，并且属于该业务key的流程实例*/
+    private static boolean isWaiting(ExecutionEntity execution, Correlation correlation){
+        return execution != null && execution.isActive()
+                && correlation.getActivityId().equals(execution.getActivityId())
+                && execution.getActivity() != null
+                && execution.getActivity().getActivityBehavior() instanceof ReceiveTaskActivityBehavior
+                && correlation.getBusinessKey().equals(execution.getProcessInstance().getBusinessKey());
+    }
+}
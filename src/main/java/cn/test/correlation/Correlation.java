@@ -0,0 +1,41 @@
+package cn.test.correlation;
+
+import java.util.Map;
+
+/**
+ * 一次关联：按业务key和接收任务的活动id找到等待中的执行对象，设置流程变量后继续执行
+ */
+public class Correlation {
+
+    private final String businessKey;
+    private final String activityId;
+    private final Map<String, Object> variables;
+
+    /**
+     * @param businessKey 流程实例的业务key
+     * @param activityId 接收任务的活动id，对应.bpmn文件中的活动节点id的属性值
+     * @param variables 继续执行前设置的流程变量，可以为null
+     */
+    public Correlation(String businessKey, String activityId, Map<String, Object> variables) {
+        this.businessKey = businessKey;
+        this.activityId = activityId;
+        this.variables = variables;
+    }
+
+    public String getBusinessKey() {
+        return businessKey;
+    }
+
+    public String getActivityId() {
+        return activityId;
+    }
+
+    public Map<String, Object> getVariables() {
+        return variables;
+    }
+
+    @Override
+    public String toString() {
+        return "Correlation{业务key=" + businessKey + ", 活动id=" + activityId + ", 变量=" + variables + "}";
+    }
+}
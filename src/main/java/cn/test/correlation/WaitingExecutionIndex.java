@@ -0,0 +1,198 @@
+package cn.test.correlation;
+
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineLifecycleListener;
+import org.activiti.engine.delegate.event.ActivitiActivityEvent;
+import org.activiti.engine.delegate.event.ActivitiEntityEvent;
+import org.activiti.engine.delegate.event.ActivitiEvent;
+import org.activiti.engine.delegate.event.ActivitiEventListener;
+import org.activiti.engine.delegate.event.ActivitiEventType;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * 等待中的接收任务的索引：业务key + 活动id -> 执行对象id
+ * 引擎启动时从ACT_RU_EXECUTION全量加载一次（没有用户任务的活动执行对象），之后根据接收任务的开始、离开和执行对象删除事件增量维护
+ * 事件在事务提交后才生效，回滚的事务不影响索引
+ *
+ * 索引只是提示：关联时仍检查执行对象是否在该活动上等待，过期的条目直接删除；
+ * 关联总是查询数据库（其他节点上进入等待的执行对象不在本节点的索引中），索引中的执行对象排在前面
+ *
+ * 在activiti.cfg.xml中同时注册为eventListeners和processEngineLifecycleListener
+ */
+public class WaitingExecutionIndex implements ActivitiEventListener, ProcessEngineLifecycleListener {
+    private Logger logger = LoggerFactory.getLogger(WaitingExecutionIndex.class);
+
+    private static final String RECEIVE_TASK = "receiveTask";
+
+    /**业务key + 活动id -> 执行对象id，只在持有this锁时访问*/
+    private final Map<String, Set<String>> executionsByKey = new HashMap<>();
+    /**执行对象id -> 业务key + 活动id*/
+    private final Map<String, String> keysByExecution = new HashMap<>();
+
+    /**
+     * 查找等待中的执行对象
+     * @param businessKey 业务key
+     * @param activityId 活动id
+     * @return 执行对象id，没有时返回空集合
+     */
+    public synchronized Set<String> find(String businessKey, String activityId){
+        Set<String> executionIds = executionsByKey.get(key(businessKey, activityId));
+        return executionIds == null ? Collections.<String>emptySet() : new HashSet<>(executionIds);
+    }
+
+    /**索引中的执行对象数*/
+    public synchronized int size(){
+        return keysByExecution.size();
+    }
+
+    @Override
+    public void onEvent(ActivitiEvent event) {
+        final String executionId = event.getExecutionId();
+        if(event.getType() == ActivitiEventType.ACTIVITY_STARTED){
+            ActivitiActivityEvent activityEvent = (ActivitiActivityEvent) event;
+            if(!RECEIVE_TASK.equals(activityEvent.getActivityType())){
+                return;
+            }
+            CommandContext commandContext = Context.getCommandContext();
+            ExecutionEntity execution = commandContext.getExecutionEntityManager().findExecutionById(executionId);
+            String businessKey = execution == null ? null : execution.getProcessInstance().getBusinessKey();
+            if(businessKey == null){
+                return;
+            }
+            final String key = key(businessKey, activityEvent.getActivityId());
+            afterCommit(commandContext, new TransactionListener() {
+                @Override
+                public void execute(CommandContext commandContext) {
+                    add(executionId, key);
+                }
+            });
+        }else if(event.getType() == ActivitiEventType.ACTIVITY_COMPLETED || event.getType() == ActivitiEventType.ACTIVITY_SIGNALED){
+            if(!(event instanceof ActivitiActivityEvent)){
+                return;
+            }
+            final String activityId = ((ActivitiActivityEvent) event).getActivityId();
+            afterCommit(Context.getCommandContext(), new TransactionListener() {
+                @Override
+                public void execute(CommandContext commandContext) {
+                    remove(executionId, activityId);
+                }
+            });
+        }else if(event.getType() == ActivitiEventType.ENTITY_DELETED && event instanceof ActivitiEntityEvent
+                && ((ActivitiEntityEvent) event).getEntity() instanceof ExecutionEntity){
+            final String id = ((ExecutionEntity) ((ActivitiEntityEvent) event).getEntity()).getId();
+            afterCommit(Context.getCommandContext(), new TransactionListener() {
+                @Override
+                public void execute(CommandContext commandContext) {
+                    remove(id, null);
+                }
+            });
+        }
+    }
+
+    private static void afterCommit(CommandContext commandContext, TransactionListener listener){
+        if(commandContext == null){
+            listener.execute(null);
+            return;
+        }
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, listener);
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        return false;
+    }
+
+    @Override
+    public void onProcessEngineBuilt(final ProcessEngine processEngine) {
+        final String executionTable = processEngine.getManagementService().getTableName(ExecutionEntity.class);
+        final String taskTable = processEngine.getManagementService().getTableName(Task.class);
+        processEngine.getManagementService().executeCommand(new Command<Void>() {
+            @Override
+            public Void execute(CommandContext commandContext) {
+                rebuild(commandContext.getDbSqlSession().getSqlSession().getConnection(), executionTable, taskTable);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void onProcessEngineClosed(ProcessEngine processEngine) {
+        clear();
+    }
+
+    private synchronized void clear(){
+        executionsByKey.clear();
+        keysByExecution.clear();
+    }
+
+    /**
+     * 从运行时表全量重建索引（不区分活动类型，关联时再检查是否是接收任务）
+     */
+    private synchronized void rebuild(Connection connection, String executionTable, String taskTable){
+        clear();
+        try(PreparedStatement ps = connection.prepareStatement("SELECT E.ID_, E.ACT_ID_, P.BUSINESS_KEY_ FROM " + executionTable + " E"
+                + " JOIN " + executionTable + " P ON P.ID_ = E.PROC_INST_ID_"
+                + " WHERE E.IS_ACTIVE_ = ? AND E.ACT_ID_ IS NOT NULL AND P.BUSINESS_KEY_ IS NOT NULL"
+                + " AND NOT EXISTS (SELECT 1 FROM " + taskTable + " T WHERE T.EXECUTION_ID_ = E.ID_)")){
+            ps.setBoolean(1, true);
+            try(ResultSet rs = ps.executeQuery()){
+                while(rs.next()){
+                    add(rs.getString(1), key(rs.getString(3), rs.getString(2)));
+                }
+            }
+        }catch(SQLException e){
+            logger.error("加载等待中的执行对象失败",e);
+            clear();
+            return;
+        }
+        logger.info("加载等待中的执行对象。执行对象数：{} ；业务key+活动数：{}",keysByExecution.size(),executionsByKey.size());
+    }
+
+    private synchronized void add(String executionId, String key){
+        remove(executionId, null);
+        Set<String> executionIds = executionsByKey.get(key);
+        if(executionIds == null){
+            executionIds = new HashSet<>(2);
+            executionsByKey.put(key, executionIds);
+        }
+        executionIds.add(executionId);
+        keysByExecution.put(executionId, key);
+    }
+
+    /**
+     * 删除执行对象的条目
+     * @param activityId 不为null时只在执行对象仍在该活动上时删除（同一个执行对象可能已经进入下一个接收任务）
+     */
+    synchronized void remove(String executionId, String activityId){
+        String key = keysByExecution.get(executionId);
+        if(key == null || (activityId != null && !key.endsWith("\n" + activityId))){
+            return;
+        }
+        keysByExecution.remove(executionId);
+        Set<String> executionIds = executionsByKey.get(key);
+        if(executionIds != null){
+            executionIds.remove(executionId);
+            if(executionIds.isEmpty()){
+                executionsByKey.remove(key);
+            }
+        }
+    }
+
+    private static String key(String businessKey, String activityId){
+        return businessKey + "\n" + activityId;
+    }
+}
@@ -1,5 +1,7 @@
 package cn.test.d_processVariables;
 
+import cn.test.variable.Tag;
+
 import java.io.Serializable;
 
 public class Person implements Serializable {
@@ -11,9 +13,12 @@ public class Person implements Serializable {
 	 */
 	private static final long serialVersionUID = 6757393795687480331L;
 	
+	@Tag(1)
 	private Integer id;//编号
+	@Tag(2)
 	private String name;//姓名
 	
+	@Tag(3)
 	private String education;
 	
 	public String getEducation() {
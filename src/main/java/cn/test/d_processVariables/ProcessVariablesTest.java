@@ -67,6 +67,7 @@ ProcessEngine processEngine = ProcessEngines.getDefaultProcessEngine();
 		 * 解决方案：在Person对象中添加：
 		 * 		private static final long serialVersionUID = 6757393795687480331L;
 		 *      同时实现Serializable 
+		 * activiti.cfg.xml中为Person配置了compact变量类型后，按@Tag编号保存字段，增加、删除字段不影响读取旧值
 		 * */
 		Person p = new Person();
 		p.setId(20);
@@ -0,0 +1,132 @@
+package cn.test.datasource;
+
+import com.zaxxer.hikari.metrics.MetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 连接池的指标：获取连接的等待时间、连接占用时间、获取超时次数，以及活动、空闲连接数和等待连接的线程数
+ * 在activiti.cfg.xml中设置为dataSource的metricsTrackerFactory，连接池关闭时打印一次
+ */
+public class PoolMetrics implements MetricsTrackerFactory {
+    private Logger logger = LoggerFactory.getLogger(PoolMetrics.class);
+
+    private final AtomicLong acquiredCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong totalUsageMillis = new AtomicLong();
+    private final AtomicLong maxUsageMillis = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+
+    private volatile String poolName;
+    private volatile PoolStats poolStats;
+
+    @Override
+    public MetricsTracker create(String poolName, PoolStats poolStats) {
+        this.poolName = poolName;
+        this.poolStats = poolStats;
+        return new MetricsTracker(){
+            @Override
+            public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+                acquiredCount.incrementAndGet();
+                totalWaitNanos.addAndGet(elapsedAcquiredNanos);
+                updateMax(maxWaitNanos, elapsedAcquiredNanos);
+            }
+
+            @Override
+            public void recordConnectionUsageMillis(long elapsedBorrowedMillis) {
+                totalUsageMillis.addAndGet(elapsedBorrowedMillis);
+                updateMax(maxUsageMillis, elapsedBorrowedMillis);
+            }
+
+            @Override
+            public void recordConnectionTimeout() {
+                timeoutCount.incrementAndGet();
+            }
+
+            @Override
+            public void close() {
+                logger.info("关闭连接池。{}",PoolMetrics.this);
+            }
+        };
+    }
+
+    private static void updateMax(AtomicLong max, long value){
+        for(long current = max.get(); value > current; current = max.get()){
+            if(max.compareAndSet(current, value)){
+                return;
+            }
+        }
+    }
+
+    /**获取连接的次数*/
+    public long getAcquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /**平均获取连接的等待时间（微秒）*/
+    public double getAverageWaitMicros(){
+        long count = acquiredCount.get();
+        return count == 0 ? 0 : (double) TimeUnit.NANOSECONDS.toMicros(totalWaitNanos.get()) / count;
+    }
+
+    /**启动以来最长的获取连接的等待时间（毫秒）*/
+    public long getMaxWaitMillis(){
+        return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    /**平均连接占用时间（毫秒）：从获取到归还*/
+    public double getAverageUsageMillis(){
+        long count = acquiredCount.get();
+        return count == 0 ? 0 : (double) totalUsageMillis.get() / count;
+    }
+
+    /**启动以来最长的连接占用时间（毫秒）*/
+    public long getMaxUsageMillis() {
+        return maxUsageMillis.get();
+    }
+
+    /**获取连接超时（connectionTimeout）的次数*/
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**正在使用的连接数*/
+    public int getActiveConnections(){
+        return poolStats == null ? 0 : poolStats.getActiveConnections();
+    }
+
+    /**空闲连接数*/
+    public int getIdleConnections(){
+        return poolStats == null ? 0 : poolStats.getIdleConnections();
+    }
+
+    /**等待连接的线程数*/
+    public int getPendingThreads(){
+        return poolStats == null ? 0 : poolStats.getPendingThreads();
+    }
+
+    /**清零计数，用于按时间段统计*/
+    public void reset(){
+        acquiredCount.set(0);
+        totalWaitNanos.set(0);
+        maxWaitNanos.set(0);
+        totalUsageMillis.set(0);
+        maxUsageMillis.set(0);
+        timeoutCount.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "PoolMetrics{连接池=" + poolName + ", 获取次数=" + getAcquiredCount()
+                + ", 平均等待=" + String.format("%.1f", getAverageWaitMicros()) + "us, 最大等待=" + getMaxWaitMillis()
+                + "ms, 平均占用=" + String.format("%.2f", getAverageUsageMillis()) + "ms, 最大占用=" + getMaxUsageMillis()
+                + "ms, 超时=" + getTimeoutCount() + ", 活动连接=" + getActiveConnections() + ", 空闲连接=" + getIdleConnections()
+                + ", 等待线程=" + getPendingThreads() + "}";
+    }
+}
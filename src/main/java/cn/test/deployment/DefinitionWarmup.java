@@ -0,0 +1,315 @@
+package cn.test.deployment;
+
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineLifecycleListener;
+import org.activiti.engine.impl.ProcessEngineImpl;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.interceptor.CommandExecutor;
+import org.activiti.engine.impl.persistence.deploy.DeploymentCache;
+import org.activiti.engine.impl.persistence.deploy.DeploymentManager;
+import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.persistence.entity.ResourceEntity;
+import org.activiti.engine.parse.BpmnParseHandler;
+import org.activiti.engine.repository.ProcessDefinition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 引擎启动后预热所有最新版本的流程定义：按部署并行解析BPMN，放入引擎的流程定义缓存，避免重启后第一次使用时才解析
+ *
+ * persistModels为true时，把解析好的流程定义序列化到本地目录，文件名为 部署内容摘要-引擎版本-解析处理器.ser；
+ * 下次启动时部署内容相同的直接反序列化，不再解析XML（id、版本、挂起状态等以数据库为准）。文件损坏或不兼容时删除并重新解析
+ */
+public class DefinitionWarmup implements ProcessEngineLifecycleListener {
+    private Logger logger = LoggerFactory.getLogger(DefinitionWarmup.class);
+
+    /**并行解析的线程数*/
+    private int threads = Runtime.getRuntime().availableProcessors();
+    /**等待预热完成的最长时间（秒），超时后不再等待，剩下的流程定义在第一次使用时解析*/
+    private long timeoutSeconds = 60;
+    /**是否把解析好的流程定义保存到本地*/
+    private boolean persistModels = false;
+    /**流程定义的本地缓存目录*/
+    private File cacheDirectory = new File(System.getProperty("user.home"), "activiti-definition-cache");
+
+    @Override
+    public void onProcessEngineBuilt(ProcessEngine processEngine) {
+        long start = System.currentTimeMillis();
+        //按部署分组，同一个部署只解析一次
+        Map<String, List<ProcessDefinition>> byDeployment = new LinkedHashMap<>();
+        for(ProcessDefinition pd:processEngine.getRepositoryService().createProcessDefinitionQuery().latestVersion().list()){
+            List<ProcessDefinition> list = byDeployment.get(pd.getDeploymentId());
+            if(list == null){
+                list = new ArrayList<>();
+                byDeployment.put(pd.getDeploymentId(), list);
+            }
+            list.add(pd);
+        }
+        if(byDeployment.isEmpty()){
+            return;
+        }
+        final CommandExecutor commandExecutor = ((ProcessEngineImpl) processEngine).getProcessEngineConfiguration().getCommandExecutor();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, byDeployment.size())), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "definition-warmup-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        Map<String, Future<Boolean>> futures = new LinkedHashMap<>();
+        for(final Map.Entry<String, List<ProcessDefinition>> e:byDeployment.entrySet()){
+            futures.put(e.getKey(), pool.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return commandExecutor.execute(new Command<Boolean>() {
+                        @Override
+                        public Boolean execute(CommandContext commandContext) {
+                            return warm(commandContext, e.getValue());
+                        }
+                    });
+                }
+            }));
+        }
+        pool.shutdown();
+        int loaded = 0, failed = 0;
+        long deadline = start + TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        for(Map.Entry<String, Future<Boolean>> e:futures.entrySet()){
+            try{
+                if(e.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS)){
+                    loaded++;
+                }
+            }catch(ExecutionException ex){
+                failed++;
+                logger.warn("预热流程定义失败。部署id：{}",e.getKey(),ex.getCause());
+            }catch(TimeoutException ex){
+                logger.warn("预热流程定义超时，剩下的在第一次使用时解析。超时时间：{}s",timeoutSeconds);
+                pool.shutdownNow();
+                break;
+            }catch(InterruptedException ex){
+                Thread.currentThread().interrupt();
+                pool.shutdownNow();
+                break;
+            }
+        }
+        logger.info("预热流程定义。部署数：{} ；从本地缓存加载的部署数：{} ；失败的部署数：{} ；耗时：{}ms",
+                byDeployment.size(),loaded,failed,System.currentTimeMillis() - start);
+    }
+
+    @Override
+    public void onProcessEngineClosed(ProcessEngine processEngine) {
+    }
+
+    /**
+     * 预热一个部署中的流程定义
+     * @return 是否从本地缓存加载
+     */
+    private boolean warm(CommandContext commandContext, List<ProcessDefinition> definitions){
+        DeploymentManager deploymentManager = commandContext.getProcessEngineConfiguration().getDeploymentManager();
+        if(!persistModels){
+            parse(deploymentManager, definitions);
+            return false;
+        }
+        Map<String, ResourceEntity> resources = new HashMap<>();
+        for(ResourceEntity resource:commandContext.getResourceEntityManager().findResourcesByDeploymentId(definitions.get(0).getDeploymentId())){
+            resources.put(resource.getName(), resource);
+        }
+        File file = new File(cacheDirectory, DigestDeployCmd.digest(resources) + "-" + ProcessEngine.VERSION
+                + "-" + parseHandlersKey(commandContext.getProcessEngineConfiguration()) + ".ser");
+        Map<String, ProcessDefinitionEntity> models = read(file);
+        if(models != null && install(deploymentManager.getProcessDefinitionCache(), models, definitions)){
+            return true;
+        }
+        parse(deploymentManager, definitions);
+        models = new LinkedHashMap<>();
+        for(ProcessDefinition pd:definitions){
+            models.put(pd.getKey(), deploymentManager.getProcessDefinitionCache().get(pd.getId()));
+        }
+        write(file, models);
+        return false;
+    }
+
+    /**
+     * 自定义的解析处理器会改变解析结果（如CompiledConditionParseHandler），配置变化后不使用旧文件
+     * 处理器有影响解析结果的属性时，在toString中返回这些属性（如ConcurrentBranchParseHandler的流程key）
+     */
+    private static String parseHandlersKey(ProcessEngineConfigurationImpl configuration){
+        StringBuilder sb = new StringBuilder();
+        for(List<BpmnParseHandler> handlers:Arrays.asList(configuration.getPreBpmnParseHandlers(),
+                configuration.getCustomDefaultBpmnParseHandlers(), configuration.getPostBpmnParseHandlers())){
+            sb.append('|');
+            if(handlers != null){
+                for(BpmnParseHandler handler:handlers){
+                    sb.append(handler.getClass().getName());
+                    if(overridesToString(handler)){
+                        sb.append(handler);
+                    }
+                    sb.append(',');
+                }
+            }
+        }
+        return Integer.toHexString(sb.toString().hashCode());
+    }
+
+    private static boolean overridesToString(Object handler){
+        try{
+            return handler.getClass().getMethod("toString").getDeclaringClass() != Object.class;
+        }catch(NoSuchMethodException e){
+            return false;
+        }
+    }
+
+    /**第一次查找时引擎解析整个部署并放入缓存*/
+    private static void parse(DeploymentManager deploymentManager, List<ProcessDefinition> definitions){
+        for(ProcessDefinition pd:definitions){
+            deploymentManager.findDeployedProcessDefinitionById(pd.getId());
+        }
+    }
+
+    /**
+     * 把反序列化的流程定义放入引擎缓存，数据库中的字段以数据库为准
+     * @return 缓存文件中缺少某个流程定义时不放入，返回false
+     */
+    private static boolean install(DeploymentCache<ProcessDefinitionEntity> cache, Map<String, ProcessDefinitionEntity> models, List<ProcessDefinition> definitions){
+        for(ProcessDefinition pd:definitions){
+            if(models.get(pd.getKey()) == null){
+                return false;
+            }
+        }
+        for(ProcessDefinition pd:definitions){
+            ProcessDefinitionEntity model = models.get(pd.getKey());
+            model.setId(pd.getId());
+            model.setVersion(pd.getVersion());
+            model.setDeploymentId(pd.getDeploymentId());
+            model.setTenantId(pd.getTenantId());
+            model.setRevision(((ProcessDefinitionEntity) pd).getRevision());
+            model.setSuspensionState(((ProcessDefinitionEntity) pd).getSuspensionState());
+            cache.add(pd.getId(), model);
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, ProcessDefinitionEntity> read(File file){
+        if(!file.exists()){
+            return null;
+        }
+        try(ObjectInputStream in = new ModelInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            return (Map<String, ProcessDefinitionEntity>) in.readObject();
+        }catch(IOException | ClassNotFoundException | ClassCastException e){
+            logger.warn("流程定义缓存文件不可用，重新解析。文件：{} ；原因：{}",file,e.toString());
+            file.delete();
+            return null;
+        }
+    }
+
+    /**
+     * 只反序列化流程定义用到的类：org.activiti.*、cn.test.*、JDK的集合和值类型，其他类拒绝（文件视为不可用）
+     */
+    private static class ModelInputStream extends ObjectInputStream {
+
+        private static final Set<String> JDK_CLASSES = new HashSet<>(Arrays.asList(
+                "java.lang.String", "java.lang.Boolean", "java.lang.Character", "java.lang.Number",
+                "java.lang.Byte", "java.lang.Short", "java.lang.Integer", "java.lang.Long",
+                "java.lang.Float", "java.lang.Double", "java.lang.Enum", "java.lang.Object",
+                "java.math.BigInteger", "java.math.BigDecimal", "java.util.Date",
+                "java.util.ArrayList", "java.util.LinkedList", "java.util.Arrays$ArrayList",
+                "java.util.HashMap", "java.util.LinkedHashMap", "java.util.TreeMap", "java.util.IdentityHashMap",
+                "java.util.HashSet", "java.util.LinkedHashSet", "java.util.TreeSet",
+                "java.util.EnumMap", "java.util.EnumSet$SerializationProxy"));
+
+        ModelInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if(!isAllowed(desc.getName())){
+                throw new InvalidClassException(desc.getName(), "not allowed in definition cache file");
+            }
+            return super.resolveClass(desc);
+        }
+
+        private static boolean isAllowed(String name){
+            //数组按元素类型判断，基本类型数组（如[B）直接允许
+            int dimensions = 0;
+            while(name.charAt(dimensions) == '['){
+                dimensions++;
+            }
+            if(dimensions > 0){
+                String element = name.substring(dimensions);
+                if(element.length() == 1){
+                    return true;
+                }
+                if(!element.startsWith("L") || !element.endsWith(";")){
+                    return false;
+                }
+                name = element.substring(1, element.length() - 1);
+            }
+            return name.startsWith("org.activiti.") || name.startsWith("cn.test.")
+                    || name.startsWith("java.util.Collections$") || JDK_CLASSES.contains(name);
+        }
+    }
+
+    /**先写临时文件再改名，并发启动的节点不会读到写了一半的文件*/
+    private void write(File file, Map<String, ProcessDefinitionEntity> models){
+        try{
+            Files.createDirectories(cacheDirectory.toPath());
+            Path tmp = Files.createTempFile(cacheDirectory.toPath(), file.getName(), ".tmp");
+            try{
+                try(ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))){
+                    out.writeObject(models);
+                }
+                Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }finally{
+                Files.deleteIfExists(tmp);
+            }
+        }catch(IOException e){
+            //只影响下次启动的速度
+            logger.warn("写入流程定义缓存文件失败。文件：{} ；原因：{}",file,e.toString());
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public long getTimeoutSeconds() {
+        return timeoutSeconds;
+    }
+
+    public void setTimeoutSeconds(long timeoutSeconds) {
+        this.timeoutSeconds = timeoutSeconds;
+    }
+
+    public boolean isPersistModels() {
+        return persistModels;
+    }
+
+    public void setPersistModels(boolean persistModels) {
+        this.persistModels = persistModels;
+    }
+
+    public File getCacheDirectory() {
+        return cacheDirectory;
+    }
+
+    public void setCacheDirectory(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+}
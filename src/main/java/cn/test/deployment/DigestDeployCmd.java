@@ -0,0 +1,112 @@
+package cn.test.deployment;
+
+import org.activiti.engine.impl.DeploymentQueryImpl;
+import org.activiti.engine.impl.Page;
+import org.activiti.engine.impl.cmd.DeployCmd;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.DeploymentEntity;
+import org.activiti.engine.impl.persistence.entity.ResourceEntity;
+import org.activiti.engine.impl.repository.DeploymentBuilderImpl;
+import org.activiti.engine.repository.Deployment;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * 部署命令：计算部署中每个资源的SHA-256摘要，与同名（同租户）最新部署的资源摘要相同时不再解析和插入，直接返回最新部署
+ * 没有名称的部署不比较，按原来的方式部署
+ */
+public class DigestDeployCmd<T> extends DeployCmd<T> {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger logger = LoggerFactory.getLogger(DigestDeployCmd.class);
+
+    /**部署id -> 资源摘要，由DigestRepositoryService持有，避免重复读取已部署的资源*/
+    private final Map<String, String> digests;
+
+    public DigestDeployCmd(DeploymentBuilderImpl deploymentBuilder, Map<String, String> digests) {
+        super(deploymentBuilder);
+        this.digests = digests;
+    }
+
+    @Override
+    public Deployment execute(CommandContext commandContext) {
+        DeploymentEntity deployment = deploymentBuilder.getDeployment();
+        if(deployment.getName() == null){
+            return super.execute(commandContext);
+        }
+        String digest = digest(deployment.getResources());
+        DeploymentEntity latest = findLatest(commandContext, deployment.getName(), deployment.getTenantId());
+        if(latest != null && digest.equals(digestOf(commandContext, latest, digests))){
+            logger.info("部署内容与最新部署相同，跳过部署。部署名称：{} ；最新部署id：{} ；摘要：{}",deployment.getName(),latest.getId(),digest);
+            return latest;
+        }
+        Deployment deployed = super.execute(commandContext);
+        digests.put(deployed.getId(), digest);
+        return deployed;
+    }
+
+    /**同名（同租户）的最新部署，与DeployCmd的重复过滤相同*/
+    static DeploymentEntity findLatest(CommandContext commandContext, String name, String tenantId){
+        if(tenantId == null || tenantId.isEmpty()){
+            return commandContext.getDeploymentEntityManager().findLatestDeploymentByName(name);
+        }
+        DeploymentQueryImpl query = new DeploymentQueryImpl().deploymentName(name).deploymentTenantId(tenantId);
+        query.orderByDeploymenTime().desc();
+        List<Deployment> list = commandContext.getDeploymentEntityManager().findDeploymentsByQueryCriteria(query, new Page(0, 1));
+        return list.isEmpty() ? null : (DeploymentEntity) list.get(0);
+    }
+
+    /**
+     * 已部署的资源摘要，第一次比较时读取资源并计算
+     * @param digests 部署id -> 资源摘要的缓存
+     */
+    static String digestOf(CommandContext commandContext, Deployment deployment, Map<String, String> digests){
+        String digest = digests.get(deployment.getId());
+        if(digest == null){
+            Map<String, ResourceEntity> resources = new HashMap<>();
+            for(ResourceEntity resource:commandContext.getResourceEntityManager().findResourcesByDeploymentId(deployment.getId())){
+                resources.put(resource.getName(), resource);
+            }
+            digest = digest(resources);
+            digests.put(deployment.getId(), digest);
+        }
+        return digest;
+    }
+
+    /**
+     * 整个部署的摘要：按资源名排序，对每个资源的 名称、内容摘要 再计算摘要
+     * 资源名或任一资源的内容不同时摘要不同
+     */
+    static String digest(Map<String, ResourceEntity> resources){
+        MessageDigest bundle = sha256();
+        for(String name:new TreeSet<>(resources.keySet())){
+            byte[] bytes = resources.get(name).getBytes();
+            bundle.update(name.getBytes(StandardCharsets.UTF_8));
+            bundle.update((byte) 0);
+            bundle.update(sha256().digest(bytes == null ? new byte[0] : bytes));
+        }
+        return hex(bundle.digest());
+    }
+
+    private static MessageDigest sha256(){
+        try{
+            return MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes){
+        StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for(byte b:bytes){
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+}
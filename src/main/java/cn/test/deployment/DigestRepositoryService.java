@@ -0,0 +1,55 @@
+package cn.test.deployment;
+
+import org.activiti.engine.impl.RepositoryServiceImpl;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.ResourceEntity;
+import org.activiti.engine.impl.repository.DeploymentBuilderImpl;
+import org.activiti.engine.repository.Deployment;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 部署时跳过与同名最新部署内容相同的部署（见DigestDeployCmd）
+ * 在activiti.cfg.xml中设置为processEngineConfiguration的repositoryService，对所有deploy()生效
+ */
+public class DigestRepositoryService extends RepositoryServiceImpl {
+
+    /**部署id -> 资源摘要；部署的资源不会修改，删除部署后残留的条目不影响结果*/
+    private final Map<String, String> digests = new ConcurrentHashMap<>();
+
+    @Override
+    public Deployment deploy(DeploymentBuilderImpl deploymentBuilder) {
+        return commandExecutor.execute(new DigestDeployCmd<Deployment>(deploymentBuilder, digests));
+    }
+
+    /**
+     * 同名（同租户）的最新部署，没有时返回null
+     * @param name 部署名称
+     * @param tenantId 租户id，可以为null
+     */
+    public Deployment findLatestDeployment(final String name, final String tenantId){
+        return commandExecutor.execute(new Command<Deployment>() {
+            @Override
+            public Deployment execute(CommandContext commandContext) {
+                return DigestDeployCmd.findLatest(commandContext, name, tenantId);
+            }
+        });
+    }
+
+    /**
+     * 资源与已部署的资源是否相同（摘要相同），用于部署前判断是否需要解析
+     * @param deployment 已部署的部署
+     * @param resources 资源名 -> 资源
+     */
+    public boolean isUnchanged(final Deployment deployment, Map<String, ResourceEntity> resources){
+        final String digest = DigestDeployCmd.digest(resources);
+        return commandExecutor.execute(new Command<Boolean>() {
+            @Override
+            public Boolean execute(CommandContext commandContext) {
+                return digest.equals(DigestDeployCmd.digestOf(commandContext, deployment, digests));
+            }
+        });
+    }
+}
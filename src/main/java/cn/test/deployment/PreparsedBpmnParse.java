@@ -0,0 +1,68 @@
+package cn.test.deployment;
+
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.impl.bpmn.parser.BpmnParse;
+import org.activiti.engine.impl.bpmn.parser.BpmnParser;
+import org.activiti.engine.impl.persistence.entity.DeploymentEntity;
+
+import java.util.Map;
+
+/**
+ * 可以使用预先解析的BpmnModel的BpmnParse
+ * StreamingZipDeployer在部署前并行把XML转换为BpmnModel并校验，部署时在当前线程绑定；
+ * 引擎的BpmnDeployer解析同一个部署的资源时直接从BpmnModel生成流程定义，不再解析XML。没有绑定时与原来相同
+ */
+public class PreparsedBpmnParse extends BpmnParse {
+
+    private static final ThreadLocal<Preparsed> CURRENT = new ThreadLocal<>();
+
+    public PreparsedBpmnParse(BpmnParser parser) {
+        super(parser);
+    }
+
+    /**
+     * 在当前线程绑定部署的预解析结果，部署完成后必须调用unbind
+     * @param deployment 要部署的对象
+     * @param models 资源名 -> 已经校验过的BpmnModel
+     */
+    static void bind(DeploymentEntity deployment, Map<String, BpmnModel> models){
+        CURRENT.set(new Preparsed(deployment, models));
+    }
+
+    static void unbind(){
+        CURRENT.remove();
+    }
+
+    @Override
+    public BpmnParse execute() {
+        Preparsed preparsed = CURRENT.get();
+        BpmnModel model = preparsed != null && preparsed.deployment == deployment ? preparsed.models.remove(name) : null;
+        if(model == null){
+            return super.execute();
+        }
+        try{
+            bpmnModel = model;
+            createImports();
+            createItemDefinitions();
+            createMessages();
+            createOperations();
+            transformProcessDefinitions();
+        }catch(ActivitiException e){
+            throw e;
+        }catch(Exception e){
+            throw new ActivitiException("Error parsing XML", e);
+        }
+        return this;
+    }
+
+    private static class Preparsed {
+        final DeploymentEntity deployment;
+        final Map<String, BpmnModel> models;
+
+        Preparsed(DeploymentEntity deployment, Map<String, BpmnModel> models) {
+            this.deployment = deployment;
+            this.models = models;
+        }
+    }
+}
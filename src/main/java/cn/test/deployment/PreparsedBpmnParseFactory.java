@@ -0,0 +1,16 @@
+package cn.test.deployment;
+
+import org.activiti.engine.impl.bpmn.parser.BpmnParse;
+import org.activiti.engine.impl.bpmn.parser.BpmnParser;
+import org.activiti.engine.impl.cfg.BpmnParseFactory;
+
+/**
+ * 在activiti.cfg.xml中设置为processEngineConfiguration的bpmnParseFactory，见PreparsedBpmnParse
+ */
+public class PreparsedBpmnParseFactory implements BpmnParseFactory {
+
+    @Override
+    public BpmnParse createBpmnParse(BpmnParser bpmnParser) {
+        return new PreparsedBpmnParse(bpmnParser);
+    }
+}
@@ -0,0 +1,279 @@
+package cn.test.deployment;
+
+import org.activiti.bpmn.converter.BpmnXMLConverter;
+import org.activiti.bpmn.converter.util.InputStreamProvider;
+import org.activiti.bpmn.model.BpmnModel;
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.ActivitiIllegalArgumentException;
+import org.activiti.engine.RepositoryService;
+import org.activiti.engine.impl.bpmn.deployer.BpmnDeployer;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.persistence.entity.DeploymentEntity;
+import org.activiti.engine.impl.persistence.entity.ResourceEntity;
+import org.activiti.engine.impl.repository.DeploymentBuilderImpl;
+import org.activiti.engine.repository.Deployment;
+import org.activiti.validation.ProcessValidator;
+import org.activiti.validation.ValidationError;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * 流式zip部署：逐个读取zip中的条目，单个条目和总大小超过上限时立即失败（不会先把整个zip读入内存）；
+ * BPMN条目读完后马上提交到有界线程池，把XML转换为BpmnModel并校验，与读取后面的条目并行；
+ * 部署时引擎直接使用预解析的BpmnModel（见PreparsedBpmnParse），并返回每个BPMN资源的解析耗时
+ *
+ * 已有同名部署时（repositoryService为DigestRepositoryService），先读完zip并与最新部署比较摘要，内容相同时直接返回最新部署，
+ * 不解析也不校验；内容不同时才提交解析
+ *
+ * 部署的资源仍要整体写入ACT_GE_BYTEARRAY，所以内存占用的上限是maxTotalBytes
+ */
+@Component
+public class StreamingZipDeployer implements DisposableBean {
+    private Logger logger = LoggerFactory.getLogger(StreamingZipDeployer.class);
+
+    /**默认单个条目的大小上限*/
+    public static final int DEFAULT_MAX_ENTRY_BYTES = 10 * 1024 * 1024;
+    /**默认所有条目的总大小上限*/
+    public static final long DEFAULT_MAX_TOTAL_BYTES = 100L * 1024 * 1024;
+
+    @Autowired
+    private RepositoryService repositoryService;
+    @Autowired
+    private ProcessEngineConfigurationImpl processEngineConfiguration;
+
+    private int maxEntryBytes = DEFAULT_MAX_ENTRY_BYTES;
+    private long maxTotalBytes = DEFAULT_MAX_TOTAL_BYTES;
+    /**解析线程数，队列满时由读取zip的线程自己解析*/
+    private int parseThreads = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
+
+    private volatile ExecutorService pool;
+
+    /**
+     * 部署zip
+     * @param name 部署名称
+     * @param zip zip输入流（由调用方关闭）
+     * @return 部署结果
+     */
+    public ZipDeploymentResult deploy(String name, InputStream zip){
+        long start = System.currentTimeMillis();
+        ZipDeploymentResult result = new ZipDeploymentResult();
+        DeploymentBuilderImpl builder = (DeploymentBuilderImpl) repositoryService.createDeployment().name(name);
+        DeploymentEntity deployment = builder.getDeployment();
+        DigestRepositoryService digestService = repositoryService instanceof DigestRepositoryService
+                ? (DigestRepositoryService) repositoryService : null;
+        //没有同名部署时一定是新部署，边读边解析
+        Deployment latest = digestService == null ? null : digestService.findLatestDeployment(name, deployment.getTenantId());
+        Map<String, Future<BpmnModel>> parsing = new LinkedHashMap<>();
+        List<String> bpmnResources = new ArrayList<>();
+        try{
+            ZipInputStream in = new ZipInputStream(zip);
+            long total = 0;
+            for(ZipEntry entry = in.getNextEntry(); entry != null; entry = in.getNextEntry()){
+                if(entry.isDirectory()){
+                    continue;
+                }
+                if(entry.getSize() > maxEntryBytes){
+                    throw new ActivitiIllegalArgumentException("zip条目超过大小上限：" + entry.getName() + " ；上限：" + maxEntryBytes + "字节");
+                }
+                byte[] bytes = read(in, entry.getName(), maxTotalBytes - total);
+                total += bytes.length;
+                ResourceEntity resource = new ResourceEntity();
+                resource.setName(entry.getName());
+                resource.setBytes(bytes);
+                deployment.addResource(resource);
+                result.resource(entry.getName(), bytes.length);
+                if(isBpmnResource(entry.getName())){
+                    bpmnResources.add(entry.getName());
+                    if(latest == null){
+                        parsing.put(entry.getName(), pool().submit(parse(entry.getName(), bytes, result)));
+                    }
+                }
+            }
+        }catch(IOException e){
+            cancel(parsing);
+            throw new ActivitiException("读取zip失败：" + name, e);
+        }catch(RuntimeException e){
+            cancel(parsing);
+            throw e;
+        }
+        if(latest != null){
+            if(digestService.isUnchanged(latest, deployment.getResources())){
+                result.setDeployment(latest);
+                result.setElapsedMillis(System.currentTimeMillis() - start);
+                logger.info("zip内容与最新部署相同，不解析，跳过部署。部署名称：{} ；结果：{}",name,result);
+                return result;
+            }
+            for(String resourceName:bpmnResources){
+                byte[] bytes = deployment.getResource(resourceName).getBytes();
+                parsing.put(resourceName, pool().submit(parse(resourceName, bytes, result)));
+            }
+        }
+        Map<String, BpmnModel> models = new HashMap<>();
+        for(Map.Entry<String, Future<BpmnModel>> e:parsing.entrySet()){
+            try{
+                models.put(e.getKey(), e.getValue().get());
+            }catch(ExecutionException ex){
+                cancel(parsing);
+                throw ex.getCause() instanceof ActivitiException ? (ActivitiException) ex.getCause()
+                        : new ActivitiException("解析BPMN失败：" + e.getKey(), ex.getCause());
+            }catch(InterruptedException ex){
+                cancel(parsing);
+                Thread.currentThread().interrupt();
+                throw new ActivitiException("部署被中断：" + name, ex);
+            }
+        }
+        PreparsedBpmnParse.bind(deployment, models);
+        try{
+            result.setDeployment(builder.deploy());
+        }finally{
+            PreparsedBpmnParse.unbind();
+        }
+        result.setElapsedMillis(System.currentTimeMillis() - start);
+        logger.info("流式部署zip。部署名称：{} ；结果：{}",name,result);
+        return result;
+    }
+
+    /**
+     * 读取一个条目，超过上限时抛出异常（条目头中的大小可能没有或不可信，按实际读到的字节数判断）
+     * @param remaining 总大小上限剩余的字节数
+     */
+    private byte[] read(ZipInputStream in, String entryName, long remaining) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for(int n = in.read(buffer); n != -1; n = in.read(buffer)){
+            if(out.size() + n > maxEntryBytes){
+                throw new ActivitiIllegalArgumentException("zip条目超过大小上限：" + entryName + " ；上限：" + maxEntryBytes + "字节");
+            }
+            if(out.size() + n > remaining){
+                throw new ActivitiIllegalArgumentException("zip总大小超过上限：" + maxTotalBytes + "字节 ；读到条目：" + entryName);
+            }
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    /**与BpmnParse相同：XML转换为BpmnModel，再用引擎的ProcessValidator校验*/
+    private Callable<BpmnModel> parse(final String resourceName, final byte[] bytes, final ZipDeploymentResult result){
+        final boolean enableSafeXml = processEngineConfiguration.isEnableSafeBpmnXml();
+        final String encoding = processEngineConfiguration.getXmlEncoding();
+        final ProcessValidator validator = processEngineConfiguration.getProcessValidator();
+        return new Callable<BpmnModel>() {
+            @Override
+            public BpmnModel call() {
+                long start = System.nanoTime();
+                InputStreamProvider source = new InputStreamProvider() {
+                    @Override
+                    public InputStream getInputStream() {
+                        return new ByteArrayInputStream(bytes);
+                    }
+                };
+                BpmnXMLConverter converter = new BpmnXMLConverter();
+                BpmnModel model = encoding != null
+                        ? converter.convertToBpmnModel(source, true, enableSafeXml, encoding)
+                        : converter.convertToBpmnModel(source, true, enableSafeXml);
+                if(validator != null){
+                    StringBuilder errors = new StringBuilder();
+                    StringBuilder warnings = new StringBuilder();
+                    for(ValidationError error:validator.validate(model)){
+                        (error.isWarning() ? warnings : errors).append(error.toString()).append("\n");
+                    }
+                    if(errors.length() > 0){
+                        throw new ActivitiException("Errors while parsing:\n" + errors);
+                    }
+                    if(warnings.length() > 0){
+                        logger.warn("BPMN校验警告。资源：{} ；警告：{}",resourceName,warnings);
+                    }
+                }
+                long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                synchronized (result){
+                    result.parsed(resourceName, millis);
+                }
+                return model;
+            }
+        };
+    }
+
+    private static boolean isBpmnResource(String name){
+        for(String suffix:BpmnDeployer.BPMN_RESOURCE_SUFFIXES){
+            if(name.endsWith(suffix)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static void cancel(Map<String, Future<BpmnModel>> parsing){
+        for(Future<BpmnModel> future:parsing.values()){
+            future.cancel(true);
+        }
+    }
+
+    /**解析线程池：固定线程数、有界队列，队列满时在提交的线程中执行*/
+    private ExecutorService pool(){
+        if(pool != null && pool.isShutdown()){
+            throw new ActivitiException("解析线程池已关闭");
+        }
+        if(pool == null){
+            synchronized (this){
+                if(pool == null){
+                    pool = new ThreadPoolExecutor(parseThreads, parseThreads, 60, TimeUnit.SECONDS,
+                            new ArrayBlockingQueue<Runnable>(parseThreads * 2), new ThreadFactory() {
+                        private final AtomicInteger count = new AtomicInteger();
+                        @Override
+                        public Thread newThread(Runnable r) {
+                            Thread thread = new Thread(r, "bpmn-parse-" + count.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    }, new ThreadPoolExecutor.CallerRunsPolicy());
+                    ((ThreadPoolExecutor) pool).allowCoreThreadTimeOut(true);
+                }
+            }
+        }
+        return pool;
+    }
+
+    @Override
+    public void destroy() {
+        if(pool != null){
+            pool.shutdownNow();
+        }
+    }
+
+    public int getMaxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    public void setMaxEntryBytes(int maxEntryBytes) {
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public int getParseThreads() {
+        return parseThreads;
+    }
+
+    public void setParseThreads(int parseThreads) {
+        this.parseThreads = parseThreads;
+    }
+}
@@ -0,0 +1,66 @@
+package cn.test.deployment;
+
+import org.activiti.engine.repository.Deployment;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * zip部署的结果：部署对象、资源大小和每个BPMN资源的解析耗时
+ */
+public class ZipDeploymentResult {
+
+    private Deployment deployment;
+    /**资源名 -> 字节数*/
+    private final Map<String, Integer> resourceBytes = new LinkedHashMap<>();
+    /**BPMN资源名 -> 解析（XML转换和校验）耗时（毫秒）*/
+    private final Map<String, Long> parseMillis = new LinkedHashMap<>();
+    /**总耗时（毫秒）*/
+    private long elapsedMillis;
+
+    void resource(String name, int bytes){
+        resourceBytes.put(name, bytes);
+    }
+
+    void parsed(String name, long millis){
+        parseMillis.put(name, millis);
+    }
+
+    public Deployment getDeployment() {
+        return deployment;
+    }
+
+    void setDeployment(Deployment deployment) {
+        this.deployment = deployment;
+    }
+
+    public Map<String, Integer> getResourceBytes() {
+        return resourceBytes;
+    }
+
+    public long getTotalBytes(){
+        long total = 0;
+        for(int bytes:resourceBytes.values()){
+            total += bytes;
+        }
+        return total;
+    }
+
+    public Map<String, Long> getParseMillis() {
+        return parseMillis;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    void setElapsedMillis(long elapsedMillis) {
+        this.elapsedMillis = elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ZipDeploymentResult{部署id=" + (deployment == null ? null : deployment.getId()) + ", 资源数=" + resourceBytes.size()
+                + ", 总字节数=" + getTotalBytes() + ", 解析耗时=" + parseMillis + ", 耗时=" + elapsedMillis + "ms}";
+    }
+}
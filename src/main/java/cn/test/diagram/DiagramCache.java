@@ -0,0 +1,188 @@
+package cn.test.diagram;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.RepositoryService;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * 流程图的本地缓存：按内容的SHA-256摘要保存为 目录/摘要.png，内容相同的流程图只保存一份
+ * 每个部署只从ACT_GE_BYTEARRAY读取一次，内存中保存部署id到摘要和资源名的索引，命中时不访问数据库
+ * 部署的资源不会修改，缓存文件不需要失效；删除部署时只移除索引（文件可能被其他部署共用）
+ */
+@Component
+public class DiagramCache {
+    private Logger logger = LoggerFactory.getLogger(DiagramCache.class);
+
+    /**没有流程图的部署，避免重复查询*/
+    private static final Diagram NONE = new Diagram(null, null);
+
+    @Autowired
+    private RepositoryService repositoryService;
+
+    /**缓存目录*/
+    private File directory = new File(System.getProperty("user.home"), "activiti-diagram-cache");
+    /**部署id -> 流程图摘要和资源名*/
+    private final ConcurrentMap<String, Diagram> diagrams = new ConcurrentHashMap<>();
+
+    /**
+     * 获取部署的流程图摘要，第一次访问时写入缓存目录
+     * @param deploymentId 部署id
+     * @return 摘要（十六进制），部署不存在或没有流程图时返回null
+     */
+    public String getDigest(String deploymentId){
+        Diagram diagram = get(deploymentId);
+        return diagram == null ? null : diagram.digest;
+    }
+
+    /**
+     * 获取部署中流程图的资源名，第一次访问时写入缓存目录
+     * @param deploymentId 部署id
+     * @return 资源名，部署不存在或没有流程图时返回null
+     */
+    public String getResourceName(String deploymentId){
+        Diagram diagram = get(deploymentId);
+        return diagram == null ? null : diagram.resourceName;
+    }
+
+    private Diagram get(String deploymentId){
+        Diagram diagram = diagrams.get(deploymentId);
+        if(diagram == null){
+            diagram = load(deploymentId);
+            if(diagram == null){
+                //不存在的部署不放入索引，避免任意id撑大索引
+                return null;
+            }
+            Diagram previous = diagrams.putIfAbsent(deploymentId, diagram);
+            if(previous != null){
+                diagram = previous;
+            }
+        }
+        return diagram;
+    }
+
+    /**
+     * 获取部署的流程图文件
+     * @param deploymentId 部署id
+     * @return 缓存目录中的文件，部署不存在或没有流程图时返回null
+     */
+    public File getFile(String deploymentId){
+        String digest = getDigest(deploymentId);
+        if(digest != null && !file(digest).exists()){
+            //缓存目录被清理过，重新写入
+            invalidate(deploymentId);
+            digest = getDigest(deploymentId);
+        }
+        return digest == null ? null : file(digest);
+    }
+
+    /**
+     * 摘要对应的缓存文件
+     * @param digest 摘要
+     */
+    public File file(String digest){
+        return new File(directory, digest + ".png");
+    }
+
+    /**
+     * 移除部署的索引（删除部署时调用）
+     * @param deploymentId 部署id
+     */
+    public void invalidate(String deploymentId){
+        diagrams.remove(deploymentId);
+    }
+
+    private Diagram load(String deploymentId){
+        List<String> names;
+        try{
+            names = repositoryService.getDeploymentResourceNames(deploymentId);
+        }catch(ActivitiException e){
+            //部署不存在
+            return null;
+        }
+        //与原来的viewPic相同，取最后一个png资源
+        String resourceName = null;
+        for(String name:names){
+            if(name.endsWith(".png")){
+                resourceName = name;
+            }
+        }
+        if(resourceName == null){
+            return NONE;
+        }
+        byte[] bytes;
+        try(InputStream in = repositoryService.getResourceAsStream(deploymentId, resourceName)){
+            bytes = IOUtils.toByteArray(in);
+        }catch(IOException e){
+            throw new ActivitiException("读取流程图失败：" + deploymentId + "/" + resourceName, e);
+        }
+        String digest = sha256(bytes);
+        File file = file(digest);
+        if(!file.exists()){
+            write(file, bytes);
+        }
+        logger.info("缓存流程图。部署id：{} ；资源名：{} ；摘要：{} ；大小：{}",deploymentId,resourceName,digest,bytes.length);
+        return new Diagram(digest, resourceName);
+    }
+
+    /**先写临时文件再改名，读取方不会看到写了一半的文件*/
+    private void write(File file, byte[] bytes){
+        try{
+            Files.createDirectories(directory.toPath());
+            Path tmp = Files.createTempFile(directory.toPath(), file.getName(), ".tmp");
+            try{
+                Files.write(tmp, bytes);
+                Files.move(tmp, file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            }finally{
+                Files.deleteIfExists(tmp);
+            }
+        }catch(IOException e){
+            throw new ActivitiException("写入流程图缓存失败：" + file, e);
+        }
+    }
+
+    private static String sha256(byte[] bytes){
+        try{
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(bytes);
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for(byte b:digest){
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public void setDirectory(File directory) {
+        this.directory = directory;
+    }
+
+    /**索引中的一项：流程图的摘要和资源名，没有流程图时都为null*/
+    private static class Diagram {
+        final String digest;
+        final String resourceName;
+
+        Diagram(String digest, String resourceName) {
+            this.digest = digest;
+            this.resourceName = resourceName;
+        }
+    }
+}
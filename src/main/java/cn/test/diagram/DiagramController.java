@@ -0,0 +1,86 @@
+package cn.test.diagram;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * 流程图接口：GET /diagram/{deploymentId}
+ * 从DiagramCache的缓存文件输出：容器支持sendfile时（Tomcat的NIO/NIO2/APR连接器，请求属性org.apache.tomcat.sendfile.support）
+ * 交给容器用sendfile直接从文件发送，否则从缓存文件按普通的流复制到响应（经过缓冲区）；
+ * 以内容摘要作为ETag，If-None-Match相同时返回304
+ */
+@Controller
+@RequestMapping("/diagram")
+public class DiagramController {
+    private Logger logger = LoggerFactory.getLogger(DiagramController.class);
+
+    /**Tomcat的sendfile请求属性*/
+    private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+    @Autowired
+    private DiagramCache diagramCache;
+
+    @RequestMapping(value = "/{deploymentId}", method = {RequestMethod.GET, RequestMethod.HEAD})
+    public void diagram(@PathVariable String deploymentId, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        File file = diagramCache.getFile(deploymentId);
+        if(file == null){
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        String etag = "\"" + file.getName().substring(0, file.getName().length() - ".png".length()) + "\"";
+        //同一部署的流程图不会变化，客户端可以缓存，过期后用ETag验证
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "public, max-age=86400");
+        if(matches(request.getHeader("If-None-Match"), etag)){
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+        response.setContentType("image/png");
+        long size = file.length();
+        response.setContentLengthLong(size);
+        if("HEAD".equals(request.getMethod())){
+            return;
+        }
+        if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))){
+            //方法返回后由容器发送文件
+            request.setAttribute(SENDFILE_FILENAME, file.getAbsolutePath());
+            request.setAttribute(SENDFILE_START, 0L);
+            request.setAttribute(SENDFILE_END, size);
+            logger.debug("用sendfile输出流程图。部署id：{} ；文件：{}",deploymentId,file);
+            return;
+        }
+        Files.copy(file.toPath(), response.getOutputStream());
+        logger.debug("输出流程图。部署id：{} ；文件：{}",deploymentId,file);
+    }
+
+    /**If-None-Match可以是*或逗号分隔的多个ETag（可能带W/前缀）*/
+    private static boolean matches(String ifNoneMatch, String etag){
+        if(ifNoneMatch == null){
+            return false;
+        }
+        for(String candidate:ifNoneMatch.split(",")){
+            candidate = candidate.trim();
+            if(candidate.startsWith("W/")){
+                candidate = candidate.substring(2);
+            }
+            if(candidate.equals("*") || candidate.equals(etag)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,37 @@
+package cn.test.engine;
+
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineLifecycleListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 引擎配置只能设置一个processEngineLifecycleListener，需要多个时用它组合
+ * 引擎启动后按配置顺序通知，关闭时按相反顺序通知
+ */
+public class CompositeProcessEngineLifecycleListener implements ProcessEngineLifecycleListener {
+
+    private final List<ProcessEngineLifecycleListener> listeners;
+
+    public CompositeProcessEngineLifecycleListener(List<ProcessEngineLifecycleListener> listeners) {
+        this.listeners = new ArrayList<>(listeners);
+    }
+
+    @Override
+    public void onProcessEngineBuilt(ProcessEngine processEngine) {
+        for(ProcessEngineLifecycleListener listener:listeners){
+            listener.onProcessEngineBuilt(processEngine);
+        }
+    }
+
+    @Override
+    public void onProcessEngineClosed(ProcessEngine processEngine) {
+        List<ProcessEngineLifecycleListener> reversed = new ArrayList<>(listeners);
+        Collections.reverse(reversed);
+        for(ProcessEngineLifecycleListener listener:reversed){
+            listener.onProcessEngineClosed(processEngine);
+        }
+    }
+}
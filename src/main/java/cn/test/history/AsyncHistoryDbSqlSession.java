@@ -0,0 +1,269 @@
+package cn.test.history;
+
+import org.activiti.engine.impl.HistoricActivityInstanceQueryImpl;
+import org.activiti.engine.impl.Page;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.db.DbSqlSession;
+import org.activiti.engine.impl.db.ListQueryParameterObject;
+import org.activiti.engine.impl.db.PersistentObject;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.HistoricActivityInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricProcessInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricVariableInstanceEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * flush时把历史表的插入、更新、删除从本事务中拿出来，事务提交后交给AsyncHistoryWriter按顺序写入，回滚的事务不写历史
+ *
+ * 读取尚未写入的历史实体时不等待：按id加载、按变量id查找历史变量和查找执行对象的活动实例时，使用队列中最后一次入队的数据的副本（已删除的视为不存在）
+ * 只能读到本节点队列中的数据，所以只用于单节点（多个节点时AsyncHistoryDbSqlSessionFactory的clustered为true，同步写入）
+ * 删除流程实例的历史时，引擎先查询再逐条删除，查询时尚未写入的数据查不到，所以在删除之后再按流程实例id清理一遍
+ */
+public class AsyncHistoryDbSqlSession extends DbSqlSession {
+
+    /**DefaultHistoryManager.findActivityInstance查找未结束活动实例使用的语句*/
+    private static final String SELECT_HISTORIC_ACTIVITY_INSTANCES = "selectHistoricActivityInstancesByQueryCriteria";
+    /**DefaultHistoryManager按变量id查找历史变量使用的语句（历史变量的id与变量的id相同）*/
+    private static final String SELECT_HISTORIC_VARIABLE_BY_VARIABLE_ID = "selectHistoricVariableInstanceByVariableInstanceId";
+    private static final String NAMESPACE = "cn.test.history.AsyncHistory.";
+    /**按流程实例id清理历史数据的语句，依次执行*/
+    private static final String[] PURGE_STATEMENTS = {
+            NAMESPACE + "deleteHistoricDetailByteArraysByProcessInstanceId",
+            NAMESPACE + "deleteHistoricDetailsByProcessInstanceId",
+            NAMESPACE + "deleteHistoricVariableByteArraysByProcessInstanceId",
+            NAMESPACE + "deleteHistoricVariableInstancesByProcessInstanceId",
+            NAMESPACE + "deleteHistoricIdentityLinksByProcessInstanceId",
+            NAMESPACE + "deleteHistoricTaskInstancesByProcessInstanceId",
+            "deleteHistoricActivityInstancesByProcessInstanceId"
+    };
+
+    private final AsyncHistoryWriter writer;
+    private List<HistoryOperation> operations = new ArrayList<>();
+    /**本事务中删除的历史数据，flush时排在插入、更新之后*/
+    private List<HistoryOperation> deletes = new ArrayList<>();
+
+    public AsyncHistoryDbSqlSession(AsyncHistoryDbSqlSessionFactory dbSqlSessionFactory, AsyncHistoryWriter writer) {
+        super(dbSqlSessionFactory);
+        this.writer = writer;
+    }
+
+    @Override
+    public <T extends PersistentObject> T selectById(Class<T> entityClass, String id) {
+        if(AsyncHistoryWriter.isHistoric(entityClass) && cacheGet(entityClass, id) == null){
+            HistoryOperation pending = writer.getPending(id);
+            if(pending != null && entityClass.isInstance(pending.entity)){
+                return pending(entityClass, pending);
+            }
+        }
+        return super.selectById(entityClass, id);
+    }
+
+    @Override
+    public Object selectOne(String statement, Object parameter) {
+        if(SELECT_HISTORIC_VARIABLE_BY_VARIABLE_ID.equals(statement) && parameter instanceof String
+                && cacheGet(HistoricVariableInstanceEntity.class, (String) parameter) == null){
+            HistoryOperation pending = writer.getPending((String) parameter);
+            if(pending != null && pending.entity instanceof HistoricVariableInstanceEntity){
+                return pending(HistoricVariableInstanceEntity.class, pending);
+            }
+        }
+        return super.selectOne(statement, parameter);
+    }
+
+    /**未写入的数据的副本，放入本命令的缓存；已删除的返回null*/
+    private <T extends PersistentObject> T pending(Class<T> entityClass, HistoryOperation pending){
+        if(pending.kind == HistoryOperation.Kind.DELETE){
+            return null;
+        }
+        T entity = entityClass.cast(HistoricEntities.copy(pending));
+        cachePut(entity, true);
+        return entity;
+    }
+
+    @Override
+    public List selectList(String statement, ListQueryParameterObject parameter, Page page) {
+        if(SELECT_HISTORIC_ACTIVITY_INSTANCES.equals(statement) && parameter instanceof HistoricActivityInstanceQueryImpl){
+            HistoricActivityInstanceQueryImpl query = (HistoricActivityInstanceQueryImpl) parameter;
+            if(query.getExecutionId() != null){
+                List<HistoryOperation> pending = writer.getPendingActivityInstances(query.getExecutionId());
+                if(!pending.isEmpty()){
+                    return selectActivityInstances(statement, query, page, pending);
+                }
+            }
+        }
+        return super.selectList(statement, parameter, page);
+    }
+
+    /**
+     * 查询执行对象的活动实例，用未写入的数据替换、补充数据库中的结果后按查询条件过滤、按id排序、分页
+     */
+    @SuppressWarnings("unchecked")
+    private List selectActivityInstances(String statement, HistoricActivityInstanceQueryImpl query, Page page, List<HistoryOperation> pending){
+        Set<String> cached = new HashSet<>();
+        for(HistoricActivityInstanceEntity entity:findInCache(HistoricActivityInstanceEntity.class)){
+            cached.add(entity.getId());
+        }
+        Map<String, HistoricActivityInstanceEntity> merged = new LinkedHashMap<>();
+        //同一执行对象的活动实例不多，不分页查询
+        for(Object row:super.selectList(statement, query, new Page(0, Integer.MAX_VALUE))){
+            HistoricActivityInstanceEntity entity = (HistoricActivityInstanceEntity) row;
+            merged.put(entity.getId(), entity);
+        }
+        for(HistoryOperation op:pending){
+            String id = op.entity.getId();
+            if(cached.contains(id)){
+                //本命令中已加载过，以缓存中的为准
+                continue;
+            }
+            if(op.kind == HistoryOperation.Kind.DELETE){
+                merged.remove(id);
+                continue;
+            }
+            HistoricActivityInstanceEntity copy = (HistoricActivityInstanceEntity) HistoricEntities.copy(op);
+            cachePut(copy, true);
+            merged.put(id, copy);
+        }
+        List<HistoricActivityInstanceEntity> result = new ArrayList<>(merged.size());
+        for(HistoricActivityInstanceEntity entity:merged.values()){
+            if(matches(query, entity)){
+                result.add(entity);
+            }
+        }
+        Collections.sort(result, new Comparator<HistoricActivityInstanceEntity>() {
+            @Override
+            public int compare(HistoricActivityInstanceEntity a, HistoricActivityInstanceEntity b) {
+                return a.getId().compareTo(b.getId());
+            }
+        });
+        if(page == null){
+            return result;
+        }
+        int from = Math.min(page.getFirstResult(), result.size());
+        int to = (int) Math.min((long) from + page.getMaxResults(), result.size());
+        return new ArrayList<>(result.subList(from, to));
+    }
+
+    /**查询条件中与执行对象的活动实例有关的部分（租户与执行对象相同，不需要比较）*/
+    private static boolean matches(HistoricActivityInstanceQueryImpl query, HistoricActivityInstanceEntity entity){
+        return equalsIfSet(query.getExecutionId(), entity.getExecutionId())
+                && equalsIfSet(query.getProcessInstanceId(), entity.getProcessInstanceId())
+                && equalsIfSet(query.getProcessDefinitionId(), entity.getProcessDefinitionId())
+                && equalsIfSet(query.getActivityId(), entity.getActivityId())
+                && equalsIfSet(query.getActivityName(), entity.getActivityName())
+                && equalsIfSet(query.getActivityType(), entity.getActivityType())
+                && equalsIfSet(query.getAssignee(), entity.getAssignee())
+                && equalsIfSet(query.getActivityInstanceId(), entity.getId())
+                && (!query.isFinished() || entity.getEndTime() != null)
+                && (!query.isUnfinished() || entity.getEndTime() == null);
+    }
+
+    private static boolean equalsIfSet(String expected, String actual){
+        return expected == null || expected.equals(actual);
+    }
+
+    @Override
+    public void delete(PersistentObject persistentObject) {
+        if(!AsyncHistoryWriter.isHistoric(persistentObject.getClass())){
+            super.delete(persistentObject);
+            return;
+        }
+        if(isDeleted(persistentObject)){
+            return;
+        }
+        deletes.add(HistoryOperation.delete(persistentObject));
+        if(persistentObject instanceof HistoricProcessInstanceEntity){
+            for(String statement:PURGE_STATEMENTS){
+                deletes.add(HistoryOperation.statement(statement, persistentObject.getId()));
+            }
+        }
+    }
+
+    @Override
+    public void delete(String statement, Object parameter) {
+        if(AsyncHistoryWriter.isHistoricStatement(statement) && parameter instanceof String){
+            deletes.add(HistoryOperation.statement(statement, (String) parameter));
+            return;
+        }
+        super.delete(statement, parameter);
+    }
+
+    private boolean isDeleted(PersistentObject persistentObject){
+        for(HistoryOperation op:deletes){
+            if(op.entity != null && op.entity.getClass() == persistentObject.getClass()
+                    && op.entity.getId().equals(persistentObject.getId())){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void flush() {
+        super.flush();
+        for(HistoryOperation op:deletes){
+            if(op.entity != null){
+                cacheRemove(op.entity.getClass(), op.entity.getId());
+            }
+        }
+        operations.addAll(deletes);
+        deletes = new ArrayList<>();
+        if(operations.isEmpty()){
+            return;
+        }
+        final List<HistoryOperation> committed = operations;
+        operations = new ArrayList<>();
+        CommandContext commandContext = Context.getCommandContext();
+        if(commandContext == null){
+            writer.enqueue(committed);
+            return;
+        }
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, new TransactionListener() {
+            @Override
+            public void execute(CommandContext commandContext) {
+                writer.enqueue(committed);
+            }
+        });
+    }
+
+    @Override
+    protected void flushInserts() {
+        Iterator<Map.Entry<Class<? extends PersistentObject>, List<PersistentObject>>> it = insertedObjects.entrySet().iterator();
+        while(it.hasNext()){
+            Map.Entry<Class<? extends PersistentObject>, List<PersistentObject>> entry = it.next();
+            if(AsyncHistoryWriter.isHistoric(entry.getKey())){
+                for(PersistentObject entity:entry.getValue()){
+                    operations.add(HistoryOperation.insert(entity));
+                }
+                it.remove();
+            }
+        }
+        super.flushInserts();
+    }
+
+    @Override
+    protected void flushUpdates(List<PersistentObject> updatedObjects) {
+        List<PersistentObject> remaining = new ArrayList<>(updatedObjects.size());
+        for(PersistentObject entity:updatedObjects){
+            if(AsyncHistoryWriter.isHistoric(entity.getClass())){
+                //本事务中删除的不再更新
+                if(!isDeleted(entity)){
+                    operations.add(HistoryOperation.update(entity));
+                }
+            }else{
+                remaining.add(entity);
+            }
+        }
+        super.flushUpdates(remaining);
+    }
+}
@@ -0,0 +1,57 @@
+package cn.test.history;
+
+import org.activiti.engine.impl.db.DbSqlSessionFactory;
+import org.activiti.engine.impl.interceptor.Session;
+
+/**
+ * 替换引擎默认的DbSqlSessionFactory，历史数据交给AsyncHistoryWriter异步写入
+ * 在activiti.cfg.xml中配置为processEngineConfiguration的dbSqlSessionFactory，引擎初始化时会设置数据库类型、MyBatis配置等
+ *
+ * 引擎更新历史（结束时间、办理人、变量值等）前先读出历史行，未写入的数据只能从本节点的队列中读到。
+ * 多个节点共用数据库时，同一个流程实例的下一步可能在其他节点上执行，读不到这一行的更新会被引擎忽略，
+ * 所以clustered为true时与默认的DbSqlSessionFactory相同，同步写入历史数据
+ */
+public class AsyncHistoryDbSqlSessionFactory extends DbSqlSessionFactory {
+
+    private AsyncHistoryWriter writer;
+    /**为false时与默认的DbSqlSessionFactory相同，同步写入历史数据*/
+    private boolean asyncHistoryEnabled = true;
+    /**是否多个引擎共用一个数据库，为true时同步写入历史数据*/
+    private boolean clustered = false;
+
+    @Override
+    public Session openSession() {
+        if(!asyncHistoryEnabled || clustered || writer == null){
+            return super.openSession();
+        }
+        return new AsyncHistoryDbSqlSession(this, writer);
+    }
+
+    public AsyncHistoryWriter getWriter() {
+        return writer;
+    }
+
+    public void setWriter(AsyncHistoryWriter writer) {
+        this.writer = writer;
+        writer.setDbSqlSessionFactory(this);
+    }
+
+    public boolean isAsyncHistoryEnabled() {
+        return asyncHistoryEnabled;
+    }
+
+    public void setAsyncHistoryEnabled(boolean asyncHistoryEnabled) {
+        this.asyncHistoryEnabled = asyncHistoryEnabled;
+    }
+
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * @param clustered 是否多个引擎共用一个数据库，为true时同步写入历史数据（流程实例可能在其他节点上继续执行）
+     */
+    public void setClustered(boolean clustered) {
+        this.clustered = clustered;
+    }
+}
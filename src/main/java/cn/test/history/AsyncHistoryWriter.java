@@ -0,0 +1,721 @@
+package cn.test.history;
+
+import cn.test.id.NodeStripedIdGenerator;
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.ActivitiOptimisticLockingException;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineLifecycleListener;
+import org.activiti.engine.impl.ProcessEngineImpl;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.db.DbSqlSessionFactory;
+import org.activiti.engine.impl.db.PersistentObject;
+import org.activiti.engine.impl.persistence.entity.HistoricActivityInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricDetailEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricIdentityLinkEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricProcessInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricTaskInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.HistoricVariableInstanceEntity;
+import org.activiti.engine.impl.variable.VariableTypes;
+import org.apache.ibatis.executor.BatchResult;
+import org.apache.ibatis.mapping.SqlCommandType;
+import org.apache.ibatis.session.ExecutorType;
+import org.apache.ibatis.session.SqlSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 历史数据（ACT_HI_*）的异步写入器
+ * 事务提交后，AsyncHistoryDbSqlSession把本事务的历史插入、更新、删除放入有界队列，由后台线程按入队顺序以JDBC批量写入
+ * 队列满时提交线程阻塞等待（背压）；引擎关闭时写完队列中剩余的数据
+ *
+ * 引擎在命令中读取尚未写入的历史实体（按id加载、查找未结束的活动实例）时，由getPending返回队列中的数据，不等待写入
+ * 整批写入失败（包括更新语句没有更新到行）时逐条重试，仍失败的数据追加到本地文件（spillDirectory/history-spill-节点号.dat），每隔retryIntervalSeconds及启动时按原顺序重试，
+ * 之后涉及同一实体或同一流程实例的数据也排在它们后面，直到写入成功
+ *
+ * 通过historyService查询到的历史数据最多落后getDurabilityLagMillis()
+ */
+public class AsyncHistoryWriter implements ProcessEngineLifecycleListener {
+    private Logger logger = LoggerFactory.getLogger(AsyncHistoryWriter.class);
+
+    /**默认队列容量（条）*/
+    public static final int DEFAULT_CAPACITY = 10000;
+    /**默认每批最多写入的条数*/
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**异步写入的历史实体类型，评论、附件仍然同步写入*/
+    private static final Class<?>[] HISTORIC_TYPES = {
+            HistoricProcessInstanceEntity.class, HistoricActivityInstanceEntity.class,
+            HistoricTaskInstanceEntity.class, HistoricVariableInstanceEntity.class,
+            HistoricDetailEntity.class, HistoricIdentityLinkEntity.class
+    };
+
+    private int capacity = DEFAULT_CAPACITY;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    /**引擎关闭时等待队列写完的最长时间（秒）*/
+    private int shutdownTimeoutSeconds = 30;
+    /**写入失败的数据的重试间隔（秒）*/
+    private int retryIntervalSeconds = 30;
+    /**写入失败的数据保存的目录*/
+    private File spillDirectory = new File(System.getProperty("user.home"), "activiti-history-spill");
+    /**重试文件名中的节点号，没有设置时使用引擎的NodeStripedIdGenerator的节点号*/
+    private String nodeId;
+
+    private DbSqlSessionFactory dbSqlSessionFactory;
+    private VariableTypes variableTypes;
+    private BlockingQueue<HistoryOperation> queue;
+    private Thread worker;
+    private volatile boolean running = false;
+
+    /**入队时持有，保证序号顺序与队列顺序一致*/
+    private final Object putLock = new Object();
+    private final AtomicLong sequence = new AtomicLong();
+    /**已处理（写入或转存到重试文件）的最大序号，只在持有this锁时修改，供flush等待*/
+    private long writtenSequence = 0;
+    /**未写入的历史实体（实体id -> 最后一次入队的数据）*/
+    private final ConcurrentHashMap<String, HistoryOperation> pendingEntities = new ConcurrentHashMap<>();
+    /**未写入的活动实例（执行id -> 活动实例id -> 最后一次入队的数据），访问时持有该对象的锁*/
+    private final Map<String, Map<String, HistoryOperation>> pendingActivityInstances = new HashMap<>();
+
+    /**写入失败、等待重试的数据（按入队顺序）和它们涉及的实体id、流程实例id，访问时持有spilled的锁*/
+    private final List<HistoryOperation> spilled = new ArrayList<>();
+    private final Set<String> spilledKeys = new HashSet<>();
+    private HistorySpillFile spillFile;
+    private volatile long nextRetry = 0;
+
+    /**正在写入的批次中最早的入队时间，没有时为0*/
+    private volatile long inFlightSince = 0;
+    private volatile long lastLagMillis = 0;
+    private volatile long maxLagMillis = 0;
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong blockedCount = new AtomicLong();
+
+    /**
+     * 是否异步写入该类型的实体
+     * @param entityClass 实体类型
+     */
+    public static boolean isHistoric(Class<?> entityClass){
+        for(Class<?> type:HISTORIC_TYPES){
+            if(type.isAssignableFrom(entityClass)){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 是否异步执行该删除语句：引擎删除历史数据的语句名都包含Historic（删除评论、附件的语句不包含）
+     * @param statement 语句id
+     */
+    public static boolean isHistoricStatement(String statement){
+        return statement.contains("Historic");
+    }
+
+    /**由AsyncHistoryDbSqlSessionFactory设置，写入时使用引擎的MyBatis配置*/
+    void setDbSqlSessionFactory(DbSqlSessionFactory dbSqlSessionFactory) {
+        this.dbSqlSessionFactory = dbSqlSessionFactory;
+    }
+
+    @Override
+    public void onProcessEngineBuilt(ProcessEngine processEngine) {
+        ProcessEngineConfigurationImpl configuration = ((ProcessEngineImpl) processEngine).getProcessEngineConfiguration();
+        variableTypes = configuration.getVariableTypes();
+        if(nodeId == null && configuration.getIdGenerator() instanceof NodeStripedIdGenerator){
+            nodeId = String.valueOf(((NodeStripedIdGenerator) configuration.getIdGenerator()).getNodeId());
+        }
+        start();
+    }
+
+    @Override
+    public void onProcessEngineClosed(ProcessEngine processEngine) {
+        shutdown();
+    }
+
+    /**
+     * 启动后台写入线程，上次未写入成功的数据由后台线程先重试
+     * 重试文件已被同一台机器上节点号相同的其他引擎使用时抛出异常
+     */
+    public synchronized void start(){
+        if(running){
+            return;
+        }
+        try{
+            spillFile().lock();
+        }catch(IOException e){
+            throw new ActivitiException("历史数据重试文件已被其他引擎使用，请为每个节点配置不同的节点号或spillDirectory。文件："
+                    + spillFile().getFile(), e);
+        }
+        queue = new ArrayBlockingQueue<>(capacity);
+        loadSpilled();
+        running = true;
+        worker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                work();
+            }
+        }, "async-history-writer");
+        worker.setDaemon(true);
+        worker.start();
+        logger.info("启动历史数据异步写入。队列容量：{} ；批量大小：{} ；待重试：{}",capacity,batchSize,getSpilledCount());
+    }
+
+    /**停止接收新的数据，写完队列中剩余的数据后停止后台线程，仍未写入的数据留在重试文件中*/
+    public void shutdown(){
+        Thread thread;
+        synchronized (putLock){
+            if(!running){
+                return;
+            }
+            running = false;
+            thread = worker;
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if(thread.isAlive()){
+            logger.error("历史数据写入线程未在{}秒内结束。队列中剩余：{}",shutdownTimeoutSeconds,queue.size());
+        }else{
+            retrySpilled();
+            spillFile().unlock();
+        }
+        logger.info("停止历史数据异步写入。已写入：{} ；写入失败：{} ；待重试：{} ；背压次数：{} ；最大延迟（毫秒）：{}",
+                writtenCount.get(),failedCount.get(),getSpilledCount(),blockedCount.get(),maxLagMillis);
+    }
+
+    /**
+     * 把一个事务的历史数据放入队列，队列满时阻塞；写入器未运行时直接在当前线程写入
+     * @param operations 按flush顺序排列的插入、更新、删除
+     */
+    void enqueue(List<HistoryOperation> operations){
+        if(operations.isEmpty()){
+            return;
+        }
+        synchronized (putLock){
+            if(running){
+                int i = 0;
+                try {
+                    for(;i < operations.size();i++){
+                        put(operations.get(i));
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    operations = operations.subList(i, operations.size());
+                    logger.warn("等待历史数据队列时被中断，改为同步写入。剩余数量：{}",operations.size());
+                }
+            }
+        }
+        write(operations);
+    }
+
+    private void put(HistoryOperation op) throws InterruptedException {
+        op.enqueueTime = System.currentTimeMillis();
+        op.sequence = sequence.incrementAndGet();
+        addPending(op);
+        if(!queue.offer(op)){
+            blockedCount.incrementAndGet();
+            queue.put(op);
+        }
+    }
+
+    /**
+     * 尚未写入的历史实体的最后一次操作，引擎读取时使用，不等待写入
+     * @param id 实体id
+     * @return 没有未写入的数据时返回null
+     */
+    HistoryOperation getPending(String id){
+        return pendingEntities.get(id);
+    }
+
+    /**
+     * 执行对象尚未写入的活动实例的最后一次操作
+     * @param executionId 执行id
+     */
+    List<HistoryOperation> getPendingActivityInstances(String executionId){
+        synchronized (pendingActivityInstances){
+            Map<String, HistoryOperation> ops = pendingActivityInstances.get(executionId);
+            return ops == null ? Collections.<HistoryOperation>emptyList() : new ArrayList<>(ops.values());
+        }
+    }
+
+    private void addPending(HistoryOperation op){
+        if(op.entity == null){
+            return;
+        }
+        pendingEntities.put(op.entity.getId(), op);
+        if(op.entity instanceof HistoricActivityInstanceEntity){
+            String executionId = ((HistoricActivityInstanceEntity) op.entity).getExecutionId();
+            if(executionId != null){
+                synchronized (pendingActivityInstances){
+                    Map<String, HistoryOperation> ops = pendingActivityInstances.get(executionId);
+                    if(ops == null){
+                        ops = new HashMap<>();
+                        pendingActivityInstances.put(executionId, ops);
+                    }
+                    ops.put(op.entity.getId(), op);
+                }
+            }
+        }
+    }
+
+    /**写入成功后移除，之后入队的数据不受影响*/
+    private void removePending(Collection<HistoryOperation> operations){
+        for(HistoryOperation op:operations){
+            if(op.entity == null){
+                continue;
+            }
+            pendingEntities.remove(op.entity.getId(), op);
+            if(op.entity instanceof HistoricActivityInstanceEntity){
+                String executionId = ((HistoricActivityInstanceEntity) op.entity).getExecutionId();
+                if(executionId != null){
+                    synchronized (pendingActivityInstances){
+                        Map<String, HistoryOperation> ops = pendingActivityInstances.get(executionId);
+                        if(ops != null && ops.remove(op.entity.getId(), op) && ops.isEmpty()){
+                            pendingActivityInstances.remove(executionId);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 等待当前已入队的数据写入数据库或转存到重试文件，供归档、测试等后台任务使用，引擎的命令中不调用
+     * @return 超时或被中断时返回false
+     */
+    public boolean flush(){
+        return await(sequence.get());
+    }
+
+    private synchronized boolean await(long seq){
+        long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(shutdownTimeoutSeconds);
+        while(writtenSequence < seq && (running || (queue != null && !queue.isEmpty()))){
+            long wait = deadline - System.currentTimeMillis();
+            if(wait <= 0){
+                logger.warn("等待历史数据写入超时。序号：{} ；已写入序号：{}",seq,writtenSequence);
+                return false;
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void work(){
+        List<HistoryOperation> batch = new ArrayList<>(batchSize);
+        while(running || !queue.isEmpty()){
+            try {
+                if(System.currentTimeMillis() >= nextRetry){
+                    retrySpilled();
+                }
+                HistoryOperation first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if(first == null){
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, batchSize - 1);
+                write(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                logger.error("历史数据写入线程异常",e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * 按顺序写入一批数据：涉及待重试数据的排到重试文件；整批失败时回滚并逐条重试，仍失败的转存到重试文件
+     */
+    private void write(List<HistoryOperation> batch){
+        long since = batch.get(0).enqueueTime;
+        if(since == 0){
+            //未经过队列，直接写入
+            since = System.currentTimeMillis();
+        }
+        inFlightSince = since;
+        try{
+            List<HistoryOperation> ready = batch;
+            synchronized (spilled){
+                if(!spilledKeys.isEmpty()){
+                    ready = new ArrayList<>(batch.size());
+                    List<HistoryOperation> blocked = new ArrayList<>();
+                    for(HistoryOperation op:batch){
+                        if(touches(op, spilledKeys)){
+                            blocked.add(op);
+                            addKeys(op, spilledKeys);
+                        }else{
+                            ready.add(op);
+                        }
+                    }
+                    spill(blocked);
+                }
+            }
+            if(ready.isEmpty()){
+                return;
+            }
+            try{
+                writeBatch(ready);
+                written(ready);
+            }catch(RuntimeException e){
+                logger.warn("批量写入历史数据失败，改为逐条写入。数量：{}",ready.size(),e);
+                List<HistoryOperation> succeeded = new ArrayList<>(ready.size());
+                List<HistoryOperation> failed = new ArrayList<>();
+                Set<String> failedKeys = new HashSet<>();
+                for(HistoryOperation op:ready){
+                    if(touches(op, failedKeys)){
+                        failed.add(op);
+                        continue;
+                    }
+                    try{
+                        writeBatch(Collections.singletonList(op));
+                        succeeded.add(op);
+                    }catch(RuntimeException ex){
+                        logger.error("写入历史数据失败，保存到重试文件。{}",op,ex);
+                        failed.add(op);
+                        addKeys(op, failedKeys);
+                    }
+                }
+                written(succeeded);
+                synchronized (spilled){
+                    for(HistoryOperation op:failed){
+                        addKeys(op, spilledKeys);
+                    }
+                    spill(failed);
+                }
+            }
+        }finally{
+            inFlightSince = 0;
+            processed(batch, since);
+        }
+    }
+
+    /**追加到待重试列表和重试文件，持有spilled的锁时调用*/
+    private void spill(List<HistoryOperation> operations){
+        if(operations.isEmpty()){
+            return;
+        }
+        if(spilled.isEmpty()){
+            nextRetry = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryIntervalSeconds);
+        }
+        spilled.addAll(operations);
+        failedCount.addAndGet(operations.size());
+        try{
+            spillFile().append(operations);
+        }catch(IOException e){
+            logger.error("保存写入失败的历史数据失败，只保留在内存中，下次重试时重写文件。文件：{} ；数量：{}",
+                    spillFile().getFile(),operations.size(),e);
+        }
+    }
+
+    /**按原顺序重试待重试的数据，某条失败时，之后涉及同一实体或流程实例的数据继续等待*/
+    private void retrySpilled(){
+        synchronized (spilled){
+            nextRetry = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(retryIntervalSeconds);
+            if(spilled.isEmpty()){
+                return;
+            }
+            List<HistoryOperation> succeeded = new ArrayList<>(spilled.size());
+            List<HistoryOperation> remaining = new ArrayList<>();
+            try{
+                writeBatch(spilled);
+                succeeded.addAll(spilled);
+            }catch(RuntimeException e){
+                Set<String> failedKeys = new HashSet<>();
+                for(HistoryOperation op:spilled){
+                    if(touches(op, failedKeys)){
+                        remaining.add(op);
+                        continue;
+                    }
+                    try{
+                        writeBatch(Collections.singletonList(op));
+                        succeeded.add(op);
+                    }catch(RuntimeException ex){
+                        if(op.kind == HistoryOperation.Kind.INSERT && isDuplicateKey(ex)){
+                            //上次写入后未来得及更新重试文件
+                            succeeded.add(op);
+                            continue;
+                        }
+                        remaining.add(op);
+                        addKeys(op, failedKeys);
+                        if(failedKeys.size() == 1 || logger.isDebugEnabled()){
+                            logger.warn("重试写入历史数据失败。{}",op,ex);
+                        }
+                    }
+                }
+            }
+            spilled.clear();
+            spilled.addAll(remaining);
+            spilledKeys.clear();
+            for(HistoryOperation op:remaining){
+                addKeys(op, spilledKeys);
+            }
+            try{
+                spillFile().rewrite(remaining);
+            }catch(IOException e){
+                logger.error("更新历史数据重试文件失败。文件：{}",spillFile().getFile(),e);
+            }
+            written(succeeded);
+            logger.info("重试写入失败的历史数据。成功：{} ；仍失败：{}",succeeded.size(),remaining.size());
+        }
+    }
+
+    /**启动时读取上次未写入成功的数据*/
+    private void loadSpilled(){
+        synchronized (spilled){
+            if(variableTypes == null){
+                return;
+            }
+            try{
+                List<HistoryOperation> operations = spillFile().read();
+                for(HistoryOperation op:operations){
+                    spilled.add(op);
+                    addKeys(op, spilledKeys);
+                    addPending(op);
+                }
+                nextRetry = 0;
+                if(!operations.isEmpty()){
+                    logger.warn("上次未写入成功的历史数据，启动后重试。文件：{} ；数量：{}",spillFile().getFile(),operations.size());
+                }
+            }catch(IOException e){
+                logger.error("读取历史数据重试文件失败，文件保留不动。文件：{}",spillFile().getFile(),e);
+            }
+        }
+    }
+
+    private HistorySpillFile spillFile(){
+        if(spillFile == null){
+            spillFile = new HistorySpillFile(spillDirectory, nodeId == null ? "0" : nodeId, variableTypes);
+        }
+        return spillFile;
+    }
+
+    private static boolean touches(HistoryOperation op, Set<String> keys){
+        if(keys.isEmpty()){
+            return false;
+        }
+        String processInstanceId = op.processInstanceId();
+        return (op.entity != null && keys.contains(op.entity.getId()))
+                || (processInstanceId != null && keys.contains(processInstanceId));
+    }
+
+    private static void addKeys(HistoryOperation op, Set<String> keys){
+        if(op.entity != null){
+            keys.add(op.entity.getId());
+        }
+        String processInstanceId = op.processInstanceId();
+        if(processInstanceId != null){
+            keys.add(processInstanceId);
+        }
+    }
+
+    private static boolean isDuplicateKey(Throwable e){
+        for(Throwable t = e; t != null; t = t.getCause()){
+            if(t instanceof SQLException && ((SQLException) t).getSQLState() != null
+                    && ((SQLException) t).getSQLState().startsWith("23")){
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void writeBatch(List<HistoryOperation> batch){
+        SqlSession sqlSession = dbSqlSessionFactory.getSqlSessionFactory().openSession(ExecutorType.BATCH);
+        try{
+            for(HistoryOperation op:batch){
+                PersistentObject entity = op.entity;
+                switch (op.kind){
+                    case INSERT:
+                        sqlSession.insert(dbSqlSessionFactory.mapStatement(dbSqlSessionFactory.getInsertStatement(entity)), entity);
+                        break;
+                    case UPDATE:
+                        sqlSession.update(dbSqlSessionFactory.mapStatement(dbSqlSessionFactory.getUpdateStatement(entity)), entity);
+                        break;
+                    case DELETE:
+                        sqlSession.delete(dbSqlSessionFactory.mapStatement(dbSqlSessionFactory.getDeleteStatement(entity.getClass())), entity);
+                        break;
+                    default:
+                        sqlSession.delete(dbSqlSessionFactory.mapStatement(op.statement), op.parameter);
+                        break;
+                }
+            }
+            checkUpdateCounts(sqlSession.flushStatements());
+            sqlSession.commit();
+        }catch(RuntimeException e){
+            sqlSession.rollback();
+            throw e;
+        }finally{
+            sqlSession.close();
+        }
+    }
+
+    /**
+     * 更新语句必须更新到行：行不存在（插入还未写入或已被删除）或版本已变化（ACT_HI_VARINST）时抛出异常，
+     * 整批回滚后逐条重试，仍失败的转存到重试文件。删除语句删除0行不算失败
+     */
+    private static void checkUpdateCounts(List<BatchResult> results){
+        for(BatchResult result:results){
+            if(result.getMappedStatement().getSqlCommandType() != SqlCommandType.UPDATE){
+                continue;
+            }
+            int[] counts = result.getUpdateCounts();
+            for(int i = 0; i < counts.length; i++){
+                //驱动不返回行数时为Statement.SUCCESS_NO_INFO，不检查
+                if(counts[i] == 0){
+                    throw new ActivitiOptimisticLockingException("历史数据没有更新到行（行不存在或版本已变化）。"
+                            + result.getParameterObjects().get(i));
+                }
+            }
+        }
+    }
+
+    private void written(List<HistoryOperation> operations){
+        removePending(operations);
+        writtenCount.addAndGet(operations.size());
+    }
+
+    private void processed(List<HistoryOperation> batch, long since){
+        long maxSequence = 0;
+        for(HistoryOperation op:batch){
+            maxSequence = Math.max(maxSequence, op.sequence);
+        }
+        lastLagMillis = System.currentTimeMillis() - since;
+        maxLagMillis = Math.max(maxLagMillis, lastLagMillis);
+        synchronized (this){
+            writtenSequence = Math.max(writtenSequence, maxSequence);
+            notifyAll();
+        }
+    }
+
+    /**
+     * 持久化延迟：最早一条未写入的历史数据已经等待的时间（毫秒），没有未写入的数据时为0（不包括待重试的数据）
+     */
+    public long getDurabilityLagMillis(){
+        long oldest = inFlightSince;
+        if(oldest == 0 && queue != null){
+            HistoryOperation head = queue.peek();
+            oldest = head == null ? 0 : head.enqueueTime;
+        }
+        return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+    }
+
+    /**最近一批数据从入队到处理完成的时间（毫秒）*/
+    public long getLastLagMillis() {
+        return lastLagMillis;
+    }
+
+    /**启动以来最大的入队到处理完成的时间（毫秒）*/
+    public long getMaxLagMillis() {
+        return maxLagMillis;
+    }
+
+    /**队列中等待写入的条数*/
+    public int getQueueSize(){
+        return queue == null ? 0 : queue.size();
+    }
+
+    /**已写入数据库的条数（包括重试成功的）*/
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**写入失败、转存到重试文件的条数（累计）*/
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**当前等待重试的条数*/
+    public int getSpilledCount() {
+        synchronized (spilled){
+            return spilled.size();
+        }
+    }
+
+    /**流程实例是否有等待重试的数据*/
+    public boolean isSpilled(String processInstanceId) {
+        synchronized (spilled){
+            return spilledKeys.contains(processInstanceId);
+        }
+    }
+
+    /**队列满导致提交线程等待的次数*/
+    public long getBlockedCount() {
+        return blockedCount.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public int getShutdownTimeoutSeconds() {
+        return shutdownTimeoutSeconds;
+    }
+
+    public void setShutdownTimeoutSeconds(int shutdownTimeoutSeconds) {
+        this.shutdownTimeoutSeconds = shutdownTimeoutSeconds;
+    }
+
+    public int getRetryIntervalSeconds() {
+        return retryIntervalSeconds;
+    }
+
+    public void setRetryIntervalSeconds(int retryIntervalSeconds) {
+        this.retryIntervalSeconds = retryIntervalSeconds;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @param nodeId 重试文件名中的节点号，共用spillDirectory的引擎各不相同；不设置时使用引擎的NodeStripedIdGenerator的节点号
+     */
+    public void setNodeId(String nodeId) {
+        this.nodeId = nodeId;
+    }
+}
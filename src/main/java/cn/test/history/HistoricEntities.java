@@ -0,0 +1,82 @@
+package cn.test.history;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.impl.db.HasRevision;
+import org.activiti.engine.impl.db.PersistentObject;
+import org.activiti.engine.impl.persistence.entity.ByteArrayRef;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 按字段复制、创建历史实体（ACT_HI_*），字段列表按类型缓存
+ */
+class HistoricEntities {
+
+    private static final ConcurrentHashMap<Class<?>, Field[]> FIELDS = new ConcurrentHashMap<>();
+
+    private HistoricEntities(){
+    }
+
+    /**
+     * 复制等待写入的实体，交给另一个命令修改，队列中的实体不被改动
+     * ByteArrayRef只保留id（字节数组按需加载），更新后的HasRevision实体的版本号取写入后的版本号
+     * @param op 等待写入的插入或更新
+     */
+    static PersistentObject copy(HistoryOperation op){
+        PersistentObject entity = op.entity;
+        PersistentObject copy = newInstance(entity.getClass());
+        try{
+            for(Field field:fields(entity.getClass())){
+                Object value = field.get(entity);
+                if(value instanceof ByteArrayRef){
+                    value = new ByteArrayRef(((ByteArrayRef) value).getId());
+                }else if(value instanceof Date){
+                    value = ((Date) value).clone();
+                }
+                field.set(copy, value);
+            }
+        }catch(IllegalAccessException e){
+            throw new ActivitiException("Could not copy " + entity.getClass().getName(), e);
+        }
+        if(op.kind == HistoryOperation.Kind.UPDATE && copy instanceof HasRevision){
+            ((HasRevision) copy).setRevision(((HasRevision) copy).getRevisionNext());
+        }
+        return copy;
+    }
+
+    /**用无参构造方法（可以不是public）创建实体*/
+    static PersistentObject newInstance(Class<? extends PersistentObject> type){
+        try{
+            Constructor<? extends PersistentObject> constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+            return constructor.newInstance();
+        }catch(ReflectiveOperationException e){
+            throw new ActivitiException("Could not create " + type.getName(), e);
+        }
+    }
+
+    /**类型及其父类的全部实例字段，已设置为可访问*/
+    static Field[] fields(Class<?> type){
+        Field[] fields = FIELDS.get(type);
+        if(fields == null){
+            List<Field> list = new ArrayList<>();
+            for(Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()){
+                for(Field field:c.getDeclaredFields()){
+                    if(!Modifier.isStatic(field.getModifiers())){
+                        field.setAccessible(true);
+                        list.add(field);
+                    }
+                }
+            }
+            fields = list.toArray(new Field[list.size()]);
+            FIELDS.putIfAbsent(type, fields);
+        }
+        return fields;
+    }
+}
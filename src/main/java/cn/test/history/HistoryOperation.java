@@ -0,0 +1,87 @@
+package cn.test.history;
+
+import org.activiti.engine.history.HistoricDetail;
+import org.activiti.engine.history.HistoricIdentityLink;
+import org.activiti.engine.history.HistoricVariableInstance;
+import org.activiti.engine.impl.db.PersistentObject;
+import org.activiti.engine.impl.persistence.entity.HistoricScopeInstanceEntity;
+
+/**
+ * 等待后台写入的一条历史数据：实体的插入、更新、删除，或按流程实例id执行的删除语句
+ */
+class HistoryOperation {
+
+    enum Kind {
+        INSERT, UPDATE, DELETE,
+        /**按参数（流程实例id）执行的删除语句，没有实体*/
+        STATEMENT
+    }
+
+    final Kind kind;
+    final PersistentObject entity;
+    /**STATEMENT的语句id（未映射前）*/
+    final String statement;
+    /**STATEMENT的参数*/
+    final String parameter;
+    /**入队时间，用于计算持久化延迟*/
+    long enqueueTime;
+    /**入队序号，按提交顺序递增*/
+    long sequence;
+
+    private HistoryOperation(Kind kind, PersistentObject entity, String statement, String parameter) {
+        this.kind = kind;
+        this.entity = entity;
+        this.statement = statement;
+        this.parameter = parameter;
+    }
+
+    static HistoryOperation insert(PersistentObject entity){
+        return new HistoryOperation(Kind.INSERT, entity, null, null);
+    }
+
+    static HistoryOperation update(PersistentObject entity){
+        return new HistoryOperation(Kind.UPDATE, entity, null, null);
+    }
+
+    static HistoryOperation delete(PersistentObject entity){
+        return new HistoryOperation(Kind.DELETE, entity, null, null);
+    }
+
+    static HistoryOperation statement(String statement, String parameter){
+        return new HistoryOperation(Kind.STATEMENT, null, statement, parameter);
+    }
+
+    static HistoryOperation of(Kind kind, PersistentObject entity, String statement, String parameter){
+        return new HistoryOperation(kind, entity, statement, parameter);
+    }
+
+    /**
+     * 涉及的流程实例id：实体所属的流程实例，或删除语句的参数；没有时为null
+     */
+    String processInstanceId(){
+        if(entity == null){
+            return parameter;
+        }
+        if(entity instanceof HistoricScopeInstanceEntity){
+            return ((HistoricScopeInstanceEntity) entity).getProcessInstanceId();
+        }
+        if(entity instanceof HistoricVariableInstance){
+            return ((HistoricVariableInstance) entity).getProcessInstanceId();
+        }
+        if(entity instanceof HistoricDetail){
+            return ((HistoricDetail) entity).getProcessInstanceId();
+        }
+        if(entity instanceof HistoricIdentityLink){
+            return ((HistoricIdentityLink) entity).getProcessInstanceId();
+        }
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        if(entity == null){
+            return kind.name().toLowerCase() + " " + statement + "[" + parameter + "]";
+        }
+        return kind.name().toLowerCase() + " " + entity.getClass().getSimpleName() + "[" + entity.getId() + "]";
+    }
+}
@@ -0,0 +1,387 @@
+package cn.test.history;
+
+import org.activiti.engine.impl.db.PersistentObject;
+import org.activiti.engine.impl.persistence.entity.ByteArrayRef;
+import org.activiti.engine.impl.variable.VariableType;
+import org.activiti.engine.impl.variable.VariableTypes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * 写入失败的历史数据的本地文件（目录/history-spill-节点号.dat），按写入顺序追加，追加后刷盘；重试后用剩余的数据整体替换
+ * 同一台机器上的多个引擎可能使用同一个目录，所以文件名带节点号，并且写入器运行期间锁定 history-spill-节点号.lock，
+ * 节点号相同的另一个引擎不能同时使用
+ *
+ * 每条记录：长度、内容、CRC32；内容是操作类型、语句、参数和实体的字段（字符串、数字、日期、字节数组、变量类型名、ByteArrayRef的id），
+ * 其他类型的字段（变量的缓存值、查询结果等）不保存。读取时只创建历史实体类型，末尾不完整或校验失败的记录忽略
+ */
+class HistorySpillFile {
+    private Logger logger = LoggerFactory.getLogger(HistorySpillFile.class);
+
+    static final String FILE_PREFIX = "history-spill-";
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte INT = 2;
+    private static final byte LONG = 3;
+    private static final byte DOUBLE = 4;
+    private static final byte BOOLEAN = 5;
+    private static final byte DATE = 6;
+    private static final byte BYTES = 7;
+    private static final byte VARIABLE_TYPE = 8;
+    private static final byte BYTE_ARRAY_REF = 9;
+
+    private final File file;
+    private final File lockFile;
+    private final VariableTypes variableTypes;
+    private FileLock lock;
+
+    /**
+     * @param directory 目录
+     * @param nodeId 节点号，同一目录中每个引擎不同
+     * @param variableTypes 读取时还原变量类型
+     */
+    HistorySpillFile(File directory, String nodeId, VariableTypes variableTypes) {
+        this.file = new File(directory, FILE_PREFIX + nodeId + ".dat");
+        this.lockFile = new File(directory, FILE_PREFIX + nodeId + ".lock");
+        this.variableTypes = variableTypes;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**锁定文件，已被其他进程或本进程中的其他引擎锁定时抛出异常*/
+    synchronized void lock() throws IOException {
+        if(lock != null){
+            return;
+        }
+        Files.createDirectories(lockFile.getParentFile().toPath());
+        FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        FileLock acquired = null;
+        try{
+            acquired = channel.tryLock();
+        }catch(OverlappingFileLockException e){
+            //本进程中的其他引擎已锁定
+        }finally{
+            if(acquired == null){
+                channel.close();
+            }
+        }
+        if(acquired == null){
+            throw new IOException("History spill file is locked by another engine: " + file);
+        }
+        lock = acquired;
+    }
+
+    synchronized void unlock(){
+        if(lock == null){
+            return;
+        }
+        try{
+            lock.channel().close();
+        }catch(IOException e){
+            logger.warn("释放历史数据重试文件的锁失败。文件：{}",lockFile,e);
+        }
+        lock = null;
+    }
+
+    /**追加并刷盘*/
+    void append(List<HistoryOperation> operations) throws IOException {
+        Files.createDirectories(file.getParentFile().toPath());
+        try(FileOutputStream out = new FileOutputStream(file, true)){
+            write(out, operations);
+        }
+    }
+
+    /**用operations替换文件内容，为空时删除文件*/
+    void rewrite(List<HistoryOperation> operations) throws IOException {
+        if(operations.isEmpty()){
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        Files.createDirectories(file.getParentFile().toPath());
+        File temp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try(FileOutputStream out = new FileOutputStream(temp)){
+            write(out, operations);
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**按写入顺序读出全部记录，文件不存在时返回空列表*/
+    List<HistoryOperation> read() throws IOException {
+        List<HistoryOperation> operations = new ArrayList<>();
+        if(!file.exists()){
+            return operations;
+        }
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))){
+            while(true){
+                byte[] record;
+                long crc;
+                try{
+                    int length = in.readInt();
+                    if(length < 0 || length > file.length()){
+                        logger.warn("历史数据重试文件的记录长度错误，忽略之后的内容。文件：{} ；已读取：{}",file,operations.size());
+                        break;
+                    }
+                    record = new byte[length];
+                    in.readFully(record);
+                    crc = in.readLong();
+                }catch(EOFException e){
+                    break;
+                }
+                if(crc(record) != crc){
+                    logger.warn("历史数据重试文件的记录校验失败，忽略之后的内容。文件：{} ；已读取：{}",file,operations.size());
+                    break;
+                }
+                operations.add(decode(record));
+            }
+        }
+        return operations;
+    }
+
+    private void write(FileOutputStream out, List<HistoryOperation> operations) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        for(HistoryOperation op:operations){
+            byte[] record = encode(op);
+            data.writeInt(record.length);
+            data.write(record);
+            data.writeLong(crc(record));
+        }
+        data.flush();
+        out.getFD().sync();
+    }
+
+    private byte[] encode(HistoryOperation op) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(op.kind.ordinal());
+        writeString(out, op.statement);
+        writeString(out, op.parameter);
+        if(op.entity == null){
+            writeString(out, null);
+        }else{
+            writeString(out, op.entity.getClass().getName());
+            List<Field> fields = new ArrayList<>();
+            List<Object> values = new ArrayList<>();
+            for(Field field:HistoricEntities.fields(op.entity.getClass())){
+                Object value;
+                try{
+                    value = field.get(op.entity);
+                }catch(IllegalAccessException e){
+                    throw new IOException("Could not read " + field, e);
+                }
+                if(value == null || tag(value) != NULL){
+                    fields.add(field);
+                    values.add(value);
+                }
+            }
+            out.writeShort(fields.size());
+            for(int i = 0; i < fields.size(); i++){
+                writeString(out, fields.get(i).getName());
+                writeValue(out, values.get(i));
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private HistoryOperation decode(byte[] record) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        HistoryOperation.Kind kind = HistoryOperation.Kind.values()[in.readByte()];
+        String statement = readString(in);
+        String parameter = readString(in);
+        String className = readString(in);
+        PersistentObject entity = null;
+        if(className != null){
+            Class<?> type;
+            try{
+                type = Class.forName(className, false, HistorySpillFile.class.getClassLoader());
+            }catch(ClassNotFoundException e){
+                throw new IOException("Unknown class in history spill file: " + className, e);
+            }
+            if(!PersistentObject.class.isAssignableFrom(type) || !AsyncHistoryWriter.isHistoric(type)){
+                throw new IOException("Not a historic entity in history spill file: " + className);
+            }
+            entity = HistoricEntities.newInstance(type.asSubclass(PersistentObject.class));
+            Map<String, Field> fields = new HashMap<>();
+            for(Field field:HistoricEntities.fields(type)){
+                if(!fields.containsKey(field.getName())){
+                    fields.put(field.getName(), field);
+                }
+            }
+            int count = in.readShort();
+            for(int i = 0; i < count; i++){
+                String name = readString(in);
+                Object value = readValue(in);
+                Field field = fields.get(name);
+                if(field != null && (value != null || !field.getType().isPrimitive())){
+                    try{
+                        field.set(entity, value);
+                    }catch(IllegalAccessException | IllegalArgumentException e){
+                        throw new IOException("Could not restore " + field, e);
+                    }
+                }
+            }
+        }
+        return HistoryOperation.of(kind, entity, statement, parameter);
+    }
+
+    private static byte tag(Object value){
+        if(value == null){
+            return NULL;
+        }
+        if(value instanceof String){
+            return STRING;
+        }
+        if(value instanceof Integer){
+            return INT;
+        }
+        if(value instanceof Long){
+            return LONG;
+        }
+        if(value instanceof Double){
+            return DOUBLE;
+        }
+        if(value instanceof Boolean){
+            return BOOLEAN;
+        }
+        if(value instanceof Date){
+            return DATE;
+        }
+        if(value instanceof byte[]){
+            return BYTES;
+        }
+        if(value instanceof VariableType){
+            return VARIABLE_TYPE;
+        }
+        if(value instanceof ByteArrayRef){
+            return BYTE_ARRAY_REF;
+        }
+        return NULL;
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        byte tag = tag(value);
+        out.writeByte(tag);
+        switch (tag){
+            case STRING:
+                writeString(out, (String) value);
+                break;
+            case INT:
+                out.writeInt((Integer) value);
+                break;
+            case LONG:
+                out.writeLong((Long) value);
+                break;
+            case DOUBLE:
+                out.writeDouble((Double) value);
+                break;
+            case BOOLEAN:
+                out.writeBoolean((Boolean) value);
+                break;
+            case DATE:
+                out.writeLong(((Date) value).getTime());
+                break;
+            case BYTES:
+                out.writeInt(((byte[]) value).length);
+                out.write((byte[]) value);
+                break;
+            case VARIABLE_TYPE:
+                writeString(out, ((VariableType) value).getTypeName());
+                break;
+            case BYTE_ARRAY_REF:
+                writeString(out, ((ByteArrayRef) value).getId());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag){
+            case NULL:
+                return null;
+            case STRING:
+                return readString(in);
+            case INT:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case DOUBLE:
+                return in.readDouble();
+            case BOOLEAN:
+                return in.readBoolean();
+            case DATE:
+                return new Date(in.readLong());
+            case BYTES:
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                return bytes;
+            case VARIABLE_TYPE:
+                String typeName = readString(in);
+                VariableType type = variableTypes.getVariableType(typeName);
+                if(type == null){
+                    throw new IOException("Unknown variable type in history spill file: " + typeName);
+                }
+                return type;
+            case BYTE_ARRAY_REF:
+                return new ByteArrayRef(readString(in));
+            default:
+                throw new IOException("Unknown value tag in history spill file: " + tag);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long crc(byte[] record){
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, record.length);
+        return crc.getValue();
+    }
+}
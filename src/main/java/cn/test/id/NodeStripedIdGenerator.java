@@ -0,0 +1,130 @@
+package cn.test.id;
+
+import org.activiti.engine.ActivitiIllegalArgumentException;
+import org.activiti.engine.impl.cfg.IdGenerator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 按节点分段、按时间递增的id生成器，不需要更新ACT_GE_PROPERTY中的next.dbid（DbIdGenerator）
+ * id由41位毫秒时间戳（从epoch开始）、10位节点号、12位序号组成，节点号不同的引擎生成的id不会重复
+ * 同一节点内用CAS递增（时间戳, 序号），不加锁：同一毫秒内序号递增，序号用完或时钟回拨时借用下一毫秒，id始终递增
+ *
+ * id补齐为19位十进制字符串，字符串顺序与生成顺序一致，插入时落在B树索引的末端
+ * 在activiti.cfg.xml中设置为idGenerator，init-method为init；每个节点用系统属性activiti.nodeId（-Dactiviti.nodeId=1）配置不同的节点号。
+ * 没有配置时：单节点部署（默认）使用节点号0并打印警告；clustered为true时启动失败，不自动计算（自动计算的节点号可能重复，生成重复的主键）
+ */
+public class NodeStripedIdGenerator implements IdGenerator {
+    private Logger logger = LoggerFactory.getLogger(NodeStripedIdGenerator.class);
+
+    public static final int NODE_BITS = 10;
+    public static final int SEQUENCE_BITS = 12;
+    public static final int MAX_NODE_ID = (1 << NODE_BITS) - 1;
+    /**默认epoch：2020-01-01T00:00:00Z，41位时间戳可以使用69年*/
+    public static final long DEFAULT_EPOCH = 1577836800000L;
+    /**配置节点号的系统属性*/
+    public static final String NODE_ID_PROPERTY = "activiti.nodeId";
+
+    private static final long SEQUENCE_MASK = (1L << SEQUENCE_BITS) - 1;
+    private static final String PADDING = "0000000000000000000";
+
+    private long epoch = DEFAULT_EPOCH;
+    /**节点号，小于0表示未设置，init时从系统属性读取*/
+    private volatile int nodeId = -1;
+    /**是否多个引擎共用一个数据库，为true时必须配置节点号*/
+    private boolean clustered = false;
+    /**nodeId << SEQUENCE_BITS，在nodeId之前赋值*/
+    private long nodeBits;
+
+    /**最后一个id的（时间戳 << SEQUENCE_BITS | 序号），序号溢出时进位到时间戳*/
+    private final AtomicLong last = new AtomicLong();
+
+    @Override
+    public String getNextId() {
+        if(nodeId < 0){
+            init();
+        }
+        long next;
+        for(;;){
+            long prev = last.get();
+            long now = (System.currentTimeMillis() - epoch) << SEQUENCE_BITS;
+            next = now > prev ? now : prev + 1;
+            if(last.compareAndSet(prev, next)){
+                break;
+            }
+        }
+        long id = (next >>> SEQUENCE_BITS) << (NODE_BITS + SEQUENCE_BITS) | nodeBits | (next & SEQUENCE_MASK);
+        String digits = Long.toString(id);
+        return PADDING.substring(digits.length()) + digits;
+    }
+
+    /**
+     * 检查节点号：没有设置nodeId时读取系统属性activiti.nodeId；
+     * 都没有时单节点使用节点号0，集群（clustered）抛出异常，引擎不能启动
+     */
+    public synchronized void init(){
+        if(nodeId >= 0){
+            return;
+        }
+        String value = System.getProperty(NODE_ID_PROPERTY);
+        if(value == null && !clustered){
+            setNodeId(0);
+            logger.warn("没有配置节点号，按单节点使用节点号0；多个引擎共用一个数据库时请用系统属性{}为每个节点设置不同的值。节点号：{}",NODE_ID_PROPERTY,0);
+            return;
+        }
+        if(value == null || value.trim().isEmpty()){
+            throw new ActivitiIllegalArgumentException("没有配置节点号，请用系统属性" + NODE_ID_PROPERTY
+                    + "为每个节点设置不同的值（0~" + MAX_NODE_ID + "），如-D" + NODE_ID_PROPERTY + "=1");
+        }
+        int id;
+        try{
+            id = Integer.parseInt(value.trim());
+        }catch(NumberFormatException e){
+            throw new ActivitiIllegalArgumentException("节点号不是整数：" + value, e);
+        }
+        if(id < 0){
+            throw new ActivitiIllegalArgumentException("节点号超出范围（0~" + MAX_NODE_ID + "）：" + id);
+        }
+        setNodeId(id);
+        logger.info("id生成器的节点号。节点号：{}",id);
+    }
+
+    public int getNodeId() {
+        return nodeId;
+    }
+
+    /**
+     * @param nodeId 节点号，0~1023，同一个数据库的每个引擎不同
+     */
+    public void setNodeId(int nodeId) {
+        if(nodeId < 0 || nodeId > MAX_NODE_ID){
+            throw new ActivitiIllegalArgumentException("节点号超出范围（0~" + MAX_NODE_ID + "）：" + nodeId);
+        }
+        this.nodeBits = (long) nodeId << SEQUENCE_BITS;
+        this.nodeId = nodeId;
+    }
+
+    public boolean isClustered() {
+        return clustered;
+    }
+
+    /**
+     * @param clustered 是否多个引擎共用一个数据库，为true时没有配置节点号启动失败
+     */
+    public void setClustered(boolean clustered) {
+        this.clustered = clustered;
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @param epoch 时间戳的起点（毫秒），已经生成过id后不能改大
+     */
+    public void setEpoch(long epoch) {
+        this.epoch = epoch;
+    }
+}
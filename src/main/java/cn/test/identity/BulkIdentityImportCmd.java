@@ -0,0 +1,192 @@
+package cn.test.identity;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.identity.Group;
+import org.activiti.engine.identity.User;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.GroupEntity;
+import org.activiti.engine.impl.persistence.entity.MembershipEntity;
+import org.activiti.engine.impl.persistence.entity.TableDataManager;
+import org.activiti.engine.impl.persistence.entity.UserEntity;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * 批量导入用户、组和成员关系（一个事务）
+ * 先读出现有的数据做比对（用户比较姓名、邮箱和密码），只对新增、变化的行执行insert/update，并删除导入的用户不再拥有的成员关系；
+ * 所有写操作使用JDBC批处理，每batchSize条执行一次。不会删除用户和组。
+ *
+ * 语句直接在引擎当前的连接上执行，不经过MyBatis；MyBatis会话不知道有修改，所以登记提交监听，命令上下文提交时强制提交会话
+ */
+public class BulkIdentityImportCmd implements Command<IdentityImportResult> {
+
+    private final Collection<? extends User> users;
+    private final Collection<? extends Group> groups;
+    private final Collection<Membership> memberships;
+    private final int batchSize;
+
+    /**
+     * @param users 用户
+     * @param groups 组
+     * @param memberships 成员关系（多对多），导入的用户现有的、不在此列表中的关系会被删除
+     * @param batchSize 每批执行的语句数
+     */
+    public BulkIdentityImportCmd(Collection<? extends User> users, Collection<? extends Group> groups,
+                                 Collection<Membership> memberships, int batchSize) {
+        this.users = users;
+        this.groups = groups;
+        this.memberships = memberships;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public IdentityImportResult execute(CommandContext commandContext) {
+        IdentityImportResult result = new IdentityImportResult();
+        long start = System.currentTimeMillis();
+        TableDataManager tables = commandContext.getTableDataManager();
+        String userTable = tables.getTableName(UserEntity.class, true);
+        String groupTable = tables.getTableName(GroupEntity.class, true);
+        String membershipTable = tables.getTableName(MembershipEntity.class, true);
+        Connection connection = commandContext.getDbSqlSession().getSqlSession().getConnection();
+        try{
+            importUsers(connection, userTable, result);
+            importGroups(connection, groupTable, result);
+            importMemberships(connection, membershipTable, result);
+        }catch(SQLException e){
+            throw new ActivitiException("批量导入组织机构失败", e);
+        }
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTING, new TransactionListener() {
+            @Override
+            public void execute(CommandContext commandContext) {
+                commandContext.getDbSqlSession().getSqlSession().commit(true);
+            }
+        });
+        result.elapsedMillis = System.currentTimeMillis() - start;
+        return result;
+    }
+
+    private void importUsers(Connection connection, String table, IdentityImportResult result) throws SQLException {
+        Map<String, String[]> existing = new HashMap<>();
+        try(PreparedStatement ps = connection.prepareStatement("SELECT ID_, FIRST_, LAST_, EMAIL_, PWD_ FROM " + table);
+            ResultSet rs = ps.executeQuery()){
+            while(rs.next()){
+                existing.put(rs.getString(1), new String[]{rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5)});
+            }
+        }
+        try(Batch insert = new Batch(connection, "INSERT INTO " + table + " (ID_, REV_, FIRST_, LAST_, EMAIL_, PWD_) VALUES (?, 1, ?, ?, ?, ?)");
+            Batch update = new Batch(connection, "UPDATE " + table + " SET REV_ = REV_ + 1, FIRST_ = ?, LAST_ = ?, EMAIL_ = ?, PWD_ = ? WHERE ID_ = ?")){
+            for(User user:users){
+                String[] old = existing.get(user.getId());
+                if(old == null){
+                    insert.add(user.getId(), user.getFirstName(), user.getLastName(), user.getEmail(), user.getPassword());
+                    result.usersInserted++;
+                }else if(!Objects.equals(old[0], user.getFirstName()) || !Objects.equals(old[1], user.getLastName())
+                        || !Objects.equals(old[2], user.getEmail()) || !Objects.equals(old[3], user.getPassword())){
+                    update.add(user.getFirstName(), user.getLastName(), user.getEmail(), user.getPassword(), user.getId());
+                    result.usersUpdated++;
+                }else{
+                    result.unchanged++;
+                }
+            }
+        }
+    }
+
+    private void importGroups(Connection connection, String table, IdentityImportResult result) throws SQLException {
+        Map<String, String[]> existing = new HashMap<>();
+        try(PreparedStatement ps = connection.prepareStatement("SELECT ID_, NAME_, TYPE_ FROM " + table);
+            ResultSet rs = ps.executeQuery()){
+            while(rs.next()){
+                existing.put(rs.getString(1), new String[]{rs.getString(2), rs.getString(3)});
+            }
+        }
+        try(Batch insert = new Batch(connection, "INSERT INTO " + table + " (ID_, REV_, NAME_, TYPE_) VALUES (?, 1, ?, ?)");
+            Batch update = new Batch(connection, "UPDATE " + table + " SET REV_ = REV_ + 1, NAME_ = ?, TYPE_ = ? WHERE ID_ = ?")){
+            for(Group group:groups){
+                String[] old = existing.get(group.getId());
+                if(old == null){
+                    insert.add(group.getId(), group.getName(), group.getType());
+                    result.groupsInserted++;
+                }else if(!Objects.equals(old[0], group.getName()) || !Objects.equals(old[1], group.getType())){
+                    update.add(group.getName(), group.getType(), group.getId());
+                    result.groupsUpdated++;
+                }else{
+                    result.unchanged++;
+                }
+            }
+        }
+    }
+
+    private void importMemberships(Connection connection, String table, IdentityImportResult result) throws SQLException {
+        Set<String> importedUsers = new HashSet<>();
+        for(User user:users){
+            importedUsers.add(user.getId());
+        }
+        for(Membership membership:memberships){
+            importedUsers.add(membership.getUserId());
+        }
+        Set<Membership> existing = new HashSet<>();
+        try(PreparedStatement ps = connection.prepareStatement("SELECT USER_ID_, GROUP_ID_ FROM " + table);
+            ResultSet rs = ps.executeQuery()){
+            while(rs.next()){
+                existing.add(new Membership(rs.getString(1), rs.getString(2)));
+            }
+        }
+        Set<Membership> wanted = new LinkedHashSet<>(memberships);
+        try(Batch delete = new Batch(connection, "DELETE FROM " + table + " WHERE USER_ID_ = ? AND GROUP_ID_ = ?");
+            Batch insert = new Batch(connection, "INSERT INTO " + table + " (USER_ID_, GROUP_ID_) VALUES (?, ?)")){
+            for(Membership membership:existing){
+                if(importedUsers.contains(membership.getUserId()) && !wanted.contains(membership)){
+                    delete.add(membership.getUserId(), membership.getGroupId());
+                    result.membershipsDeleted++;
+                }
+            }
+            for(Membership membership:wanted){
+                if(existing.contains(membership)){
+                    result.unchanged++;
+                }else{
+                    insert.add(membership.getUserId(), membership.getGroupId());
+                    result.membershipsInserted++;
+                }
+            }
+        }
+    }
+
+    /**每batchSize条执行一次的JDBC批处理语句，关闭时执行剩余的语句*/
+    private class Batch implements AutoCloseable {
+        private final PreparedStatement ps;
+        private int pending = 0;
+
+        Batch(Connection connection, String sql) throws SQLException {
+            this.ps = connection.prepareStatement(sql);
+        }
+
+        void add(Object... params) throws SQLException {
+            for(int i = 0; i < params.length; i++){
+                ps.setObject(i + 1, params[i]);
+            }
+            ps.addBatch();
+            if(++pending >= batchSize){
+                ps.executeBatch();
+                pending = 0;
+            }
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try{
+                if(pending > 0){
+                    ps.executeBatch();
+                }
+            }finally{
+                ps.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package cn.test.identity;
+
+import org.activiti.engine.identity.Group;
+import org.activiti.engine.impl.persistence.entity.GroupEntityManager;
+
+import java.util.List;
+
+/**
+ * 查询用户所在的组时使用缓存；新增、修改、删除组时失效缓存
+ */
+public class CachingGroupEntityManager extends GroupEntityManager {
+
+    private final GroupMembershipCache cache;
+
+    public CachingGroupEntityManager(GroupMembershipCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public List<Group> findGroupsByUser(String userId) {
+        List<Group> groups = cache.get(userId);
+        if(groups == null){
+            groups = super.findGroupsByUser(userId);
+            cache.put(userId, groups);
+        }
+        return groups;
+    }
+
+    @Override
+    public void insertGroup(Group group) {
+        super.insertGroup(group);
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void updateGroup(Group updatedGroup) {
+        super.updateGroup(updatedGroup);
+        cache.invalidateAll();
+    }
+
+    @Override
+    public void deleteGroup(String groupId) {
+        super.deleteGroup(groupId);
+        cache.invalidateAll();
+    }
+}
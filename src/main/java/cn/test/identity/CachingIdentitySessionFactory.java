@@ -0,0 +1,47 @@
+package cn.test.identity;
+
+import org.activiti.engine.ActivitiIllegalArgumentException;
+import org.activiti.engine.impl.interceptor.Session;
+import org.activiti.engine.impl.interceptor.SessionFactory;
+import org.activiti.engine.impl.persistence.entity.GroupIdentityManager;
+import org.activiti.engine.impl.persistence.entity.MembershipIdentityManager;
+import org.activiti.engine.impl.persistence.entity.UserIdentityManager;
+
+/**
+ * 替换引擎默认的组、成员关系、用户管理器，使它们共用同一个GroupMembershipCache
+ * 在activiti.cfg.xml的customSessionFactories中为三种sessionType各配置一个
+ */
+public class CachingIdentitySessionFactory implements SessionFactory {
+
+    private final Class<?> sessionType;
+    private final GroupMembershipCache cache;
+
+    /**
+     * @param sessionType GroupIdentityManager、MembershipIdentityManager或UserIdentityManager
+     * @param cache 用户所在组的缓存
+     */
+    public CachingIdentitySessionFactory(Class<?> sessionType, GroupMembershipCache cache) {
+        if(sessionType != GroupIdentityManager.class && sessionType != MembershipIdentityManager.class
+                && sessionType != UserIdentityManager.class){
+            throw new ActivitiIllegalArgumentException("Unsupported session type: " + sessionType);
+        }
+        this.sessionType = sessionType;
+        this.cache = cache;
+    }
+
+    @Override
+    public Class<?> getSessionType() {
+        return sessionType;
+    }
+
+    @Override
+    public Session openSession() {
+        if(sessionType == GroupIdentityManager.class){
+            return new CachingGroupEntityManager(cache);
+        }
+        if(sessionType == MembershipIdentityManager.class){
+            return new CachingMembershipEntityManager(cache);
+        }
+        return new CachingUserEntityManager(cache);
+    }
+}
@@ -0,0 +1,27 @@
+package cn.test.identity;
+
+import org.activiti.engine.impl.persistence.entity.MembershipEntityManager;
+
+/**
+ * 新增、删除成员关系时失效该用户的组缓存
+ */
+public class CachingMembershipEntityManager extends MembershipEntityManager {
+
+    private final GroupMembershipCache cache;
+
+    public CachingMembershipEntityManager(GroupMembershipCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void createMembership(String userId, String groupId) {
+        super.createMembership(userId, groupId);
+        cache.invalidate(userId);
+    }
+
+    @Override
+    public void deleteMembership(String userId, String groupId) {
+        super.deleteMembership(userId, groupId);
+        cache.invalidate(userId);
+    }
+}
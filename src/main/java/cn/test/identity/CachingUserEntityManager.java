@@ -0,0 +1,34 @@
+package cn.test.identity;
+
+import org.activiti.engine.identity.User;
+import org.activiti.engine.impl.persistence.entity.UserEntityManager;
+
+/**
+ * 新增、修改、删除用户时失效该用户的组缓存
+ */
+public class CachingUserEntityManager extends UserEntityManager {
+
+    private final GroupMembershipCache cache;
+
+    public CachingUserEntityManager(GroupMembershipCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void insertUser(User user) {
+        super.insertUser(user);
+        cache.invalidate(user.getId());
+    }
+
+    @Override
+    public void updateUser(User updatedUser) {
+        super.updateUser(updatedUser);
+        cache.invalidate(updatedUser.getId());
+    }
+
+    @Override
+    public void deleteUser(String userId) {
+        super.deleteUser(userId);
+        cache.invalidate(userId);
+    }
+}
@@ -0,0 +1,149 @@
+package cn.test.identity;
+
+import org.activiti.engine.identity.Group;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.interceptor.CommandContext;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 用户所在组的缓存（用户id -> 组），带过期时间
+ * taskCandidateUser查询通过GroupIdentityManager.findGroupsByUser获取用户所在的组，命中缓存时不再查询ACT_ID_MEMBERSHIP
+ * 组、用户、成员关系发生变化时由CachingGroupEntityManager等失效
+ */
+public class GroupMembershipCache {
+
+    /**默认过期时间（秒）*/
+    public static final long DEFAULT_TTL_SECONDS = 300;
+    /**默认最多缓存的用户数*/
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private long ttlMillis = DEFAULT_TTL_SECONDS * 1000;
+    private int maxSize = DEFAULT_MAX_SIZE;
+    private final ConcurrentHashMap<String, Entry> cache = new ConcurrentHashMap<>();
+
+    /**
+     * 获取用户所在的组，未缓存或已过期时返回null
+     * @param userId 用户id
+     */
+    public List<Group> get(String userId){
+        Entry entry = cache.get(userId);
+        if(entry == null){
+            return null;
+        }
+        if(entry.expiresAt < System.currentTimeMillis()){
+            cache.remove(userId, entry);
+            return null;
+        }
+        return entry.groups;
+    }
+
+    /**
+     * 缓存用户所在的组
+     * @param userId 用户id
+     * @param groups 用户所在的组
+     */
+    public void put(String userId, List<Group> groups){
+        if(cache.size() >= maxSize){
+            purgeExpired();
+            if(cache.size() >= maxSize){
+                cache.clear();
+            }
+        }
+        cache.put(userId, new Entry(Collections.unmodifiableList(new ArrayList<>(groups)), System.currentTimeMillis() + ttlMillis));
+    }
+
+    /**
+     * 用户所在组的id
+     * @param groups 用户所在的组
+     */
+    public static List<String> toGroupIds(List<Group> groups){
+        List<String> ids = new ArrayList<>(groups.size());
+        for(Group group:groups){
+            ids.add(group.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * 失效指定用户的缓存，在命令上下文中时提交后再失效一次，避免并发的查询把提交前的旧数据重新放入缓存
+     * @param userId 用户id
+     */
+    public void invalidate(final String userId){
+        cache.remove(userId);
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                cache.remove(userId);
+            }
+        });
+    }
+
+    /**
+     * 失效所有缓存（组发生变化时，无法确定影响的用户）
+     */
+    public void invalidateAll(){
+        cache.clear();
+        afterCommit(new Runnable() {
+            @Override
+            public void run() {
+                cache.clear();
+            }
+        });
+    }
+
+    public int size(){
+        return cache.size();
+    }
+
+    private void purgeExpired(){
+        long now = System.currentTimeMillis();
+        Iterator<Entry> it = cache.values().iterator();
+        while(it.hasNext()){
+            if(it.next().expiresAt < now){
+                it.remove();
+            }
+        }
+    }
+
+    private static void afterCommit(final Runnable runnable){
+        CommandContext commandContext = Context.getCommandContext();
+        if(commandContext != null){
+            commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, new TransactionListener() {
+                @Override
+                public void execute(CommandContext commandContext) {
+                    runnable.run();
+                }
+            });
+        }
+    }
+
+    public long getTtlSeconds() {
+        return ttlMillis / 1000;
+    }
+
+    public void setTtlSeconds(long ttlSeconds) {
+        this.ttlMillis = ttlSeconds * 1000;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private static class Entry {
+        final List<Group> groups;
+        final long expiresAt;
+
+        Entry(List<Group> groups, long expiresAt) {
+            this.groups = groups;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package cn.test.identity;
+
+/**
+ * 批量导入组织机构的结果
+ */
+public class IdentityImportResult {
+
+    int usersInserted;
+    int usersUpdated;
+    int groupsInserted;
+    int groupsUpdated;
+    int membershipsInserted;
+    int membershipsDeleted;
+    int unchanged;
+    long elapsedMillis;
+
+    public int getUsersInserted() {
+        return usersInserted;
+    }
+
+    public int getUsersUpdated() {
+        return usersUpdated;
+    }
+
+    public int getGroupsInserted() {
+        return groupsInserted;
+    }
+
+    public int getGroupsUpdated() {
+        return groupsUpdated;
+    }
+
+    public int getMembershipsInserted() {
+        return membershipsInserted;
+    }
+
+    public int getMembershipsDeleted() {
+        return membershipsDeleted;
+    }
+
+    /**与数据库一致、无需写入的行数*/
+    public int getUnchanged() {
+        return unchanged;
+    }
+
+    public long getElapsedMillis() {
+        return elapsedMillis;
+    }
+
+    /**写入的行数*/
+    public int getRowsWritten() {
+        return usersInserted + usersUpdated + groupsInserted + groupsUpdated + membershipsInserted + membershipsDeleted;
+    }
+
+    /**处理的行数（包括无需写入的行）*/
+    public int getRowsProcessed() {
+        return getRowsWritten() + unchanged;
+    }
+
+    /**吞吐量：每秒处理的行数*/
+    public double getRowsPerSecond() {
+        return elapsedMillis == 0 ? getRowsProcessed() : getRowsProcessed() * 1000.0 / elapsedMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "IdentityImportResult{用户新增=" + usersInserted + ", 用户修改=" + usersUpdated
+                + ", 组新增=" + groupsInserted + ", 组修改=" + groupsUpdated
+                + ", 关系新增=" + membershipsInserted + ", 关系删除=" + membershipsDeleted
+                + ", 未变化=" + unchanged + ", 耗时=" + elapsedMillis + "ms"
+                + ", 吞吐量=" + String.format("%.1f", getRowsPerSecond()) + "行/秒}";
+    }
+}
@@ -0,0 +1,41 @@
+package cn.test.identity;
+
+/**
+ * 用户和组的成员关系（一个用户可以属于多个组）
+ */
+public class Membership {
+
+    private final String userId;
+    private final String groupId;
+
+    public Membership(String userId, String groupId) {
+        this.userId = userId;
+        this.groupId = groupId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Membership)) return false;
+        Membership that = (Membership) o;
+        return userId.equals(that.userId) && groupId.equals(that.groupId);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * userId.hashCode() + groupId.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return userId + "->" + groupId;
+    }
+}
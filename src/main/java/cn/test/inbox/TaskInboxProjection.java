@@ -0,0 +1,615 @@
+package cn.test.inbox;
+
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineLifecycleListener;
+import org.activiti.engine.delegate.event.ActivitiEntityEvent;
+import org.activiti.engine.delegate.event.ActivitiEvent;
+import org.activiti.engine.delegate.event.ActivitiEventListener;
+import org.activiti.engine.delegate.event.ActivitiEventType;
+import org.activiti.engine.delegate.event.ActivitiMembershipEvent;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.IdentityLinkEntity;
+import org.activiti.engine.impl.persistence.entity.MembershipEntity;
+import org.activiti.engine.impl.persistence.entity.TaskEntity;
+import org.activiti.engine.impl.persistence.entity.UserEntity;
+import org.activiti.engine.task.IdentityLinkType;
+import org.activiti.engine.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 任务收件箱的读模型：按用户、按组统计未完成任务数
+ * 引擎启动时从ACT_RU_TASK、ACT_RU_IDENTITYLINK、ACT_ID_MEMBERSHIP全量加载一次，之后根据任务的创建、分配（拾取）、完成、候选人变化
+ * 和成员关系变化事件增量维护；每个用户的组任务（直接作为候选人或通过所在的组）保存为任务id的集合，同一任务只计一次
+ * 事件在事务提交后才生效，回滚的事务不影响计数
+ *
+ * 计数保存在本节点的内存中，只反映本节点的事件：其他节点上的变化、绕过引擎的修改和丢失的事件（监听器出错）都不会增量更新，
+ * 所以每隔reconcileIntervalSeconds从数据库全量重建一次。计数是每个节点各自的、最终一致的近似值，
+ * 需要准确的数字时用TaskService查询
+ *
+ * 在activiti.cfg.xml中同时注册为eventListeners和processEngineLifecycleListener
+ */
+public class TaskInboxProjection implements ActivitiEventListener, ProcessEngineLifecycleListener {
+    private Logger logger = LoggerFactory.getLogger(TaskInboxProjection.class);
+
+    /**未完成任务的当前状态（任务id -> 状态），只在持有this锁时修改*/
+    private final Map<String, TaskState> tasks = new HashMap<>();
+    /**办理人 -> 个人任务数*/
+    private final ConcurrentHashMap<String, AtomicLong> assigned = new ConcurrentHashMap<>();
+    /**候选人 -> 未分配的组任务数*/
+    private final ConcurrentHashMap<String, AtomicLong> candidateUsers = new ConcurrentHashMap<>();
+    /**候选组 -> 未分配的组任务数*/
+    private final ConcurrentHashMap<String, AtomicLong> candidateGroups = new ConcurrentHashMap<>();
+    /**用户 -> 可以拾取的组任务数（直接作为候选人或通过所在的组，不重复），等于userTasks中集合的大小*/
+    private final ConcurrentHashMap<String, AtomicLong> candidateTasks = new ConcurrentHashMap<>();
+    /**用户 -> 可以拾取的组任务id，只在持有this锁时访问*/
+    private final Map<String, Set<String>> userTasks = new HashMap<>();
+    /**候选组 -> 未分配的组任务id，只在持有this锁时访问*/
+    private final Map<String, Set<String>> groupTasks = new HashMap<>();
+    /**组 -> 成员，只在持有this锁时访问*/
+    private final Map<String, Set<String>> members = new HashMap<>();
+    private volatile ProcessEngine processEngine;
+    /**全量重建的间隔（秒），小于等于0时只在启动时加载*/
+    private int reconcileIntervalSeconds = 300;
+    private ScheduledExecutorService reconciler;
+
+    /**
+     * 当前人的个人任务数
+     * @param assignee 办理人
+     */
+    public long countAssigned(String assignee){
+        return get(assigned, assignee);
+    }
+
+    /**
+     * 当前人直接作为候选人的组任务数（不包括通过候选组分配的任务）
+     * @param userId 候选人
+     */
+    public long countCandidateUser(String userId){
+        return get(candidateUsers, userId);
+    }
+
+    /**
+     * 候选组的组任务数
+     * @param groupId 候选组
+     */
+    public long countCandidateGroup(String groupId){
+        return get(candidateGroups, groupId);
+    }
+
+    /**
+     * 当前人可以拾取的组任务数：直接作为候选人或所在的组作为候选组的未分配任务，同一任务只计一次
+     * @param userId 候选人
+     */
+    public long countCandidateTasks(String userId){
+        return get(candidateTasks, userId);
+    }
+
+    /**未完成的任务总数*/
+    public synchronized int countOpenTasks(){
+        return tasks.size();
+    }
+
+    @Override
+    public void onEvent(ActivitiEvent event) {
+        final Change change;
+        if(event instanceof ActivitiMembershipEvent){
+            ActivitiMembershipEvent membership = (ActivitiMembershipEvent) event;
+            switch (event.getType()){
+                case MEMBERSHIP_CREATED:
+                    change = Change.member(membership.getUserId(), membership.getGroupId(), true);
+                    break;
+                case MEMBERSHIP_DELETED:
+                case MEMBERSHIPS_DELETED:
+                    //MEMBERSHIPS_DELETED：删除组时删除组的全部成员关系，userId为null
+                    change = Change.member(membership.getUserId(), membership.getGroupId(), false);
+                    break;
+                default:
+                    return;
+            }
+            commit(change);
+            return;
+        }
+        if(!(event instanceof ActivitiEntityEvent)){
+            return;
+        }
+        Object entity = ((ActivitiEntityEvent) event).getEntity();
+        if(entity instanceof UserEntity){
+            if(event.getType() != ActivitiEventType.ENTITY_DELETED){
+                return;
+            }
+            //删除用户时删除用户的全部成员关系，不单独发出成员关系事件
+            change = Change.member(((UserEntity) entity).getId(), null, false);
+        }else if(entity instanceof TaskEntity){
+            TaskEntity task = (TaskEntity) entity;
+            switch (event.getType()){
+                case ENTITY_CREATED:
+                    change = Change.create(task.getId(), task.getAssignee());
+                    break;
+                case TASK_CREATED:
+                case TASK_ASSIGNED:
+                case ENTITY_UPDATED:
+                    change = Change.assign(task.getId(), task.getAssignee());
+                    break;
+                case TASK_COMPLETED:
+                case ENTITY_DELETED:
+                    change = Change.remove(task.getId());
+                    break;
+                default:
+                    return;
+            }
+        }else if(entity instanceof IdentityLinkEntity){
+            IdentityLinkEntity link = (IdentityLinkEntity) entity;
+            if(link.getTaskId() == null || !IdentityLinkType.CANDIDATE.equals(link.getType())){
+                return;
+            }
+            switch (event.getType()){
+                case ENTITY_CREATED:
+                    change = Change.candidate(link.getTaskId(), link.getUserId(), link.getGroupId(), true);
+                    break;
+                case ENTITY_DELETED:
+                    change = Change.candidate(link.getTaskId(), link.getUserId(), link.getGroupId(), false);
+                    break;
+                default:
+                    return;
+            }
+        }else{
+            return;
+        }
+        commit(change);
+    }
+
+    private void commit(final Change change){
+        CommandContext commandContext = Context.getCommandContext();
+        if(commandContext == null){
+            apply(change);
+            return;
+        }
+        //事务提交后再修改计数
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, new TransactionListener() {
+            @Override
+            public void execute(CommandContext commandContext) {
+                apply(change);
+            }
+        });
+    }
+
+    @Override
+    public boolean isFailOnException() {
+        return false;
+    }
+
+    @Override
+    public void onProcessEngineBuilt(final ProcessEngine processEngine) {
+        this.processEngine = processEngine;
+        reload();
+        startReconciler();
+    }
+
+    private synchronized void startReconciler(){
+        if(reconcileIntervalSeconds > 0 && reconciler == null){
+            reconciler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "task-inbox-reconcile");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            reconciler.scheduleWithFixedDelay(new Runnable() {
+                @Override
+                public void run() {
+                    try{
+                        reload();
+                    }catch(RuntimeException e){
+                        logger.warn("重建任务收件箱计数失败，下次重试。间隔：{}s",reconcileIntervalSeconds,e);
+                    }
+                }
+            }, reconcileIntervalSeconds, reconcileIntervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 从数据库全量重新加载，绕过引擎修改了任务、候选人或成员关系后调用（如批量导入组织机构），也每隔reconcileIntervalSeconds自动调用
+     */
+    public void reload(){
+        ProcessEngine processEngine = this.processEngine;
+        if(processEngine == null){
+            return;
+        }
+        final String taskTable = processEngine.getManagementService().getTableName(Task.class);
+        final String linkTable = processEngine.getManagementService().getTableName(IdentityLinkEntity.class);
+        final String membershipTable = processEngine.getManagementService().getTableName(MembershipEntity.class);
+        processEngine.getManagementService().executeCommand(new Command<Void>() {
+            @Override
+            public Void execute(CommandContext commandContext) {
+                rebuild(commandContext.getDbSqlSession().getSqlSession().getConnection(), taskTable, linkTable, membershipTable);
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void onProcessEngineClosed(ProcessEngine processEngine) {
+        ScheduledExecutorService reconciler;
+        synchronized (this){
+            reconciler = this.reconciler;
+            this.reconciler = null;
+            this.processEngine = null;
+            clear();
+        }
+        if(reconciler != null){
+            reconciler.shutdownNow();
+        }
+    }
+
+    public int getReconcileIntervalSeconds() {
+        return reconcileIntervalSeconds;
+    }
+
+    /**
+     * @param reconcileIntervalSeconds 从数据库全量重建计数的间隔（秒），小于等于0时只在启动时加载
+     */
+    public void setReconcileIntervalSeconds(int reconcileIntervalSeconds) {
+        this.reconcileIntervalSeconds = reconcileIntervalSeconds;
+    }
+
+    private synchronized void clear(){
+        tasks.clear();
+        assigned.clear();
+        candidateUsers.clear();
+        candidateGroups.clear();
+        candidateTasks.clear();
+        userTasks.clear();
+        groupTasks.clear();
+        members.clear();
+    }
+
+    /**
+     * 从运行时表全量重建计数
+     */
+    private synchronized void rebuild(Connection connection, String taskTable, String linkTable, String membershipTable){
+        clear();
+        try{
+            try(PreparedStatement ps = connection.prepareStatement("SELECT USER_ID_, GROUP_ID_ FROM " + membershipTable);
+                ResultSet rs = ps.executeQuery()){
+                while(rs.next()){
+                    addTo(members, rs.getString(2), rs.getString(1));
+                }
+            }
+            try(PreparedStatement ps = connection.prepareStatement("SELECT ID_, ASSIGNEE_ FROM " + taskTable);
+                ResultSet rs = ps.executeQuery()){
+                while(rs.next()){
+                    tasks.put(rs.getString(1), new TaskState(rs.getString(1), rs.getString(2)));
+                }
+            }
+            try(PreparedStatement ps = connection.prepareStatement("SELECT TASK_ID_, USER_ID_, GROUP_ID_ FROM " + linkTable
+                    + " WHERE TYPE_ = ? AND TASK_ID_ IS NOT NULL")){
+                ps.setString(1, IdentityLinkType.CANDIDATE);
+                try(ResultSet rs = ps.executeQuery()){
+                    while(rs.next()){
+                        TaskState state = tasks.get(rs.getString(1));
+                        if(state != null){
+                            state.addCandidate(rs.getString(2), rs.getString(3));
+                        }
+                    }
+                }
+            }
+        }catch(SQLException e){
+            logger.error("加载任务收件箱计数失败",e);
+            clear();
+            return;
+        }
+        for(TaskState state:tasks.values()){
+            state.count(this, 1);
+        }
+        logger.info("加载任务收件箱计数。未完成任务数：{} ；办理人数：{} ；候选人数：{} ；候选组数：{} ；有组任务的用户数：{}",
+                tasks.size(),assigned.size(),candidateUsers.size(),candidateGroups.size(),candidateTasks.size());
+    }
+
+    private synchronized void apply(Change change){
+        TaskState state = tasks.get(change.taskId);
+        switch (change.kind){
+            case CREATE:
+                if(state == null){
+                    state = new TaskState(change.taskId, change.assignee);
+                    tasks.put(change.taskId, state);
+                    state.count(this, 1);
+                }
+                break;
+            case ASSIGN:
+                if(state == null){
+                    //任务已完成或不在读模型中
+                    return;
+                }
+                state.count(this, -1);
+                state.assignee = change.assignee;
+                state.count(this, 1);
+                break;
+            case REMOVE:
+                if(state != null){
+                    state.count(this, -1);
+                    tasks.remove(change.taskId);
+                }
+                break;
+            case CANDIDATE:
+                if(state == null){
+                    //任务已完成或不在读模型中
+                    return;
+                }
+                state.count(this, -1);
+                if(change.added){
+                    state.addCandidate(change.userId, change.groupId);
+                }else{
+                    state.removeCandidate(change.userId, change.groupId);
+                }
+                state.count(this, 1);
+                break;
+            case MEMBER:
+                if(change.groupId == null){
+                    for(String groupId:new ArrayList<>(members.keySet())){
+                        removeMember(change.userId, groupId);
+                    }
+                }else if(change.userId == null){
+                    Set<String> users = members.get(change.groupId);
+                    for(String userId:users == null ? Collections.<String>emptySet() : new ArrayList<>(users)){
+                        removeMember(userId, change.groupId);
+                    }
+                }else if(change.added){
+                    addMember(change.userId, change.groupId);
+                }else{
+                    removeMember(change.userId, change.groupId);
+                }
+                break;
+        }
+    }
+
+    /**用户加入组，组的未分配任务计入该用户的组任务*/
+    private void addMember(String userId, String groupId){
+        if(!addTo(members, groupId, userId)){
+            return;
+        }
+        Set<String> taskIds = groupTasks.get(groupId);
+        if(taskIds != null){
+            for(String taskId:taskIds){
+                addUserTask(userId, taskId);
+            }
+        }
+    }
+
+    /**用户退出组，组的未分配任务中不再对该用户可见的移出该用户的组任务*/
+    private void removeMember(String userId, String groupId){
+        if(!removeFrom(members, groupId, userId)){
+            return;
+        }
+        Set<String> taskIds = groupTasks.get(groupId);
+        if(taskIds != null){
+            for(String taskId:taskIds){
+                TaskState state = tasks.get(taskId);
+                if(state == null || !state.isCandidate(this, userId)){
+                    removeUserTask(userId, taskId);
+                }
+            }
+        }
+    }
+
+    private void addUserTask(String userId, String taskId){
+        if(addTo(userTasks, userId, taskId)){
+            add(candidateTasks, userId, 1);
+        }
+    }
+
+    private void removeUserTask(String userId, String taskId){
+        if(removeFrom(userTasks, userId, taskId)){
+            add(candidateTasks, userId, -1);
+        }
+    }
+
+    private static boolean addTo(Map<String, Set<String>> map, String key, String value){
+        Set<String> values = map.get(key);
+        if(values == null){
+            values = new HashSet<>(4);
+            map.put(key, values);
+        }
+        return values.add(value);
+    }
+
+    private static boolean removeFrom(Map<String, Set<String>> map, String key, String value){
+        Set<String> values = map.get(key);
+        if(values == null || !values.remove(value)){
+            return false;
+        }
+        if(values.isEmpty()){
+            map.remove(key);
+        }
+        return true;
+    }
+
+    private static long get(ConcurrentHashMap<String, AtomicLong> counters, String key){
+        if(key == null){
+            return 0;
+        }
+        AtomicLong counter = counters.get(key);
+        return counter == null ? 0 : counter.get();
+    }
+
+    private static void add(ConcurrentHashMap<String, AtomicLong> counters, String key, int delta){
+        AtomicLong counter = counters.get(key);
+        if(counter == null){
+            AtomicLong created = new AtomicLong();
+            counter = counters.putIfAbsent(key, created);
+            if(counter == null){
+                counter = created;
+            }
+        }
+        if(counter.addAndGet(delta) <= 0){
+            counters.remove(key);
+        }
+    }
+
+    /**单个未完成任务的办理人和候选人*/
+    private static class TaskState {
+        final String id;
+        String assignee;
+        Set<String> users;
+        Set<String> groups;
+
+        TaskState(String id, String assignee) {
+            this.id = id;
+            this.assignee = assignee;
+        }
+
+        void addCandidate(String userId, String groupId){
+            if(userId != null){
+                if(users == null){
+                    users = new HashSet<>(2);
+                }
+                users.add(userId);
+            }
+            if(groupId != null){
+                if(groups == null){
+                    groups = new HashSet<>(2);
+                }
+                groups.add(groupId);
+            }
+        }
+
+        void removeCandidate(String userId, String groupId){
+            if(userId != null && users != null){
+                users.remove(userId);
+            }
+            if(groupId != null && groups != null){
+                groups.remove(groupId);
+            }
+        }
+
+        /**用户是否直接或通过所在的组作为候选人*/
+        boolean isCandidate(TaskInboxProjection projection, String userId){
+            if(users != null && users.contains(userId)){
+                return true;
+            }
+            if(groups != null){
+                for(String group:groups){
+                    Set<String> members = projection.members.get(group);
+                    if(members != null && members.contains(userId)){
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**把该任务计入（delta=1）或移出（delta=-1）各个计数器和用户的组任务；已分配办理人的任务不再计入组任务*/
+        void count(TaskInboxProjection projection, int delta){
+            if(assignee != null){
+                add(projection.assigned, assignee, delta);
+                return;
+            }
+            if(users != null){
+                for(String user:users){
+                    add(projection.candidateUsers, user, delta);
+                    if(delta > 0){
+                        projection.addUserTask(user, id);
+                    }else{
+                        projection.removeUserTask(user, id);
+                    }
+                }
+            }
+            if(groups != null){
+                for(String group:groups){
+                    add(projection.candidateGroups, group, delta);
+                    if(delta > 0){
+                        addTo(projection.groupTasks, group, id);
+                    }else{
+                        removeFrom(projection.groupTasks, group, id);
+                    }
+                    Set<String> members = projection.members.get(group);
+                    if(members != null){
+                        for(String user:members){
+                            if(delta > 0){
+                                projection.addUserTask(user, id);
+                            }else{
+                                projection.removeUserTask(user, id);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**一次待提交的变化*/
+    private static class Change {
+        enum Kind {CREATE, ASSIGN, REMOVE, CANDIDATE,
+            /**成员关系变化：userId为null时是组的全部成员，groupId为null时是用户所在的全部组*/
+            MEMBER}
+
+        Kind kind;
+        String taskId;
+        String assignee;
+        String userId;
+        String groupId;
+        boolean added;
+
+        static Change create(String taskId, String assignee){
+            Change change = assign(taskId, assignee);
+            change.kind = Kind.CREATE;
+            return change;
+        }
+
+        static Change assign(String taskId, String assignee){
+            Change change = new Change();
+            change.kind = Kind.ASSIGN;
+            change.taskId = taskId;
+            change.assignee = assignee;
+            return change;
+        }
+
+        static Change remove(String taskId){
+            Change change = new Change();
+            change.kind = Kind.REMOVE;
+            change.taskId = taskId;
+            return change;
+        }
+
+        static Change candidate(String taskId, String userId, String groupId, boolean added){
+            Change change = new Change();
+            change.kind = Kind.CANDIDATE;
+            change.taskId = taskId;
+            change.userId = userId;
+            change.groupId = groupId;
+            change.added = added;
+            return change;
+        }
+
+        static Change member(String userId, String groupId, boolean added){
+            Change change = new Change();
+            change.kind = Kind.MEMBER;
+            change.userId = userId;
+            change.groupId = groupId;
+            change.added = added;
+            return change;
+        }
+    }
+}
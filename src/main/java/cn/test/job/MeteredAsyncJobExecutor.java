@@ -0,0 +1,258 @@
+package cn.test.job;
+
+import org.activiti.engine.impl.asyncexecutor.DefaultAsyncJobExecutor;
+import org.activiti.engine.impl.asyncexecutor.ExecuteAsyncRunnable;
+import org.activiti.engine.impl.persistence.entity.JobEntity;
+import org.activiti.engine.impl.persistence.entity.MessageEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 带指标的异步执行器：在DefaultAsyncJobExecutor的基础上
+ * 1、工作线程池的核心线程数、最大线程数、队列容量、每次获取的任务数（批量获取）都在activiti.cfg.xml中配置，线程数运行中也可以调整
+ * 2、virtualThreads为true时工作线程使用虚拟线程（JDK 21及以上），线程数仍受maxPoolSize限制（同时执行的任务数不超过数据库连接数）；
+ *    JDK不支持时使用普通线程
+ * 3、记录获取延迟（任务到期到开始执行的时间）、执行时间、执行数和队列满时由获取线程执行的次数
+ *
+ * 队列满时任务在调用线程（获取线程或提交事务的线程）中执行，与DefaultAsyncJobExecutor相同
+ */
+public class MeteredAsyncJobExecutor extends DefaultAsyncJobExecutor {
+    private Logger logger = LoggerFactory.getLogger(MeteredAsyncJobExecutor.class);
+
+    /**工作线程名的前缀*/
+    private String threadNamePrefix = "async-job-";
+    private boolean virtualThreads = false;
+
+    private final AtomicLong executedCount = new AtomicLong();
+    private final AtomicLong callerRunsCount = new AtomicLong();
+    private final AtomicLong totalLagMillis = new AtomicLong();
+    private final AtomicLong maxLagMillis = new AtomicLong();
+    private final AtomicLong totalExecutionMillis = new AtomicLong();
+    private final AtomicLong maxExecutionMillis = new AtomicLong();
+
+    @Override
+    public void executeAsyncJob(JobEntity job) {
+        if(isActive){
+            executorService.execute(new MeteredRunnable(job));
+        }else{
+            temporaryJobQueue.add(job);
+        }
+    }
+
+    @Override
+    protected void startExecutingAsyncJobs() {
+        if(executorService == null){
+            threadPoolQueue = new ArrayBlockingQueue<>(queueSize);
+            ThreadFactory threadFactory = virtualThreads ? virtualThreadFactory() : null;
+            boolean virtual = threadFactory != null;
+            if(threadFactory == null){
+                threadFactory = platformThreadFactory();
+            }
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(corePoolSize, maxPoolSize, keepAliveTime, TimeUnit.MILLISECONDS,
+                    threadPoolQueue, threadFactory, new CallerRuns());
+            executorService = executor;
+            logger.info("启动异步执行器。核心线程数：{} ；最大线程数：{} ；队列容量：{} ；每次获取任务数：{} ；虚拟线程：{}",
+                    corePoolSize,maxPoolSize,queueSize,maxAsyncJobsDuePerAcquisition,virtual);
+        }
+        super.startExecutingAsyncJobs();
+    }
+
+    @Override
+    protected void stopExecutingAsyncJobs() {
+        super.stopExecutingAsyncJobs();
+        threadPoolQueue = null;
+        logger.info("停止异步执行器。{}",this);
+    }
+
+    /**虚拟线程的ThreadFactory（Thread.ofVirtual().name(prefix, 0).factory()），JDK不支持时返回null*/
+    private ThreadFactory virtualThreadFactory(){
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, threadNamePrefix, 0L);
+            Method factory = builderClass.getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            logger.warn("当前JDK不支持虚拟线程，改用普通线程。java.version：{}",System.getProperty("java.version"));
+            return null;
+        }
+    }
+
+    private ThreadFactory platformThreadFactory(){
+        final AtomicInteger number = new AtomicInteger();
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, threadNamePrefix + number.getAndIncrement());
+            }
+        };
+    }
+
+    /**队列满时在调用线程中执行*/
+    private class CallerRuns implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if(!executor.isShutdown()){
+                callerRunsCount.incrementAndGet();
+                r.run();
+            }
+        }
+    }
+
+    /**执行任务并记录获取延迟和执行时间*/
+    private class MeteredRunnable implements Runnable {
+        private final JobEntity job;
+
+        MeteredRunnable(JobEntity job) {
+            this.job = job;
+        }
+
+        @Override
+        public void run() {
+            long start = System.currentTimeMillis();
+            if(job.getDuedate() != null){
+                long lag = Math.max(0, start - dueTime(job));
+                totalLagMillis.addAndGet(lag);
+                updateMax(maxLagMillis, lag);
+            }
+            try{
+                new ExecuteAsyncRunnable(job, commandExecutor).run();
+            }finally {
+                long elapsed = System.currentTimeMillis() - start;
+                totalExecutionMillis.addAndGet(elapsed);
+                updateMax(maxExecutionMillis, elapsed);
+                executedCount.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * 任务的到期时间
+     * 开启异步执行器时，JobEntityManager.send把异步消息的duedate设为发送时间加asyncJobLockTimeInMillis（获取线程的重试时间），这里还原为发送时间
+     */
+    private long dueTime(JobEntity job){
+        long duedate = job.getDuedate().getTime();
+        return job instanceof MessageEntity ? duedate - asyncJobLockTimeInMillis : duedate;
+    }
+
+    private static void updateMax(AtomicLong max, long value){
+        for(long current = max.get(); value > current; current = max.get()){
+            if(max.compareAndSet(current, value)){
+                return;
+            }
+        }
+    }
+
+    /**运行中调整线程数：增大时先调整最大线程数，减小时先调整核心线程数*/
+    private void resize(){
+        if(!(executorService instanceof ThreadPoolExecutor) || corePoolSize > maxPoolSize){
+            return;
+        }
+        ThreadPoolExecutor executor = (ThreadPoolExecutor) executorService;
+        if(maxPoolSize >= executor.getMaximumPoolSize()){
+            executor.setMaximumPoolSize(maxPoolSize);
+            executor.setCorePoolSize(corePoolSize);
+        }else{
+            executor.setCorePoolSize(corePoolSize);
+            executor.setMaximumPoolSize(maxPoolSize);
+        }
+    }
+
+    @Override
+    public void setCorePoolSize(int corePoolSize) {
+        super.setCorePoolSize(corePoolSize);
+        resize();
+    }
+
+    @Override
+    public void setMaxPoolSize(int maxPoolSize) {
+        super.setMaxPoolSize(maxPoolSize);
+        resize();
+    }
+
+    /**已执行（包括执行失败）的任务数*/
+    public long getExecutedCount() {
+        return executedCount.get();
+    }
+
+    /**队列满时在调用线程中执行的任务数*/
+    public long getCallerRunsCount() {
+        return callerRunsCount.get();
+    }
+
+    /**平均获取延迟（毫秒）：任务到期到开始执行的时间*/
+    public double getAverageLagMillis(){
+        long count = executedCount.get();
+        return count == 0 ? 0 : (double) totalLagMillis.get() / count;
+    }
+
+    /**启动以来最大的获取延迟（毫秒）*/
+    public long getMaxLagMillis() {
+        return maxLagMillis.get();
+    }
+
+    /**平均执行时间（毫秒）*/
+    public double getAverageExecutionMillis(){
+        long count = executedCount.get();
+        return count == 0 ? 0 : (double) totalExecutionMillis.get() / count;
+    }
+
+    /**启动以来最长的执行时间（毫秒）*/
+    public long getMaxExecutionMillis() {
+        return maxExecutionMillis.get();
+    }
+
+    /**队列中等待执行的任务数*/
+    public int getQueuedCount(){
+        return threadPoolQueue == null ? 0 : threadPoolQueue.size();
+    }
+
+    /**正在执行任务的线程数*/
+    public int getActiveCount(){
+        return executorService instanceof ThreadPoolExecutor ? ((ThreadPoolExecutor) executorService).getActiveCount() : 0;
+    }
+
+    /**清零计数，用于按时间段统计*/
+    public void resetMetrics(){
+        executedCount.set(0);
+        callerRunsCount.set(0);
+        totalLagMillis.set(0);
+        maxLagMillis.set(0);
+        totalExecutionMillis.set(0);
+        maxExecutionMillis.set(0);
+    }
+
+    public String getThreadNamePrefix() {
+        return threadNamePrefix;
+    }
+
+    public void setThreadNamePrefix(String threadNamePrefix) {
+        this.threadNamePrefix = threadNamePrefix;
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**下次启动时生效*/
+    public void setVirtualThreads(boolean virtualThreads) {
+        this.virtualThreads = virtualThreads;
+    }
+
+    @Override
+    public String toString() {
+        return "MeteredAsyncJobExecutor{已执行=" + getExecutedCount() + ", 调用线程执行=" + getCallerRunsCount()
+                + ", 平均获取延迟=" + String.format("%.2f", getAverageLagMillis()) + "ms, 最大获取延迟=" + getMaxLagMillis()
+                + "ms, 平均执行时间=" + String.format("%.2f", getAverageExecutionMillis()) + "ms, 最大执行时间=" + getMaxExecutionMillis()
+                + "ms, 队列=" + getQueuedCount() + ", 活动线程=" + getActiveCount() + "}";
+    }
+}
@@ -0,0 +1,87 @@
+package cn.test.parallel;
+
+import org.activiti.bpmn.model.BaseElement;
+import org.activiti.bpmn.model.Process;
+import org.activiti.engine.impl.bpmn.behavior.ParallelGatewayActivityBehavior;
+import org.activiti.engine.impl.bpmn.parser.BpmnParse;
+import org.activiti.engine.impl.bpmn.parser.handler.AbstractBpmnParseHandler;
+import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.pvm.PvmTransition;
+import org.activiti.engine.impl.pvm.process.ActivityImpl;
+import org.activiti.engine.impl.pvm.process.ScopeImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * 并行分支并发执行模式：对processDefinitionKeys中的流程
+ * 1、并行网关分叉后的第一个活动设为异步（非排他）：分叉的事务只创建执行对象和异步任务，各分支在异步执行器的线程池中同时执行；
+ *    流程中已经设为异步的活动（activiti:async）保持原来的配置，包括activiti:exclusive
+ * 2、并行网关汇聚使用StripedJoinActivityBehavior，并发到达时不会乐观锁冲突
+ *
+ * 分叉后立即返回，分支上的任务在异步任务执行后才出现，所以按流程配置开启。需要开启异步执行器（asyncExecutorActivate）
+ */
+public class ConcurrentBranchParseHandler extends AbstractBpmnParseHandler<Process> {
+    private Logger logger = LoggerFactory.getLogger(ConcurrentBranchParseHandler.class);
+
+    /**使用并发模式的流程定义key*/
+    private Set<String> processDefinitionKeys = new HashSet<>();
+
+    @Override
+    protected Class<? extends BaseElement> getHandledType() {
+        return Process.class;
+    }
+
+    @Override
+    protected void executeParse(BpmnParse bpmnParse, Process process) {
+        if(!processDefinitionKeys.contains(process.getId())){
+            return;
+        }
+        ProcessDefinitionEntity processDefinition = bpmnParse.getProcessDefinition(process.getId());
+        if(processDefinition != null){
+            int gateways = concurrent(processDefinition);
+            logger.info("并行分支并发执行。流程定义：{} ；并行网关数：{}",process.getId(),gateways);
+        }
+    }
+
+    /**包括子流程中的网关*/
+    private int concurrent(ScopeImpl scope){
+        int gateways = 0;
+        for(ActivityImpl activity:scope.getActivities()){
+            if(activity.getActivityBehavior() instanceof ParallelGatewayActivityBehavior){
+                gateways++;
+                if(activity.getOutgoingTransitions().size() > 1){
+                    for(PvmTransition transition:activity.getOutgoingTransitions()){
+                        ActivityImpl branch = (ActivityImpl) transition.getDestination();
+                        if(!branch.isAsync()){
+                            branch.setAsync(true);
+                            branch.setExclusive(false);
+                        }
+                    }
+                }
+                if(activity.getIncomingTransitions().size() > 1){
+                    activity.setActivityBehavior(new StripedJoinActivityBehavior());
+                }
+            }
+            gateways += concurrent(activity);
+        }
+        return gateways;
+    }
+
+    /**DefinitionWarmup用来区分解析结果*/
+    @Override
+    public String toString() {
+        return "ConcurrentBranchParseHandler" + new TreeSet<>(processDefinitionKeys);
+    }
+
+    public Set<String> getProcessDefinitionKeys() {
+        return processDefinitionKeys;
+    }
+
+    public void setProcessDefinitionKeys(Set<String> processDefinitionKeys) {
+        this.processDefinitionKeys = processDefinitionKeys;
+    }
+}
@@ -0,0 +1,123 @@
+package cn.test.parallel;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.impl.cfg.TransactionListener;
+import org.activiti.engine.impl.cfg.TransactionState;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.jobexecutor.JobHandler;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.impl.persistence.entity.JobEntity;
+import org.activiti.engine.impl.pvm.PvmActivity;
+import org.activiti.engine.impl.pvm.delegate.ActivityExecution;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 判断并行网关的汇聚是否完成（由StripedJoinActivityBehavior发出的异步任务）
+ * 按流程实例id取分段锁，持有到事务结束：同一个流程实例的判断串行执行，后执行的一定能看到先提交的到达和汇聚，
+ * 不同流程实例大多落在不同的段上互不影响。在读取执行对象之前加锁，命令缓存中不会有过期的数据
+ *
+ * 在activiti.cfg.xml中注册为customJobHandlers。锁只在本节点有效，多个节点同时汇聚时由引擎的乐观锁和任务重试保证正确
+ */
+public class ParallelJoinJobHandler implements JobHandler {
+    private Logger logger = LoggerFactory.getLogger(ParallelJoinJobHandler.class);
+
+    public static final String TYPE = "parallel-join";
+
+    private static final String SEPARATOR = "|";
+
+    /**锁的段数*/
+    private int stripes = 64;
+    /**等待锁的最长时间（毫秒），超时后任务失败并由异步执行器重试*/
+    private long lockTimeoutMillis = 10000;
+
+    private volatile ReentrantLock[] locks;
+
+    /**任务配置：流程实例id|执行对象id|网关id*/
+    static String configuration(ExecutionEntity execution){
+        return execution.getProcessInstanceId() + SEPARATOR + execution.getId() + SEPARATOR + execution.getActivityId();
+    }
+
+    @Override
+    public String getType() {
+        return TYPE;
+    }
+
+    @Override
+    public void execute(JobEntity job, String configuration, ExecutionEntity execution, CommandContext commandContext) {
+        String[] parts = configuration.split("\\" + SEPARATOR, 3);
+        lock(parts[0], commandContext);
+        ExecutionEntity arrived = commandContext.getExecutionEntityManager().findExecutionById(parts[1]);
+        //已经被其他分支的判断汇聚（执行对象被删除或继续向后执行）
+        if(arrived == null || arrived.isActive() || !parts[2].equals(arrived.getActivityId())){
+            return;
+        }
+        PvmActivity gateway = arrived.getActivity();
+        List<ActivityExecution> joined = arrived.findInactiveConcurrentExecutions(gateway);
+        int expected = gateway.getIncomingTransitions().size();
+        if(joined.size() == expected){
+            logger.debug("并行网关汇聚完成。流程实例id：{} ；网关：{} ；分支数：{}",parts[0],parts[2],expected);
+            arrived.takeAll(gateway.getOutgoingTransitions(), joined);
+        }
+    }
+
+    /**加锁，事务提交或回滚后解锁*/
+    private void lock(String processInstanceId, CommandContext commandContext){
+        final ReentrantLock lock = locks()[(processInstanceId.hashCode() & 0x7fffffff) % stripes];
+        try{
+            if(!lock.tryLock(lockTimeoutMillis, TimeUnit.MILLISECONDS)){
+                throw new ActivitiException("等待并行网关汇聚锁超时。流程实例id：" + processInstanceId);
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new ActivitiException("等待并行网关汇聚锁被中断。流程实例id：" + processInstanceId, e);
+        }
+        final AtomicBoolean released = new AtomicBoolean();
+        TransactionListener unlock = new TransactionListener() {
+            @Override
+            public void execute(CommandContext commandContext) {
+                if(released.compareAndSet(false, true)){
+                    lock.unlock();
+                }
+            }
+        };
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.COMMITTED, unlock);
+        commandContext.getTransactionContext().addTransactionListener(TransactionState.ROLLED_BACK, unlock);
+    }
+
+    private ReentrantLock[] locks(){
+        if(locks == null){
+            synchronized (this){
+                if(locks == null){
+                    ReentrantLock[] array = new ReentrantLock[stripes];
+                    for(int i = 0; i < stripes; i++){
+                        array[i] = new ReentrantLock();
+                    }
+                    locks = array;
+                }
+            }
+        }
+        return locks;
+    }
+
+    public int getStripes() {
+        return stripes;
+    }
+
+    public void setStripes(int stripes) {
+        this.stripes = stripes;
+    }
+
+    public long getLockTimeoutMillis() {
+        return lockTimeoutMillis;
+    }
+
+    public void setLockTimeoutMillis(long lockTimeoutMillis) {
+        this.lockTimeoutMillis = lockTimeoutMillis;
+    }
+}
@@ -0,0 +1,39 @@
+package cn.test.parallel;
+
+import org.activiti.engine.impl.bpmn.behavior.ParallelGatewayActivityBehavior;
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.impl.persistence.entity.MessageEntity;
+import org.activiti.engine.impl.pvm.delegate.ActivityExecution;
+
+/**
+ * 并行网关的汇聚：到达的分支只把自己的执行对象置为不活动，不再更新父执行对象（引擎原来用forceUpdate让并发到达的事务乐观锁冲突）
+ * 是否全部到达由ParallelJoinJobHandler在事务提交后的异步任务中判断，同一个流程实例的判断按分段锁串行执行
+ */
+public class StripedJoinActivityBehavior extends ParallelGatewayActivityBehavior {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    public void execute(ActivityExecution execution) throws Exception {
+        if(execution.getActivity().getIncomingTransitions().size() <= 1){
+            super.execute(execution);
+            return;
+        }
+        execution.inactivate();
+        CommandContext commandContext = Context.getCommandContext();
+        ExecutionEntity entity = (ExecutionEntity) execution;
+        commandContext.getHistoryManager().recordActivityEnd(entity);
+
+        //任务不关联执行对象，执行时不会在加锁之前把执行对象读入缓存
+        MessageEntity message = new MessageEntity();
+        message.setJobHandlerType(ParallelJoinJobHandler.TYPE);
+        message.setJobHandlerConfiguration(ParallelJoinJobHandler.configuration(entity));
+        message.setProcessInstanceId(entity.getProcessInstanceId());
+        message.setProcessDefinitionId(entity.getProcessDefinitionId());
+        message.setTenantId(entity.getTenantId());
+        message.setExclusive(false);
+        commandContext.getJobEntityManager().send(message);
+    }
+}
@@ -0,0 +1,103 @@
+package cn.test.query;
+
+import org.activiti.engine.TaskService;
+import org.activiti.engine.task.NativeTaskQuery;
+import org.activiti.engine.task.Task;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+
+/**
+ * 按（创建时间，任务id）做keyset分页的任务迭代器
+ * 每次只在内存中保留一页任务，下一页从上一页最后一条之后开始查询，不使用offset
+ */
+public class TaskPageIterator implements Iterator<Task> {
+    private Logger logger = LoggerFactory.getLogger(TaskPageIterator.class);
+
+    /**默认每页的任务数*/
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    private final TaskService taskService;
+    private final String from;
+    private final String where;
+    private final Map<String, Object> parameters;
+    private final int pageSize;
+    private final String description;
+
+    private Iterator<Task> page = Collections.<Task>emptyList().iterator();
+    private Date lastCreateTime;
+    private String lastId;
+    private boolean lastPage = false;
+    private int pages = 0;
+    private long count = 0;
+
+    /**
+     * @param taskService 任务服务
+     * @param from from子句（任务表的别名必须为RES），例如：ACT_RU_TASK RES
+     * @param where 查询条件，参数使用#{name}的形式
+     * @param parameters 查询条件中的参数
+     * @param pageSize 每页的任务数
+     * @param description 用于日志的描述
+     */
+    public TaskPageIterator(TaskService taskService, String from, String where, Map<String, Object> parameters,
+                            int pageSize, String description) {
+        if(pageSize <= 0){
+            throw new IllegalArgumentException("pageSize must be positive");
+        }
+        this.taskService = taskService;
+        this.from = from;
+        this.where = where;
+        this.parameters = parameters;
+        this.pageSize = pageSize;
+        this.description = description;
+    }
+
+    @Override
+    public boolean hasNext() {
+        if(!page.hasNext() && !lastPage){
+            fetchNextPage();
+        }
+        return page.hasNext();
+    }
+
+    @Override
+    public Task next() {
+        if(!hasNext()){
+            throw new NoSuchElementException();
+        }
+        Task task = page.next();
+        lastCreateTime = task.getCreateTime();
+        lastId = task.getId();
+        count++;
+        return task;
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+    private void fetchNextPage(){
+        StringBuilder sql = new StringBuilder("SELECT DISTINCT RES.* FROM ").append(from)
+                .append(" WHERE ").append(where);
+        NativeTaskQuery query = taskService.createNativeTaskQuery();
+        for(Map.Entry<String, Object> e:parameters.entrySet()){
+            query.parameter(e.getKey(), e.getValue());
+        }
+        if(lastId != null){
+            //从上一页最后一条之后继续
+            sql.append(" AND (RES.CREATE_TIME_ > #{lastCreateTime} OR (RES.CREATE_TIME_ = #{lastCreateTime} AND RES.ID_ > #{lastId}))");
+            query.parameter("lastCreateTime", lastCreateTime);
+            query.parameter("lastId", lastId);
+        }
+        sql.append(" ORDER BY RES.CREATE_TIME_ ASC, RES.ID_ ASC");
+        List<Task> list = query.sql(sql.toString()).listPage(0, pageSize);
+        pages++;
+        lastPage = list.size() < pageSize;
+        page = list.iterator();
+        if(lastPage){
+            logger.info("分页查询任务结束。{} ；任务数：{} ；页数：{}",description,count + list.size(),pages);
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package cn.test.variable;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.ActivitiIllegalArgumentException;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 简单Java对象的紧凑二进制编码，代替Java序列化保存流程变量
+ *
+ * 每个非null字段编码为：varint(编号 << 3 | 线类型) + 值，不写类名和字段名
+ * 线类型：0 varint（整数、布尔、字符、日期）、1 8字节（double）、2 长度+内容（字符串、字节数组、枚举、BigDecimal、嵌套对象）、5 4字节（float）
+ * 读取时跳过不认识的编号和线类型不一致的字段，类中没有出现在数据里的字段保持构造方法的默认值，
+ * 所以增加、删除字段（以及用@Tag固定编号后改名）都能读取旧数据
+ *
+ * 支持的字段类型：基本类型及包装类、String、Date、枚举、byte[]、BigDecimal，以及同样满足这些条件的嵌套对象
+ * 类需要有无参构造方法；static和transient字段不编码
+ */
+public class CompactCodec {
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int LENGTH_DELIMITED = 2;
+    private static final int FIXED32 = 5;
+    /**没有@Tag的字段使用的编号范围（字段名散列），@Tag的编号必须小于它*/
+    private static final int HASHED_TAG_BASE = 1 << 28;
+
+    private final Map<Class<?>, ClassSchema> schemas = new ConcurrentHashMap<>();
+
+    /**
+     * 解析并缓存类的字段编号，类或字段不支持时抛出ActivitiIllegalArgumentException
+     * @param type 对象的类
+     */
+    public void register(Class<?> type){
+        schema(type);
+    }
+
+    /**
+     * 编码
+     * @param value 对象，不能为null
+     */
+    public byte[] encode(Object value){
+        Output out = new Output(64);
+        writeObject(out, schema(value.getClass()), value);
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码
+     * @param type 对象的类
+     * @param bytes encode返回的字节
+     */
+    public <T> T decode(Class<T> type, byte[] bytes){
+        Input in = new Input(bytes, 0, bytes.length);
+        return type.cast(readObject(in, schema(type)));
+    }
+
+    private ClassSchema schema(Class<?> type){
+        ClassSchema schema = schemas.get(type);
+        if(schema == null){
+            synchronized (schemas){
+                schema = schemas.get(type);
+                if(schema == null){
+                    Map<Class<?>, ClassSchema> building = new HashMap<>();
+                    schema = build(type, building);
+                    schemas.putAll(building);
+                }
+            }
+        }
+        return schema;
+    }
+
+    /**
+     * 解析类的字段，嵌套对象递归解析（building中记录正在解析的类，处理循环引用）
+     */
+    private ClassSchema build(Class<?> type, Map<Class<?>, ClassSchema> building){
+        ClassSchema schema = schemas.get(type);
+        if(schema == null){
+            schema = building.get(type);
+        }
+        if(schema != null){
+            return schema;
+        }
+        if(type.isInterface() || Modifier.isAbstract(type.getModifiers()) || type.isArray() || type.isEnum()
+                || type.getName().startsWith("java.")){
+            throw new ActivitiIllegalArgumentException("Compact codec does not support " + type.getName());
+        }
+        Constructor<?> constructor;
+        try{
+            constructor = type.getDeclaredConstructor();
+            constructor.setAccessible(true);
+        }catch(NoSuchMethodException e){
+            throw new ActivitiIllegalArgumentException(type.getName() + " has no no-arg constructor");
+        }
+        schema = new ClassSchema(constructor);
+        building.put(type, schema);
+        for(Class<?> c = type; c != Object.class; c = c.getSuperclass()){
+            for(Field field:c.getDeclaredFields()){
+                int modifiers = field.getModifiers();
+                if(Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()){
+                    continue;
+                }
+                Kind kind = Kind.of(field.getType());
+                if(kind == null){
+                    throw new ActivitiIllegalArgumentException("Compact codec does not support field " + c.getName() + "." + field.getName());
+                }
+                Tag tag = field.getAnnotation(Tag.class);
+                int number;
+                if(tag != null){
+                    if(tag.value() <= 0 || tag.value() >= HASHED_TAG_BASE){
+                        throw new ActivitiIllegalArgumentException("Invalid tag " + tag.value() + " on " + c.getName() + "." + field.getName());
+                    }
+                    number = tag.value();
+                }else{
+                    number = HASHED_TAG_BASE | (field.getName().hashCode() & (HASHED_TAG_BASE - 1));
+                }
+                field.setAccessible(true);
+                FieldSchema fieldSchema = new FieldSchema(field, number, kind,
+                        kind == Kind.OBJECT ? build(field.getType(), building) : null);
+                if(schema.byTag.put(number, fieldSchema) != null){
+                    throw new ActivitiIllegalArgumentException("Duplicate tag " + number + " in " + type.getName() + " (field " + field.getName() + ")");
+                }
+            }
+        }
+        schema.fields.addAll(schema.byTag.values());
+        return schema;
+    }
+
+    private void writeObject(Output out, ClassSchema schema, Object value){
+        try{
+            for(FieldSchema f:schema.fields){
+                Object v = f.field.get(value);
+                if(v == null){
+                    continue;
+                }
+                out.writeVarLong(((long) f.tag << 3) | f.kind.wireType);
+                switch (f.kind){
+                    case BOOLEAN: out.writeVarLong((Boolean) v ? 1 : 0); break;
+                    case CHAR: out.writeVarLong((Character) v); break;
+                    case BYTE: case SHORT: case INT: case LONG: out.writeVarLong(zigZag(((Number) v).longValue())); break;
+                    case DATE: out.writeVarLong(zigZag(((Date) v).getTime())); break;
+                    case FLOAT: out.writeFixed32(Float.floatToIntBits((Float) v)); break;
+                    case DOUBLE: out.writeFixed64(Double.doubleToLongBits((Double) v)); break;
+                    case STRING: out.writeBytes(((String) v).getBytes(StandardCharsets.UTF_8)); break;
+                    case ENUM: out.writeBytes(((Enum<?>) v).name().getBytes(StandardCharsets.UTF_8)); break;
+                    case BIG_DECIMAL: out.writeBytes(v.toString().getBytes(StandardCharsets.UTF_8)); break;
+                    case BYTES: out.writeBytes((byte[]) v); break;
+                    case OBJECT:
+                        Output nested = new Output(32);
+                        writeObject(nested, f.nested, v);
+                        out.writeBytes(nested.toByteArray());
+                        break;
+                }
+            }
+        }catch(IllegalAccessException e){
+            throw new ActivitiException("Could not encode " + value.getClass().getName(), e);
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Object readObject(Input in, ClassSchema schema){
+        try{
+            Object value = schema.constructor.newInstance();
+            while(in.hasRemaining()){
+                long key = in.readVarLong();
+                int wireType = (int) (key & 7);
+                FieldSchema f = schema.byTag.get((int) (key >>> 3));
+                if(f == null || f.kind.wireType != wireType){
+                    in.skip(wireType);//新版本增加的字段或类型改变的字段
+                    continue;
+                }
+                Class<?> type = f.field.getType();
+                Object v;
+                switch (f.kind){
+                    case BOOLEAN: v = in.readVarLong() != 0; break;
+                    case CHAR: v = (char) in.readVarLong(); break;
+                    case BYTE: v = (byte) unZigZag(in.readVarLong()); break;
+                    case SHORT: v = (short) unZigZag(in.readVarLong()); break;
+                    case INT: v = (int) unZigZag(in.readVarLong()); break;
+                    case LONG: v = unZigZag(in.readVarLong()); break;
+                    case DATE: v = new Date(unZigZag(in.readVarLong())); break;
+                    case FLOAT: v = Float.intBitsToFloat(in.readFixed32()); break;
+                    case DOUBLE: v = Double.longBitsToDouble(in.readFixed64()); break;
+                    case STRING: v = new String(in.readBytes(), StandardCharsets.UTF_8); break;
+                    case BIG_DECIMAL: v = new BigDecimal(new String(in.readBytes(), StandardCharsets.UTF_8)); break;
+                    case BYTES: v = in.readBytes(); break;
+                    case ENUM:
+                        String name = new String(in.readBytes(), StandardCharsets.UTF_8);
+                        try{
+                            v = Enum.valueOf((Class<Enum>) type, name);
+                        }catch(IllegalArgumentException e){
+                            continue;//已删除的枚举值按未设置处理
+                        }
+                        break;
+                    default:
+                        int length = (int) in.readVarLong();
+                        v = readObject(in.slice(length), f.nested);
+                        break;
+                }
+                f.field.set(value, v);
+            }
+            return value;
+        }catch(ReflectiveOperationException e){
+            throw new ActivitiException("Could not decode " + schema.constructor.getDeclaringClass().getName(), e);
+        }
+    }
+
+    private static long zigZag(long value){
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value){
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private enum Kind {
+        BOOLEAN(VARINT), CHAR(VARINT), BYTE(VARINT), SHORT(VARINT), INT(VARINT), LONG(VARINT), DATE(VARINT),
+        FLOAT(FIXED32), DOUBLE(FIXED64),
+        STRING(LENGTH_DELIMITED), ENUM(LENGTH_DELIMITED), BIG_DECIMAL(LENGTH_DELIMITED), BYTES(LENGTH_DELIMITED), OBJECT(LENGTH_DELIMITED);
+
+        final int wireType;
+
+        Kind(int wireType) {
+            this.wireType = wireType;
+        }
+
+        static Kind of(Class<?> type){
+            if(type == boolean.class || type == Boolean.class) return BOOLEAN;
+            if(type == char.class || type == Character.class) return CHAR;
+            if(type == byte.class || type == Byte.class) return BYTE;
+            if(type == short.class || type == Short.class) return SHORT;
+            if(type == int.class || type == Integer.class) return INT;
+            if(type == long.class || type == Long.class) return LONG;
+            if(type == float.class || type == Float.class) return FLOAT;
+            if(type == double.class || type == Double.class) return DOUBLE;
+            if(type == String.class) return STRING;
+            if(type == Date.class) return DATE;
+            if(type == BigDecimal.class) return BIG_DECIMAL;
+            if(type == byte[].class) return BYTES;
+            if(type.isEnum()) return ENUM;
+            if(type.isPrimitive() || type.isArray() || type.isInterface() || type.getName().startsWith("java.")) return null;
+            return OBJECT;
+        }
+    }
+
+    private static class ClassSchema {
+        final Constructor<?> constructor;
+        /**按编号排序*/
+        final SortedMap<Integer, FieldSchema> byTag = new TreeMap<>();
+        final List<FieldSchema> fields = new ArrayList<>();
+
+        ClassSchema(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+    }
+
+    private static class FieldSchema {
+        final Field field;
+        final int tag;
+        final Kind kind;
+        final ClassSchema nested;
+
+        FieldSchema(Field field, int tag, Kind kind, ClassSchema nested) {
+            this.field = field;
+            this.tag = tag;
+            this.kind = kind;
+            this.nested = nested;
+        }
+    }
+
+    private static class Output {
+        private byte[] buf;
+        private int size;
+
+        Output(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        void writeVarLong(long value){
+            ensure(10);
+            while((value & ~0x7FL) != 0){
+                buf[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[size++] = (byte) value;
+        }
+
+        void writeFixed32(int value){
+            ensure(4);
+            for(int i = 0; i < 4; i++){
+                buf[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void writeFixed64(long value){
+            ensure(8);
+            for(int i = 0; i < 8; i++){
+                buf[size++] = (byte) (value >>> (8 * i));
+            }
+        }
+
+        void writeBytes(byte[] bytes){
+            writeVarLong(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, size, bytes.length);
+            size += bytes.length;
+        }
+
+        private void ensure(int n){
+            if(size + n > buf.length){
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+            }
+        }
+
+        byte[] toByteArray(){
+            return Arrays.copyOf(buf, size);
+        }
+    }
+
+    private static class Input {
+        private final byte[] buf;
+        private int pos;
+        private final int end;
+
+        Input(byte[] buf, int pos, int end) {
+            this.buf = buf;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        boolean hasRemaining(){
+            return pos < end;
+        }
+
+        long readVarLong(){
+            long value = 0;
+            for(int shift = 0; shift < 64; shift += 7){
+                byte b = next();
+                value |= (long) (b & 0x7F) << shift;
+                if((b & 0x80) == 0){
+                    return value;
+                }
+            }
+            throw new ActivitiException("Malformed varint in compact variable");
+        }
+
+        int readFixed32(){
+            int value = 0;
+            for(int i = 0; i < 4; i++){
+                value |= (next() & 0xFF) << (8 * i);
+            }
+            return value;
+        }
+
+        long readFixed64(){
+            long value = 0;
+            for(int i = 0; i < 8; i++){
+                value |= (long) (next() & 0xFF) << (8 * i);
+            }
+            return value;
+        }
+
+        byte[] readBytes(){
+            int length = (int) readVarLong();
+            check(length);
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + length);
+            pos += length;
+            return bytes;
+        }
+
+        /**截取接下来的length个字节作为嵌套对象的输入*/
+        Input slice(int length){
+            check(length);
+            Input nested = new Input(buf, pos, pos + length);
+            pos += length;
+            return nested;
+        }
+
+        void skip(int wireType){
+            switch (wireType){
+                case VARINT: readVarLong(); break;
+                case FIXED64: check(8); pos += 8; break;
+                case FIXED32: check(4); pos += 4; break;
+                case LENGTH_DELIMITED: int length = (int) readVarLong(); check(length); pos += length; break;
+                default: throw new ActivitiException("Unknown wire type " + wireType + " in compact variable");
+            }
+        }
+
+        private byte next(){
+            check(1);
+            return buf[pos++];
+        }
+
+        private void check(int n){
+            if(n < 0 || pos + n > end){
+                throw new ActivitiException("Truncated compact variable");
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package cn.test.variable;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.impl.util.ReflectUtil;
+import org.activiti.engine.impl.variable.SerializableType;
+import org.activiti.engine.impl.variable.ValueFields;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 使用CompactCodec保存的流程变量类型（类型名compact），字节保存在ACT_GE_BYTEARRAY，类名保存在TEXT2_
+ * 只处理配置的类，其他对象仍然由serializable类型保存；已经以serializable保存的旧变量照常读取
+ *
+ * 继承SerializableType，读取后修改对象的字段同样会在事务提交时写回
+ * 在activiti.cfg.xml的customPreVariableTypes中配置，排在默认的serializable类型之前
+ */
+public class CompactObjectType extends SerializableType {
+
+    public static final String TYPE_NAME = "compact";
+
+    private final CompactCodec codec = new CompactCodec();
+    private final Set<Class<?>> classes = new HashSet<>();
+
+    @Override
+    public String getTypeName() {
+        return TYPE_NAME;
+    }
+
+    @Override
+    public boolean isAbleToStore(Object value) {
+        return value != null && classes.contains(value.getClass());
+    }
+
+    @Override
+    public byte[] serialize(Object value, ValueFields valueFields) {
+        if(value == null){
+            return null;
+        }
+        valueFields.setTextValue2(value.getClass().getName());
+        return codec.encode(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes, ValueFields valueFields) {
+        String className = valueFields.getTextValue2();
+        if(className == null){
+            throw new ActivitiException("Missing class name for compact variable " + valueFields.getName());
+        }
+        return codec.decode(ReflectUtil.loadClass(className), bytes);
+    }
+
+    /**
+     * 设置使用紧凑编码保存的类（类的所有字段必须是CompactCodec支持的类型）
+     * @param classNames 类的全名
+     */
+    public void setClasses(List<String> classNames) {
+        classes.clear();
+        for(String className:classNames){
+            Class<?> type = ReflectUtil.loadClass(className);
+            codec.register(type);
+            classes.add(type);
+        }
+    }
+
+    public CompactCodec getCodec() {
+        return codec;
+    }
+}
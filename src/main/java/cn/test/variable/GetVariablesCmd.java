@@ -0,0 +1,201 @@
+package cn.test.variable;
+
+import org.activiti.engine.impl.context.Context;
+import org.activiti.engine.impl.db.DbSqlSession;
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.persistence.entity.ExecutionEntity;
+import org.activiti.engine.impl.persistence.entity.TaskEntity;
+import org.activiti.engine.impl.persistence.entity.VariableInstanceEntity;
+import org.activiti.engine.impl.persistence.entity.VariableScopeImpl;
+
+import java.util.*;
+
+/**
+ * 批量读取多个任务（或执行对象）的流程变量
+ * 每批任务只查询三次：任务、流程实例下的执行对象、这些流程实例和任务的变量；
+ * 变量按任务本地变量、执行对象及其上级执行对象的顺序取值，与taskService.getVariables相同
+ *
+ * 本命令中已经加载的任务（执行对象）从实体的变量取值，包含尚未flush的修改；其他的从数据库批量读取
+ * lazy为true时，保存在ACT_GE_BYTEARRAY中的变量返回LazyVariable，不读取字节
+ */
+public class GetVariablesCmd implements Command<Map<String, Map<String, Object>>> {
+
+    private static final String NAMESPACE = "cn.test.variable.BatchVariable.";
+    /**每次查询的任务或执行对象数，避免IN列表过长*/
+    private static final int CHUNK_SIZE = 500;
+
+    private final List<String> ids;
+    private final boolean tasks;
+    private final List<String> names;
+    private final boolean lazy;
+
+    /**
+     * @param ids 任务id或执行对象id
+     * @param tasks true表示ids是任务id
+     * @param names 变量名，为null时读取全部变量，为空时不读取变量（只返回存在的任务或执行对象）
+     */
+    public GetVariablesCmd(Collection<String> ids, boolean tasks, Collection<String> names) {
+        this(ids, tasks, names, false);
+    }
+
+    /**
+     * @param ids 任务id或执行对象id
+     * @param tasks true表示ids是任务id
+     * @param names 变量名，为null时读取全部变量，为空时不读取变量（只返回存在的任务或执行对象）
+     * @param lazy 字节数组类型的变量是否返回LazyVariable
+     */
+    public GetVariablesCmd(Collection<String> ids, boolean tasks, Collection<String> names, boolean lazy) {
+        this.ids = new ArrayList<>(new LinkedHashSet<>(ids));
+        this.tasks = tasks;
+        this.names = names == null ? null : new ArrayList<>(new LinkedHashSet<>(names));
+        this.lazy = lazy;
+    }
+
+    /**
+     * @return 任务id（执行对象id） -> 变量名 -> 变量值；不存在的任务（执行对象）不在结果中，不存在的变量不在变量表中
+     */
+    @Override
+    public Map<String, Map<String, Object>> execute(CommandContext commandContext) {
+        DbSqlSession dbSqlSession = commandContext.getDbSqlSession();
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for(String id:ids){
+            VariableScopeImpl loaded = tasks ? dbSqlSession.findInCache(TaskEntity.class, id)
+                    : dbSqlSession.findInCache(ExecutionEntity.class, id);
+            if(loaded != null){
+                result.put(id, values(loaded));
+            }else{
+                missing.add(id);
+            }
+        }
+        for(int from = 0; from < missing.size(); from += CHUNK_SIZE){
+            List<String> chunk = missing.subList(from, Math.min(from + CHUNK_SIZE, missing.size()));
+            result.putAll(load(dbSqlSession, chunk));
+        }
+        //按传入的顺序返回
+        Map<String, Map<String, Object>> ordered = new LinkedHashMap<>();
+        for(String id:ids){
+            if(result.containsKey(id)){
+                ordered.put(id, result.get(id));
+            }
+        }
+        return ordered;
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, Map<String, Object>> load(DbSqlSession dbSqlSession, List<String> chunk){
+        //任务id（执行对象id） -> 所在执行对象id
+        Map<String, String> executionIds = new LinkedHashMap<>();
+        Set<String> processInstanceIds = new LinkedHashSet<>();
+        if(tasks){
+            List<TaskEntity> taskList = dbSqlSession.selectList(NAMESPACE + "selectTasksByIds", parameter("ids", chunk));
+            for(TaskEntity task:taskList){
+                executionIds.put(task.getId(), task.getExecutionId());
+                if(task.getProcessInstanceId() != null){
+                    processInstanceIds.add(task.getProcessInstanceId());
+                }
+            }
+        }else{
+            List<ExecutionEntity> executionList = dbSqlSession.selectList(NAMESPACE + "selectExecutionsByIds", parameter("ids", chunk));
+            for(ExecutionEntity execution:executionList){
+                executionIds.put(execution.getId(), execution.getId());
+                processInstanceIds.add(execution.getProcessInstanceId());
+            }
+        }
+        if(executionIds.isEmpty()){
+            return Collections.emptyMap();
+        }
+        //执行对象id -> 上级执行对象id
+        Map<String, String> parents = new HashMap<>();
+        if(!processInstanceIds.isEmpty()){
+            List<ExecutionEntity> executions = dbSqlSession.selectList(NAMESPACE + "selectExecutionsByProcessInstanceIds",
+                    parameter("processInstanceIds", new ArrayList<>(processInstanceIds)));
+            for(ExecutionEntity execution:executions){
+                parents.put(execution.getId(), execution.getParentId());
+            }
+        }
+        Map<String, Object> parameter = new HashMap<>();
+        parameter.put("taskIds", tasks ? new ArrayList<>(executionIds.keySet()) : null);
+        parameter.put("processInstanceIds", new ArrayList<>(processInstanceIds));
+        parameter.put("names", names);
+        List<VariableInstanceEntity> variables = Collections.emptyList();
+        //空的变量名列表不读取变量（语句中names为空时不限制变量名）
+        if(names == null || !names.isEmpty()){
+            variables = dbSqlSession.selectList(NAMESPACE + "selectVariablesByScopesAndNames", parameter);
+        }
+        //任务id或执行对象id -> 变量名 -> 变量
+        Map<String, Map<String, VariableInstanceEntity>> byScope = new HashMap<>();
+        for(VariableInstanceEntity variable:variables){
+            String scopeId = variable.getTaskId() != null ? variable.getTaskId() : variable.getExecutionId();
+            Map<String, VariableInstanceEntity> scopeVariables = byScope.get(scopeId);
+            if(scopeVariables == null){
+                scopeVariables = new HashMap<>();
+                byScope.put(scopeId, scopeVariables);
+            }
+            scopeVariables.put(variable.getName(), variable);
+        }
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        for(Map.Entry<String, String> e:executionIds.entrySet()){
+            Map<String, Object> values = new HashMap<>();
+            if(tasks){
+                collect(byScope.get(e.getKey()), values);
+            }
+            for(String executionId = e.getValue(); executionId != null; executionId = parents.get(executionId)){
+                collect(byScope.get(executionId), values);
+            }
+            result.put(e.getKey(), values);
+        }
+        return result;
+    }
+
+    /**已加载的任务（执行对象）：任务本地变量、所在执行对象及其上级执行对象的变量*/
+    private Map<String, Object> values(VariableScopeImpl scope){
+        Map<String, Object> values = new HashMap<>();
+        ExecutionEntity execution;
+        if(scope instanceof TaskEntity){
+            collect(selected(scope.getVariableInstances()), values);
+            execution = ((TaskEntity) scope).getExecution();
+        }else{
+            execution = (ExecutionEntity) scope;
+        }
+        for(; execution != null; execution = execution.getParent()){
+            collect(selected(execution.getVariableInstances()), values);
+        }
+        return values;
+    }
+
+    /**按变量名过滤实体的变量*/
+    private Map<String, VariableInstanceEntity> selected(Map<String, VariableInstanceEntity> variables){
+        if(names == null){
+            return variables;
+        }
+        Map<String, VariableInstanceEntity> selected = new HashMap<>();
+        for(String name:names){
+            if(variables.containsKey(name)){
+                selected.put(name, variables.get(name));
+            }
+        }
+        return selected;
+    }
+
+    /**下级作用域的同名变量优先*/
+    private void collect(Map<String, VariableInstanceEntity> scopeVariables, Map<String, Object> values){
+        if(scopeVariables == null){
+            return;
+        }
+        for(VariableInstanceEntity variable:scopeVariables.values()){
+            if(!values.containsKey(variable.getName())){
+                values.put(variable.getName(), lazy && LazyVariable.isDeferrable(variable)
+                        ? new LazyVariable(variable, Context.getProcessEngineConfiguration().getCommandExecutor())
+                        : variable.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Object> parameter(String name, Object value){
+        Map<String, Object> parameter = new HashMap<>();
+        parameter.put(name, value);
+        return parameter;
+    }
+}
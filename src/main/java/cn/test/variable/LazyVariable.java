@@ -0,0 +1,180 @@
+package cn.test.variable;
+
+import org.activiti.engine.impl.interceptor.Command;
+import org.activiti.engine.impl.interceptor.CommandContext;
+import org.activiti.engine.impl.interceptor.CommandExecutor;
+import org.activiti.engine.impl.persistence.entity.ByteArrayEntity;
+import org.activiti.engine.impl.persistence.entity.ByteArrayRef;
+import org.activiti.engine.impl.persistence.entity.VariableInstanceEntity;
+import org.activiti.engine.impl.variable.ValueFields;
+import org.activiti.engine.impl.variable.VariableType;
+
+import java.util.Map;
+
+/**
+ * 保存在ACT_GE_BYTEARRAY中的流程变量（serializable、compact、bytes等类型）的延迟加载句柄
+ * 第一次调用getValue时才读取字节并反序列化，之后返回同一个对象；读取的是首次访问时数据库中的值
+ * 返回的对象与引擎脱离，修改它不会写回流程变量
+ */
+public class LazyVariable {
+
+    private final String name;
+    private final VariableType type;
+    private final String byteArrayId;
+    private final String textValue;
+    private final String textValue2;
+    private final CommandExecutor commandExecutor;
+
+    private boolean loaded = false;
+    private Object value;
+
+    LazyVariable(VariableInstanceEntity variable, CommandExecutor commandExecutor) {
+        this.name = variable.getName();
+        this.type = variable.getType();
+        this.byteArrayId = byteArrayId(variable);
+        this.textValue = variable.getTextValue();
+        this.textValue2 = variable.getTextValue2();
+        this.commandExecutor = commandExecutor;
+    }
+
+    /**
+     * 变量是否需要延迟加载（值保存在ACT_GE_BYTEARRAY中）
+     */
+    static boolean isDeferrable(VariableInstanceEntity variable){
+        return byteArrayId(variable) != null;
+    }
+
+    /**
+     * 变量的ACT_GE_BYTEARRAY id：引擎5.18没有公开byteArrayRef，取持久化状态中的byteArrayValueId，不读取字节
+     */
+    @SuppressWarnings("unchecked")
+    private static String byteArrayId(VariableInstanceEntity variable){
+        return (String) ((Map<String, Object>) variable.getPersistentState()).get("byteArrayValueId");
+    }
+
+    /**变量值，第一次调用时读取并反序列化*/
+    public synchronized Object getValue(){
+        if(!loaded){
+            byte[] bytes = commandExecutor.execute(new Command<byte[]>() {
+                @Override
+                public byte[] execute(CommandContext commandContext) {
+                    return new ByteArrayRef(byteArrayId).getBytes();
+                }
+            });
+            value = bytes == null ? null : type.getValue(new DetachedValueFields(bytes));
+            loaded = true;
+        }
+        return value;
+    }
+
+    /**是否已经读取*/
+    public synchronized boolean isLoaded() {
+        return loaded;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**变量类型名，如serializable、compact、bytes*/
+    public String getTypeName() {
+        return type.getTypeName();
+    }
+
+    @Override
+    public String toString() {
+        return "LazyVariable[" + name + ", " + type.getTypeName() + (isLoaded() ? ", loaded]" : "]");
+    }
+
+    /**
+     * 只读的变量字段，供VariableType反序列化使用
+     */
+    private class DetachedValueFields implements ValueFields {
+
+        private final byte[] bytes;
+        private Object cachedValue;
+
+        DetachedValueFields(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public String getTextValue() {
+            return textValue;
+        }
+
+        @Override
+        public void setTextValue(String textValue) {
+        }
+
+        @Override
+        public String getTextValue2() {
+            return textValue2;
+        }
+
+        @Override
+        public void setTextValue2(String textValue2) {
+        }
+
+        @Override
+        public Long getLongValue() {
+            return null;
+        }
+
+        @Override
+        public void setLongValue(Long longValue) {
+        }
+
+        @Override
+        public Double getDoubleValue() {
+            return null;
+        }
+
+        @Override
+        public void setDoubleValue(Double doubleValue) {
+        }
+
+        @Override
+        public byte[] getBytes() {
+            return bytes;
+        }
+
+        @Override
+        public void setBytes(byte[] bytes) {
+        }
+
+        /**ValueFields中已废弃，变量类型只使用getBytes*/
+        @Deprecated
+        @Override
+        public String getByteArrayValueId() {
+            return byteArrayId;
+        }
+
+        @Deprecated
+        @Override
+        public ByteArrayEntity getByteArrayValue() {
+            return null;
+        }
+
+        @Deprecated
+        @Override
+        public void setByteArrayValue(byte[] bytes) {
+            setBytes(bytes);
+        }
+
+        @Override
+        public Object getCachedValue() {
+            return cachedValue;
+        }
+
+        @Override
+        public void setCachedValue(Object cachedValue) {
+            this.cachedValue = cachedValue;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package cn.test.variable;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * CompactCodec中字段的编号，编码时只写编号不写字段名
+ * 字段改名时保留原编号即可兼容旧数据；删除的字段编号不要再分配给新字段
+ * 没有标注的字段使用字段名的散列作为编号（占用更多字节，改名后无法读取旧值）
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Tag {
+
+    /**编号，从1开始，同一个类中不能重复*/
+    int value();
+}
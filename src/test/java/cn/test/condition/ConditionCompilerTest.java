@@ -0,0 +1,135 @@
+package cn.test.condition;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.impl.Condition;
+import org.activiti.engine.impl.javax.el.ELException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 编译后的条件与JUEL解释执行的结果相同
+ */
+public class ConditionCompilerTest {
+
+    private static final List<String> MONEY_EXPRESSIONS = Arrays.asList(
+            "${money>=500 && money<=1000}", "${money>1000}", "${money<500 || money>1000}",
+            "${500<=money}", "${1000>=money}", "${1000<money}", "${500>money}",
+            "${money==1000}", "${1000==money}", "${money!=500}", "${500!=money}",
+            "${!(money<500)}", "${money+1>1000}", "${money%2==0}");
+
+    private static final List<Object> MONEY_VALUES = Arrays.<Object>asList(
+            499, 500, 1000, 1001, 499L, 500L, 1000L, 1001L, (short) 500, (byte) -1,
+            499.5, 500.0, 1000.5, 1001f, new BigDecimal("1000.5"), "500", "1001", "1000.5", null);
+
+    /**边界值、常量在前、!=，以及整数之外的类型*/
+    @Test
+    public void compiledEqualsJuel(){
+        for(String expression:MONEY_EXPRESSIONS){
+            for(Object money:MONEY_VALUES){
+                assertEquals(expression + " " + money, juel(expression, "money", money), compiled(expression, "money", money));
+            }
+        }
+    }
+
+    @Test
+    public void stringEquals(){
+        for(String expression:Arrays.asList("${message=='重要'}", "${message!='重要'}", "${'重要'==message}")){
+            for(Object message:Arrays.<Object>asList("重要", "不重要", "", null)){
+                assertEquals(expression + " " + message, juel(expression, "message", message), compiled(expression, "message", message));
+            }
+        }
+    }
+
+    @Test
+    public void constantFirstCompilesToCompareLong(){
+        ConditionNode node = ConditionCompiler.compile("${500<=money}");
+        assertTrue(node instanceof ConditionNode.CompareLong);
+        assertTrue(((ConditionNode.CompareLong) node).constantFirst);
+        assertTrue(ConditionCompiler.compile("${money!=500}") instanceof ConditionNode.CompareLong);
+        assertTrue(ConditionCompiler.compile("${message=='重要'}") instanceof ConditionNode.EqualsString);
+    }
+
+    /**方法调用、内置变量、文本混合不编译*/
+    @Test
+    public void unsupportedExpressionsAreNotCompiled(){
+        assertNull(ConditionCompiler.compile("${money.intValue()>1000}"));
+        assertNull(ConditionCompiler.compile("${execution.getVariable('money')>1000}"));
+        assertNull(ConditionCompiler.compile("money ${money}"));
+        Condition fallback = new RecordingCondition(true);
+        assertSame(fallback, ConditionCompiler.compile("${money.intValue()>1000}", fallback));
+    }
+
+    /**变量不存在时交给原来的条件*/
+    @Test
+    public void missingVariableUsesFallback(){
+        RecordingCondition fallback = new RecordingCondition(true);
+        Condition condition = ConditionCompiler.compile("${money>1000}", fallback);
+        assertTrue(condition instanceof CompiledCondition);
+        assertTrue(condition.evaluate(Conditions.execution()));
+        assertEquals(1, fallback.calls);
+        assertFalse(condition.evaluate(Conditions.execution("money", 1000)));
+        assertEquals(1, fallback.calls);
+        //null值的变量存在，不交给原来的条件
+        assertFalse(condition.evaluate(Conditions.execution("money", null)));
+        assertEquals(1, fallback.calls);
+    }
+
+    /**不能转换为数字的值与JUEL一样报错*/
+    @Test
+    public void nonNumericValueFails(){
+        try{
+            Conditions.juel("${money>1000}", "money", "abc");
+            fail();
+        }catch(ELException expected){
+        }
+        try{
+            ConditionCompiler.compile("${money>1000}", new RecordingCondition(true)).evaluate(Conditions.execution("money", "abc"));
+            fail();
+        }catch(ActivitiException expected){
+            assertTrue(expected.getCause() instanceof ELException);
+        }
+    }
+
+    /**JUEL的结果，出错时为异常类型*/
+    private static Object juel(String expression, String name, Object value){
+        try{
+            return Conditions.juel(expression, name, value);
+        }catch(ELException e){
+            return e.getClass();
+        }
+    }
+
+    /**编译后的结果，出错时为异常类型*/
+    private static Object compiled(String expression, String name, Object value){
+        ConditionNode node = ConditionCompiler.compile(expression);
+        assertNotNull(expression, node);
+        try{
+            return node.eval(Conditions.execution(name, value));
+        }catch(ELException e){
+            return e.getClass();
+        }
+    }
+
+    /**记录调用次数的条件*/
+    private static class RecordingCondition implements Condition {
+        private static final long serialVersionUID = 1L;
+        private final boolean result;
+        int calls;
+
+        RecordingCondition(boolean result) {
+            this.result = result;
+        }
+
+        @Override
+        public boolean evaluate(DelegateExecution execution) {
+            calls++;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package cn.test.condition;
+
+import org.activiti.engine.impl.Condition;
+import org.activiti.engine.delegate.DelegateExecution;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * 索引查找的结果与按顺序逐个求值相同
+ */
+public class ConditionIndexTest {
+
+    private static final Condition UNUSED = new Condition() {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public boolean evaluate(DelegateExecution execution) {
+            throw new AssertionError("fallback");
+        }
+    };
+
+    /**exclusiveGateWay.bpmn的出口条件*/
+    @Test
+    public void exclusiveGatewayBoundaries(){
+        ConditionIndex index = index("${money>=500 && money<=1000}", "${money>1000}");
+        assertEquals(ConditionIndex.NONE, (int) index.lookup(499));
+        assertEquals(0, (int) index.lookup(500));
+        assertEquals(0, (int) index.lookup(1000));
+        assertEquals(1, (int) index.lookup(1001));
+        assertEquals(1, (int) index.lookup(1001L));
+        assertEquals(ConditionIndex.NONE, (int) index.lookup(Long.MIN_VALUE));
+        assertEquals(1, (int) index.lookup(Long.MAX_VALUE));
+    }
+
+    /**整数之外的值和不存在的变量不用索引判断*/
+    @Test
+    public void nonIntegerValuesAreNotIndexed(){
+        ConditionIndex index = index("${money>=500 && money<=1000}", "${money>1000}");
+        assertNull(index.lookup(1000.5));
+        assertNull(index.lookup("1001"));
+        assertNull(index.lookup(null));
+    }
+
+    @Test
+    public void sameResultAsSequentialEvaluation(){
+        List<List<String>> gateways = Arrays.asList(
+                Arrays.asList("${money>=500 && money<=1000}", "${money>1000}"),
+                Arrays.asList("${500<=money && 1000>=money}", "${1000<money}"),
+                Arrays.asList("${money!=500}", "${money==500}"),
+                Arrays.asList("${500!=money}", "${money>=0}"),
+                Arrays.asList("${money<500 || money>1000}", "${money==750}", "${money>0}"),
+                Arrays.asList("${money>1000}", "${money>=500}", "${money<500}"));
+        for(List<String> expressions:gateways){
+            ConditionIndex index = index(expressions.toArray(new String[expressions.size()]));
+            for(long money = 495; money <= 1005; money++){
+                assertEquals(expressions + " " + money, sequential(expressions, money), (int) index.lookup(money));
+            }
+            for(long money:new long[]{-1, 0, 1, 499, 500, 501, 749, 750, 751, 999, 1000, 1001}){
+                assertEquals(expressions + " " + money, sequential(expressions, (int) money), (int) index.lookup((int) money));
+            }
+        }
+    }
+
+    @Test
+    public void stringEquals(){
+        ConditionIndex index = index("${message=='重要'}", "${message=='不重要' || message=='一般'}");
+        assertEquals(0, (int) index.lookup("重要"));
+        assertEquals(1, (int) index.lookup("不重要"));
+        assertEquals(1, (int) index.lookup("一般"));
+        assertEquals(ConditionIndex.NONE, (int) index.lookup("其他"));
+        assertNull(index.lookup(1));
+    }
+
+    /**不同变量、!=字符串、混合类型不建立索引*/
+    @Test
+    public void unsupportedConditionsAreNotIndexed(){
+        assertNull(ConditionIndex.build(compile("${money>1000}", "${amount<=1000}")));
+        assertNull(ConditionIndex.build(compile("${message!='重要'}", "${message=='重要'}")));
+        assertNull(ConditionIndex.build(compile("${money>1000}", "${money=='1000'}")));
+        assertNull(ConditionIndex.build(compile("${money+1>1000}", "${money<=1000}")));
+    }
+
+    /**第一个满足的条件序号，没有时为NONE*/
+    private static int sequential(List<String> expressions, Object money){
+        for(int i = 0; i < expressions.size(); i++){
+            if((Boolean) Conditions.juel(expressions.get(i), "money", money)){
+                return i;
+            }
+        }
+        return ConditionIndex.NONE;
+    }
+
+    private static ConditionIndex index(String... expressions){
+        ConditionIndex index = ConditionIndex.build(compile(expressions));
+        assertNotNull(Arrays.toString(expressions), index);
+        return index;
+    }
+
+    private static List<CompiledCondition> compile(String... expressions){
+        List<CompiledCondition> conditions = new ArrayList<>();
+        for(String expression:expressions){
+            Condition condition = ConditionCompiler.compile(expression, UNUSED);
+            assertTrue(expression, condition instanceof CompiledCondition);
+            conditions.add((CompiledCondition) condition);
+        }
+        return conditions;
+    }
+}
@@ -0,0 +1,151 @@
+package cn.test.condition;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineConfiguration;
+import org.activiti.engine.impl.RepositoryServiceImpl;
+import org.activiti.engine.impl.bpmn.behavior.ExclusiveGatewayActivityBehavior;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.cfg.StandaloneInMemProcessEngineConfiguration;
+import org.activiti.engine.impl.el.UelExpressionCondition;
+import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.pvm.PvmTransition;
+import org.activiti.engine.impl.pvm.process.ActivityImpl;
+import org.activiti.engine.parse.BpmnParseHandler;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.Task;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 同一个流程分别用引擎原来的方式（JUEL解释执行）和编译、索引后的条件执行，走向相同
+ * 两个引擎各用一个H2内存库，流程定义使用示例中的exclusiveGateWay.bpmn、sequenceFlow.bpmn
+ */
+public class ConditionRoutingTest {
+
+    private static ProcessEngine interpreted;
+    private static ProcessEngine compiled;
+
+    @BeforeClass
+    public static void buildEngines(){
+        interpreted = buildEngine("interpreted", Collections.<BpmnParseHandler>emptyList());
+        compiled = buildEngine("compiled", Arrays.<BpmnParseHandler>asList(new CompiledConditionParseHandler(), new IndexedGatewayParseHandler()));
+    }
+
+    @AfterClass
+    public static void closeEngines(){
+        interpreted.close();
+        compiled.close();
+    }
+
+    private static ProcessEngine buildEngine(String name, List<BpmnParseHandler> postBpmnParseHandlers){
+        ProcessEngineConfigurationImpl configuration = new StandaloneInMemProcessEngineConfiguration();
+        configuration.setProcessEngineName(name);
+        configuration.setJdbcUrl("jdbc:h2:mem:" + name);
+        configuration.setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_CREATE_DROP);
+        configuration.setPostBpmnParseHandlers(postBpmnParseHandlers);
+        ProcessEngine engine = configuration.buildProcessEngine();
+        engine.getRepositoryService().createDeployment()
+                .addClasspathResource("cn/test/g_exclusiveGateWay/exclusiveGateWay.bpmn")
+                .addClasspathResource("cn/test/f_sequenceFlow/sequenceFlow.bpmn")
+                .deploy();
+        return engine;
+    }
+
+    /**编译后的引擎确实使用了CompiledCondition和条件索引*/
+    @Test
+    public void compiledEngineUsesCompiledPath(){
+        ActivityImpl gateway = activity(interpreted, "exclusiveGateWay", "exclusivegateway1");
+        assertSame(ExclusiveGatewayActivityBehavior.class, gateway.getActivityBehavior().getClass());
+        for(PvmTransition transition:gateway.getOutgoingTransitions()){
+            Object condition = transition.getProperty("condition");
+            assertTrue(condition == null || condition instanceof UelExpressionCondition);
+        }
+        gateway = activity(compiled, "exclusiveGateWay", "exclusivegateway1");
+        assertTrue(gateway.getActivityBehavior() instanceof IndexedExclusiveGatewayActivityBehavior);
+        for(PvmTransition transition:activity(compiled, "sequenceFlow", "usertask1").getOutgoingTransitions()){
+            assertTrue(transition.getProperty("condition") instanceof CompiledCondition);
+        }
+    }
+
+    @Test
+    public void exclusiveGateway(){
+        //usertask2：500~1000，usertask4：大于1000，usertask3：默认顺序流
+        Object[][] cases = {
+                {499, "usertask3"}, {500, "usertask2"}, {1000, "usertask2"}, {1001, "usertask4"},
+                {499L, "usertask3"}, {500L, "usertask2"}, {1000L, "usertask2"}, {1001L, "usertask4"},
+                {-1, "usertask3"}, {Integer.MAX_VALUE, "usertask4"},
+                {499.5, "usertask3"}, {500.0, "usertask2"}, {1000.5, "usertask4"}, {new BigDecimal("1000.5"), "usertask4"},
+                {"500", "usertask2"}, {"1001", "usertask4"}, {"abc", ActivitiException.class.getName()}};
+        for(Object[] c:cases){
+            Map<String, Object> variables = Collections.singletonMap("money", c[0]);
+            String expected = (String) c[1];
+            assertEquals(c[0] + " interpreted", expected, route(interpreted, "exclusiveGateWay", variables));
+            assertEquals(c[0] + " compiled", expected, route(compiled, "exclusiveGateWay", variables));
+        }
+    }
+
+    /**变量不存在时两种方式都报错（Unknown property）*/
+    @Test
+    public void exclusiveGatewayMissingVariable(){
+        Map<String, Object> variables = Collections.emptyMap();
+        assertEquals(ActivitiException.class.getName(), route(interpreted, "exclusiveGateWay", variables));
+        assertEquals(ActivitiException.class.getName(), route(compiled, "exclusiveGateWay", variables));
+        //其他名字的变量同样不影响结果
+        variables = Collections.<String, Object>singletonMap("amount", 800);
+        assertEquals(ActivitiException.class.getName(), route(interpreted, "exclusiveGateWay", variables));
+        assertEquals(ActivitiException.class.getName(), route(compiled, "exclusiveGateWay", variables));
+    }
+
+    @Test
+    public void sequenceFlow(){
+        Object[][] cases = {{"重要", "usertask2"}, {"不重要", "ended"}, {1, ActivitiException.class.getName()}};
+        for(Object[] c:cases){
+            Map<String, Object> variables = Collections.singletonMap("message", c[0]);
+            assertEquals(c[0] + " interpreted", c[1], route(interpreted, "sequenceFlow", variables));
+            assertEquals(c[0] + " compiled", c[1], route(compiled, "sequenceFlow", variables));
+        }
+        Map<String, Object> variables = Collections.emptyMap();
+        assertEquals(route(interpreted, "sequenceFlow", variables), route(compiled, "sequenceFlow", variables));
+    }
+
+    /**
+     * 启动流程并用variables完成第一个任务
+     * @return 之后的任务（活动id，多个时用逗号分隔），流程结束时为ended，出错时为异常类名
+     */
+    private static String route(ProcessEngine engine, String processDefinitionKey, Map<String, Object> variables){
+        ProcessInstance pi = engine.getRuntimeService().startProcessInstanceByKey(processDefinitionKey);
+        Task first = engine.getTaskService().createTaskQuery().processInstanceId(pi.getId()).singleResult();
+        try{
+            engine.getTaskService().complete(first.getId(), variables);
+        }catch(ActivitiException e){
+            return e.getClass().getName();
+        }
+        List<String> activities = new ArrayList<>();
+        for(Task task:engine.getTaskService().createTaskQuery().processInstanceId(pi.getId()).list()){
+            activities.add(task.getTaskDefinitionKey());
+        }
+        if(activities.isEmpty()){
+            return "ended";
+        }
+        Collections.sort(activities);
+        StringBuilder result = new StringBuilder();
+        for(String activity:activities){
+            result.append(result.length() == 0 ? "" : ",").append(activity);
+        }
+        return result.toString();
+    }
+
+    private static ActivityImpl activity(ProcessEngine engine, String processDefinitionKey, String activityId){
+        String id = engine.getRepositoryService().createProcessDefinitionQuery()
+                .processDefinitionKey(processDefinitionKey).latestVersion().singleResult().getId();
+        ProcessDefinitionEntity definition = (ProcessDefinitionEntity) ((RepositoryServiceImpl) engine.getRepositoryService()).getDeployedProcessDefinition(id);
+        return definition.findActivity(activityId);
+    }
+}
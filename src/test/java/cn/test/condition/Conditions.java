@@ -0,0 +1,58 @@
+package cn.test.condition;
+
+import org.activiti.engine.delegate.DelegateExecution;
+import org.activiti.engine.impl.juel.ExpressionFactoryImpl;
+import org.activiti.engine.impl.juel.SimpleContext;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 条件测试的辅助方法：只有流程变量的执行对象，以及用JUEL解释执行表达式作为对照
+ */
+class Conditions {
+
+    private static final ExpressionFactoryImpl FACTORY = new ExpressionFactoryImpl();
+
+    private Conditions(){
+    }
+
+    /**
+     * 只支持getVariable、hasVariable的执行对象
+     * @param variables 变量名、值交替
+     */
+    static DelegateExecution execution(Object... variables){
+        final Map<String, Object> values = new HashMap<>();
+        for(int i = 0; i < variables.length; i += 2){
+            values.put((String) variables[i], variables[i + 1]);
+        }
+        return (DelegateExecution) Proxy.newProxyInstance(Conditions.class.getClassLoader(),
+                new Class<?>[]{DelegateExecution.class}, new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method method, Object[] args) {
+                        if(method.getName().equals("getVariable") && args.length == 1){
+                            return values.get(args[0]);
+                        }
+                        if(method.getName().equals("hasVariable")){
+                            return values.containsKey(args[0]);
+                        }
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    /**
+     * 用JUEL解释执行表达式
+     * @param variables 变量名、值交替
+     */
+    static Object juel(String expressionText, Object... variables){
+        SimpleContext context = new SimpleContext();
+        for(int i = 0; i < variables.length; i += 2){
+            context.setVariable((String) variables[i], FACTORY.createValueExpression(variables[i + 1], Object.class));
+        }
+        return FACTORY.createValueExpression(context, expressionText, Object.class).getValue(context);
+    }
+}
@@ -0,0 +1,171 @@
+package cn.test.id;
+
+import org.activiti.engine.ActivitiIllegalArgumentException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * id的顺序、唯一性，以及节点号的配置
+ */
+public class NodeStripedIdGeneratorTest {
+
+    private String nodeIdProperty;
+
+    @Before
+    public void clearProperty(){
+        nodeIdProperty = System.getProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY);
+        System.clearProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY);
+    }
+
+    @After
+    public void restoreProperty(){
+        if(nodeIdProperty == null){
+            System.clearProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY);
+        }else{
+            System.setProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY, nodeIdProperty);
+        }
+    }
+
+    /**字符串顺序与生成顺序一致，同一毫秒内序号用完时借用下一毫秒*/
+    @Test
+    public void idsAreOrdered(){
+        NodeStripedIdGenerator generator = generator(1);
+        String previous = generator.getNextId();
+        for(int i = 0; i < 20000; i++){
+            String id = generator.getNextId();
+            assertEquals(19, id.length());
+            assertTrue(previous + " < " + id, previous.compareTo(id) < 0);
+            previous = id;
+        }
+    }
+
+    @Test
+    public void idsAreUniqueAcrossThreads() throws Exception {
+        final NodeStripedIdGenerator generator = generator(2);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<List<String>>> futures = new ArrayList<>();
+        for(int t = 0; t < 8; t++){
+            futures.add(executor.submit(new Callable<List<String>>() {
+                @Override
+                public List<String> call() {
+                    List<String> ids = new ArrayList<>();
+                    for(int i = 0; i < 10000; i++){
+                        ids.add(generator.getNextId());
+                    }
+                    return ids;
+                }
+            }));
+        }
+        Set<String> all = new HashSet<>();
+        for(Future<List<String>> future:futures){
+            all.addAll(future.get());
+        }
+        executor.shutdown();
+        assertEquals(80000, all.size());
+    }
+
+    /**不同节点号生成的id不重复，节点号在id的中间10位*/
+    @Test
+    public void nodeIdIsEncoded(){
+        NodeStripedIdGenerator a = generator(0);
+        NodeStripedIdGenerator b = generator(NodeStripedIdGenerator.MAX_NODE_ID);
+        Set<String> ids = new HashSet<>();
+        for(int i = 0; i < 1000; i++){
+            String id = a.getNextId();
+            assertEquals(0, nodeId(id));
+            assertTrue(ids.add(id));
+            id = b.getNextId();
+            assertEquals(NodeStripedIdGenerator.MAX_NODE_ID, nodeId(id));
+            assertTrue(ids.add(id));
+        }
+    }
+
+    @Test
+    public void setNodeIdRejectsOutOfRange(){
+        NodeStripedIdGenerator generator = new NodeStripedIdGenerator();
+        for(int nodeId:new int[]{-1, NodeStripedIdGenerator.MAX_NODE_ID + 1}){
+            try{
+                generator.setNodeId(nodeId);
+                fail(String.valueOf(nodeId));
+            }catch(ActivitiIllegalArgumentException expected){
+            }
+        }
+        assertEquals(-1, generator.getNodeId());
+    }
+
+    /**单节点没有配置节点号时使用0*/
+    @Test
+    public void initDefaultsToNodeZero(){
+        NodeStripedIdGenerator generator = new NodeStripedIdGenerator();
+        generator.init();
+        assertEquals(0, generator.getNodeId());
+        assertEquals(0, nodeId(new NodeStripedIdGenerator().getNextId()));
+    }
+
+    /**集群没有配置节点号时启动失败*/
+    @Test
+    public void clusteredInitFailsWithoutProperty(){
+        try{
+            clustered().init();
+            fail();
+        }catch(ActivitiIllegalArgumentException expected){
+            assertTrue(expected.getMessage().contains(NodeStripedIdGenerator.NODE_ID_PROPERTY));
+        }
+        try{
+            clustered().getNextId();
+            fail();
+        }catch(ActivitiIllegalArgumentException expected){
+        }
+        System.setProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY, "5");
+        NodeStripedIdGenerator generator = clustered();
+        generator.init();
+        assertEquals(5, generator.getNodeId());
+    }
+
+    @Test
+    public void initRejectsInvalidProperty(){
+        for(String value:new String[]{"", "abc", "-1", "1024"}){
+            System.setProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY, value);
+            try{
+                new NodeStripedIdGenerator().init();
+                fail(value);
+            }catch(ActivitiIllegalArgumentException expected){
+            }
+        }
+    }
+
+    @Test
+    public void initReadsProperty(){
+        System.setProperty(NodeStripedIdGenerator.NODE_ID_PROPERTY, " 7 ");
+        NodeStripedIdGenerator generator = new NodeStripedIdGenerator();
+        generator.init();
+        assertEquals(7, generator.getNodeId());
+        assertEquals(7, nodeId(generator.getNextId()));
+        //已经设置的节点号不被系统属性覆盖
+        generator = generator(3);
+        generator.init();
+        assertEquals(3, generator.getNodeId());
+    }
+
+    private static NodeStripedIdGenerator generator(int nodeId){
+        NodeStripedIdGenerator generator = new NodeStripedIdGenerator();
+        generator.setNodeId(nodeId);
+        return generator;
+    }
+
+    private static NodeStripedIdGenerator clustered(){
+        NodeStripedIdGenerator generator = new NodeStripedIdGenerator();
+        generator.setClustered(true);
+        return generator;
+    }
+
+    private static int nodeId(String id){
+        return (int) (Long.parseLong(id) >>> NodeStripedIdGenerator.SEQUENCE_BITS) & NodeStripedIdGenerator.MAX_NODE_ID;
+    }
+}
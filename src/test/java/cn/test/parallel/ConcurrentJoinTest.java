@@ -0,0 +1,190 @@
+package cn.test.parallel;
+
+import org.activiti.engine.ProcessEngine;
+import org.activiti.engine.ProcessEngineConfiguration;
+import org.activiti.engine.impl.RepositoryServiceImpl;
+import org.activiti.engine.impl.asyncexecutor.DefaultAsyncJobExecutor;
+import org.activiti.engine.impl.cfg.ProcessEngineConfigurationImpl;
+import org.activiti.engine.impl.cfg.StandaloneInMemProcessEngineConfiguration;
+import org.activiti.engine.impl.jobexecutor.JobHandler;
+import org.activiti.engine.impl.persistence.entity.ProcessDefinitionEntity;
+import org.activiti.engine.impl.pvm.process.ActivityImpl;
+import org.activiti.engine.parse.BpmnParseHandler;
+import org.activiti.engine.runtime.ProcessInstance;
+import org.activiti.engine.task.Task;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.Assert.*;
+
+/**
+ * 并行分支并发执行模式下，各分支同时到达汇聚网关时只继续执行一次
+ * 流程定义使用示例中的parallelGateWay.bpmn（usertask3、usertask4汇聚到parallelgateway2）
+ */
+public class ConcurrentJoinTest {
+
+    private static final String KEY = "parallelGateWay";
+
+    private static ProcessEngine engine;
+
+    @BeforeClass
+    public static void buildEngine(){
+        ConcurrentBranchParseHandler handler = new ConcurrentBranchParseHandler();
+        handler.setProcessDefinitionKeys(new HashSet<>(Arrays.asList(KEY, "explicitAsync")));
+        DefaultAsyncJobExecutor asyncExecutor = new DefaultAsyncJobExecutor();
+        asyncExecutor.setDefaultAsyncJobAcquireWaitTimeInMillis(50);
+        asyncExecutor.setDefaultTimerJobAcquireWaitTimeInMillis(50);
+        ProcessEngineConfigurationImpl configuration = new StandaloneInMemProcessEngineConfiguration();
+        configuration.setProcessEngineName("concurrentJoin");
+        configuration.setJdbcUrl("jdbc:h2:mem:concurrentJoin;MVCC=TRUE;LOCK_TIMEOUT=10000");
+        configuration.setDatabaseSchemaUpdate(ProcessEngineConfiguration.DB_SCHEMA_UPDATE_CREATE_DROP);
+        configuration.setPostBpmnParseHandlers(Arrays.<BpmnParseHandler>asList(handler));
+        configuration.setCustomJobHandlers(Arrays.<JobHandler>asList(new ParallelJoinJobHandler()));
+        configuration.setAsyncExecutorEnabled(true);
+        configuration.setAsyncExecutorActivate(true);
+        configuration.setAsyncExecutor(asyncExecutor);
+        engine = configuration.buildProcessEngine();
+        engine.getRepositoryService().createDeployment()
+                .addClasspathResource("cn/test/h_parallelGateWay/parallelGateWay.bpmn")
+                .addString("explicitAsync.bpmn", EXPLICIT_ASYNC)
+                .deploy();
+    }
+
+    @AfterClass
+    public static void closeEngine(){
+        engine.close();
+    }
+
+    /**分叉后的活动设为异步非排他，汇聚网关使用StripedJoinActivityBehavior*/
+    @Test
+    public void definitionIsConcurrent(){
+        for(String activityId:Arrays.asList("usertask1", "usertask2")){
+            ActivityImpl branch = activity(KEY, activityId);
+            assertTrue(activityId, branch.isAsync());
+            assertFalse(activityId, branch.isExclusive());
+        }
+        assertTrue(activity(KEY, "parallelgateway2").getActivityBehavior() instanceof StripedJoinActivityBehavior);
+    }
+
+    /**流程中已经设为异步的分支保持原来的排他配置*/
+    @Test
+    public void explicitAsyncIsKept(){
+        ActivityImpl configured = activity("explicitAsync", "configured");
+        assertTrue(configured.isAsync());
+        assertTrue(configured.isExclusive());
+        ActivityImpl plain = activity("explicitAsync", "plain");
+        assertTrue(plain.isAsync());
+        assertFalse(plain.isExclusive());
+    }
+
+    /**两个分支的最后一个任务在不同线程中同时完成，每个流程实例只汇聚一次并结束*/
+    @Test
+    public void concurrentArrivalsJoinOnce() throws Exception {
+        int instances = 10;
+        List<String> ids = new ArrayList<>();
+        for(int i = 0; i < instances; i++){
+            ids.add(engine.getRuntimeService().startProcessInstanceByKey(KEY).getId());
+        }
+        for(String id:ids){
+            for(Task task:waitForTasks(id, "usertask1", "usertask2")){
+                engine.getTaskService().complete(task.getId());
+            }
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        try{
+            for(String id:ids){
+                List<Task> tasks = waitForTasks(id, "usertask3", "usertask4");
+                final CyclicBarrier barrier = new CyclicBarrier(tasks.size());
+                List<Future<?>> futures = new ArrayList<>();
+                for(final Task task:tasks){
+                    futures.add(pool.submit(new Callable<Void>() {
+                        @Override
+                        public Void call() throws Exception {
+                            barrier.await(10, TimeUnit.SECONDS);
+                            engine.getTaskService().complete(task.getId());
+                            return null;
+                        }
+                    }));
+                }
+                for(Future<?> future:futures){
+                    future.get(30, TimeUnit.SECONDS);
+                }
+            }
+        }finally{
+            pool.shutdownNow();
+        }
+        for(String id:ids){
+            waitForEnd(id);
+            assertEquals(id, 1, engine.getHistoryService().createHistoricActivityInstanceQuery()
+                    .processInstanceId(id).activityId("endevent1").count());
+            assertEquals(id, 0, engine.getRuntimeService().createExecutionQuery().processInstanceId(id).count());
+        }
+        //先到达的分支的判断可能在流程结束后才执行，执行后不留下失败的任务
+        long deadline = System.currentTimeMillis() + 30000;
+        while(engine.getManagementService().createJobQuery().count() > 0){
+            assertTrue(engine.getManagementService().createJobQuery().list().toString(), System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    /**等待异步任务执行后出现的任务*/
+    private static List<Task> waitForTasks(String processInstanceId, String... taskDefinitionKeys) throws InterruptedException {
+        Set<String> expected = new TreeSet<>(Arrays.asList(taskDefinitionKeys));
+        long deadline = System.currentTimeMillis() + 30000;
+        for(;;){
+            List<Task> tasks = engine.getTaskService().createTaskQuery().processInstanceId(processInstanceId).list();
+            Set<String> keys = new TreeSet<>();
+            for(Task task:tasks){
+                keys.add(task.getTaskDefinitionKey());
+            }
+            if(keys.equals(expected)){
+                return tasks;
+            }
+            assertTrue(processInstanceId + " " + keys, System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static void waitForEnd(String processInstanceId) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30000;
+        for(;;){
+            ProcessInstance pi = engine.getRuntimeService().createProcessInstanceQuery().processInstanceId(processInstanceId).singleResult();
+            if(pi == null){
+                return;
+            }
+            assertTrue(processInstanceId, System.currentTimeMillis() < deadline);
+            Thread.sleep(20);
+        }
+    }
+
+    private static ActivityImpl activity(String processDefinitionKey, String activityId){
+        String id = engine.getRepositoryService().createProcessDefinitionQuery()
+                .processDefinitionKey(processDefinitionKey).latestVersion().singleResult().getId();
+        ProcessDefinitionEntity definition = (ProcessDefinitionEntity) ((RepositoryServiceImpl) engine.getRepositoryService()).getDeployedProcessDefinition(id);
+        return definition.findActivity(activityId);
+    }
+
+    /**configured在流程中设为异步（排他），plain没有配置*/
+    private static final String EXPLICIT_ASYNC = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n"
+            + "<definitions xmlns=\"http://www.omg.org/spec/BPMN/20100524/MODEL\" xmlns:activiti=\"http://activiti.org/bpmn\""
+            + " targetNamespace=\"http://www.activiti.org/test\">\n"
+            + "  <process id=\"explicitAsync\" isExecutable=\"true\">\n"
+            + "    <startEvent id=\"start\"/>\n"
+            + "    <parallelGateway id=\"fork\"/>\n"
+            + "    <userTask id=\"configured\" activiti:async=\"true\"/>\n"
+            + "    <userTask id=\"plain\"/>\n"
+            + "    <parallelGateway id=\"join\"/>\n"
+            + "    <endEvent id=\"end\"/>\n"
+            + "    <sequenceFlow id=\"f1\" sourceRef=\"start\" targetRef=\"fork\"/>\n"
+            + "    <sequenceFlow id=\"f2\" sourceRef=\"fork\" targetRef=\"configured\"/>\n"
+            + "    <sequenceFlow id=\"f3\" sourceRef=\"fork\" targetRef=\"plain\"/>\n"
+            + "    <sequenceFlow id=\"f4\" sourceRef=\"configured\" targetRef=\"join\"/>\n"
+            + "    <sequenceFlow id=\"f5\" sourceRef=\"plain\" targetRef=\"join\"/>\n"
+            + "    <sequenceFlow id=\"f6\" sourceRef=\"join\" targetRef=\"end\"/>\n"
+            + "  </process>\n"
+            + "</definitions>";
+}
@@ -0,0 +1,201 @@
+package cn.test.variable;
+
+import org.activiti.engine.ActivitiException;
+import org.activiti.engine.ActivitiIllegalArgumentException;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * CompactCodec的编码、解码，以及类增删字段、改名后读取旧数据
+ */
+public class CompactCodecTest {
+
+    private final CompactCodec codec = new CompactCodec();
+
+    enum Level { LOW, HIGH }
+
+    static class Address {
+        @Tag(1) String city;
+        @Tag(2) int zip;
+    }
+
+    static class Person {
+        @Tag(1) String name;
+        @Tag(2) int age;
+        @Tag(3) long id;
+        @Tag(4) boolean active;
+        @Tag(5) char grade;
+        @Tag(6) double score;
+        @Tag(7) float ratio;
+        @Tag(8) Integer count;
+        @Tag(9) Date birthday;
+        @Tag(10) Level level;
+        @Tag(11) BigDecimal salary;
+        @Tag(12) byte[] photo;
+        @Tag(13) Address address;
+        @Tag(14) short rank;
+        @Tag(15) byte flags;
+        String untagged;
+        transient String cache;
+    }
+
+    /**第一版*/
+    static class OrderV1 {
+        @Tag(1) String customer;
+        @Tag(2) int quantity;
+        @Tag(3) Level level;
+    }
+
+    /**第二版：customer改名为buyer（编号不变），删除quantity，增加note；枚举值在类中已删除时按未设置处理*/
+    static class OrderV2 {
+        @Tag(1) String buyer;
+        @Tag(3) Status level = Status.NEW;
+        @Tag(4) String note = "默认";
+    }
+
+    enum Status { NEW, LOW }
+
+    /**quantity的类型改为字符串（线类型不同）*/
+    static class OrderV3 {
+        @Tag(1) String customer;
+        @Tag(2) String quantity = "未设置";
+    }
+
+    @Test
+    public void roundTrip(){
+        Person person = new Person();
+        person.name = "张三";
+        person.age = -30;
+        person.id = Long.MAX_VALUE;
+        person.active = true;
+        person.grade = 'A';
+        person.score = 98.5;
+        person.ratio = 0.25f;
+        person.count = Integer.MIN_VALUE;
+        person.birthday = new Date(-1000L);
+        person.level = Level.HIGH;
+        person.salary = new BigDecimal("12345.6789");
+        person.photo = new byte[]{1, 2, 3, (byte) 0xFF};
+        person.address = new Address();
+        person.address.city = "北京";
+        person.address.zip = 100000;
+        person.rank = Short.MIN_VALUE;
+        person.flags = -1;
+        person.untagged = "散列编号";
+        person.cache = "不编码";
+
+        Person copy = codec.decode(Person.class, codec.encode(person));
+        assertEquals(person.name, copy.name);
+        assertEquals(person.age, copy.age);
+        assertEquals(person.id, copy.id);
+        assertEquals(person.active, copy.active);
+        assertEquals(person.grade, copy.grade);
+        assertEquals(person.score, copy.score, 0);
+        assertEquals(person.ratio, copy.ratio, 0);
+        assertEquals(person.count, copy.count);
+        assertEquals(person.birthday, copy.birthday);
+        assertEquals(person.level, copy.level);
+        assertEquals(person.salary, copy.salary);
+        assertArrayEquals(person.photo, copy.photo);
+        assertEquals(person.address.city, copy.address.city);
+        assertEquals(person.address.zip, copy.address.zip);
+        assertEquals(person.rank, copy.rank);
+        assertEquals(person.flags, copy.flags);
+        assertEquals(person.untagged, copy.untagged);
+        assertNull(copy.cache);
+    }
+
+    /**null字段不写入，解码后保持null*/
+    @Test
+    public void nullFields(){
+        Person copy = codec.decode(Person.class, codec.encode(new Person()));
+        assertNull(copy.name);
+        assertNull(copy.count);
+        assertNull(copy.address);
+        assertEquals(0, copy.age);
+    }
+
+    @Test
+    public void renamedAndAddedFields(){
+        OrderV1 v1 = new OrderV1();
+        v1.customer = "李四";
+        v1.quantity = 3;
+        v1.level = Level.HIGH;
+        OrderV2 v2 = codec.decode(OrderV2.class, codec.encode(v1));
+        assertEquals("李四", v2.buyer);
+        assertEquals("默认", v2.note);
+        //HIGH在新的枚举中不存在，保持默认值
+        assertEquals(Status.NEW, v2.level);
+
+        v1.level = Level.LOW;
+        assertEquals(Status.LOW, codec.decode(OrderV2.class, codec.encode(v1)).level);
+    }
+
+    @Test
+    public void removedFieldsAreSkipped(){
+        OrderV2 v2 = new OrderV2();
+        v2.buyer = "王五";
+        v2.note = "加急";
+        OrderV1 v1 = codec.decode(OrderV1.class, codec.encode(v2));
+        assertEquals("王五", v1.customer);
+        assertEquals(0, v1.quantity);
+        //NEW在旧的枚举中不存在
+        assertNull(v1.level);
+        assertEquals(Level.LOW, codec.decode(OrderV1.class, codec.encode(withLevel(Status.LOW))).level);
+    }
+
+    /**同一编号的字段类型改变时跳过旧值*/
+    @Test
+    public void changedWireTypeIsSkipped(){
+        OrderV1 v1 = new OrderV1();
+        v1.customer = "赵六";
+        v1.quantity = 5;
+        OrderV3 v3 = codec.decode(OrderV3.class, codec.encode(v1));
+        assertEquals("赵六", v3.customer);
+        assertEquals("未设置", v3.quantity);
+    }
+
+    @Test
+    public void truncatedBytesFail(){
+        OrderV1 v1 = new OrderV1();
+        v1.customer = "孙七";
+        byte[] bytes = codec.encode(v1);
+        try{
+            codec.decode(OrderV1.class, Arrays.copyOf(bytes, bytes.length - 1));
+            fail();
+        }catch(ActivitiException expected){
+        }
+    }
+
+    static class Unsupported {
+        List<String> names;
+    }
+
+    static class DuplicateTag {
+        @Tag(1) String a;
+        @Tag(1) String b;
+    }
+
+    @Test
+    public void unsupportedClassesAreRejected(){
+        for(Class<?> type:Arrays.<Class<?>>asList(Unsupported.class, DuplicateTag.class, String.class, Level.class)){
+            try{
+                codec.register(type);
+                fail(type.getName());
+            }catch(ActivitiIllegalArgumentException expected){
+            }
+        }
+    }
+
+    private static OrderV2 withLevel(Status level){
+        OrderV2 v2 = new OrderV2();
+        v2.level = level;
+        return v2;
+    }
+}